@@ -0,0 +1,99 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Predicate;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+
+/**
+ * Measures the throughput of Atom.create, which goes through the
+ * uk.ac.ox.cs.pdq.fol.Cache interner for the atom and for each of its terms.
+ * <ul>
+ * <li>createExisting: re-creates atoms that are already in the cache (the
+ * common case while chasing and planning).</li>
+ * <li>createNew: creates atoms that were never seen before, exercising the
+ * insertion and the purging of the garbage collected entries.</li>
+ * </ul>
+ * Run the main method to measure both with 1, 4, 8 and 16 threads.
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AtomCreateBenchmark {
+	private static final int POOL_SIZE = 10000;
+
+	/**
+	 * Atoms that are kept alive for the whole benchmark, so the cache keeps them.
+	 */
+	@State(Scope.Benchmark)
+	public static class ExistingAtoms {
+		Predicate predicate;
+		Term[][] terms;
+		Atom[] atoms;
+
+		@Setup
+		public void setup() {
+			this.predicate = Predicate.create("R", 3);
+			this.terms = new Term[POOL_SIZE][];
+			this.atoms = new Atom[POOL_SIZE];
+			for (int i = 0; i < POOL_SIZE; i++) {
+				this.terms[i] = new Term[] { TypedConstant.create(i), UntypedConstant.create("c" + (i % 100)), TypedConstant.create("v" + i) };
+				this.atoms[i] = Atom.create(this.predicate, this.terms[i]);
+			}
+		}
+	}
+
+	/**
+	 * Per thread position in the pool and counter for the new atoms.
+	 */
+	@State(Scope.Thread)
+	public static class ThreadCounter {
+		int index;
+		long counter;
+		String prefix;
+
+		@Setup
+		public void setup() {
+			this.index = (int) (Math.random() * POOL_SIZE);
+			this.prefix = Thread.currentThread().getName() + "_";
+		}
+	}
+
+	@Benchmark
+	public Atom createExisting(ExistingAtoms existing, ThreadCounter counter) {
+		int i = counter.index++ % POOL_SIZE;
+		return Atom.create(existing.predicate, existing.terms[i][0], existing.terms[i][1], existing.terms[i][2]);
+	}
+
+	@Benchmark
+	public Atom createNew(ExistingAtoms existing, ThreadCounter counter) {
+		long i = counter.counter++;
+		return Atom.create(existing.predicate, TypedConstant.create(i), UntypedConstant.create(counter.prefix + i), existing.terms[(int) (i % POOL_SIZE)][2]);
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkUtility.run(AtomCreateBenchmark.class);
+	}
+}
@@ -0,0 +1,100 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+import uk.ac.ox.cs.pdq.io.CommonToPDQTranslator;
+
+/**
+ * Helper methods shared by the benchmarks: locating the test data of the
+ * regression module, loading and scaling the chaseBench test cases, and running
+ * a benchmark with the usual thread counts.
+ *
+ * @author Gabor
+ *
+ */
+public class BenchmarkUtility {
+	/** Thread counts used when a benchmark is started from its main method. */
+	public static final int[] THREADS = new int[] { 1, 4, 8, 16 };
+
+	/**
+	 * The benchmarks read the test data of the regression module. The folder can
+	 * be given with the "pdq.regression.test" system property, otherwise it is
+	 * searched relative to the working directory (repository root or one of the
+	 * module folders).
+	 */
+	public static File getRegressionTestFolder() {
+		String property = System.getProperty("pdq.regression.test");
+		if (property != null)
+			return new File(property);
+		for (String candidate : new String[] { "regression/test", "../regression/test" }) {
+			File folder = new File(candidate);
+			if (folder.isDirectory())
+				return folder;
+		}
+		throw new IllegalStateException("Regression test folder not found, set the pdq.regression.test system property.");
+	}
+
+	/**
+	 * Folder of a chaseBench test case, such as "tgdsEgdsLarge".
+	 */
+	public static File getChaseBenchFolder(String testCase) {
+		return new File(new File(getRegressionTestFolder(), "chaseBench"), testCase);
+	}
+
+	/**
+	 * Reads the csv data of a chaseBench test case. The data is copied scale
+	 * times, the constants of each copy get a different suffix, so the copies do
+	 * not join with each other.
+	 */
+	public static List<Atom> importChaseBenchFacts(Schema schema, File folder, int scale) throws Exception {
+		Collection<Atom> facts = new ArrayList<>();
+		for (File csv : new File(folder, "data").listFiles()) {
+			String relation = csv.getName().substring(0, csv.getName().length() - ".csv".length());
+			facts.addAll(CommonToPDQTranslator.importFacts(schema, relation, csv.getPath()));
+		}
+		List<Atom> scaled = new ArrayList<>(facts);
+		for (int copy = 1; copy < scale; copy++) {
+			for (Atom fact : facts) {
+				Term[] terms = new Term[fact.getNumberOfTerms()];
+				for (int index = 0; index < terms.length; index++)
+					terms[index] = rename(fact.getTerm(index), copy);
+				scaled.add(Atom.create(fact.getPredicate(), terms));
+			}
+		}
+		return scaled;
+	}
+
+	private static Term rename(Term term, int copy) {
+		if (term instanceof TypedConstant && ((TypedConstant) term).getValue() instanceof String)
+			return TypedConstant.create(((TypedConstant) term).getValue() + "_" + copy);
+		if (term instanceof UntypedConstant)
+			return UntypedConstant.create(((UntypedConstant) term).getSymbol() + "_" + copy);
+		return term;
+	}
+
+	/**
+	 * Runs every benchmark of the given class once for each of the THREADS.
+	 */
+	public static void run(Class<?> benchmark) throws RunnerException {
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder().include(benchmark.getSimpleName()).threads(threads).build();
+			new Runner(options).run();
+		}
+	}
+}
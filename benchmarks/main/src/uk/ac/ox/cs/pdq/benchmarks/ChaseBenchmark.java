@@ -0,0 +1,153 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ox.cs.pdq.db.Match;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Dependency;
+import uk.ac.ox.cs.pdq.fol.TGD;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.reasoning.chase.ParallelChaser;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.DatabaseChaseInstance;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+
+/**
+ * Measures the two steps of the chase on the chaseBench test cases of the
+ * regression module, using the internal database:
+ * <ul>
+ * <li>getTriggers: finds all triggers of all dependencies on the chased
+ * instance.</li>
+ * <li>chaseStep: applies the active triggers of the first dependency that has
+ * any on the initial instance.</li>
+ * <li>chase: runs the ParallelChaser until termination.</li>
+ * </ul>
+ * The test case and the number of copies of its data are parameters. Each
+ * thread works on its own instance.
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChaseBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class TestCase {
+		@Param({ "tgdsEgdsLarge", "vldb2010" })
+		String testCase;
+
+		@Param({ "1", "10" })
+		int scale;
+
+		Schema schema;
+		Dependency[] dependencies;
+		List<Atom> facts;
+
+		@Setup
+		public void setup() throws Exception {
+			File folder = BenchmarkUtility.getChaseBenchFolder(this.testCase);
+			this.schema = IOManager.importSchema(new File(folder, "schema.xml"));
+			this.dependencies = this.schema.getAllDependencies();
+			this.facts = BenchmarkUtility.importChaseBenchFacts(this.schema, folder, this.scale);
+		}
+
+		DatabaseChaseInstance createInstance() throws Exception {
+			DatabaseManager connection = new InternalDatabaseManager();
+			connection.initialiseDatabaseForSchema(this.schema);
+			return new DatabaseChaseInstance(this.facts, connection);
+		}
+	}
+
+	/**
+	 * A chased instance per thread.
+	 */
+	@State(Scope.Thread)
+	public static class ChasedInstance {
+		DatabaseChaseInstance instance;
+
+		@Setup
+		public void setup(TestCase testCase) throws Exception {
+			this.instance = testCase.createInstance();
+			new ParallelChaser().reasonUntilTermination(this.instance, testCase.dependencies);
+		}
+
+		@TearDown
+		public void tearDown() throws Exception {
+			this.instance.close();
+		}
+	}
+
+	/**
+	 * A fresh instance and its triggers for every call of chaseStep.
+	 */
+	@State(Scope.Thread)
+	public static class Triggers {
+		DatabaseChaseInstance instance;
+		List<Match> triggers;
+
+		@Setup(Level.Invocation)
+		public void setup(TestCase testCase) throws Exception {
+			this.instance = testCase.createInstance();
+			for (Dependency dependency : testCase.dependencies) {
+				if (!(dependency instanceof TGD))
+					continue;
+				this.triggers = this.instance.getTriggers(new Dependency[] { dependency }, TriggerProperty.ACTIVE);
+				if (!this.triggers.isEmpty())
+					break;
+			}
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws Exception {
+			this.instance.close();
+		}
+	}
+
+	@Benchmark
+	public List<Match> getTriggers(TestCase testCase, ChasedInstance chased) {
+		return chased.instance.getTriggers(testCase.dependencies, TriggerProperty.ALL);
+	}
+
+	@Benchmark
+	public boolean chaseStep(Triggers triggers) {
+		return triggers.instance.chaseStep(triggers.triggers);
+	}
+
+	@Benchmark
+	public int chase(TestCase testCase) throws Exception {
+		DatabaseChaseInstance instance = testCase.createInstance();
+		new ParallelChaser().reasonUntilTermination(instance, testCase.dependencies);
+		int size = instance.getFacts().size();
+		instance.close();
+		return size;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkUtility.run(ChaseBenchmark.class);
+	}
+}
@@ -0,0 +1,120 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.Dependency;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.reasoning.chase.ParallelChaser;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.DatabaseChaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+
+/**
+ * Measures InternalDatabaseManager.answerConjunctiveQuery on the chased
+ * instance of a chaseBench test case. The queries are the bodies of the
+ * dependencies of the test case, the same queries the chase evaluates to find
+ * the triggers. The test case and the number of copies of its data are
+ * parameters, each thread queries its own database.
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConjunctiveQueryBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class TestCase {
+		@Param({ "tgdsEgdsLarge", "vldb2010" })
+		String testCase;
+
+		@Param({ "1", "10" })
+		int scale;
+
+		Schema schema;
+		Collection<Atom> chasedFacts;
+		List<ConjunctiveQuery> queries;
+
+		@Setup
+		public void setup() throws Exception {
+			File folder = BenchmarkUtility.getChaseBenchFolder(this.testCase);
+			this.schema = IOManager.importSchema(new File(folder, "schema.xml"));
+			DatabaseManager connection = new InternalDatabaseManager();
+			connection.initialiseDatabaseForSchema(this.schema);
+			DatabaseChaseInstance instance = new DatabaseChaseInstance(BenchmarkUtility.importChaseBenchFacts(this.schema, folder, this.scale), connection);
+			new ParallelChaser().reasonUntilTermination(instance, this.schema.getAllDependencies());
+			this.chasedFacts = new ArrayList<>(instance.getFacts());
+			instance.close();
+			this.queries = new ArrayList<>();
+			for (Dependency dependency : this.schema.getAllDependencies()) {
+				Set<Variable> freeVariables = new LinkedHashSet<>();
+				for (Atom atom : dependency.getBodyAtoms()) {
+					for (Term term : atom.getTerms()) {
+						if (term.isVariable())
+							freeVariables.add((Variable) term);
+					}
+				}
+				this.queries.add(ConjunctiveQuery.create(freeVariables.toArray(new Variable[freeVariables.size()]), dependency.getBodyAtoms()));
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Database {
+		DatabaseManager connection;
+
+		@Setup
+		public void setup(TestCase testCase) throws Exception {
+			this.connection = new InternalDatabaseManager();
+			this.connection.initialiseDatabaseForSchema(testCase.schema);
+			this.connection.addFacts(testCase.chasedFacts);
+		}
+
+		@TearDown
+		public void tearDown() throws Exception {
+			this.connection.shutdown();
+		}
+	}
+
+	@Benchmark
+	public int answerConjunctiveQuery(TestCase testCase, Database database) throws Exception {
+		int results = 0;
+		for (ConjunctiveQuery query : testCase.queries)
+			results += database.connection.answerConjunctiveQuery(query).size();
+		return results;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkUtility.run(ConjunctiveQueryBenchmark.class);
+	}
+}
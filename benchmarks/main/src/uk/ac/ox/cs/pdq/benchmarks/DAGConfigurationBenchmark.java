@@ -0,0 +1,156 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ox.cs.pdq.db.AccessMethodDescriptor;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Predicate;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibilityAxiom;
+import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
+import uk.ac.ox.cs.pdq.planner.dag.ApplyRule;
+import uk.ac.ox.cs.pdq.planner.dag.BinaryConfiguration;
+import uk.ac.ox.cs.pdq.planner.dag.DAGChaseConfiguration;
+import uk.ac.ox.cs.pdq.planner.dominance.FastFactDominance;
+import uk.ac.ox.cs.pdq.planner.equivalence.dag.DAGEquivalenceClasses;
+import uk.ac.ox.cs.pdq.planner.reasoning.chase.accessiblestate.AccessibleDatabaseChaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+
+/**
+ * Measures the configuration handling of the DAG planners on the partsupp
+ * relation of the TPC-H schema (regression/test/runtime case_005):
+ * <ul>
+ * <li>isDominated: FastFactDominance check of a binary configuration against
+ * a free access configuration that has all of its inferred accessible facts
+ * (the check has to compare every fact).</li>
+ * <li>addEntry: adds every apply rule and binary configuration to an empty
+ * DAGEquivalenceClasses.</li>
+ * </ul>
+ * The number of configurations and the number of facts per apply rule are
+ * parameters. The configurations are shared, read only, by all threads.
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DAGConfigurationBenchmark {
+	private static final String RELATION = "partsupp";
+
+	@State(Scope.Benchmark)
+	public static class Configurations {
+		@Param({ "100", "500" })
+		int configurations;
+
+		@Param({ "10", "100" })
+		int facts;
+
+		List<DAGChaseConfiguration> all;
+		DAGChaseConfiguration source;
+		DAGChaseConfiguration target;
+		FastFactDominance dominance = new FastFactDominance(false);
+
+		@Setup
+		public void setup() throws Exception {
+			File folder = new File(new File(new File(BenchmarkUtility.getRegressionTestFolder(), "runtime"), "MemoryExamples"), "case_005");
+			Schema schema = IOManager.importSchema(new File(folder, "schema.xml"));
+			AccessibleSchema accessibleSchema = new AccessibleSchema(schema);
+			DatabaseManager connection = new InternalDatabaseManager();
+			connection.initialiseDatabaseForSchema(accessibleSchema);
+
+			Relation relation = schema.getRelation(RELATION);
+			AccessMethodDescriptor free = null;
+			AccessMethodDescriptor bound = null;
+			for (AccessMethodDescriptor method : relation.getAccessMethods()) {
+				if (method.getInputs().length == 0)
+					free = method;
+				else
+					bound = method;
+			}
+			AccessibilityAxiom freeAxiom = new AccessibilityAxiom(relation, free);
+			AccessibilityAxiom boundAxiom = new AccessibilityAxiom(relation, bound);
+
+			List<ApplyRule> applyRules = new ArrayList<>();
+			for (int index = 0; index < this.configurations; index++)
+				applyRules.add(createApplyRule(connection, boundAxiom, createFacts(relation, bound, index)));
+			this.all = new ArrayList<>(applyRules);
+			for (int index = 0; index + 1 < applyRules.size(); index++)
+				this.all.add(new BinaryConfiguration(applyRules.get(index), applyRules.get(index + 1)));
+
+			this.source = new BinaryConfiguration(applyRules.get(0), applyRules.get(1));
+			Set<Atom> allFacts = new LinkedHashSet<>();
+			for (int index = 0; index < 3; index++)
+				allFacts.addAll(applyRules.get(index).getFacts());
+			this.target = createApplyRule(connection, freeAxiom, allFacts);
+		}
+
+		/**
+		 * Facts of an apply rule, these share the constants in the input positions.
+		 */
+		private Set<Atom> createFacts(Relation relation, AccessMethodDescriptor method, int index) {
+			Set<Atom> facts = new LinkedHashSet<>();
+			for (int fact = 0; fact < this.facts; fact++) {
+				Term[] terms = new Term[relation.getArity()];
+				for (int position = 0; position < terms.length; position++)
+					terms[position] = UntypedConstant.create("c" + index + "_" + position + "_" + fact);
+				for (Integer input : method.getInputs())
+					terms[input] = UntypedConstant.create("c" + index + "_" + input);
+				facts.add(Atom.create(relation, terms));
+			}
+			return facts;
+		}
+
+		private ApplyRule createApplyRule(DatabaseManager connection, AccessibilityAxiom axiom, Set<Atom> facts) throws Exception {
+			Set<Atom> stateFacts = new LinkedHashSet<>(facts);
+			for (Atom fact : facts)
+				stateFacts.add(Atom.create(Predicate.create(AccessibleSchema.inferredAccessiblePrefix + fact.getPredicate().getName(), fact.getPredicate().getArity()),
+						fact.getTerms()));
+			return new ApplyRule(new AccessibleDatabaseChaseInstance(stateFacts, connection, false), axiom, facts);
+		}
+	}
+
+	@Benchmark
+	public boolean isDominated(Configurations configurations) {
+		return configurations.dominance.isDominated(configurations.source, configurations.target);
+	}
+
+	@Benchmark
+	public DAGEquivalenceClasses addEntry(Configurations configurations) {
+		DAGEquivalenceClasses classes = new DAGEquivalenceClasses();
+		for (DAGChaseConfiguration configuration : configurations.all)
+			classes.addEntry(configuration);
+		return classes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkUtility.run(DAGConfigurationBenchmark.class);
+	}
+}
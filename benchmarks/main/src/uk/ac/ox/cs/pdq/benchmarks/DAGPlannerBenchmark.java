@@ -0,0 +1,101 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+import uk.ac.ox.cs.pdq.cost.Cost;
+import uk.ac.ox.cs.pdq.cost.CostParameters;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.planner.ExplorationSetUp;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters.PlannerTypes;
+import uk.ac.ox.cs.pdq.reasoning.ReasoningParameters;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
+
+/**
+ * Measures the scalability of the DAGOptimizedMultiThread planner: plans a
+ * test case of regression/test/planner/dag with 1 to 32 planner threads. The
+ * benchmark itself runs in a single JMH thread, the parallelism comes from the
+ * fork/join pool of the planner (the "threads" parameter sets dagThreads).
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1)
+public class DAGPlannerBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class PlanningCase {
+		/** Test case folder, relative to regression/test/planner/dag. */
+		@Param({ "MandatoryPass/example_01", "MandatoryPass/benchmark_case_002", "fast/benchmark/case_004" })
+		String testCase;
+
+		@Param({ "1", "2", "4", "8", "16", "32" })
+		int threads;
+
+		PlannerParameters plannerParams;
+		CostParameters costParams;
+		ReasoningParameters reasoningParams;
+		DatabaseParameters databaseParams;
+		Schema schema;
+		ConjunctiveQuery query;
+
+		@Setup
+		public void setup() throws Exception {
+			File folder = new File(new File(new File(BenchmarkUtility.getRegressionTestFolder(), "planner"), "dag"), this.testCase);
+			this.plannerParams = new PlannerParameters(new File(folder, "case.properties"));
+			this.plannerParams.setPlannerType(PlannerTypes.DAG_OPTIMIZED);
+			this.plannerParams.setDagThreads(this.threads);
+			this.costParams = new CostParameters(new File(folder, "case.properties"));
+			this.costParams.setCatalog(folder + "/catalog.properties");
+			this.reasoningParams = new ReasoningParameters(new File(folder, "case.properties"));
+			this.databaseParams = new DatabaseParameters(new File(folder, "case.properties"));
+			this.schema = IOManager.importSchema(new File(folder, "schema.xml"));
+			this.query = IOManager.importQuery(new File(folder, "query.xml"));
+		}
+	}
+
+	@Benchmark
+	public Entry<RelationalTerm, Cost> search(PlanningCase planningCase) throws Exception {
+		ExplorationSetUp planner = new ExplorationSetUp(planningCase.plannerParams, planningCase.costParams,
+				planningCase.reasoningParams, planningCase.databaseParams, planningCase.schema);
+		return planner.search(planningCase.query);
+	}
+
+	/**
+	 * Runs the benchmark once, the thread counts are the values of the "threads"
+	 * parameter rather than the JMH threads of BenchmarkUtility.run.
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().include(DAGPlannerBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,152 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ox.cs.pdq.algebra.AccessTerm;
+import uk.ac.ox.cs.pdq.algebra.DependentJoinTerm;
+import uk.ac.ox.cs.pdq.algebra.JoinTerm;
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+import uk.ac.ox.cs.pdq.algebra.RenameTerm;
+import uk.ac.ox.cs.pdq.datasources.accessrepository.AccessRepository;
+import uk.ac.ox.cs.pdq.datasources.memory.InMemoryAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.tuple.Table;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.runtime.exec.PlanDecorator;
+import uk.ac.ox.cs.pdq.runtime.exec.spliterator.DependentJoin;
+import uk.ac.ox.cs.pdq.runtime.exec.spliterator.SymmetricMemoryHashJoin;
+
+/**
+ * Measures ExecutablePlan.execute over InMemoryAccessMethods on the region and
+ * nation relations of the TPC-H schema (regression/test/runtime case_005). The
+ * data of the example is tiny, so the tuples are generated: size nations
+ * spread over size/10 regions.
+ * <ul>
+ * <li>dependentJoin: free access on region, the region keys are the inputs of
+ * an access on nation.</li>
+ * <li>hashJoin: free access on both relations, joined with a
+ * SymmetricMemoryHashJoin.</li>
+ * </ul>
+ * Both plans join on the region key, the relations are renamed so the key has
+ * the same attribute name on both sides. Each thread has its own access
+ * methods. The plans are executed sequentially and in parallel
+ * (PlanDecorator.setParallel).
+ *
+ * @author Gabor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutablePlanBenchmark {
+	private static final Attribute REGION_KEY = Attribute.create(Integer.class, "regionkey");
+
+	@State(Scope.Benchmark)
+	public static class TestCase {
+		@Param({ "1000", "10000" })
+		int size;
+
+		Relation region;
+		Relation nation;
+		Collection<Tuple> regions;
+		Collection<Tuple> nations;
+
+		@Setup
+		public void setup() throws Exception {
+			File folder = new File(new File(new File(BenchmarkUtility.getRegressionTestFolder(), "runtime"), "MemoryExamples"), "case_005");
+			Schema schema = IOManager.importSchema(new File(folder, "schema.xml"));
+			this.region = schema.getRelation("region");
+			this.nation = schema.getRelation("nation");
+
+			int numberOfRegions = Math.max(1, this.size / 10);
+			TupleType regionType = TupleType.DefaultFactory.create(Integer.class, String.class, String.class);
+			this.regions = new ArrayList<>();
+			for (int index = 0; index < numberOfRegions; index++)
+				this.regions.add(regionType.createTuple(index, "region" + index, "comment" + index));
+			TupleType nationType = TupleType.DefaultFactory.create(Integer.class, String.class, Integer.class, String.class);
+			this.nations = new ArrayList<>();
+			for (int index = 0; index < this.size; index++)
+				this.nations.add(nationType.createTuple(index, "nation" + index, index % numberOfRegions, "comment" + index));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Accesses {
+		@Param({ "false", "true" })
+		boolean parallel;
+
+		PlanDecorator decorator;
+		InMemoryAccessMethod regionFree;
+		InMemoryAccessMethod nationFree;
+		InMemoryAccessMethod nationByRegion;
+
+		@Setup
+		public void setup(TestCase testCase) throws Exception {
+			this.decorator = new PlanDecorator(AccessRepository.getRepository());
+			this.decorator.setParallel(this.parallel);
+			this.regionFree = createAccessMethod(testCase.region, new Integer[0], testCase.regions);
+			this.nationFree = createAccessMethod(testCase.nation, new Integer[0], testCase.nations);
+			this.nationByRegion = createAccessMethod(testCase.nation, new Integer[] { 2 }, testCase.nations);
+		}
+
+		private static InMemoryAccessMethod createAccessMethod(Relation relation, Integer[] inputs, Collection<Tuple> tuples) {
+			Map<Attribute, Attribute> mapping = new HashMap<>();
+			for (Attribute attribute : relation.getAttributes())
+				mapping.put(attribute, attribute);
+			InMemoryAccessMethod accessMethod = new InMemoryAccessMethod(relation.getAttributes(), inputs, relation, mapping);
+			accessMethod.load(tuples);
+			return accessMethod;
+		}
+
+		/**
+		 * Access on the region key renamed to the common join attribute.
+		 */
+		RelationalTerm access(InMemoryAccessMethod accessMethod, int regionKeyPosition) {
+			Attribute[] renamings = accessMethod.getRelation().getAttributes().clone();
+			renamings[regionKeyPosition] = REGION_KEY;
+			return RenameTerm.create(renamings, AccessTerm.create(accessMethod.getRelation(), accessMethod));
+		}
+	}
+
+	@Benchmark
+	public Table dependentJoin(Accesses accesses) throws Exception {
+		DependentJoinTerm plan = DependentJoinTerm.create(accesses.access(accesses.regionFree, 0), accesses.access(accesses.nationByRegion, 2));
+		return new DependentJoin(plan, accesses.decorator).execute();
+	}
+
+	@Benchmark
+	public Table hashJoin(Accesses accesses) throws Exception {
+		JoinTerm plan = JoinTerm.create(accesses.access(accesses.regionFree, 0), accesses.access(accesses.nationFree, 2));
+		return new SymmetricMemoryHashJoin(plan, accesses.decorator).execute();
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkUtility.run(ExecutablePlanBenchmark.class);
+	}
+}
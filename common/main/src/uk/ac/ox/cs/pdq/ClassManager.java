@@ -9,7 +9,14 @@ import java.lang.ref.WeakReference;
 /**
  *  Creates a cache for immutable objects. Makes sure that two instance with the same values cannot be used.
  *  Used by Cache instances such as uk.ac.ox.cs.pdq.algebra.Cache
- *   
+ *
+ *  Objects already in the cache are found without locking, only adding a new object (which also purges the
+ *  garbage collected entries) is synchronised. To make this safe the chains of the hash table are ordered
+ *  from the newest to the oldest entry, and nothing ever changes this order (resizing splits the chains
+ *  keeping the order), so an entry can only point to older entries. A reader that sees a stale state of the
+ *  table may miss an entry, in which case it looks again holding the lock, but it cannot loop or find a
+ *  wrong one.
+ *
  * @author Efthymia Tsamoura
  *
  * @param <E>
@@ -18,7 +25,7 @@ public abstract class ClassManager<E> {
     protected static final double LOAD_FACTOR = 0.75;
 
     protected final ReferenceQueue<E> m_referenceQueue;
-    protected Entry<E>[] m_entries;
+    protected volatile Entry<E>[] m_entries;
     protected int m_size;
     protected int m_resizeThreshold;
 
@@ -26,30 +33,46 @@ public abstract class ClassManager<E> {
         m_referenceQueue = new ReferenceQueue<E>();
         m_entries = createEntries(16);
         m_size = 0;
-        m_resizeThreshold = (int) (m_entries.length * LOAD_FACTOR);
+        m_resizeThreshold = (int) (16 * LOAD_FACTOR);
     }
 
     public synchronized void reset() {
 		while(m_referenceQueue.poll()!=null);
         m_entries = createEntries(16);
         m_size = 0;
-        m_resizeThreshold = (int) (m_entries.length * LOAD_FACTOR);
+        m_resizeThreshold = (int) (16 * LOAD_FACTOR);
     }
-    public synchronized E retrieve(E object) {
-        processQueue();
+
+    public E retrieve(E object) {
         int hashCode = getHashCode(object);
-        int objectEntryIndex = getIndexFor(hashCode, m_entries.length);
+        Entry<E>[] entries = m_entries;
+        for (Entry<E> entry = entries[getIndexFor(hashCode, entries.length)]; entry != null; entry = entry.m_next) {
+            if (hashCode == entry.m_hashCode) {
+                E entryObject = entry.get();
+                if (entryObject != null && equal(object, entryObject))
+                    return entryObject;
+            }
+        }
+        return retrieveLocked(object, hashCode);
+    }
+
+    protected synchronized E retrieveLocked(E object, int hashCode) {
+        processQueue();
+        Entry<E>[] entries = m_entries;
+        int objectEntryIndex = getIndexFor(hashCode, entries.length);
         Entry<E> previousEntry = null;
-        Entry<E> entry = m_entries[objectEntryIndex];
+        Entry<E> entry = entries[objectEntryIndex];
         while (entry != null) {
             if (hashCode == entry.m_hashCode) {
                 E entryObject = entry.get();
                 if (entryObject == null) {
                     if (previousEntry == null)
-                        m_entries[objectEntryIndex] = entry.m_next;
+                        entries[objectEntryIndex] = entry.m_next;
                     else
                         previousEntry.m_next = entry.m_next;
                     m_size--;
+                    entry = entry.m_next;
+                    continue;
                 }
                 else if (equal(object, entryObject))
                     return entryObject;
@@ -58,44 +81,64 @@ public abstract class ClassManager<E> {
             entry = entry.m_next;
         }
         if (m_size >= m_resizeThreshold) {
-            int newEntriesLength = m_entries.length * 2;
-            Entry<E>[] newEntries = createEntries(newEntriesLength);
-            for (int entryIndex = 0; entryIndex < m_entries.length; entryIndex++) {
-                Entry<E> currentEntry = m_entries[entryIndex];
-                while (currentEntry != null) {
-                    Entry<E> nextEntry = currentEntry.m_next;
-                    if (currentEntry.get() == null)
-                        m_size--;
-                    else {
-                        int newIndex = getIndexFor(currentEntry.m_hashCode, newEntriesLength);
-                        currentEntry.m_next = newEntries[newIndex];
-                        newEntries[newIndex] = currentEntry;
-                    }
-                    currentEntry = nextEntry;
-                }
-            }
-            m_entries = newEntries;
-            m_resizeThreshold = (int) (newEntriesLength * LOAD_FACTOR);
-            objectEntryIndex = getIndexFor(hashCode, m_entries.length);
+            entries = resize(entries);
+            objectEntryIndex = getIndexFor(hashCode, entries.length);
         }
-        Entry<E> newEntry = new Entry<E>(object, m_referenceQueue, hashCode, m_entries[objectEntryIndex]);
-        m_entries[objectEntryIndex] = newEntry;
+        entries[objectEntryIndex] = new Entry<E>(object, m_referenceQueue, hashCode, entries[objectEntryIndex]);
         m_size++;
         return object;
     }
 
+    /**
+     * Doubles the table, every chain is split into two keeping the order of its entries.
+     */
+    protected Entry<E>[] resize(Entry<E>[] entries) {
+        int newEntriesLength = entries.length * 2;
+        Entry<E>[] newEntries = createEntries(newEntriesLength);
+        for (int entryIndex = 0; entryIndex < entries.length; entryIndex++) {
+            Entry<E> lowTail = null;
+            Entry<E> highTail = null;
+            for (Entry<E> currentEntry = entries[entryIndex]; currentEntry != null; currentEntry = currentEntry.m_next) {
+                if (currentEntry.get() == null)
+                    m_size--;
+                else if (getIndexFor(currentEntry.m_hashCode, newEntriesLength) == entryIndex) {
+                    if (lowTail == null)
+                        newEntries[entryIndex] = currentEntry;
+                    else
+                        lowTail.m_next = currentEntry;
+                    lowTail = currentEntry;
+                }
+                else {
+                    if (highTail == null)
+                        newEntries[entryIndex + entries.length] = currentEntry;
+                    else
+                        highTail.m_next = currentEntry;
+                    highTail = currentEntry;
+                }
+            }
+            if (lowTail != null)
+                lowTail.m_next = null;
+            if (highTail != null)
+                highTail.m_next = null;
+        }
+        m_entries = newEntries;
+        m_resizeThreshold = (int) (newEntriesLength * LOAD_FACTOR);
+        return newEntries;
+    }
+
     protected final int getIndexFor(int hashCode, int entriesLength) {
         return hashCode & (entriesLength - 1);
     }
 
     protected void removeEntry(Entry<E> entry) {
-        int index = getIndexFor(entry.m_hashCode, m_entries.length);
+        Entry<E>[] entries = m_entries;
+        int index = getIndexFor(entry.m_hashCode, entries.length);
         Entry<E> previousEntry = null;
-        for (Entry<E> current = m_entries[index]; current != null; current = current.m_next) {
+        for (Entry<E> current = entries[index]; current != null; current = current.m_next) {
             if (current == entry) {
                 m_size--;
                 if (previousEntry == null)
-                    m_entries[index] = current.m_next;
+                    entries[index] = current.m_next;
                 else
                     previousEntry.m_next = current.m_next;
                 return;
@@ -124,7 +167,7 @@ public abstract class ClassManager<E> {
 
     protected static class Entry<E> extends WeakReference<E> {
         public final int m_hashCode;
-        public Entry<E> m_next;
+        public volatile Entry<E> m_next;
 
         public Entry(E object, ReferenceQueue<E> referenceQueue, int hashCode, Entry<E> next) {
             super(object, referenceQueue);
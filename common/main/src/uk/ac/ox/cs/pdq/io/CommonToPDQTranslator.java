@@ -4,7 +4,7 @@
 package uk.ac.ox.cs.pdq.io;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
@@ -312,34 +312,20 @@ public class CommonToPDQTranslator {
 		return null;
 	}
 
+	/**
+	 * Imports a chasebench csv file as facts of the given table, the values are
+	 * read as string constants.
+	 */
 	public static Collection<Atom> importFacts(Schema schema, String table, String csvFile) {
 		Collection<Atom> facts = Sets.newHashSet();
-		BufferedReader reader = null;
+		Relation relation = schema.getRelation(table);
+		CsvImporter<Atom> importer = new CsvImporter<>(
+				(column, cell) -> TypedConstant.create(cell.replace("\"", "")),
+				values -> Atom.create(relation, Arrays.copyOf(values, values.length, Term[].class)));
 		try {
-			// Open the csv file for reading
-			reader = new BufferedReader(new FileReader(csvFile));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				String[] tuple = line.split(",");
-				List<Term> constants = Lists.newArrayList();
-				for (int i = 0; i < tuple.length; ++i) {
-					constants.add(TypedConstant.create(tuple[i].replace("\"", "")));
-				}
-				facts.add(Atom.create(schema.getRelation(table), constants.toArray(new Term[constants.size()])));
-			}
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			importer.importFile(new File(csvFile), facts);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			if (reader != null) {
-				try {
-					reader.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
 		}
 		return facts;
 	}
@@ -0,0 +1,383 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+
+/**
+ * Reads comma separated files of records (facts or tuples). The file is memory
+ * mapped and split into line aligned chunks that are parsed in parallel. The
+ * parsed records are handed over in batches through a bounded queue to a
+ * consumer running on the calling thread, so the parsing threads wait when the
+ * consumer (e.g. a database) cannot keep up, and the file never has to fit in
+ * memory.
+ *
+ * The lines are split at the commas, the trailing empty values are dropped
+ * (like String.split does) and empty lines are skipped. The values are parsed
+ * by the CellParser, the values already seen in a column are not parsed again
+ * (up to CACHE_SIZE values per column and chunk), hence the parser must
+ * return immutable objects, like the hash-consed constants.
+ *
+ * Small files (a single chunk) are parsed on the calling thread.
+ *
+ * @author Gabor
+ *
+ * @param <T>
+ *            type of the records.
+ */
+public class CsvImporter<T> {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/** Maximum number of parsed values cached per column and chunk. */
+	public static final int CACHE_SIZE = 1 << 14;
+
+	/** Marks the end of the batches in the queue. */
+	private static final List<Object> END = new ArrayList<>();
+
+	/** Cached null value. */
+	private static final Object NULL = new Object();
+
+	/**
+	 * Parses a single value of a record.
+	 */
+	@FunctionalInterface
+	public interface CellParser {
+		/**
+		 * @param column
+		 *            index of the value in the line.
+		 * @param cell
+		 *            the text of the value.
+		 * @return the parsed value.
+		 */
+		Object parse(int column, String cell);
+	}
+
+	/**
+	 * Creates a record from the parsed values of a line.
+	 */
+	@FunctionalInterface
+	public interface RecordBuilder<T> {
+		T build(Object[] values);
+	}
+
+	/**
+	 * Receives the batches of records, on the thread calling importFile.
+	 */
+	@FunctionalInterface
+	public interface BatchConsumer<T> {
+		void accept(List<T> batch) throws DatabaseException;
+	}
+
+	private final CellParser cellParser;
+	private final RecordBuilder<T> recordBuilder;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	public CsvImporter(CellParser cellParser, RecordBuilder<T> recordBuilder) {
+		Preconditions.checkNotNull(cellParser);
+		Preconditions.checkNotNull(recordBuilder);
+		this.cellParser = cellParser;
+		this.recordBuilder = recordBuilder;
+	}
+
+	/**
+	 * Reads all the records of the file into the given collection.
+	 *
+	 * @return the number of records read.
+	 */
+	public long importFile(File csvFile, Collection<T> records) throws IOException {
+		try {
+			return this.importFile(csvFile, batch -> records.addAll(batch));
+		} catch (DatabaseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the records of the file, and passes them to the consumer in batches.
+	 *
+	 * @return the number of records read.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 * @throws DatabaseException
+	 *             if the consumer failed.
+	 */
+	public long importFile(File csvFile, BatchConsumer<T> consumer) throws IOException, DatabaseException {
+		try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+			List<long[]> chunks = this.split(channel);
+			if (chunks.size() <= 1) {
+				long counter = 0;
+				for (long[] chunk : chunks) {
+					List<List<T>> batches = new ArrayList<>();
+					this.parse(channel, chunk[0], chunk[1], batches::add);
+					for (List<T> batch : batches) {
+						counter += batch.size();
+						consumer.accept(batch);
+					}
+				}
+				return counter;
+			}
+			return this.importChunks(channel, chunks, consumer);
+		}
+	}
+
+	/**
+	 * Parses the chunks in parallel, and passes the batches to the consumer.
+	 */
+	@SuppressWarnings("unchecked")
+	private long importChunks(FileChannel channel, List<long[]> chunks, BatchConsumer<T> consumer)
+			throws IOException, DatabaseException {
+		BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(this.queueCapacity);
+		AtomicInteger remaining = new AtomicInteger(chunks.size());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, chunks.size()), runnable -> {
+			Thread thread = new Thread(runnable, "CsvImporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			for (long[] chunk : chunks) {
+				executor.execute(() -> {
+					try {
+						if (failure.get() == null) {
+							this.parse(channel, chunk[0], chunk[1], batch -> {
+								try {
+									queue.put(batch);
+								} catch (InterruptedException e) {
+									Thread.currentThread().interrupt();
+									throw new IllegalStateException("Interrupted", e);
+								}
+							});
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						if (remaining.decrementAndGet() == 0) {
+							try {
+								queue.put((List<T>) END);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					}
+				});
+			}
+			long counter = 0;
+			while (true) {
+				List<T> batch = queue.take();
+				if (batch == END)
+					break;
+				counter += batch.size();
+				consumer.accept(batch);
+			}
+			Throwable t = failure.get();
+			if (t instanceof IOException)
+				throw (IOException) t;
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			if (t instanceof Error)
+				throw (Error) t;
+			return counter;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while importing", e);
+		} finally {
+			// stops the parsing threads if the consumer failed.
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Splits the file into chunks of about chunkSize bytes, each one ending
+	 * after a line break (or at the end of the file).
+	 *
+	 * @return the start and end positions of the chunks.
+	 */
+	private List<long[]> split(FileChannel channel) throws IOException {
+		List<long[]> chunks = new ArrayList<>();
+		long size = channel.size();
+		long start = 0;
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (start < size) {
+			long end = start + this.chunkSize;
+			if (end >= size) {
+				end = size;
+			} else {
+				// look for the end of the line.
+				boolean found = false;
+				while (!found && end < size) {
+					buffer.clear();
+					int read = channel.read(buffer, end);
+					if (read <= 0)
+						break;
+					for (int index = 0; index < read; index++) {
+						if (buffer.get(index) == '\n') {
+							end += index + 1;
+							found = true;
+							break;
+						}
+					}
+					if (!found)
+						end += read;
+				}
+				end = Math.min(end, size);
+			}
+			chunks.add(new long[] { start, end });
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Parses the lines between the given positions, passing the records to the
+	 * sink in batches.
+	 */
+	private void parse(FileChannel channel, long start, long end, Consumer<List<T>> sink) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		String text = StandardCharsets.UTF_8.decode(buffer).toString();
+		List<Map<String, Object>> cache = new ArrayList<>();
+		List<String> cells = new ArrayList<>();
+		List<T> batch = new ArrayList<>(this.batchSize);
+		int length = text.length();
+		int position = 0;
+		while (position < length) {
+			// find the end of the line
+			int lineEnd = position;
+			char c = 0;
+			while (lineEnd < length && (c = text.charAt(lineEnd)) != '\n' && c != '\r')
+				lineEnd++;
+			int next = lineEnd + 1;
+			if (c == '\r' && next < length && text.charAt(next) == '\n')
+				next++;
+
+			// split it at the commas
+			cells.clear();
+			int cellStart = position;
+			for (int index = position; index <= lineEnd; index++) {
+				if (index == lineEnd || text.charAt(index) == ',') {
+					cells.add(text.substring(cellStart, index));
+					cellStart = index + 1;
+				}
+			}
+			while (!cells.isEmpty() && cells.get(cells.size() - 1).isEmpty())
+				cells.remove(cells.size() - 1);
+			position = next;
+			if (cells.isEmpty())
+				continue;
+
+			Object[] values = new Object[cells.size()];
+			for (int column = 0; column < values.length; column++) {
+				while (cache.size() <= column)
+					cache.add(new HashMap<>());
+				Map<String, Object> columnCache = cache.get(column);
+				String cell = cells.get(column);
+				Object value = columnCache.get(cell);
+				if (value == null) {
+					value = this.cellParser.parse(column, cell);
+					if (columnCache.size() >= CACHE_SIZE)
+						columnCache.clear();
+					columnCache.put(cell, value == null ? NULL : value);
+				} else if (value == NULL) {
+					value = null;
+				}
+				values[column] = value;
+			}
+			batch.add(this.recordBuilder.build(values));
+			if (batch.size() >= this.batchSize) {
+				sink.accept(batch);
+				batch = new ArrayList<>(this.batchSize);
+			}
+		}
+		if (!batch.isEmpty())
+			sink.accept(batch);
+	}
+
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * @param chunkSize
+	 *            number of bytes parsed by a thread at a time.
+	 */
+	public void setChunkSize(int chunkSize) {
+		Preconditions.checkArgument(chunkSize > 0);
+		this.chunkSize = chunkSize;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * @param batchSize
+	 *            number of records passed to the consumer at a time.
+	 */
+	public void setBatchSize(int batchSize) {
+		Preconditions.checkArgument(batchSize > 0);
+		this.batchSize = batchSize;
+	}
+
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/**
+	 * @param queueCapacity
+	 *            number of parsed batches waiting for the consumer, before the
+	 *            parsing threads stop.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Preconditions.checkArgument(queueCapacity > 0);
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            maximum number of parsing threads.
+	 */
+	public void setParallelism(int parallelism) {
+		Preconditions.checkArgument(parallelism > 0);
+		this.parallelism = parallelism;
+	}
+}
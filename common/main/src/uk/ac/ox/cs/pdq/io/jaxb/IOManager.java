@@ -4,7 +4,6 @@
 package uk.ac.ox.cs.pdq.io.jaxb;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -18,7 +17,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -29,7 +27,6 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
@@ -47,6 +44,7 @@ import uk.ac.ox.cs.pdq.fol.TypedConstant;
 import uk.ac.ox.cs.pdq.fol.UntypedConstant;
 import uk.ac.ox.cs.pdq.fol.Variable;
 import uk.ac.ox.cs.pdq.io.CommonToPDQTranslator;
+import uk.ac.ox.cs.pdq.io.CsvImporter;
 import uk.ac.ox.cs.pdq.io.jaxb.adapted.AdaptedQuery;
 import uk.ac.ox.cs.pdq.io.jaxb.adapted.AdaptedRelationalTerm;
 import uk.ac.ox.cs.pdq.io.jaxb.adapted.AdaptedSchema;
@@ -436,58 +434,39 @@ public class IOManager {
 		return value.toString().replaceAll(",", "/c");
 	}
 
+	/**
+	 * Imports a csv file of serialised typed constants (see exportFacts) as facts
+	 * of the given relation, using a parallel CsvImporter.
+	 *
+	 * @param r
+	 *            relation of the facts.
+	 * @param csvFile
+	 * @param instance
+	 *            if not null, the facts are added to it as they are read, and
+	 *            the returned collection is empty.
+	 * @param verbose
+	 * @return the imported facts, if there is no instance to store them.
+	 * @throws IOException
+	 * @throws DatabaseException
+	 */
 	public static Collection<Atom> importFacts(Relation r, File csvFile, DatabaseManager instance, boolean verbose)
 			throws IOException, DatabaseException {
 		Collection<Atom> facts = Sets.newHashSet();
-		FileInputStream inputStream = null;
-		Scanner sc = null;
-		try {
-			inputStream = new FileInputStream(csvFile);
-			sc = new Scanner(inputStream, "UTF-8");
-			// Open the csv file for reading
-			long recordCounter = 0;
-			if (verbose)
-				Logger.getLogger(IOManager.class.getName()).info("Importing " + r.getName());
-			while (sc.hasNextLine()) {
-				String line = sc.nextLine();
-				String[] tuple = line.split(",");
-				List<Term> constants = Lists.newArrayList();
-				for (int i = 0; i < tuple.length; ++i) {
-					constants.add(TypedConstant.deSerializeTypedConstant(tuple[i].replace("\"", "")));
-				}
-				facts.add(Atom.create(r, constants.toArray(new Term[constants.size()])));
-				recordCounter++;
-				if (instance != null && recordCounter % 1000 == 0) {
-					System.out.print(".");
-					instance.addFacts(facts);
-					facts.clear();
-				}
-			}
-			// note that Scanner suppresses exceptions
-			if (sc.ioException() != null) {
-				throw sc.ioException();
+		if (verbose)
+			Logger.getLogger(IOManager.class.getName()).info("Importing " + r.getName());
+		CsvImporter<Atom> importer = new CsvImporter<>(
+				(column, cell) -> TypedConstant.deSerializeTypedConstant(cell.replace("\"", "")),
+				values -> Atom.create(r, Arrays.copyOf(values, values.length, Term[].class)));
+		long recordCounter = importer.importFile(csvFile, batch -> {
+			if (instance != null) {
+				System.out.print(".");
+				instance.addFacts(batch);
+			} else {
+				facts.addAll(batch);
 			}
-			if (instance != null && !facts.isEmpty()) {
-				instance.addFacts(facts);
-				facts.clear();
-			}
-			if (verbose)
-				Logger.getLogger(IOManager.class.getName()).info("Imported " + recordCounter + " facts for relation " + r.getName());
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			throw e;
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw e;
-		} finally {
-			if (inputStream != null) {
-				inputStream.close();
-			}
-			if (sc != null) {
-				sc.close();
-			}
-		}
+		});
+		if (verbose)
+			Logger.getLogger(IOManager.class.getName()).info("Imported " + recordCounter + " facts for relation " + r.getName());
 		return facts;
 	}
 	protected static Schema chasebanchSchemaRead(File schema) throws FileNotFoundException {
@@ -7,6 +7,7 @@
  * 
  * - PlanPrinter uses an external tool to visualise plan graphs as a png image.<br>
  * - JaxB package contains the IOManager that can read and write schemas and queries to/from xml files.<br>
+ * - CsvImporter reads large csv files of facts or tuples in parallel.<br>
  * 
  * @author Gabor
  */
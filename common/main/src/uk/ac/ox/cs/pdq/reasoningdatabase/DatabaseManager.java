@@ -156,6 +156,15 @@ public interface DatabaseManager {
 	public String getDatabaseName();
 
 	public DatabaseManager clone(int instanceId) throws DatabaseException;
+
+	/**
+	 * Creates a new instance holding the facts of this instance.
+	 * 
+	 * @param instanceId
+	 *            the id of the new instance
+	 * @return the new instance
+	 */
+	public DatabaseManager cloneWithFacts(int instanceId) throws DatabaseException;
 	/**
 	 * Adds an extra relation to the existing schema, and creates the new table in the database.
 	 * 
@@ -170,6 +179,12 @@ public interface DatabaseManager {
 	 */
 	public List<String> executeQueryExplain(ConjunctiveQuery cq) throws DatabaseException;
 
+	/** Explains a batch of queries, the database manager can explain them in parallel.
+	 * @param queries
+	 * @return the explanation of each query, in the order of the queries. Null if the database manager can not explain queries.
+	 */
+	public List<List<String>> executeQueryExplain(List<ConjunctiveQuery> queries) throws DatabaseException;
+
 	/**
 	 * Maps each constant to a list of atoms that have the same constant.
 	 * We need this table when we are applying an EGD chase step, to easily find all facts that has an obsolete
@@ -31,6 +31,7 @@ public class DatabaseParameters extends Parameters {
 	static final String DEFAULT_CONFIG_FILE_PATH = "./" + DEFAULT_CONFIG_FILE_NAME;
 	static final int DEFAULT_NUMBER_OF_THREADS = 10;
 	static final String NUMBER_OF_THREADS_PROPERTY = "number.of.threads";
+	static final int DEFAULT_COPY_THRESHOLD = 1000;
 
 	public static final DatabaseParameters Postgres = getDefaultForPostgres();
 	public static final DatabaseParameters PostgresLinux = getDefaultForLinuxPostgres();
@@ -66,12 +67,40 @@ public class DatabaseParameters extends Parameters {
 	@Parameter(description="True in case the internal database manager should be used")
 	private boolean useInternalDatabaseManager = true;
 
+	@Parameter(description="True in case the internal database manager should store the facts dictionary encoded "
+			+ "(the constants replaced by numbers), using less memory in large chases.",
+			defaultValue = "false")
+	private boolean encodedInternalDatabase = false;
 
 	@Parameter(description="The database should have a constraint for making every fact unique. Default is false.")
 	private boolean factsAreUnique = false;
 
 
 	private boolean createNewDatabase = true;
+
+	@Parameter(description="How the facts are inserted into an external database.",
+			defaultValue = "PREPARED")
+	protected InsertMode insertMode = InsertMode.PREPARED;
+
+	@Parameter(description="In COPY insert mode, the smallest number of facts that are copied, "
+			+ "smaller sets of facts are inserted with prepared statements.",
+			defaultValue = "1000")
+	private int copyThreshold = DEFAULT_COPY_THRESHOLD;
+
+	/**
+	 * The ways the facts can be inserted into an external database.
+	 */
+	public static enum InsertMode {
+
+		@EnumParameterValue(description = "Every fact is rendered into the SQL text of an INSERT statement")
+		LITERAL,
+
+		@EnumParameterValue(description = "The facts are bound to prepared INSERT statements, executed in JDBC batches")
+		PREPARED,
+
+		@EnumParameterValue(description = "Large sets of facts are streamed with the Postgres COPY FROM STDIN command, the others are inserted as in PREPARED mode")
+		COPY
+	}
 	
 	/**
 	 * Constructor for DatabaseParameters using default configuration file path.
@@ -260,6 +289,13 @@ public class DatabaseParameters extends Parameters {
 		this.useInternalDatabaseManager = useInternalDatabaseManager;
 	}
 
+	public boolean getEncodedInternalDatabase() {
+		return encodedInternalDatabase;
+	}
+	public void setEncodedInternalDatabase(boolean encodedInternalDatabase) {
+		this.encodedInternalDatabase = encodedInternalDatabase;
+	}
+
 	public boolean isFactsAreUnique() {
 		return factsAreUnique;
 	}
@@ -276,5 +312,30 @@ public class DatabaseParameters extends Parameters {
 	public void setCreateNewDatabase(boolean createNewDatabase) {
 		this.createNewDatabase = createNewDatabase;
 	}
+
+	public InsertMode getInsertMode() {
+		return insertMode;
+	}
+	public void setInsertMode(String insertMode) {
+		try {
+			this.insertMode = InsertMode.valueOf(insertMode);
+		} catch (IllegalArgumentException e) {
+			log.warn("Unknown insert mode " + insertMode + ", using " + InsertMode.PREPARED, e);
+			this.insertMode = InsertMode.PREPARED;
+		}
+	}
+	public void setInsertMode(InsertMode insertMode) {
+		this.insertMode = insertMode;
+	}
+
+	public int getCopyThreshold() {
+		return copyThreshold;
+	}
+	public void setCopyThreshold(String copyThreshold) {
+		this.copyThreshold = Integer.parseInt(copyThreshold);
+	}
+	public void setCopyThreshold(int copyThreshold) {
+		this.copyThreshold = copyThreshold;
+	}
 	
 }
@@ -0,0 +1,470 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import uk.ac.ox.cs.pdq.db.Match;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQueryWithInequality;
+import uk.ac.ox.cs.pdq.fol.Constant;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.ConstantDictionary;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.EncodedMultiInstanceFactCache;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.EncodedRelation;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.EncodedRelation.Tuples;
+
+/**
+ * Evaluates conjunctive queries over the facts of an
+ * EncodedMultiInstanceFactCache. It is the InternalDatabaseManagerQueryEvaluator
+ * working on the numbers of the terms: the rows are int arrays indexed by the
+ * slots of the variables, the facts are read as encoded tuples, and only the
+ * terms of the final matches are decoded.
+ * <br>
+ * The constants of the queries are looked up in the dictionary once, a
+ * constant without a number is in no fact, so its atom has no matches.
+ *
+ * @author Gabor
+ */
+public class EncodedQueryEvaluator {
+
+	/**
+	 * When the number of distinct lookup values multiplied by this factor is less
+	 * than the size of the relation, index lookups are used instead of a hash join.
+	 */
+	private static final int INDEX_LOOKUP_FACTOR = 4;
+
+	/** Value of the unbound slots. */
+	private static final int UNBOUND = -1;
+
+	private final EncodedMultiInstanceFactCache cache;
+	private final ConstantDictionary dictionary;
+	private final int instanceId;
+	private final Atom deltaAtom;
+	private final int deltaInstanceId;
+
+	/** Table sizes per instance id. */
+	private final Map<Integer, Map<String, Integer>> statistics = new HashMap<>();
+
+	/** Slot of each variable in the result rows. */
+	private final Map<Variable, Integer> slots = new LinkedHashMap<>();
+
+	/**
+	 * @param cache
+	 *            the facts
+	 * @param instanceId
+	 *            the instance the queries are evaluated on.
+	 */
+	public EncodedQueryEvaluator(EncodedMultiInstanceFactCache cache, int instanceId) {
+		this(cache, instanceId, null, instanceId);
+	}
+
+	/**
+	 * @param cache
+	 *            the facts
+	 * @param instanceId
+	 *            the instance the queries are evaluated on.
+	 * @param deltaAtom
+	 *            this atom (when not null) is answered from the delta instance.
+	 * @param deltaInstanceId
+	 *            the delta instance.
+	 */
+	public EncodedQueryEvaluator(EncodedMultiInstanceFactCache cache, int instanceId, Atom deltaAtom, int deltaInstanceId) {
+		this.cache = cache;
+		this.dictionary = cache.getDictionary();
+		this.instanceId = instanceId;
+		this.deltaAtom = deltaAtom;
+		this.deltaInstanceId = deltaInstanceId;
+	}
+
+	/**
+	 * @param cq
+	 * @return the distinct matches of the free variables of the query.
+	 */
+	public List<Match> answerConjunctiveQuery(ConjunctiveQuery cq) {
+		assignSlots(cq);
+		List<int[]> rows = join(cq.getAtoms(), getInequalities(cq), initialRows(), new HashSet<Integer>());
+		List<Match> results = new ArrayList<>();
+		Set<Object> seen = new HashSet<>();
+		int[] freeSlots = getSlots(cq.getFreeVariables());
+		for (int[] row : rows) {
+			if (seen.add(createKey(row, 0, freeSlots)))
+				results.add(createMatch(cq, row, freeSlots));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the matches of the left query that cannot be extended to a match of
+	 * the right query.
+	 *
+	 * @see InternalDatabaseManagerQueryEvaluator#answerQueryDifferences(ConjunctiveQuery,
+	 *      ConjunctiveQuery)
+	 */
+	public List<Match> answerQueryDifferences(ConjunctiveQuery leftQuery, ConjunctiveQuery rightQuery) {
+		assignSlots(leftQuery);
+		assignSlots(rightQuery);
+		Set<Integer> bound = new HashSet<>();
+		List<int[]> leftRows = join(leftQuery.getAtoms(), getInequalities(leftQuery), initialRows(), bound);
+		if (leftRows.isEmpty())
+			return new ArrayList<>();
+
+		List<int[]> rightRows;
+		List<Atom> extraAtoms = new ArrayList<>(Arrays.asList(rightQuery.getAtoms()));
+		if (extraAtoms.containsAll(Arrays.asList(leftQuery.getAtoms()))) {
+			extraAtoms.removeAll(Arrays.asList(leftQuery.getAtoms()));
+			rightRows = join(extraAtoms.toArray(new Atom[extraAtoms.size()]), getInequalities(rightQuery), leftRows, new HashSet<>(bound));
+		} else {
+			rightRows = join(rightQuery.getAtoms(), getInequalities(rightQuery), initialRows(), new HashSet<Integer>());
+		}
+
+		int[] freeSlots = getSlots(leftQuery.getFreeVariables());
+		Set<Object> seen = new HashSet<>();
+		for (int[] row : rightRows)
+			seen.add(createKey(row, 0, freeSlots));
+		List<Match> results = new ArrayList<>();
+		for (int[] row : leftRows) {
+			if (seen.add(createKey(row, 0, freeSlots)))
+				results.add(createMatch(leftQuery, row, freeSlots));
+		}
+		return results;
+	}
+
+	/**
+	 * Joins the atoms to the input rows.
+	 *
+	 * @param rows
+	 *            the input rows, will not be modified.
+	 * @param bound
+	 *            the slots that are bound in the input rows. Will be extended with
+	 *            the slots of the atoms.
+	 */
+	private List<int[]> join(Atom[] atoms, List<Pair<Variable, Variable>> inequalities, List<int[]> rows, Set<Integer> bound) {
+		rows = filterInequalities(rows, inequalities, bound, Collections.<Integer>emptySet());
+		List<Atom> remaining = new ArrayList<>(Arrays.asList(atoms));
+		while (!remaining.isEmpty() && !rows.isEmpty()) {
+			Atom next = chooseNext(remaining, bound);
+			remaining.remove(next);
+			Set<Integer> newSlots = new HashSet<>();
+			rows = joinAtom(rows, next, bound, newSlots);
+			bound.addAll(newSlots);
+			rows = filterInequalities(rows, inequalities, bound, newSlots);
+		}
+		return rows;
+	}
+
+	/**
+	 * Chooses the next atom to join. Atoms connected to the already bound
+	 * variables (or having constants) are preferred to avoid cross products,
+	 * within them the smallest relation wins.
+	 */
+	private Atom chooseNext(List<Atom> atoms, Set<Integer> bound) {
+		Atom best = null;
+		boolean bestConnected = false;
+		int bestSize = 0;
+		for (Atom atom : atoms) {
+			boolean connected = false;
+			for (Term t : atom.getTerms()) {
+				if (!t.isVariable() || bound.contains(this.slots.get(t)))
+					connected = true;
+			}
+			int size = getSize(atom);
+			if (best == null || (connected && !bestConnected) || (connected == bestConnected && size < bestSize)) {
+				best = atom;
+				bestConnected = connected;
+				bestSize = size;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Joins a single atom to the rows. Constants and repeated variables of the
+	 * atom are filtered when reading the facts, the variables bound in the rows
+	 * form the join key.
+	 */
+	private List<int[]> joinAtom(List<int[]> rows, Atom atom, Set<Integer> bound, Set<Integer> newSlots) {
+		Term[] terms = atom.getTerms();
+		List<Integer> joinPositions = new ArrayList<>();
+		List<Integer> joinSlots = new ArrayList<>();
+		List<Integer> newPositions = new ArrayList<>();
+		List<Integer> newPositionSlots = new ArrayList<>();
+		// numbers of the constants of the atom, UNBOUND at the variables.
+		int[] constants = new int[terms.length];
+		int constantPosition = -1;
+		for (int i = 0; i < terms.length; i++) {
+			if (!terms[i].isVariable()) {
+				constants[i] = this.dictionary.getCode(terms[i]);
+				if (constants[i] == ConstantDictionary.UNKNOWN)
+					return new ArrayList<>();
+				if (constantPosition < 0)
+					constantPosition = i;
+				continue;
+			}
+			constants[i] = UNBOUND;
+			int slot = this.slots.get(terms[i]);
+			if (bound.contains(slot)) {
+				joinPositions.add(i);
+				joinSlots.add(slot);
+			} else if (newSlots.add(slot)) {
+				newPositions.add(i);
+				newPositionSlots.add(slot);
+			}
+		}
+		int[] joinPositionArray = toArray(joinPositions);
+		int[] joinSlotArray = toArray(joinSlots);
+		int[] newPositionArray = toArray(newPositions);
+		int[] newSlotArray = toArray(newPositionSlots);
+		EncodedRelation relation = this.cache.getInstance(getInstanceId(atom)).getRelation(atom.getPredicate().getName());
+
+		List<int[]> results = new ArrayList<>();
+		if (relation == null)
+			return results;
+		if (constantPosition < 0 && joinPositionArray.length > 0) {
+			// few distinct values to look up: use the position index of the relation.
+			Map<Integer, Tuples> lookups = new HashMap<>();
+			for (int[] row : rows) {
+				lookups.put(row[joinSlotArray[0]], null);
+				if (lookups.size() * INDEX_LOOKUP_FACTOR >= getSize(atom))
+					break;
+			}
+			if (lookups.size() * INDEX_LOOKUP_FACTOR < getSize(atom)) {
+				for (Map.Entry<Integer, Tuples> entry : lookups.entrySet())
+					entry.setValue(filterFacts(atom, constants, relation.getTuples(joinPositionArray[0], entry.getKey())));
+				for (int[] row : rows) {
+					Tuples facts = lookups.get(row[joinSlotArray[0]]);
+					for (int fact = 0; fact < facts.count; fact++) {
+						if (matches(facts, fact, joinPositionArray, row, joinSlotArray))
+							results.add(extend(row, facts, fact, newPositionArray, newSlotArray));
+					}
+				}
+				return results;
+			}
+		}
+
+		Tuples facts;
+		if (constantPosition >= 0)
+			facts = relation.getTuples(constantPosition, constants[constantPosition]);
+		else
+			facts = relation.getTuples();
+		facts = filterFacts(atom, constants, facts);
+		if (facts.count == 0)
+			return results;
+
+		if (facts.count <= rows.size()) {
+			// build the hash table on the facts, probe it with the rows
+			Map<Object, Integer> heads = new HashMap<>();
+			int[] next = new int[facts.count];
+			for (int fact = 0; fact < facts.count; fact++) {
+				Integer head = heads.put(createKey(facts.values, fact * facts.arity, joinPositionArray), fact);
+				next[fact] = head == null ? -1 : head;
+			}
+			for (int[] row : rows) {
+				Integer head = heads.get(createKey(row, 0, joinSlotArray));
+				for (int fact = head == null ? -1 : head; fact >= 0; fact = next[fact])
+					results.add(extend(row, facts, fact, newPositionArray, newSlotArray));
+			}
+		} else {
+			// build the hash table on the rows, probe it with the facts
+			Map<Object, List<int[]>> table = new HashMap<>();
+			for (int[] row : rows)
+				table.computeIfAbsent(createKey(row, 0, joinSlotArray), key -> new ArrayList<>()).add(row);
+			for (int fact = 0; fact < facts.count; fact++) {
+				List<int[]> bucket = table.get(createKey(facts.values, fact * facts.arity, joinPositionArray));
+				if (bucket != null) {
+					for (int[] row : bucket)
+						results.add(extend(row, facts, fact, newPositionArray, newSlotArray));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Removes the tuples that do not have the constants of the atom, or have
+	 * different values where the atom has the same variable.
+	 */
+	private static Tuples filterFacts(Atom atom, int[] constants, Tuples facts) {
+		Term[] terms = atom.getTerms();
+		List<int[]> equalities = new ArrayList<>();
+		List<Integer> constantPositions = new ArrayList<>();
+		for (int i = 0; i < terms.length; i++) {
+			if (!terms[i].isVariable()) {
+				constantPositions.add(i);
+				continue;
+			}
+			for (int j = 0; j < i; j++) {
+				if (terms[i].equals(terms[j])) {
+					equalities.add(new int[] { j, i });
+					break;
+				}
+			}
+		}
+		if (equalities.isEmpty() && constantPositions.isEmpty())
+			return facts;
+		int[] values = new int[facts.values.length];
+		int count = 0;
+		for (int fact = 0; fact < facts.count; fact++) {
+			boolean accepted = true;
+			for (Integer i : constantPositions) {
+				if (facts.get(fact, i) != constants[i])
+					accepted = false;
+			}
+			for (int[] e : equalities) {
+				if (facts.get(fact, e[0]) != facts.get(fact, e[1]))
+					accepted = false;
+			}
+			if (accepted) {
+				System.arraycopy(facts.values, fact * facts.arity, values, count * facts.arity, facts.arity);
+				count++;
+			}
+		}
+		return new Tuples(count, facts.arity, values);
+	}
+
+	/**
+	 * Keeps the rows that satisfy the inequalities that became checkable with the
+	 * new slots. When newSlots is empty every inequality with bound slots is
+	 * checked. Distinct terms have distinct numbers, so the numbers are compared.
+	 */
+	private List<int[]> filterInequalities(List<int[]> rows, List<Pair<Variable, Variable>> inequalities, Set<Integer> bound, Set<Integer> newSlots) {
+		List<int[]> toCheck = new ArrayList<>();
+		for (Pair<Variable, Variable> inequality : inequalities) {
+			Integer left = this.slots.get(inequality.getLeft());
+			Integer right = this.slots.get(inequality.getRight());
+			if (left == null || right == null || !bound.contains(left) || !bound.contains(right))
+				continue;
+			if (newSlots.isEmpty() || newSlots.contains(left) || newSlots.contains(right))
+				toCheck.add(new int[] { left, right });
+		}
+		if (toCheck.isEmpty())
+			return rows;
+		List<int[]> results = new ArrayList<>();
+		for (int[] row : rows) {
+			boolean accepted = true;
+			for (int[] inequality : toCheck) {
+				if (row[inequality[0]] == row[inequality[1]])
+					accepted = false;
+			}
+			if (accepted)
+				results.add(row);
+		}
+		return results;
+	}
+
+	private static boolean matches(Tuples facts, int fact, int[] positions, int[] row, int[] slots) {
+		for (int i = 0; i < positions.length; i++) {
+			if (facts.get(fact, positions[i]) != row[slots[i]])
+				return false;
+		}
+		return true;
+	}
+
+	private static int[] extend(int[] row, Tuples facts, int fact, int[] positions, int[] slots) {
+		int[] result = row.clone();
+		for (int i = 0; i < positions.length; i++)
+			result[slots[i]] = facts.get(fact, positions[i]);
+		return result;
+	}
+
+	/**
+	 * Creates a hash key from the values at the given indexes (relative to the
+	 * offset). A single value is boxed, two values are packed into a long,
+	 * otherwise the values are wrapped in a list.
+	 */
+	private static Object createKey(int[] values, int offset, int[] indexes) {
+		if (indexes.length == 1)
+			return values[offset + indexes[0]];
+		if (indexes.length == 2)
+			return ((long) values[offset + indexes[0]] << 32) | (values[offset + indexes[1]] & 0xFFFFFFFFL);
+		Integer[] key = new Integer[indexes.length];
+		for (int i = 0; i < indexes.length; i++)
+			key[i] = values[offset + indexes[i]];
+		return Arrays.asList(key);
+	}
+
+	/**
+	 * Decodes the free variables of the row.
+	 */
+	private Match createMatch(ConjunctiveQuery cq, int[] row, int[] freeSlots) {
+		Variable[] freeVariables = cq.getFreeVariables();
+		Map<Variable, Constant> mapping = new HashMap<>();
+		for (int i = 0; i < freeVariables.length; i++) {
+			int code = row[freeSlots[i]];
+			mapping.put(freeVariables[i], code == UNBOUND ? null : (Constant) this.dictionary.decode(code));
+		}
+		return Match.create(cq, mapping);
+	}
+
+	private void assignSlots(ConjunctiveQuery cq) {
+		for (Atom atom : cq.getAtoms()) {
+			for (Term t : atom.getTerms()) {
+				if (t.isVariable() && !this.slots.containsKey(t))
+					this.slots.put((Variable) t, this.slots.size());
+			}
+		}
+		for (Variable v : cq.getFreeVariables()) {
+			if (!this.slots.containsKey(v))
+				this.slots.put(v, this.slots.size());
+		}
+	}
+
+	private int[] getSlots(Variable[] variables) {
+		int[] result = new int[variables.length];
+		for (int i = 0; i < variables.length; i++)
+			result[i] = this.slots.get(variables[i]);
+		return result;
+	}
+
+	private List<int[]> initialRows() {
+		List<int[]> rows = new ArrayList<>();
+		int[] row = new int[this.slots.size()];
+		Arrays.fill(row, UNBOUND);
+		rows.add(row);
+		return rows;
+	}
+
+	private static List<Pair<Variable, Variable>> getInequalities(ConjunctiveQuery cq) {
+		if (cq instanceof ConjunctiveQueryWithInequality && ((ConjunctiveQueryWithInequality) cq).getInequalities() != null)
+			return ((ConjunctiveQueryWithInequality) cq).getInequalities();
+		return new ArrayList<>();
+	}
+
+	private int getInstanceId(Atom atom) {
+		return atom.equals(this.deltaAtom) ? this.deltaInstanceId : this.instanceId;
+	}
+
+	/**
+	 * @return the number of facts in the relation of the atom.
+	 */
+	private int getSize(Atom atom) {
+		int id = getInstanceId(atom);
+		Map<String, Integer> stats = this.statistics.get(id);
+		if (stats == null) {
+			stats = this.cache.getStatistics(id);
+			this.statistics.put(id, stats);
+		}
+		Integer size = stats.get(atom.getPredicate().getName());
+		return size == null ? 0 : size;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+		return result;
+	}
+}
@@ -23,6 +23,7 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.monitor.DatabaseMonitor;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.BasicSelect;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.BulkInsert;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Command;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CopyInsert;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateDatabase;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateIndex;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateTable;
@@ -30,6 +31,7 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Delete;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.DifferenceQuery;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.DropDatabase;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.ExplainSelect;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.PreparedInsert;
 
 /**
  * Simplest external database manager. Creates and manages connections,
@@ -159,11 +161,27 @@ public class ExternalDatabaseManager implements DatabaseManager {
 	 * connecting to the same database can continue work on the pre-initialised
 	 * database.
 	 * 
+	 * Depending on the insert mode of the parameters the facts are rendered into
+	 * the SQL text, bound to prepared statements, or (in case of large sets of
+	 * facts) streamed with the COPY command.
+	 * 
 	 * @param facts
 	 * @throws DatabaseException
 	 */
 	public void addFacts(Collection<Atom> facts) throws DatabaseException {
-		executor.execute(new BulkInsert(facts, schema));
+		switch (parameters.getInsertMode()) {
+		case LITERAL:
+			executor.execute(new BulkInsert(facts, schema));
+			break;
+		case COPY:
+			if (facts.size() >= parameters.getCopyThreshold()) {
+				executor.execute(new CopyInsert(facts, schema));
+				break;
+			}
+			// smaller sets of facts are inserted with prepared statements.
+		default:
+			executor.execute(new PreparedInsert(facts, schema));
+		}
 	}
 
 	/**
@@ -371,6 +389,11 @@ public class ExternalDatabaseManager implements DatabaseManager {
 		throw new DatabaseException("Database manager cannot be cloned.");
 	}
 
+	@Override
+	public DatabaseManager cloneWithFacts(int instanceId) throws DatabaseException {
+		throw new DatabaseException("Database manager cannot be cloned.");
+	}
+
 	/**
 	 * Adds an extra relation to the existing schema, updates the extended schema
 	 * accordingly, and creates the new table in the database.
@@ -398,6 +421,14 @@ public class ExternalDatabaseManager implements DatabaseManager {
 		return executor.executeGeneric(new ExplainSelect(this.schema, cq));
 	}
 
+	@Override
+	public List<List<String>> executeQueryExplain(List<ConjunctiveQuery> queries) throws DatabaseException {
+		List<Command> commands = new ArrayList<>();
+		for (ConjunctiveQuery cq : queries)
+			commands.add(new ExplainSelect(this.schema, cq));
+		return executor.executeGeneric(commands);
+	}
+
 	public List<String> execute(Command select) throws DatabaseException {
 		return executor.executeGeneric(select);
 	}
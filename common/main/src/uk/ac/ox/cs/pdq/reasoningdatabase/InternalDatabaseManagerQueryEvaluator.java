@@ -0,0 +1,468 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import uk.ac.ox.cs.pdq.db.Match;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQueryWithInequality;
+import uk.ac.ox.cs.pdq.fol.Constant;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.MultiInstanceFactCache;
+
+/**
+ * Evaluates conjunctive queries over the facts of a MultiInstanceFactCache.
+ * <br>
+ * Each variable of the query gets a slot, and intermediate results are rows:
+ * arrays of terms indexed by these slots. The atoms are joined one by one, the
+ * next atom is always the smallest one (according to the statistics of the
+ * cache) that shares a variable with the already joined atoms. Each join builds
+ * a single hash table keyed by all the shared variables, or when only a few
+ * distinct values have to be looked up it uses the position indexes of the
+ * cache instead. Inequalities are checked as soon as both of their variables
+ * are bound.
+ * <br>
+ * One atom of the queries can be answered from a different instance (the delta
+ * instance), this is used by the semi-naive chase.
+ *
+ * @author Gabor
+ */
+public class InternalDatabaseManagerQueryEvaluator {
+
+	/**
+	 * When the number of distinct lookup values multiplied by this factor is less
+	 * than the size of the relation, index lookups are used instead of a hash join.
+	 */
+	private static final int INDEX_LOOKUP_FACTOR = 4;
+
+	private final MultiInstanceFactCache cache;
+	private final int instanceId;
+	private final Atom deltaAtom;
+	private final int deltaInstanceId;
+
+	/** Table sizes per instance id. */
+	private final Map<Integer, Map<String, Integer>> statistics = new HashMap<>();
+
+	/** Slot of each variable in the result rows. */
+	private final Map<Variable, Integer> slots = new LinkedHashMap<>();
+
+	/**
+	 * @param cache
+	 *            the facts
+	 * @param instanceId
+	 *            the instance the queries are evaluated on.
+	 */
+	public InternalDatabaseManagerQueryEvaluator(MultiInstanceFactCache cache, int instanceId) {
+		this(cache, instanceId, null, instanceId);
+	}
+
+	/**
+	 * @param cache
+	 *            the facts
+	 * @param instanceId
+	 *            the instance the queries are evaluated on.
+	 * @param deltaAtom
+	 *            this atom (when not null) is answered from the delta instance.
+	 * @param deltaInstanceId
+	 *            the delta instance.
+	 */
+	public InternalDatabaseManagerQueryEvaluator(MultiInstanceFactCache cache, int instanceId, Atom deltaAtom, int deltaInstanceId) {
+		this.cache = cache;
+		this.instanceId = instanceId;
+		this.deltaAtom = deltaAtom;
+		this.deltaInstanceId = deltaInstanceId;
+	}
+
+	/**
+	 * @param cq
+	 * @return the distinct matches of the free variables of the query.
+	 */
+	public List<Match> answerConjunctiveQuery(ConjunctiveQuery cq) {
+		assignSlots(cq);
+		List<Term[]> rows = join(cq.getAtoms(), getInequalities(cq), initialRows(), new HashSet<Integer>());
+		List<Match> results = new ArrayList<>();
+		Set<Object> seen = new HashSet<>();
+		int[] freeSlots = getSlots(cq.getFreeVariables());
+		for (Term[] row : rows) {
+			if (seen.add(createKey(row, freeSlots)))
+				results.add(createMatch(cq, row, freeSlots));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the matches of the left query that cannot be extended to a match of
+	 * the right query. When the atoms of the right query contain the atoms of the
+	 * left query (as in case of the trigger detection of the chase) the right
+	 * query is evaluated by extending the results of the left query.
+	 *
+	 * @param leftQuery
+	 * @param rightQuery
+	 * @return matches of the free variables of the left query.
+	 */
+	public List<Match> answerQueryDifferences(ConjunctiveQuery leftQuery, ConjunctiveQuery rightQuery) {
+		assignSlots(leftQuery);
+		assignSlots(rightQuery);
+		Set<Integer> bound = new HashSet<>();
+		List<Term[]> leftRows = join(leftQuery.getAtoms(), getInequalities(leftQuery), initialRows(), bound);
+		if (leftRows.isEmpty())
+			return new ArrayList<>();
+
+		List<Term[]> rightRows;
+		List<Atom> extraAtoms = new ArrayList<>(Arrays.asList(rightQuery.getAtoms()));
+		if (extraAtoms.containsAll(Arrays.asList(leftQuery.getAtoms()))) {
+			extraAtoms.removeAll(Arrays.asList(leftQuery.getAtoms()));
+			rightRows = join(extraAtoms.toArray(new Atom[extraAtoms.size()]), getInequalities(rightQuery), leftRows, new HashSet<>(bound));
+		} else {
+			rightRows = join(rightQuery.getAtoms(), getInequalities(rightQuery), initialRows(), new HashSet<Integer>());
+		}
+
+		int[] freeSlots = getSlots(leftQuery.getFreeVariables());
+		Set<Object> seen = new HashSet<>();
+		for (Term[] row : rightRows)
+			seen.add(createKey(row, freeSlots));
+		List<Match> results = new ArrayList<>();
+		for (Term[] row : leftRows) {
+			if (seen.add(createKey(row, freeSlots)))
+				results.add(createMatch(leftQuery, row, freeSlots));
+		}
+		return results;
+	}
+
+	/**
+	 * Joins the atoms to the input rows.
+	 *
+	 * @param atoms
+	 * @param inequalities
+	 * @param rows
+	 *            the input rows, will not be modified.
+	 * @param bound
+	 *            the slots that are bound in the input rows. Will be extended with
+	 *            the slots of the atoms.
+	 * @return
+	 */
+	private List<Term[]> join(Atom[] atoms, List<Pair<Variable, Variable>> inequalities, List<Term[]> rows, Set<Integer> bound) {
+		rows = filterInequalities(rows, inequalities, bound, Collections.<Integer>emptySet());
+		List<Atom> remaining = new ArrayList<>(Arrays.asList(atoms));
+		while (!remaining.isEmpty() && !rows.isEmpty()) {
+			Atom next = chooseNext(remaining, bound);
+			remaining.remove(next);
+			Set<Integer> newSlots = new HashSet<>();
+			rows = joinAtom(rows, next, bound, newSlots);
+			bound.addAll(newSlots);
+			rows = filterInequalities(rows, inequalities, bound, newSlots);
+		}
+		return rows;
+	}
+
+	/**
+	 * Chooses the next atom to join. Atoms connected to the already bound
+	 * variables (or having constants) are preferred to avoid cross products,
+	 * within them the smallest relation wins.
+	 */
+	private Atom chooseNext(List<Atom> atoms, Set<Integer> bound) {
+		Atom best = null;
+		boolean bestConnected = false;
+		int bestSize = 0;
+		for (Atom atom : atoms) {
+			boolean connected = false;
+			for (Term t : atom.getTerms()) {
+				if (!t.isVariable() || bound.contains(this.slots.get(t)))
+					connected = true;
+			}
+			int size = getSize(atom);
+			if (best == null || (connected && !bestConnected) || (connected == bestConnected && size < bestSize)) {
+				best = atom;
+				bestConnected = connected;
+				bestSize = size;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Joins a single atom to the rows. Constants and repeated variables of the
+	 * atom are filtered when reading the facts, the variables bound in the rows
+	 * form the join key.
+	 */
+	private List<Term[]> joinAtom(List<Term[]> rows, Atom atom, Set<Integer> bound, Set<Integer> newSlots) {
+		Term[] terms = atom.getTerms();
+		// positions of the atom joined to bound slots
+		List<Integer> joinPositions = new ArrayList<>();
+		List<Integer> joinSlots = new ArrayList<>();
+		// positions of the atom that bind new slots
+		List<Integer> newPositions = new ArrayList<>();
+		List<Integer> newPositionSlots = new ArrayList<>();
+		int constantPosition = -1;
+		for (int i = 0; i < terms.length; i++) {
+			if (!terms[i].isVariable()) {
+				if (constantPosition < 0)
+					constantPosition = i;
+				continue;
+			}
+			int slot = this.slots.get(terms[i]);
+			if (bound.contains(slot)) {
+				joinPositions.add(i);
+				joinSlots.add(slot);
+			} else if (newSlots.add(slot)) {
+				newPositions.add(i);
+				newPositionSlots.add(slot);
+			}
+		}
+		int[] joinPositionArray = toArray(joinPositions);
+		int[] joinSlotArray = toArray(joinSlots);
+		int[] newPositionArray = toArray(newPositions);
+		int[] newSlotArray = toArray(newPositionSlots);
+		String relation = atom.getPredicate().getName();
+		int atomInstanceId = getInstanceId(atom);
+
+		List<Term[]> results = new ArrayList<>();
+		if (constantPosition < 0 && joinPositionArray.length > 0) {
+			// few distinct values to look up: use the position index of the cache.
+			Map<Term, List<Atom>> lookups = new HashMap<>();
+			for (Term[] row : rows) {
+				lookups.put(row[joinSlotArray[0]], null);
+				if (lookups.size() * INDEX_LOOKUP_FACTOR >= getSize(atom))
+					break;
+			}
+			if (lookups.size() * INDEX_LOOKUP_FACTOR < getSize(atom)) {
+				for (Map.Entry<Term, List<Atom>> entry : lookups.entrySet()) {
+					entry.setValue(filterFacts(atom, this.cache.getFactsOfRelation(relation, joinPositionArray[0], entry.getKey(), atomInstanceId)));
+				}
+				for (Term[] row : rows) {
+					for (Atom fact : lookups.get(row[joinSlotArray[0]])) {
+						if (matches(fact, joinPositionArray, row, joinSlotArray))
+							results.add(extend(row, fact, newPositionArray, newSlotArray));
+					}
+				}
+				return results;
+			}
+		}
+
+		List<Atom> facts;
+		if (constantPosition >= 0)
+			facts = this.cache.getFactsOfRelation(relation, constantPosition, terms[constantPosition], atomInstanceId);
+		else
+			facts = this.cache.getFactsOfRelation(relation, atomInstanceId);
+		facts = filterFacts(atom, facts);
+		if (facts.isEmpty())
+			return results;
+
+		if (facts.size() <= rows.size()) {
+			// build the hash table on the facts, probe it with the rows
+			Map<Object, List<Atom>> table = new HashMap<>();
+			for (Atom fact : facts) {
+				Object key = createKey(fact.getTerms(), joinPositionArray);
+				List<Atom> bucket = table.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<>();
+					table.put(key, bucket);
+				}
+				bucket.add(fact);
+			}
+			for (Term[] row : rows) {
+				List<Atom> bucket = table.get(createKey(row, joinSlotArray));
+				if (bucket != null) {
+					for (Atom fact : bucket)
+						results.add(extend(row, fact, newPositionArray, newSlotArray));
+				}
+			}
+		} else {
+			// build the hash table on the rows, probe it with the facts
+			Map<Object, List<Term[]>> table = new HashMap<>();
+			for (Term[] row : rows) {
+				Object key = createKey(row, joinSlotArray);
+				List<Term[]> bucket = table.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<>();
+					table.put(key, bucket);
+				}
+				bucket.add(row);
+			}
+			for (Atom fact : facts) {
+				List<Term[]> bucket = table.get(createKey(fact.getTerms(), joinPositionArray));
+				if (bucket != null) {
+					for (Term[] row : bucket)
+						results.add(extend(row, fact, newPositionArray, newSlotArray));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Removes the facts that do not have the constants of the atom, or have
+	 * different terms where the atom has the same variable.
+	 */
+	private static List<Atom> filterFacts(Atom atom, List<Atom> facts) {
+		Term[] terms = atom.getTerms();
+		List<Pair<Integer, Integer>> equalities = new ArrayList<>();
+		List<Integer> constants = new ArrayList<>();
+		for (int i = 0; i < terms.length; i++) {
+			if (!terms[i].isVariable()) {
+				constants.add(i);
+				continue;
+			}
+			for (int j = 0; j < i; j++) {
+				if (terms[i].equals(terms[j])) {
+					equalities.add(Pair.of(j, i));
+					break;
+				}
+			}
+		}
+		if (equalities.isEmpty() && constants.isEmpty())
+			return facts;
+		List<Atom> results = new ArrayList<>();
+		for (Atom fact : facts) {
+			boolean accepted = true;
+			for (Integer i : constants) {
+				if (!fact.getTerm(i).equals(terms[i]))
+					accepted = false;
+			}
+			for (Pair<Integer, Integer> e : equalities) {
+				if (!fact.getTerm(e.getLeft()).equals(fact.getTerm(e.getRight())))
+					accepted = false;
+			}
+			if (accepted)
+				results.add(fact);
+		}
+		return results;
+	}
+
+	/**
+	 * Keeps the rows that satisfy the inequalities that became checkable with the
+	 * new slots. When newSlots is empty every inequality with bound slots is
+	 * checked.
+	 */
+	private List<Term[]> filterInequalities(List<Term[]> rows, List<Pair<Variable, Variable>> inequalities, Set<Integer> bound, Set<Integer> newSlots) {
+		List<int[]> toCheck = new ArrayList<>();
+		for (Pair<Variable, Variable> inequality : inequalities) {
+			Integer left = this.slots.get(inequality.getLeft());
+			Integer right = this.slots.get(inequality.getRight());
+			if (left == null || right == null || !bound.contains(left) || !bound.contains(right))
+				continue;
+			if (newSlots.isEmpty() || newSlots.contains(left) || newSlots.contains(right))
+				toCheck.add(new int[] { left, right });
+		}
+		if (toCheck.isEmpty())
+			return rows;
+		List<Term[]> results = new ArrayList<>();
+		for (Term[] row : rows) {
+			boolean accepted = true;
+			for (int[] inequality : toCheck) {
+				if (row[inequality[0]].equals(row[inequality[1]]))
+					accepted = false;
+			}
+			if (accepted)
+				results.add(row);
+		}
+		return results;
+	}
+
+	private static boolean matches(Atom fact, int[] positions, Term[] row, int[] slots) {
+		for (int i = 0; i < positions.length; i++) {
+			if (!fact.getTerm(positions[i]).equals(row[slots[i]]))
+				return false;
+		}
+		return true;
+	}
+
+	private static Term[] extend(Term[] row, Atom fact, int[] positions, int[] slots) {
+		Term[] result = row.clone();
+		for (int i = 0; i < positions.length; i++)
+			result[slots[i]] = fact.getTerm(positions[i]);
+		return result;
+	}
+
+	/**
+	 * Creates a hash key from the terms at the given indexes. A single term is its
+	 * own key, otherwise the terms are wrapped in a list.
+	 */
+	private static Object createKey(Term[] terms, int[] indexes) {
+		if (indexes.length == 1)
+			return terms[indexes[0]];
+		Term[] key = new Term[indexes.length];
+		for (int i = 0; i < indexes.length; i++)
+			key[i] = terms[indexes[i]];
+		return Arrays.asList(key);
+	}
+
+	private Match createMatch(ConjunctiveQuery cq, Term[] row, int[] freeSlots) {
+		Variable[] freeVariables = cq.getFreeVariables();
+		Map<Variable, Constant> mapping = new HashMap<>();
+		for (int i = 0; i < freeVariables.length; i++)
+			mapping.put(freeVariables[i], (Constant) row[freeSlots[i]]);
+		return Match.create(cq, mapping);
+	}
+
+	private void assignSlots(ConjunctiveQuery cq) {
+		for (Atom atom : cq.getAtoms()) {
+			for (Term t : atom.getTerms()) {
+				if (t.isVariable() && !this.slots.containsKey(t))
+					this.slots.put((Variable) t, this.slots.size());
+			}
+		}
+		for (Variable v : cq.getFreeVariables()) {
+			if (!this.slots.containsKey(v))
+				this.slots.put(v, this.slots.size());
+		}
+	}
+
+	private int[] getSlots(Variable[] variables) {
+		int[] result = new int[variables.length];
+		for (int i = 0; i < variables.length; i++)
+			result[i] = this.slots.get(variables[i]);
+		return result;
+	}
+
+	private List<Term[]> initialRows() {
+		List<Term[]> rows = new ArrayList<>();
+		rows.add(new Term[this.slots.size()]);
+		return rows;
+	}
+
+	private static List<Pair<Variable, Variable>> getInequalities(ConjunctiveQuery cq) {
+		if (cq instanceof ConjunctiveQueryWithInequality && ((ConjunctiveQueryWithInequality) cq).getInequalities() != null)
+			return ((ConjunctiveQueryWithInequality) cq).getInequalities();
+		return new ArrayList<>();
+	}
+
+	private int getInstanceId(Atom atom) {
+		return atom.equals(this.deltaAtom) ? this.deltaInstanceId : this.instanceId;
+	}
+
+	/**
+	 * @return the number of facts in the relation of the atom.
+	 */
+	private int getSize(Atom atom) {
+		int id = getInstanceId(atom);
+		Map<String, Integer> stats = this.statistics.get(id);
+		if (stats == null) {
+			stats = this.cache.getStatistics(id);
+			this.statistics.put(id, stats);
+		}
+		Integer size = stats.get(atom.getPredicate().getName());
+		return size == null ? 0 : size;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+		return result;
+	}
+}
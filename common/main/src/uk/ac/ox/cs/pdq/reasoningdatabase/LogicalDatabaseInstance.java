@@ -8,10 +8,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
 import uk.ac.ox.cs.pdq.db.AccessMethodDescriptor;
@@ -25,6 +28,7 @@ import uk.ac.ox.cs.pdq.fol.Conjunction;
 import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
 import uk.ac.ox.cs.pdq.fol.ConjunctiveQueryWithInequality;
 import uk.ac.ox.cs.pdq.fol.Constant;
+import uk.ac.ox.cs.pdq.fol.Dependency;
 import uk.ac.ox.cs.pdq.fol.Formula;
 import uk.ac.ox.cs.pdq.fol.Predicate;
 import uk.ac.ox.cs.pdq.fol.Term;
@@ -32,8 +36,10 @@ import uk.ac.ox.cs.pdq.fol.TypedConstant;
 import uk.ac.ox.cs.pdq.fol.UntypedConstant;
 import uk.ac.ox.cs.pdq.fol.Variable;
 import uk.ac.ox.cs.pdq.reasoningdatabase.cache.MultiInstanceFactCache;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateIndex;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateTable;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.InsertSelect;
+import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
 
 /**
  * Each instance of this LogicalDatabase class will create a logical database
@@ -47,6 +53,11 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.InsertSelect;
  * Uses the built in fact cache to make sure it won't insert duplicated facts,
  * such duplicates will be ignored.
  * 
+ * For semi-naive chasing the factIds of the new facts of a chase round are
+ * written to a delta table (DBFactID) with the number of the round, so that
+ * the trigger queries join the delta facts of the round against the facts of
+ * the instance, see addDeltaFacts.
+ * 
  * @author Gabor
  *
  */
@@ -63,6 +74,13 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 	protected static final Relation factIdInstanceIdMappingTable = Relation.create(MAPPING_TABLE_NAME,
 			new Attribute[] { FACT_ID_ATTRIBUTE, Attribute.create(Integer.class, INSTANCE_ID_ATTRIBUTE_NAME) },
 			new AccessMethodDescriptor[] { AccessMethodDescriptor.create(new Integer[] {}) });
+	protected static final String DELTA_ROUND_ATTRIBUTE_NAME = "DeltaRound";
+	/**
+	 * Holds the factIds of the delta facts of each round.
+	 */
+	protected static final Relation deltaTable = Relation.create(FACT_ID_TABLE_NAME,
+			new Attribute[] { FACT_ID_ATTRIBUTE, Attribute.create(Integer.class, DELTA_ROUND_ATTRIBUTE_NAME) },
+			new AccessMethodDescriptor[] { AccessMethodDescriptor.create(new Integer[] {}) });
 
 	protected MultiInstanceFactCache multiCache;
 	private ExternalDatabaseManager edm;
@@ -131,6 +149,20 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 		return vmidm;
 	}
 
+	/**
+	 * Creates a new logical database holding the facts of this one. The facts
+	 * are mapped to the new instance in the external database as well.
+	 * 
+	 * @param newDatabaseInstanceID
+	 * @return
+	 * @throws DatabaseException
+	 */
+	public LogicalDatabaseInstance cloneWithFacts(int newDatabaseInstanceID) throws DatabaseException {
+		LogicalDatabaseInstance vmidm = this.clone(newDatabaseInstanceID);
+		vmidm.addFacts(this.getCachedFacts());
+		return vmidm;
+	}
+
 	/**
 	 * Creates a canonical database for the schema. This function should be called
 	 * only once, when the first logical database instance is created. Further
@@ -144,6 +176,55 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 	public void initialiseDatabaseForSchema(Schema schema) throws DatabaseException {
 		setSchema(schema);
 		edm.initialiseDatabaseForSchema(extendedSchema);
+		edm.executeUpdateCommand(new CreateIndex(getIndices(extendedSchema, schema.getAllDependencies())));
+	}
+
+	/**
+	 * The indices of the tables of the extended schema: the factIds of the
+	 * facts, the mapping and the delta tables, and the join columns of the
+	 * dependencies. An attribute of an atom of a dependency is a join column if
+	 * it holds a constant or a variable that appears in another atom of the
+	 * dependency, each atom having a composite index on its join columns.
+	 * 
+	 * @param extendedSchema
+	 * @param dependencies
+	 * @return the lists of attributes to index, by relation.
+	 */
+	protected static Multimap<Relation, List<String>> getIndices(Schema extendedSchema, Dependency[] dependencies) {
+		Multimap<Relation, List<String>> indices = LinkedHashMultimap.create();
+		for (Relation r : extendedSchema.getRelations()) {
+			if (r.equals(factIdInstanceIdMappingTable))
+				indices.put(r, Arrays.asList(FACT_ID_ATTRIBUTE_NAME, INSTANCE_ID_ATTRIBUTE_NAME));
+			else if (r.equals(deltaTable))
+				indices.put(r, Arrays.asList(DELTA_ROUND_ATTRIBUTE_NAME, FACT_ID_ATTRIBUTE_NAME));
+			else
+				indices.put(r, Arrays.asList(FACT_ID_ATTRIBUTE_NAME));
+		}
+		for (Dependency dependency : dependencies) {
+			List<Atom> atoms = new ArrayList<>();
+			atoms.addAll(Arrays.asList(dependency.getBodyAtoms()));
+			atoms.addAll(Arrays.asList(dependency.getHeadAtoms()));
+			for (int atomIndex = 0; atomIndex < atoms.size(); atomIndex++) {
+				Atom atom = atoms.get(atomIndex);
+				Relation r = extendedSchema.getRelation(atom.getPredicate().getName());
+				if (r == null || atom.getPredicate().isEquality())
+					continue;
+				// terms of the other atoms
+				Set<Term> joinTerms = new HashSet<>();
+				for (int otherIndex = 0; otherIndex < atoms.size(); otherIndex++)
+					if (otherIndex != atomIndex)
+						joinTerms.addAll(Arrays.asList(atoms.get(otherIndex).getTerms()));
+				List<String> columns = new ArrayList<>();
+				for (int index = 0; index < atom.getNumberOfTerms(); index++) {
+					Term term = atom.getTerm(index);
+					if (!term.isVariable() || joinTerms.contains(term))
+						columns.add(r.getAttribute(index).getName());
+				}
+				if (!columns.isEmpty())
+					indices.put(r, columns);
+			}
+		}
+		return indices;
 	}
 
 	/**
@@ -207,7 +288,7 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 	public Collection<Atom> getFactsFromPhysicalDatabase() throws DatabaseException {
 		Collection<Atom> results = new ArrayList<>();
 		for (Relation r : this.extendedSchema.getRelations()) {
-			if (r.equals(factIdInstanceIdMappingTable))
+			if (r.equals(factIdInstanceIdMappingTable) || r.equals(deltaTable))
 				continue;
 			Collection<ConjunctiveQuery> queries = new ArrayList<>();
 			ConjunctiveQuery q = createQuery(r, databaseInstanceID);
@@ -273,6 +354,72 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 		return result;
 	}
 
+	/**
+	 * Stores the delta facts of a chase round, usually the facts created since
+	 * the last evaluation of a dependency. The facts have to be facts of this
+	 * instance. Only their factIds are written, with a new round number, to the
+	 * delta table.
+	 * <br>
+	 * Each call stores a new delta with its own id, the deltas stored before
+	 * are kept. A delta stays until removeDeltaFacts is called with its id.
+	 * 
+	 * @param delta
+	 * @return the id of the delta, to be used in answerQueryDifferences and
+	 *         removeDeltaFacts.
+	 * @throws DatabaseException
+	 */
+	public int addDeltaFacts(Collection<Atom> delta) throws DatabaseException {
+		int round = GlobalCounterProvider.getNext("DeltaRound");
+		Set<Atom> rows = new LinkedHashSet<>();
+		for (Atom fact : delta)
+			rows.add(Atom.create(deltaTable, TypedConstant.create(fact.hashCode()), TypedConstant.create(round)));
+		edm.addFacts(rows);
+		return round;
+	}
+
+	/**
+	 * Removes the delta facts stored by addDeltaFacts.
+	 * 
+	 * @param deltaID
+	 *            the id returned by addDeltaFacts.
+	 * @throws DatabaseException
+	 */
+	public void removeDeltaFacts(int deltaID) throws DatabaseException {
+		edm.deleteFacts(Arrays.asList(
+				Atom.create(deltaTable, Variable.create("V" + FACT_ID_ATTRIBUTE_NAME), TypedConstant.create(deltaID))));
+	}
+
+	/**
+	 * Semi-naive version of answerQueryDifferences. The deltaAtom of the queries
+	 * is only matched against the delta facts (usually the facts created in the
+	 * last chase round) while every other atom is matched against the facts of
+	 * this instance. In the SQL queries the delta atom is joined with the delta
+	 * facts of the round instead of the instance mapping table.
+	 * 
+	 * @param leftQuery
+	 * @param rightQuery
+	 * @param deltaAtom
+	 *            a body atom of the left query.
+	 * @param deltaID
+	 *            the id returned by addDeltaFacts.
+	 * @return
+	 * @throws DatabaseException
+	 */
+	public List<Match> answerQueryDifferences(ConjunctiveQuery leftQuery, ConjunctiveQuery rightQuery, Atom deltaAtom,
+			int deltaID) throws DatabaseException {
+		ConjunctiveQuery extendedLQ = extendQuery(leftQuery, this.databaseInstanceID, deltaAtom, deltaID);
+		ConjunctiveQuery extendedRQ = extendQuery(rightQuery, this.databaseInstanceID, deltaAtom, deltaID);
+		Map<ConjunctiveQuery, ConjunctiveQuery> oldAndNewQueries = new HashMap<>();
+		oldAndNewQueries.put(extendedLQ, leftQuery);
+		oldAndNewQueries.put(extendedRQ, rightQuery);
+		List<Match> result = new ArrayList<Match>();
+		List<Match> matches = edm.answerQueryDifferences(extendedLQ, extendedRQ);
+		for (Match m : matches) {
+			result.add(Match.create(oldAndNewQueries.get(m.getFormula()), removeFactID(m.getMapping())));
+		}
+		return result;
+	}
+
 	private Map<Variable, Constant> removeFactID(Map<Variable, Constant> mapping) {
 		Map<Variable, Constant> results = new HashMap<>();
 		for (Variable v : mapping.keySet()) {
@@ -285,9 +432,18 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 
 	private static int factIdNameCounter = 0;
 
-	private static synchronized ConjunctiveQuery extendQuery(ConjunctiveQuery formula, int databaseInstanceID) {
+	private static ConjunctiveQuery extendQuery(ConjunctiveQuery formula, int databaseInstanceID) {
+		return extendQuery(formula, databaseInstanceID, null, 0);
+	}
+
+	/**
+	 * Extends the query with factIDs and instance id mappings. The deltaAtom (if
+	 * not null) will be joined with the delta facts of the deltaID round instead,
+	 * all other atoms are mapped to the databaseInstanceID.
+	 */
+	private static synchronized ConjunctiveQuery extendQuery(ConjunctiveQuery formula, int databaseInstanceID, Atom deltaAtom, int deltaID) {
 		factIdNameCounter = 0;
-		Conjunction newConjunction = addFactIdToConjunction(formula.getBody(), databaseInstanceID);
+		Conjunction newConjunction = addFactIdToConjunction(formula.getBody(), databaseInstanceID, deltaAtom, deltaID);
 		if (formula instanceof ConjunctiveQueryWithInequality) {
 			return ConjunctiveQueryWithInequality.create(formula.getFreeVariables(), newConjunction.getAtoms(),
 					((ConjunctiveQueryWithInequality) formula).getInequalities());
@@ -295,31 +451,33 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 		return ConjunctiveQuery.create(formula.getFreeVariables(), newConjunction.getAtoms());
 	}
 
-	private static Conjunction addFactIdToConjunction(Formula body, int databaseInstanceID) {
+	private static Conjunction addFactIdToConjunction(Formula body, int databaseInstanceID, Atom deltaAtom, int deltaID) {
 		if (body instanceof Atom) {
 			ArrayList<Term> terms = new ArrayList<>();
 			terms.addAll(Arrays.asList(body.getTerms()));
 			Variable factId = Variable.create(FACT_ID_ATTRIBUTE_NAME + "_" + factIdNameCounter++);
 			terms.add(factId);
 			Predicate originalPredicate = ((Atom) body).getPredicate();
+			Atom mapping = body.equals(deltaAtom)
+					? Atom.create(LogicalDatabaseInstance.deltaTable, new Term[] { factId, TypedConstant.create(deltaID) })
+					: Atom.create(LogicalDatabaseInstance.factIdInstanceIdMappingTable, new Term[] { factId, TypedConstant.create(databaseInstanceID) });
 			return (Conjunction) Conjunction.create(
 					Atom.create(Predicate.create(originalPredicate.getName(), originalPredicate.getArity() + 1),
 							terms.toArray(new Term[terms.size()])),
-					Atom.create(LogicalDatabaseInstance.factIdInstanceIdMappingTable,
-							new Term[] { factId, TypedConstant.create(databaseInstanceID) }));
+					mapping);
 
 		} else {
 			Conjunction con = (Conjunction) body;
 			List<Formula> newChildren = new ArrayList<>();
 			for (Formula child : con.getChildren()) {
-				newChildren.add(addFactIdToConjunction(child, databaseInstanceID));
+				newChildren.add(addFactIdToConjunction(child, databaseInstanceID, deltaAtom, deltaID));
 			}
 			return (Conjunction) Conjunction.create(newChildren.toArray(new Formula[newChildren.size()]));
 		}
 	}
 
 	private static Schema extendSchemaWithFactIDs(Schema schema) {
-		Relation newRelations[] = new Relation[schema.getRelations().length + 1];
+		Relation newRelations[] = new Relation[schema.getRelations().length + 2];
 		int index = 0;
 		for (Relation r : schema.getRelations()) {
 			List<Attribute> attributes = new ArrayList<>();
@@ -328,7 +486,8 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 			newRelations[index] = Relation.create(r.getName(), attributes.toArray(new Attribute[attributes.size()]));
 			index++;
 		}
-		newRelations[newRelations.length - 1] = factIdInstanceIdMappingTable;
+		newRelations[newRelations.length - 2] = factIdInstanceIdMappingTable;
+		newRelations[newRelations.length - 1] = deltaTable;
 		return new Schema(newRelations, schema.getAllDependencies());
 	}
 
@@ -503,6 +662,16 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 		return null;
 	}
 
+	@Override
+	public List<List<String>> executeQueryExplain(List<ConjunctiveQuery> queries) throws DatabaseException {
+		if (edm == null)
+			return null;
+		List<ConjunctiveQuery> extended = new ArrayList<>();
+		for (ConjunctiveQuery cq : queries)
+			extended.add(extendQuery(cq, this.databaseInstanceID));
+		return edm.executeQueryExplain(extended);
+	}
+
 	@Override
 	public void addToConstantsToAtoms(Constant term, Atom atom) throws DatabaseException {
 		if (constantsInitialized) {
@@ -558,7 +727,7 @@ public class LogicalDatabaseInstance implements DatabaseManager {
 			// these tables we do not search
 			if (CONSTANTS_TO_ATOMS_TABLE_NAME.equals(r.getName()))
 				continue;
-			if (MAPPING_TABLE_NAME.equals(r.getName()))
+			if (MAPPING_TABLE_NAME.equals(r.getName()) || FACT_ID_TABLE_NAME.equals(r.getName()))
 				continue;
 			// if the table doesn't have a factId we do not need to search it.
 			if (r.getAttribute(FACT_ID_ATTRIBUTE_NAME) == null)
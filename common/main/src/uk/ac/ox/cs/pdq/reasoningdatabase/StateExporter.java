@@ -57,6 +57,52 @@ public class StateExporter {
 		}
 	}
 
+	/**
+	 * Writes the current chase state into a binary snapshot, see
+	 * StateSnapshotWriter. The facts of an external database are streamed from
+	 * the database.
+	 *
+	 * @param snapshot
+	 *            the file to create.
+	 * @param compress
+	 *            true to gzip the snapshot.
+	 * @return the number of facts written.
+	 * @throws IOException
+	 * @throws DatabaseException
+	 */
+	public long exportSnapshot(File snapshot, boolean compress) throws IOException, DatabaseException {
+		try (StateSnapshotWriter writer = new StateSnapshotWriter(snapshot, compress)) {
+			if (instance instanceof ExternalDatabaseManager) {
+				ExternalDatabaseManager edm = (ExternalDatabaseManager) instance;
+				edm.getFactsFromPhysicalDatabase(Arrays.asList(edm.getSchema().getRelations()), writer);
+			} else {
+				writer.addFacts(instance.getCachedFacts());
+			}
+			return writer.getNumberOfFacts();
+		}
+	}
+
+	/**
+	 * Loads a binary snapshot into the instance.
+	 *
+	 * @param snapshot
+	 *            written by exportSnapshot.
+	 * @param schema
+	 *            of the facts in the snapshot.
+	 * @return the number of facts loaded.
+	 * @throws IOException
+	 * @throws DatabaseException
+	 */
+	public long importSnapshot(File snapshot, Schema schema) throws IOException, DatabaseException {
+		Preconditions.checkArgument(snapshot.isFile());
+		try (StateSnapshotReader reader = new StateSnapshotReader(snapshot, schema)) {
+			long facts = reader.readInto(instance);
+			if (verbose)
+				System.out.println("Imported " + facts + " facts from " + snapshot);
+			return facts;
+		}
+	}
+
 	private static Map<String, Collection<Atom>> sortPerPredicate(Collection<Atom> facts) {
 		Map<String, Collection<Atom>> factsPerPredicate = new HashMap<>();
 		for (Atom a : facts) {
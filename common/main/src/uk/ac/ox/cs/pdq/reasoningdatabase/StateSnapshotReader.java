@@ -0,0 +1,248 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.base.Preconditions;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
+import uk.ac.ox.cs.pdq.util.QNames;
+
+/**
+ * Reads a snapshot written by the StateSnapshotWriter, one block of facts at a
+ * time. The relations of the facts are looked up in the given schema, except
+ * for the EQUALITY facts of a chase with EGDs: their relation is the one the
+ * chase state adds to the database, which is not in the schema.
+ *
+ * The labelled nulls are read back as untyped constants. To be able to resume
+ * a chase on the facts, the counters generating the names of the labelled
+ * nulls are advanced beyond the names read, so the new labelled nulls do not
+ * clash with the old ones.
+ *
+ * @author Gabor
+ *
+ */
+public class StateSnapshotReader implements Closeable {
+
+	/** Counters of UntypedConstant.getFreshConstant and ChaseConstantGenerator. */
+	private static final String[] CONSTANT_NAME_COUNTERS = { "ConstantName", "CannonicalName" };
+
+	private final DataInputStream input;
+
+	private final Schema schema;
+
+	/** The constants read so far, by their numbers. */
+	private final List<Term> dictionary = new ArrayList<>();
+
+	private boolean finished = false;
+
+	private long facts = 0;
+
+	public StateSnapshotReader(File file, Schema schema) throws IOException {
+		this(new FileInputStream(file), schema);
+	}
+
+	public StateSnapshotReader(InputStream stream, Schema schema) throws IOException {
+		Preconditions.checkNotNull(schema);
+		this.schema = schema;
+		DataInputStream header = new DataInputStream(stream);
+		try {
+			if (header.readInt() != StateSnapshotWriter.MAGIC)
+				throw new IOException("Not a snapshot file.");
+			byte version = header.readByte();
+			if (version != StateSnapshotWriter.VERSION)
+				throw new IOException("Unsupported snapshot version: " + version);
+			boolean compressed = (header.readByte() & StateSnapshotWriter.FLAG_COMPRESSED) != 0;
+			this.input = new DataInputStream(new BufferedInputStream(compressed ? new GZIPInputStream(stream, 1 << 16) : stream, 1 << 16));
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if the file is a snapshot, false if it cannot be read or it
+	 *         is something else.
+	 */
+	public static boolean isSnapshot(File file) {
+		if (!file.isFile())
+			return false;
+		try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+			return input.readInt() == StateSnapshotWriter.MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the next block of facts, all of them of the same relation.
+	 *
+	 * @return the facts, or null at the end of the snapshot.
+	 * @throws IOException
+	 */
+	public List<Atom> readFacts() throws IOException {
+		while (!this.finished) {
+			byte block = this.input.readByte();
+			switch (block) {
+			case StateSnapshotWriter.END:
+				this.finished = true;
+				break;
+			case StateSnapshotWriter.CONSTANTS:
+				int count = this.input.readInt();
+				for (int index = 0; index < count; index++)
+					this.dictionary.add(this.readConstant());
+				break;
+			case StateSnapshotWriter.FACTS:
+				return this.readFactsBlock();
+			default:
+				throw new IOException("Corrupted snapshot, unknown block " + block);
+			}
+		}
+		return null;
+	}
+
+	private List<Atom> readFactsBlock() throws IOException {
+		String name = readString(this.input);
+		int arity = this.input.readInt();
+		int rows = this.input.readInt();
+		Relation relation = this.schema.getRelation(name);
+		if (relation == null && arity == 2 && name.equals(QNames.EQUALITY.toString()))
+			relation = createEqualityRelation();
+		if (relation == null)
+			throw new IOException("Relation " + name + " of the snapshot is not in the schema.");
+		if (relation.getArity() != arity)
+			throw new IOException("Relation " + name + " has arity " + arity + " in the snapshot, " + relation.getArity() + " in the schema.");
+		Term[][] terms = new Term[rows][arity];
+		for (int column = 0; column < arity; column++) {
+			for (int row = 0; row < rows; row++) {
+				int id = this.input.readInt();
+				if (id < 0 || id >= this.dictionary.size())
+					throw new IOException("Corrupted snapshot, unknown constant " + id);
+				terms[row][column] = this.dictionary.get(id);
+			}
+		}
+		List<Atom> result = new ArrayList<>(rows);
+		for (Term[] row : terms)
+			result.add(Atom.create(relation, row));
+		this.facts += rows;
+		return result;
+	}
+
+	/**
+	 * @return the relation of the facts equating the terms of a chase with EGDs,
+	 *         the same as the one DatabaseChaseInstance adds to its database.
+	 */
+	private static Relation createEqualityRelation() {
+		Attribute[] attributes = new Attribute[] { Attribute.create(String.class, "x0"), Attribute.create(String.class, "x1") };
+		return Relation.create(QNames.EQUALITY.toString(), attributes, true);
+	}
+
+	private Term readConstant() throws IOException {
+		byte kind = this.input.readByte();
+		switch (kind) {
+		case StateSnapshotWriter.UNTYPED:
+			String symbol = readString(this.input);
+			advanceCounters(symbol);
+			return UntypedConstant.create(symbol);
+		case StateSnapshotWriter.STRING:
+			return TypedConstant.create(readString(this.input));
+		case StateSnapshotWriter.INTEGER:
+			return TypedConstant.create(this.input.readInt());
+		case StateSnapshotWriter.DOUBLE:
+			return TypedConstant.create(this.input.readDouble());
+		case StateSnapshotWriter.LONG:
+			return TypedConstant.create(this.input.readLong());
+		case StateSnapshotWriter.SERIALISED:
+			return TypedConstant.deSerializeTypedConstant(readString(this.input));
+		default:
+			throw new IOException("Corrupted snapshot, unknown constant kind " + kind);
+		}
+	}
+
+	/**
+	 * Advances the counters generating the labelled nulls past the number of the
+	 * given labelled null (e.g. "c12" or "k5").
+	 */
+	private static void advanceCounters(String symbol) {
+		if (symbol.length() < 2 || !(symbol.startsWith(UntypedConstant.CANONICAL_CONSTANT_PREFIX)
+				|| symbol.startsWith(UntypedConstant.NON_CANONICAL_CONSTANT_PREFIX)))
+			return;
+		int number = 0;
+		for (int index = 1; index < symbol.length(); index++) {
+			char c = symbol.charAt(index);
+			if (c < '0' || c > '9' || number > (Integer.MAX_VALUE - 9) / 10)
+				return;
+			number = number * 10 + (c - '0');
+		}
+		for (String counter : CONSTANT_NAME_COUNTERS)
+			GlobalCounterProvider.advanceTo(counter, number);
+	}
+
+	static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0)
+			throw new IOException("Corrupted snapshot, negative string length.");
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads all the facts of the snapshot.
+	 */
+	public Collection<Atom> readAll() throws IOException {
+		List<Atom> result = new ArrayList<>();
+		List<Atom> block;
+		while ((block = this.readFacts()) != null)
+			result.addAll(block);
+		return result;
+	}
+
+	/**
+	 * Reads the facts of the snapshot into the database, one block at a time.
+	 *
+	 * @return the number of facts added.
+	 */
+	public long readInto(DatabaseManager instance) throws IOException, DatabaseException {
+		long added = 0;
+		List<Atom> block;
+		while ((block = this.readFacts()) != null) {
+			instance.addFacts(block);
+			added += block.size();
+		}
+		return added;
+	}
+
+	/**
+	 * @return the number of facts read so far.
+	 */
+	public long getNumberOfFacts() {
+		return this.facts;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+}
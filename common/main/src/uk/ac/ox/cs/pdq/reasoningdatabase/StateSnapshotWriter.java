@@ -0,0 +1,213 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Predicate;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+
+/**
+ * Writes a database state (typically a chase state) as a binary snapshot, that
+ * the StateSnapshotReader loads back. Unlike the csv files of the
+ * StateExporter the snapshot is a single file, the constants are written once
+ * and the labelled nulls are kept as such.
+ *
+ * The file starts with the MAGIC number, the VERSION and the flags (whether
+ * the rest of the file is gzip compressed). It is followed by blocks:
+ * <ul>
+ * <li>CONSTANTS: the number of constants, and for each one its kind and
+ * value. The constants are numbered in the order they are written, starting
+ * from zero.</li>
+ * <li>FACTS: the name and arity of a relation, the number of facts (at most
+ * BLOCK_SIZE), then the numbers of the constants column by column.</li>
+ * <li>END.</li>
+ * </ul>
+ * Each addFacts call writes the constants it did not see before, and a FACTS
+ * block per relation, so the facts can be streamed (e.g. from the
+ * ExternalDatabaseManager) without keeping them in memory.
+ *
+ * @author Gabor
+ *
+ */
+public class StateSnapshotWriter implements DataSink, Closeable {
+
+	/** "PDQS" */
+	public static final int MAGIC = 0x50445153;
+
+	public static final byte VERSION = 1;
+
+	public static final byte FLAG_COMPRESSED = 1;
+
+	public static final byte END = 0;
+	public static final byte CONSTANTS = 1;
+	public static final byte FACTS = 2;
+
+	public static final byte UNTYPED = 0;
+	public static final byte STRING = 1;
+	public static final byte INTEGER = 2;
+	public static final byte DOUBLE = 3;
+	public static final byte LONG = 4;
+	/** Other typed constants, written with TypedConstant.serializeToString. */
+	public static final byte SERIALISED = 5;
+
+	/** Maximum number of facts in a FACTS block. */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	private final DataOutputStream output;
+
+	/** The numbers of the constants written so far. */
+	private final Map<Term, Integer> dictionary = new HashMap<>();
+
+	private long facts = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * @param file
+	 *            the snapshot to create.
+	 * @param compress
+	 *            true to gzip the blocks of the snapshot.
+	 * @throws IOException
+	 */
+	public StateSnapshotWriter(File file, boolean compress) throws IOException {
+		this(new FileOutputStream(file), compress);
+	}
+
+	public StateSnapshotWriter(OutputStream stream, boolean compress) throws IOException {
+		DataOutputStream header = new DataOutputStream(stream);
+		header.writeInt(MAGIC);
+		header.writeByte(VERSION);
+		header.writeByte(compress ? FLAG_COMPRESSED : 0);
+		header.flush();
+		this.output = new DataOutputStream(new BufferedOutputStream(compress ? new GZIPOutputStream(stream, 1 << 16) : stream, 1 << 16));
+	}
+
+	/**
+	 * Writes the facts, grouped by relation. The database executors may call it
+	 * from several threads.
+	 */
+	@Override
+	public synchronized void addFacts(Collection<Atom> facts) throws IOException {
+		if (this.closed)
+			throw new IOException("The snapshot is closed.");
+		Map<Predicate, List<Atom>> factsPerPredicate = new LinkedHashMap<>();
+		List<Term> newConstants = new ArrayList<>();
+		for (Atom fact : facts) {
+			factsPerPredicate.computeIfAbsent(fact.getPredicate(), p -> new ArrayList<>()).add(fact);
+			for (Term term : fact.getTerms()) {
+				if (!this.dictionary.containsKey(term)) {
+					if (!(term instanceof TypedConstant) && !(term instanceof UntypedConstant))
+						throw new IllegalArgumentException("Only constants can be written to a snapshot: " + fact);
+					this.dictionary.put(term, this.dictionary.size());
+					newConstants.add(term);
+				}
+			}
+		}
+		if (!newConstants.isEmpty()) {
+			this.output.writeByte(CONSTANTS);
+			this.output.writeInt(newConstants.size());
+			for (Term constant : newConstants)
+				this.writeConstant(constant);
+		}
+		for (Map.Entry<Predicate, List<Atom>> group : factsPerPredicate.entrySet()) {
+			List<Atom> rows = group.getValue();
+			for (int start = 0; start < rows.size(); start += BLOCK_SIZE)
+				this.writeFacts(group.getKey(), rows.subList(start, Math.min(rows.size(), start + BLOCK_SIZE)));
+		}
+	}
+
+	private void writeFacts(Predicate predicate, List<Atom> rows) throws IOException {
+		this.output.writeByte(FACTS);
+		writeString(this.output, predicate.getName());
+		this.output.writeInt(predicate.getArity());
+		this.output.writeInt(rows.size());
+		for (int column = 0; column < predicate.getArity(); column++) {
+			for (Atom row : rows)
+				this.output.writeInt(this.dictionary.get(row.getTerm(column)));
+		}
+		this.facts += rows.size();
+	}
+
+	private void writeConstant(Term constant) throws IOException {
+		if (constant instanceof UntypedConstant) {
+			this.output.writeByte(UNTYPED);
+			writeString(this.output, ((UntypedConstant) constant).getSymbol());
+			return;
+		}
+		Object value = ((TypedConstant) constant).getValue();
+		if (value instanceof String) {
+			this.output.writeByte(STRING);
+			writeString(this.output, (String) value);
+		} else if (value instanceof Integer) {
+			this.output.writeByte(INTEGER);
+			this.output.writeInt((Integer) value);
+		} else if (value instanceof Double) {
+			this.output.writeByte(DOUBLE);
+			this.output.writeDouble((Double) value);
+		} else if (value instanceof Long) {
+			this.output.writeByte(LONG);
+			this.output.writeLong((Long) value);
+		} else {
+			this.output.writeByte(SERIALISED);
+			writeString(this.output, ((TypedConstant) constant).serializeToString());
+		}
+	}
+
+	/**
+	 * Writes the length of the UTF-8 encoding of the string, and the encoding.
+	 * Unlike DataOutputStream.writeUTF it has no length limit.
+	 */
+	static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * @return the number of facts written so far.
+	 */
+	public synchronized long getNumberOfFacts() {
+		return this.facts;
+	}
+
+	/**
+	 * @return the number of distinct constants written so far.
+	 */
+	public synchronized int getNumberOfConstants() {
+		return this.dictionary.size();
+	}
+
+	/**
+	 * Writes the END block, and closes the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.closed)
+			return;
+		this.closed = true;
+		try {
+			this.output.writeByte(END);
+		} finally {
+			this.output.close();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.ox.cs.pdq.fol.Term;
+
+/**
+ * Thread safe dictionary numbering the terms (the constants of the facts) of an
+ * EncodedMultiInstanceFactCache. Each distinct term gets the next free number,
+ * starting from zero, and keeps it for the life of the dictionary, so the
+ * terms of deleted facts are not removed either.
+ *
+ * @author Gabor
+ *
+ */
+public class ConstantDictionary {
+
+	/** Returned by getCode for the terms that do not have a number. */
+	public static final int UNKNOWN = -1;
+
+	private final Map<Term, Integer> codes = new HashMap<>();
+
+	private Term[] terms = new Term[1024];
+
+	private int size = 0;
+
+	/**
+	 * @return the number of the term, a new number if the term had none.
+	 */
+	public synchronized int encode(Term term) {
+		Integer code = this.codes.get(term);
+		if (code != null)
+			return code;
+		if (this.size == this.terms.length)
+			this.terms = Arrays.copyOf(this.terms, this.terms.length * 2);
+		this.terms[this.size] = term;
+		this.codes.put(term, this.size);
+		return this.size++;
+	}
+
+	/**
+	 * @return the number of the term, or UNKNOWN if the term has no number
+	 *         (hence it is not in any fact).
+	 */
+	public synchronized int getCode(Term term) {
+		Integer code = this.codes.get(term);
+		return code == null ? UNKNOWN : code;
+	}
+
+	/**
+	 * @return the term of the given number.
+	 */
+	public synchronized Term decode(int code) {
+		if (code < 0 || code >= this.size)
+			throw new IllegalArgumentException("Unknown constant number " + code);
+		return this.terms[code];
+	}
+
+	/**
+	 * Decodes the terms of a tuple.
+	 *
+	 * @param values
+	 *            numbers of the terms.
+	 * @param offset
+	 *            index of the first number of the tuple.
+	 * @param length
+	 *            number of terms of the tuple.
+	 */
+	public synchronized Term[] decode(int[] values, int offset, int length) {
+		Term[] result = new Term[length];
+		for (int index = 0; index < length; index++) {
+			int code = values[offset + index];
+			if (code < 0 || code >= this.size)
+				throw new IllegalArgumentException("Unknown constant number " + code);
+			result[index] = this.terms[code];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of terms in the dictionary.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,164 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+
+/**
+ * Dictionary encoded version of the FactCache: holds the facts of a single
+ * instance as EncodedRelations. The facts are encoded when they are added, and
+ * decoded back to Atoms only when they are read as Atoms.
+ *
+ * @author Gabor
+ *
+ */
+public class EncodedFactCache {
+
+	private final int databaseInstanceID;
+
+	private final ConstantDictionary dictionary;
+
+	/** The facts, by relation name. */
+	private final Map<String, EncodedRelation> relations = new ConcurrentHashMap<>();
+
+	/**
+	 * @param databaseInstanceID
+	 * @param dictionary
+	 *            numbers of the terms, shared with the other instances.
+	 */
+	public EncodedFactCache(int databaseInstanceID, ConstantDictionary dictionary) {
+		this.databaseInstanceID = databaseInstanceID;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Stores the facts.
+	 *
+	 * @return the facts that were not in the cache before.
+	 */
+	public Collection<Atom> addFacts(Collection<Atom> toAdd) {
+		Collection<Atom> added = new ArrayList<>();
+		for (Atom fact : toAdd) {
+			EncodedRelation relation = this.relations.computeIfAbsent(fact.getPredicate().getName(),
+					name -> new EncodedRelation(fact.getPredicate()));
+			Term[] terms = fact.getTerms();
+			int[] tuple = new int[terms.length];
+			for (int position = 0; position < terms.length; position++)
+				tuple[position] = this.dictionary.encode(terms[position]);
+			if (relation.add(tuple))
+				added.add(fact);
+		}
+		return added;
+	}
+
+	/**
+	 * Deletes the facts.
+	 *
+	 * @return the facts that were in the cache.
+	 */
+	public Collection<Atom> deleteFacts(Collection<Atom> facts) {
+		Collection<Atom> removed = new ArrayList<>();
+		for (Atom fact : facts) {
+			EncodedRelation relation = this.relations.get(fact.getPredicate().getName());
+			int[] tuple = this.lookup(fact);
+			if (relation != null && tuple != null && relation.remove(tuple))
+				removed.add(fact);
+		}
+		return removed;
+	}
+
+	public boolean containsFact(Atom fact) {
+		EncodedRelation relation = this.relations.get(fact.getPredicate().getName());
+		int[] tuple = this.lookup(fact);
+		return relation != null && tuple != null && relation.contains(tuple);
+	}
+
+	/**
+	 * @return all the facts, decoded.
+	 */
+	public Collection<Atom> getFacts() {
+		List<Atom> facts = new ArrayList<>();
+		for (EncodedRelation relation : this.relations.values())
+			this.decode(relation, relation.getTuples(), facts);
+		return facts;
+	}
+
+	/**
+	 * @return the facts of the relation, decoded.
+	 */
+	public List<Atom> getFactsOfRelation(String relationName) {
+		List<Atom> facts = new ArrayList<>();
+		EncodedRelation relation = this.relations.get(relationName);
+		if (relation != null)
+			this.decode(relation, relation.getTuples(), facts);
+		return facts;
+	}
+
+	/**
+	 * @return the facts of the relation having the given term at the given
+	 *         position, decoded.
+	 */
+	public List<Atom> getFactsOfRelation(String relationName, int position, Term value) {
+		List<Atom> facts = new ArrayList<>();
+		EncodedRelation relation = this.relations.get(relationName);
+		int code = this.dictionary.getCode(value);
+		if (relation != null && code != ConstantDictionary.UNKNOWN)
+			this.decode(relation, relation.getTuples(position, code), facts);
+		return facts;
+	}
+
+	/**
+	 * @return the encoded facts of the relation, or null if the relation has no
+	 *         facts yet.
+	 */
+	public EncodedRelation getRelation(String relationName) {
+		return this.relations.get(relationName);
+	}
+
+	public int getDatabaseInstanceID() {
+		return this.databaseInstanceID;
+	}
+
+	public void clearCache() {
+		this.relations.clear();
+	}
+
+	/**
+	 * Table name + number of facts.
+	 */
+	public Map<String, Integer> getStatistics() {
+		Map<String, Integer> stats = new HashMap<>();
+		for (Map.Entry<String, EncodedRelation> entry : this.relations.entrySet())
+			stats.put(entry.getKey(), entry.getValue().size());
+		return stats;
+	}
+
+	/**
+	 * @return the numbers of the terms of the fact, or null if one of them has
+	 *         no number, hence the fact cannot be in the cache.
+	 */
+	private int[] lookup(Atom fact) {
+		Term[] terms = fact.getTerms();
+		int[] tuple = new int[terms.length];
+		for (int position = 0; position < terms.length; position++) {
+			tuple[position] = this.dictionary.getCode(terms[position]);
+			if (tuple[position] == ConstantDictionary.UNKNOWN)
+				return null;
+		}
+		return tuple;
+	}
+
+	private void decode(EncodedRelation relation, EncodedRelation.Tuples tuples, List<Atom> facts) {
+		for (int row = 0; row < tuples.count; row++)
+			facts.add(Atom.create(relation.getPredicate(), this.dictionary.decode(tuples.values, row * tuples.arity, tuples.arity)));
+	}
+}
@@ -0,0 +1,136 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+
+/**
+ * Dictionary encoded alternative of the MultiInstanceFactCache, for large
+ * chases in the InternalDatabaseManager. The instances are EncodedFactCaches
+ * sharing a single ConstantDictionary, so a term has the same number in every
+ * instance and the EncodedQueryEvaluator can join the facts of different
+ * instances (e.g. the delta instance) on the numbers.
+ * <br>
+ * Unlike the MultiInstanceFactCache it does not keep a per fact count of the
+ * instances holding the fact, checkExistsInOtherInstances looks the facts up in
+ * each instance instead. It is meant for a few instances.
+ *
+ * @author Gabor
+ *
+ */
+public class EncodedMultiInstanceFactCache extends MultiInstanceFactCache {
+
+	private final ConstantDictionary dictionary = new ConstantDictionary();
+
+	private final Map<Integer, EncodedFactCache> instances = new ConcurrentHashMap<>();
+
+	public EncodedMultiInstanceFactCache() {
+		super();
+	}
+
+	public ConstantDictionary getDictionary() {
+		return this.dictionary;
+	}
+
+	/**
+	 * @return the facts of the given instance, created if it did not exist.
+	 */
+	public EncodedFactCache getInstance(int instanceId) {
+		return this.instances.computeIfAbsent(instanceId, id -> new EncodedFactCache(id, this.dictionary));
+	}
+
+	@Override
+	public Collection<Atom> addFacts(Collection<Atom> facts, int instanceId) {
+		return this.getInstance(instanceId).addFacts(facts);
+	}
+
+	/**
+	 * Copies the facts of the source instance to the target instance. Unlike in
+	 * the MultiInstanceFactCache the instances do not share the facts, the copy
+	 * is made right away.
+	 */
+	@Override
+	public void copyInstance(int sourceId, int targetId) {
+		this.clearCache(targetId);
+		this.getInstance(targetId).addFacts(this.getInstance(sourceId).getFacts());
+	}
+
+	@Override
+	public Collection<Atom> checkExistsInOtherInstances(Collection<Atom> isThisNew, int instanceId) {
+		Collection<Atom> newToOtherInstances = new ArrayList<>();
+		for (Atom fact : isThisNew) {
+			if (!this.isUsedByOtherInstances(fact, instanceId))
+				newToOtherInstances.add(fact);
+		}
+		return newToOtherInstances;
+	}
+
+	@Override
+	public Collection<Atom> getFacts(int instanceId) {
+		return this.getInstance(instanceId).getFacts();
+	}
+
+	@Override
+	public List<Atom> getFactsOfRelation(String relationName, int instanceId) {
+		return this.getInstance(instanceId).getFactsOfRelation(relationName);
+	}
+
+	@Override
+	public List<Atom> getFactsOfRelation(String relationName, int position, Term value, int instanceId) {
+		return this.getInstance(instanceId).getFactsOfRelation(relationName, position, value);
+	}
+
+	@Override
+	public boolean deleteFacts(Collection<Atom> facts, int instanceId) {
+		return !this.getInstance(instanceId).deleteFacts(facts).isEmpty();
+	}
+
+	@Override
+	public void clearCache(int instanceId) {
+		EncodedFactCache cache = this.instances.get(instanceId);
+		if (cache != null)
+			cache.clearCache();
+	}
+
+	@Override
+	public void removeInstance(int instanceId) {
+		EncodedFactCache cache = this.instances.remove(instanceId);
+		if (cache != null)
+			cache.clearCache();
+	}
+
+	@Override
+	public Collection<Atom> deleteFactsAndListUnusedFacts(Collection<Atom> facts, int instanceId) {
+		Collection<Atom> results = new ArrayList<>();
+		for (Atom fact : this.getInstance(instanceId).deleteFacts(facts)) {
+			if (!this.isUsedByOtherInstances(fact, instanceId))
+				results.add(fact);
+		}
+		return results;
+	}
+
+	@Override
+	public Map<String, Integer> getStatistics(int instanceId) {
+		EncodedFactCache cache = this.instances.get(instanceId);
+		if (cache == null)
+			return new HashMap<>();
+		return cache.getStatistics();
+	}
+
+	private boolean isUsedByOtherInstances(Atom fact, int instanceId) {
+		for (EncodedFactCache cache : this.instances.values()) {
+			if (cache.getDatabaseInstanceID() != instanceId && cache.containsFact(fact))
+				return true;
+		}
+		return false;
+	}
+}
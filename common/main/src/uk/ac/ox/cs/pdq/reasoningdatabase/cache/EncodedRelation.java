@@ -0,0 +1,308 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
+
+import java.util.Arrays;
+
+import uk.ac.ox.cs.pdq.fol.Predicate;
+
+/**
+ * The facts of a single relation in an instance, with every term replaced by
+ * its number in a ConstantDictionary. The facts are packed one after the other
+ * into a single int array, so a fact costs (arity + 2) ints instead of an Atom,
+ * its term array and the entries of the hash sets pointing to it.
+ * <br>
+ * The rows are chained into hash buckets by all their values, to find
+ * duplicates, and (once a position was looked up) by the value at the
+ * position. The chains are doubly linked int arrays indexed by the rows.
+ * Deleting a row moves the last row into its place, so the rows stay
+ * contiguous.
+ * <br>
+ * The methods are synchronised, the readers get copies of the matching rows.
+ *
+ * @author Gabor
+ *
+ */
+public class EncodedRelation {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final int NONE = -1;
+
+	/**
+	 * A copy of some rows of the relation.
+	 */
+	public static final class Tuples {
+		public static final Tuples EMPTY = new Tuples(0, 0, new int[0]);
+
+		/** Number of rows. */
+		public final int count;
+		/** Number of values per row. */
+		public final int arity;
+		/** The values of the rows, row by row. */
+		public final int[] values;
+
+		public Tuples(int count, int arity, int[] values) {
+			this.count = count;
+			this.arity = arity;
+			this.values = values;
+		}
+
+		/**
+		 * @return the value of the row at the given position.
+		 */
+		public int get(int row, int position) {
+			return this.values[row * this.arity + position];
+		}
+	}
+
+	/**
+	 * Hash buckets of the rows, as doubly linked lists.
+	 */
+	private static final class Chains {
+		/** First row of each bucket. */
+		private int[] heads;
+		private int[] next;
+		private int[] previous;
+
+		private Chains(int buckets, int capacity) {
+			this.heads = new int[buckets];
+			Arrays.fill(this.heads, NONE);
+			this.next = new int[capacity];
+			this.previous = new int[capacity];
+		}
+
+		private void link(int row, int hash) {
+			int bucket = hash & (this.heads.length - 1);
+			int head = this.heads[bucket];
+			this.next[row] = head;
+			this.previous[row] = NONE;
+			if (head != NONE)
+				this.previous[head] = row;
+			this.heads[bucket] = row;
+		}
+
+		private void unlink(int row, int hash) {
+			int next = this.next[row];
+			int previous = this.previous[row];
+			if (previous == NONE)
+				this.heads[hash & (this.heads.length - 1)] = next;
+			else
+				this.next[previous] = next;
+			if (next != NONE)
+				this.previous[next] = previous;
+		}
+
+		private int first(int hash) {
+			return this.heads[hash & (this.heads.length - 1)];
+		}
+	}
+
+	private final Predicate predicate;
+
+	private final int arity;
+
+	/** The rows, one after the other. */
+	private int[] values;
+
+	private int size = 0;
+
+	/** Number of rows the arrays can hold. */
+	private int capacity = INITIAL_CAPACITY;
+
+	/** Chains of the rows by all the values. */
+	private Chains rowChains;
+
+	/** Chains of the rows by the value at each position, created lazily. */
+	private final Chains[] positionChains;
+
+	public EncodedRelation(Predicate predicate) {
+		this.predicate = predicate;
+		this.arity = predicate.getArity();
+		this.values = new int[this.capacity * this.arity];
+		this.rowChains = new Chains(this.capacity, this.capacity);
+		this.positionChains = new Chains[this.arity];
+	}
+
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	public int getArity() {
+		return this.arity;
+	}
+
+	/**
+	 * @return the number of rows.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Adds a row, unless the relation has it already.
+	 *
+	 * @param tuple
+	 *            the values of the row.
+	 * @return true if the row was added.
+	 */
+	public synchronized boolean add(int[] tuple) {
+		int hash = hash(tuple, 0);
+		if (this.find(tuple, hash) != NONE)
+			return false;
+		if (this.size == this.capacity)
+			this.grow();
+		int row = this.size++;
+		System.arraycopy(tuple, 0, this.values, row * this.arity, this.arity);
+		this.link(row, hash);
+		return true;
+	}
+
+	/**
+	 * @return true if the relation has the row.
+	 */
+	public synchronized boolean contains(int[] tuple) {
+		return this.find(tuple, hash(tuple, 0)) != NONE;
+	}
+
+	/**
+	 * Removes a row.
+	 *
+	 * @return true if the relation had the row.
+	 */
+	public synchronized boolean remove(int[] tuple) {
+		int row = this.find(tuple, hash(tuple, 0));
+		if (row == NONE)
+			return false;
+		this.unlink(row);
+		int last = --this.size;
+		if (row != last) {
+			// keeps the rows contiguous.
+			this.unlink(last);
+			System.arraycopy(this.values, last * this.arity, this.values, row * this.arity, this.arity);
+			this.link(row, this.hashRow(row));
+		}
+		return true;
+	}
+
+	/**
+	 * @return a copy of all the rows.
+	 */
+	public synchronized Tuples getTuples() {
+		return new Tuples(this.size, this.arity, Arrays.copyOf(this.values, this.size * this.arity));
+	}
+
+	/**
+	 * @return a copy of the rows having the given value at the given position.
+	 */
+	public synchronized Tuples getTuples(int position, int value) {
+		if (this.size == 0)
+			return Tuples.EMPTY;
+		Chains chains = this.positionChains[position];
+		if (chains == null)
+			chains = this.index(position);
+		int count = 0;
+		int[] result = new int[this.arity * 4];
+		for (int row = chains.first(mix(value)); row != NONE; row = chains.next[row]) {
+			int start = row * this.arity;
+			if (this.values[start + position] != value)
+				continue;
+			if ((count + 1) * this.arity > result.length)
+				result = Arrays.copyOf(result, result.length * 2);
+			System.arraycopy(this.values, start, result, count * this.arity, this.arity);
+			count++;
+		}
+		return new Tuples(count, this.arity, Arrays.copyOf(result, count * this.arity));
+	}
+
+	public synchronized void clear() {
+		this.size = 0;
+		this.capacity = INITIAL_CAPACITY;
+		this.values = new int[this.capacity * this.arity];
+		this.rowChains = new Chains(this.capacity, this.capacity);
+		Arrays.fill(this.positionChains, null);
+	}
+
+	/**
+	 * @return the row having the given values, or NONE.
+	 */
+	private int find(int[] tuple, int hash) {
+		for (int row = this.rowChains.first(hash); row != NONE; row = this.rowChains.next[row]) {
+			int start = row * this.arity;
+			boolean equal = true;
+			for (int position = 0; position < this.arity && equal; position++)
+				equal = this.values[start + position] == tuple[position];
+			if (equal)
+				return row;
+		}
+		return NONE;
+	}
+
+	private void link(int row, int hash) {
+		this.rowChains.link(row, hash);
+		for (int position = 0; position < this.arity; position++) {
+			if (this.positionChains[position] != null)
+				this.positionChains[position].link(row, mix(this.values[row * this.arity + position]));
+		}
+	}
+
+	private void unlink(int row) {
+		this.rowChains.unlink(row, this.hashRow(row));
+		for (int position = 0; position < this.arity; position++) {
+			if (this.positionChains[position] != null)
+				this.positionChains[position].unlink(row, mix(this.values[row * this.arity + position]));
+		}
+	}
+
+	/**
+	 * Creates the chains of the given position.
+	 */
+	private Chains index(int position) {
+		Chains chains = new Chains(this.capacity, this.capacity);
+		for (int row = 0; row < this.size; row++)
+			chains.link(row, mix(this.values[row * this.arity + position]));
+		this.positionChains[position] = chains;
+		return chains;
+	}
+
+	/**
+	 * Doubles the capacity, and rebuilds the chains with twice as many buckets.
+	 */
+	private void grow() {
+		this.capacity *= 2;
+		this.values = Arrays.copyOf(this.values, this.capacity * this.arity);
+		this.rowChains = new Chains(this.capacity, this.capacity);
+		for (int row = 0; row < this.size; row++)
+			this.rowChains.link(row, this.hashRow(row));
+		for (int position = 0; position < this.arity; position++) {
+			if (this.positionChains[position] != null)
+				this.index(position);
+		}
+	}
+
+	private int hashRow(int row) {
+		return hash(this.values, row * this.arity);
+	}
+
+	private int hash(int[] values, int start) {
+		int hash = 1;
+		for (int position = 0; position < this.arity; position++)
+			hash = 31 * hash + values[start + position];
+		return mix(hash);
+	}
+
+	/**
+	 * Spreads the bits of the hash, as the buckets are chosen by the lowest
+	 * bits.
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return this.getClass().getSimpleName() + "(" + this.predicate.getName() + ", " + this.size + " rows)";
+	}
+}
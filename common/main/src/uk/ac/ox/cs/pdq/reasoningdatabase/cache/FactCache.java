@@ -6,16 +6,29 @@ package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
 
 import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
 
 /**
  * Memory storage for a set of facts. The set can be named with an InstanceID.
+ * <br>
+ * Facts are grouped by relation name into insertion ordered hash sets, so
+ * adding, removing and checking the existence of a fact takes constant time.
+ * In addition to this each relation can have secondary indexes on term
+ * positions. An index is created the first time facts are requested with a
+ * bound value at that position, and it is kept up to date by every later add
+ * and remove call.
  * 
  * @author Gabor
- *
+ * 
  */
 public class FactCache {
 	/**
@@ -25,7 +38,11 @@ public class FactCache {
 	/**
 	 * The actual data, grouped by relation names.
 	 */
-	private Map<String, Collection<Atom>> cache;
+	private Map<String, Set<Atom>> cache;
+	/**
+	 * Secondary indexes, grouped by relation name and then by term position.
+	 */
+	private Map<String, Map<Integer, Multimap<Term, Atom>>> indexes;
 	/**
 	 * Lock object for synchronising access to the data.
 	 */
@@ -40,6 +57,7 @@ public class FactCache {
 	public FactCache(int databaseInstanceID) {
 		this.databaseInstanceID = databaseInstanceID;
 		cache = new HashMap<>();
+		indexes = new HashMap<>();
 	}
 
 	/**
@@ -52,18 +70,20 @@ public class FactCache {
 		Collection<Atom> results = new ArrayList<>();
 		synchronized (LOCK) {
 			for (Atom a : toAdd) {
-				if (cache.containsKey(a.getPredicate().getName())) {
-					if (!cache.get(a.getPredicate().getName()).contains(a)) {
-						cache.get(a.getPredicate().getName()).add(a);
-						results.add(a);
-					}
-				} else {
-					List<Atom> predicateFacts = new ArrayList<>();
-					predicateFacts.add(a);
-					// we know that the fact is new since we had to create the list for this
-					// predicate.
+				String name = a.getPredicate().getName();
+				Set<Atom> predicateFacts = cache.get(name);
+				if (predicateFacts == null) {
+					predicateFacts = new LinkedHashSet<>();
+					cache.put(name, predicateFacts);
+				}
+				if (predicateFacts.add(a)) {
 					results.add(a);
-					cache.put(a.getPredicate().getName(), predicateFacts);
+					Map<Integer, Multimap<Term, Atom>> relationIndexes = indexes.get(name);
+					if (relationIndexes != null) {
+						for (Map.Entry<Integer, Multimap<Term, Atom>> index : relationIndexes.entrySet()) {
+							index.getValue().put(a.getTerm(index.getKey()), a);
+						}
+					}
 				}
 			}
 		}
@@ -78,20 +98,17 @@ public class FactCache {
 	public Collection<Atom> getFacts() {
 		ArrayList<Atom> result = new ArrayList<>();
 		synchronized (LOCK) {
-			for (String key : cache.keySet()) {
-				result.addAll(cache.get(key));
+			for (Set<Atom> facts : cache.values()) {
+				result.addAll(facts);
 			}
 		}
 		return result;
 	}
 	public boolean containsFact(Atom f) {
-		boolean ret = false;
 		synchronized (LOCK) {
-			if (cache.containsKey(f.getPredicate().getName())) {
-				ret = cache.get(f.getPredicate().getName()).contains(f);
-			}
+			Set<Atom> facts = cache.get(f.getPredicate().getName());
+			return facts != null && facts.contains(f);
 		}
-		return ret;
 	}
 
 	/**
@@ -103,13 +120,58 @@ public class FactCache {
 	public List<Atom> getFactsOfRelation(String relationName) {
 		ArrayList<Atom> result = new ArrayList<>();
 		synchronized (LOCK) {
-			if (cache.containsKey(relationName)) {
-				result.addAll(cache.get(relationName));
+			Set<Atom> facts = cache.get(relationName);
+			if (facts != null) {
+				result.addAll(facts);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the facts of a certain relation that have the given term at the given
+	 * position. Creates a secondary index on this position when it does not exist
+	 * yet, so only the first call is linear in the size of the relation.
+	 * 
+	 * @param relationName
+	 * @param position
+	 *            index of the bound term.
+	 * @param value
+	 *            the term that has to appear at the given position.
+	 * @return
+	 */
+	public List<Atom> getFactsOfRelation(String relationName, int position, Term value) {
+		ArrayList<Atom> result = new ArrayList<>();
+		synchronized (LOCK) {
+			Set<Atom> facts = cache.get(relationName);
+			if (facts != null) {
+				result.addAll(getIndex(relationName, position, facts).get(value));
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the index of the given relation on the given position, creates it
+	 * when needed. Must be called while holding the lock.
+	 */
+	private Multimap<Term, Atom> getIndex(String relationName, int position, Set<Atom> facts) {
+		Map<Integer, Multimap<Term, Atom>> relationIndexes = indexes.get(relationName);
+		if (relationIndexes == null) {
+			relationIndexes = new HashMap<>();
+			indexes.put(relationName, relationIndexes);
+		}
+		Multimap<Term, Atom> index = relationIndexes.get(position);
+		if (index == null) {
+			index = LinkedHashMultimap.create();
+			for (Atom a : facts) {
+				index.put(a.getTerm(position), a);
+			}
+			relationIndexes.put(position, index);
+		}
+		return index;
+	}
+
 	/**
 	 * @return optional name of this cache, could be null.
 	 */
@@ -122,18 +184,33 @@ public class FactCache {
 	 * @return <tt>true</tt> if this collection changed as a result of the call
 	 */
 	public boolean removeFacts(Collection<Atom> facts) {
+		return !deleteFacts(facts).isEmpty();
+	}
+
+	/**
+	 * Removes facts from the cache.
+	 * 
+	 * @param facts
+	 * @return the facts that were removed (existing facts only)
+	 */
+	public Collection<Atom> deleteFacts(Collection<Atom> facts) {
+		Collection<Atom> results = new ArrayList<>();
 		synchronized (LOCK) {
-			boolean ret = false;
 			for (Atom fact : facts) {
-				Collection<Atom> listOfFacts = cache.get(fact.getPredicate().getName());
-				if (listOfFacts != null) {
-					if (listOfFacts.remove(fact)) {
-						ret = true;
+				String name = fact.getPredicate().getName();
+				Set<Atom> setOfFacts = cache.get(name);
+				if (setOfFacts != null && setOfFacts.remove(fact)) {
+					results.add(fact);
+					Map<Integer, Multimap<Term, Atom>> relationIndexes = indexes.get(name);
+					if (relationIndexes != null) {
+						for (Map.Entry<Integer, Multimap<Term, Atom>> index : relationIndexes.entrySet()) {
+							index.getValue().remove(fact.getTerm(index.getKey()), fact);
+						}
 					}
 				}
 			}
-			return ret;
 		}
+		return results;
 	}
 
 	/**
@@ -142,6 +219,7 @@ public class FactCache {
 	public void clearCache() {
 		synchronized (LOCK) {
 			cache.clear();
+			indexes.clear();
 		}
 	}
 
@@ -157,13 +235,8 @@ public class FactCache {
 		Collection<Atom> results = new ArrayList<>();
 		synchronized (LOCK) {
 			for (Atom a : newToThisInstance) {
-				if (cache.containsKey(a.getPredicate().getName())) {
-					if (!cache.get(a.getPredicate().getName()).contains(a)) {
-						results.add(a);
-					}
-				} else {
-					// we know that the fact is new since the list with this predicate does not
-					// exists yet.
+				Set<Atom> facts = cache.get(a.getPredicate().getName());
+				if (facts == null || !facts.contains(a)) {
 					results.add(a);
 				}
 			}
@@ -177,8 +250,8 @@ public class FactCache {
 	public Map<String, Integer> getStatistics() {
 		Map<String, Integer> stats = new HashMap<>();
 		synchronized (LOCK) {
-			for (String tableName: cache.keySet()) { 
-				stats.put(tableName, cache.get(tableName).size());
+			for (Map.Entry<String, Set<Atom>> entry : cache.entrySet()) {
+				stats.put(entry.getKey(), entry.getValue().size());
 			}
 		}
 		return stats;
@@ -9,12 +9,24 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
 
 /**
  * Manages many FactCache instances. Used by the VirtualMultiInstance Database
  * manager to store facts.
+ * <br>
+ * Next to the caches of the instances it keeps a shared index that counts the
+ * instances holding each distinct fact, so checking whether a fact is used by
+ * other instances takes a single lookup, independently of the number of
+ * instances.
+ * <br>
+ * An instance can be copied in constant time (copyInstance): the copy shares
+ * the FactCache of the original, and the first of them to change its facts
+ * copies the FactCache (copy-on-write).
  * 
  * @author Gabor
  *
@@ -24,30 +36,146 @@ public class MultiInstanceFactCache {
 	 * The actual data
 	 */
 	private Map<Integer, FactCache> multiCache;
+	/**
+	 * Number of FactCaches holding each fact, a FactCache shared by several
+	 * instances is counted once. Facts that are not used by any instance are
+	 * removed.
+	 */
+	private ConcurrentHashMap<Atom, Integer> instanceCounts;
+	/**
+	 * Number of instances sharing each FactCache that is shared, see
+	 * copyInstance. The counts are updated while holding the lock of the
+	 * FactCache, and so are the facts of the FactCache.
+	 */
+	private ConcurrentHashMap<FactCache, Integer> shareCounts;
 
 	public MultiInstanceFactCache() {
 		multiCache = new ConcurrentHashMap<>();
+		instanceCounts = new ConcurrentHashMap<>();
+		shareCounts = new ConcurrentHashMap<>();
 	}
 
 	/**
 	 * Stores facts in the cache.
 	 */
 	public Collection<Atom> addFacts(Collection<Atom> facts, int instanceId) {
-		if (!multiCache.containsKey(instanceId)) {
-			multiCache.put(instanceId, new FactCache(instanceId));
+		// no need to copy a shared cache that has all the facts
+		Collection<Atom> added = updateCache(instanceId, cache -> cache.contains(facts).isEmpty(), cache -> {
+			Collection<Atom> result = cache.addFacts(facts);
+			for (Atom fact : result) {
+				instanceCounts.merge(fact, 1, Integer::sum);
+			}
+			return result;
+		});
+		return added == null ? new ArrayList<>() : added;
+	}
+
+	/**
+	 * Makes the target instance hold the facts of the source instance, in
+	 * constant time. The two instances share the FactCache of the source until
+	 * one of them changes its facts. The previous facts of the target instance
+	 * are removed.
+	 * 
+	 * @param sourceId
+	 * @param targetId
+	 */
+	public void copyInstance(int sourceId, int targetId) {
+		if (multiCache.containsKey(targetId)) {
+			clearCache(targetId);
+		}
+		while (true) {
+			FactCache cache = multiCache.computeIfAbsent(sourceId, FactCache::new);
+			synchronized (cache) {
+				if (multiCache.get(sourceId) != cache) {
+					// the source was copied on write meanwhile
+					continue;
+				}
+				shareCounts.merge(cache, 2, (count, two) -> count + 1);
+				multiCache.put(targetId, cache);
+				return;
+			}
 		}
-		return multiCache.get(instanceId).addFacts(facts);
 	}
 
+	/**
+	 * Updates the FactCache of the given instance in place. A FactCache shared
+	 * with other instances is copied first, the other instances keep the
+	 * original. The update is made while holding the lock of the FactCache that
+	 * was checked for sharing, so a concurrent copyInstance cannot share it
+	 * meanwhile.
+	 * 
+	 * @param unchanged
+	 *            tells if the update would leave a shared FactCache unchanged,
+	 *            in which case it is not copied.
+	 * @return the result of the update, or null if it was not made.
+	 */
+	private <R> R updateCache(int instanceId, Predicate<FactCache> unchanged, Function<FactCache, R> update) {
+		while (true) {
+			FactCache cache = multiCache.computeIfAbsent(instanceId, FactCache::new);
+			synchronized (cache) {
+				if (multiCache.get(instanceId) != cache) {
+					// the instance was copied on write or cleared meanwhile
+					continue;
+				}
+				if (!shareCounts.containsKey(cache)) {
+					return update.apply(cache);
+				}
+				if (unchanged.test(cache)) {
+					return null;
+				}
+				unshare(cache);
+				FactCache copy = new FactCache(instanceId);
+				synchronized (copy) {
+					for (Atom fact : copy.addFacts(cache.getFacts())) {
+						instanceCounts.merge(fact, 1, Integer::sum);
+					}
+					multiCache.put(instanceId, copy);
+					return update.apply(copy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decreases the share count of a FactCache, when an instance stops using it.
+	 * Must be called while holding the lock of the FactCache.
+	 * 
+	 * @return false if the FactCache was not shared.
+	 */
+	private boolean unshare(FactCache cache) {
+		Integer count = shareCounts.get(cache);
+		if (count == null) {
+			return false;
+		}
+		if (count == 2) {
+			shareCounts.remove(cache);
+		} else {
+			shareCounts.put(cache, count - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks each input fact if it is held by any instance other than the given
+	 * one.
+	 * 
+	 * @return the facts that are not held by the other instances.
+	 */
 	public Collection<Atom> checkExistsInOtherInstances(Collection<Atom> isThisNew, int instanceId) {
-		Collection<Atom> newToThisInstance = new ArrayList<>();
-		newToThisInstance.addAll(isThisNew);
-		for (Integer iId : multiCache.keySet()) {
-			if (iId != instanceId) {
-				newToThisInstance = multiCache.get(iId).contains(newToThisInstance);
+		Collection<Atom> newToOtherInstances = new ArrayList<>();
+		FactCache cache = multiCache.get(instanceId);
+		// the facts of a shared cache are held by other instances as well
+		boolean shared = cache != null && shareCounts.containsKey(cache);
+		for (Atom fact : isThisNew) {
+			int count = instanceCounts.getOrDefault(fact, 0);
+			if (count > 0 && cache != null && !shared && cache.containsFact(fact)) {
+				count--;
+			}
+			if (count == 0) {
+				newToOtherInstances.add(fact);
 			}
 		}
-		return newToThisInstance;
+		return newToOtherInstances;
 	}
 
 	/**
@@ -75,17 +203,80 @@ public class MultiInstanceFactCache {
 	}
 
 	/**
-	 * Delete facts from the cache.
+	 * get the facts from a certain relation in the given instance that have the
+	 * given term at the given position. Uses the position index of the fact cache.
+	 * 
+	 * @param relationName
+	 * @param position
+	 * @param value
+	 * @param instanceId
+	 * @return
 	 */
-	public boolean deleteFacts(Collection<Atom> facts, int instanceId) {
+	public List<Atom> getFactsOfRelation(String relationName, int position, Term value, int instanceId) {
 		if (!multiCache.containsKey(instanceId)) {
 			multiCache.put(instanceId, new FactCache(instanceId));
 		}
-		return multiCache.get(instanceId).removeFacts(facts);
+		return multiCache.get(instanceId).getFactsOfRelation(relationName, position, value);
+	}
+
+	/**
+	 * Delete facts from the cache.
+	 */
+	public boolean deleteFacts(Collection<Atom> facts, int instanceId) {
+		// no need to copy a shared cache that has none of the facts
+		Boolean changed = updateCache(instanceId, cache -> cache.contains(facts).size() == facts.size(), cache -> {
+			Collection<Atom> removed = cache.deleteFacts(facts);
+			release(removed);
+			return !removed.isEmpty();
+		});
+		return changed != null && changed;
 	}
 
 	public void clearCache(int instanceId) {
-		if (multiCache.get(instanceId)!= null) multiCache.get(instanceId).clearCache();
+		clearCache(instanceId, false);
+	}
+
+	/**
+	 * Removes the facts of the given instance, and the instance itself, e.g. a
+	 * delta instance that is not used anymore.
+	 */
+	public void removeInstance(int instanceId) {
+		clearCache(instanceId, true);
+	}
+
+	private void clearCache(int instanceId, boolean remove) {
+		while (true) {
+			FactCache cache = multiCache.get(instanceId);
+			if (cache == null) {
+				return;
+			}
+			synchronized (cache) {
+				if (multiCache.get(instanceId) != cache) {
+					// the instance was copied on write meanwhile
+					continue;
+				}
+				if (unshare(cache)) {
+					// the other instances keep the facts
+					multiCache.remove(instanceId);
+					return;
+				}
+				release(cache.deleteFacts(cache.getFacts()));
+				cache.clearCache();
+				if (remove) {
+					multiCache.remove(instanceId);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Decreases the instance counts of facts that were removed from an instance.
+	 */
+	private void release(Collection<Atom> removed) {
+		for (Atom fact : removed) {
+			instanceCounts.computeIfPresent(fact, (f, count) -> count > 1 ? count - 1 : null);
+		}
 	}
 
 	/**
@@ -104,14 +295,7 @@ public class MultiInstanceFactCache {
 		Collection<Atom> results = new ArrayList<>();
 		if (changed) {
 			for (Atom f : facts) {
-				boolean found = false;
-				for (Integer iId : multiCache.keySet()) {
-					if (iId!=instanceId && multiCache.get(iId).containsFact(f)) {
-						found = true;
-						break;
-					}
-				}
-				if (!found)
+				if (!instanceCounts.containsKey(f))
 					results.add(f);
 			}
 		}
@@ -10,5 +10,7 @@ package uk.ac.ox.cs.pdq.reasoningdatabase.cache;
  * 
  *  -- FactCache, which implements a cache of facts for a single instance
  *  -- MultiInstanceFactCache, which implements caches of facts for multiple instances
+ *  -- ConstantDictionary, EncodedRelation, EncodedFactCache and EncodedMultiInstanceFactCache, the
+ *     dictionary encoded versions of the caches, storing the facts as arrays of numbers
  *
  */
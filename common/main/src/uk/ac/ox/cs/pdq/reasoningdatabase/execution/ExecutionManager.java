@@ -117,6 +117,36 @@ public class ExecutionManager {
 		return startTask(command, true).getGenericReturnValues();
 	}
 
+	/**
+	 * Executes a list of generic commands. Each command is started as soon as a
+	 * thread is free, so up to as many commands run in parallel as many threads
+	 * we have, then waits for all the results.
+	 * 
+	 * @param commands
+	 * @return the results of the commands, in the order of the commands.
+	 * @throws DatabaseException
+	 *             the first exception thrown by the commands, after all of them
+	 *             finished.
+	 */
+	public List<List<String>> executeGeneric(List<Command> commands) throws DatabaseException {
+		List<Task> started = new ArrayList<>();
+		for (Command command : commands)
+			started.add(startTask(command, true));
+		List<List<String>> returnValues = new ArrayList<>();
+		DatabaseException exception = null;
+		for (Task task : started) {
+			try {
+				returnValues.add(task.getGenericReturnValues());
+			} catch (DatabaseException e) {
+				if (exception == null)
+					exception = e;
+			}
+		}
+		if (exception != null)
+			throw exception;
+		return returnValues;
+	}
+
 	/**
 	 * Executes a single command and waits for the results.
 	 * 
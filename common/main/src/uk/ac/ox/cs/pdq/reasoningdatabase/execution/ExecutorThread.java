@@ -5,17 +5,23 @@ package uk.ac.ox.cs.pdq.reasoningdatabase.execution;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
 import com.google.common.base.Strings;
 
 import uk.ac.ox.cs.pdq.db.Match;
@@ -30,8 +36,10 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DataSink;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.BasicSelect;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Command;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CopyInsert;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.DropDatabase;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.InsertSelect;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.PreparedInsert;
 import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
 
 /**
@@ -42,6 +50,16 @@ import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
  */
 public class ExecutorThread extends Thread {
 
+	/**
+	 * Number of parameter rows sent to the database in one JDBC batch.
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Number of characters of COPY data sent to the database at once.
+	 */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
 	/**
 	 * Simple lock object
 	 */
@@ -258,6 +276,10 @@ public class ExecutorThread extends Thread {
 				}
 			}
 			return results;
+		} else if (command instanceof PreparedInsert) {
+			// parameterised inserts, the values are bound to the statements.
+			executePreparedInsert(statements, (PreparedInsert) command);
+			return new ArrayList<>();
 		} else {
 			// batch update.
 			executeUpdate(statements, ignoreErrors);
@@ -378,6 +400,89 @@ public class ExecutorThread extends Thread {
 		}
 	}
 
+	/**
+	 * Executes the statements of a PreparedInsert, or streams the rows of a
+	 * CopyInsert with the COPY API of the Postgres driver.
+	 * 
+	 * @param statements
+	 *            the statements of the command, in the SQL dialect of the
+	 *            connection.
+	 * @param command
+	 *            holds the parameter rows of the statements.
+	 * @throws DatabaseException
+	 */
+	private void executePreparedInsert(List<String> statements, PreparedInsert command) throws DatabaseException {
+		String statement = null;
+		try {
+			for (int index = 0; index < statements.size(); index++) {
+				statement = statements.get(index);
+				if (command instanceof CopyInsert) {
+					if (this.driverType != DriverType.Postgres)
+						throw new DatabaseException("The COPY command is only supported by Postgres: " + statement);
+					copyIn(statement, command.getRows(index));
+				} else {
+					executeBatch(statement, command.getRows(index));
+				}
+			}
+		} catch (SQLException e) {
+			if (e.getNextException() != null)
+				throw new DatabaseException("Error while executing update: " + e.getMessage() + " - " + statement, e.getNextException());
+			throw new DatabaseException("Error while executing update: " + statement, e);
+		}
+	}
+
+	/**
+	 * Binds the rows to the prepared statement, and executes them in batches of
+	 * BATCH_SIZE rows.
+	 */
+	private void executeBatch(String statement, List<String[]> rows) throws SQLException {
+		try (PreparedStatement sqlStmt = connection.prepareStatement(statement)) {
+			int batched = 0;
+			for (String[] row : rows) {
+				for (int index = 0; index < row.length; index++) {
+					if (this.driverType == DriverType.Postgres) {
+						// untyped parameter, the database casts it to the type of the column
+						// the same way as it does with a literal.
+						sqlStmt.setObject(index + 1, row[index], Types.OTHER);
+					} else {
+						sqlStmt.setString(index + 1, row[index]);
+					}
+				}
+				sqlStmt.addBatch();
+				if (++batched == BATCH_SIZE) {
+					sqlStmt.executeBatch();
+					batched = 0;
+				}
+			}
+			if (batched > 0)
+				sqlStmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Streams the rows to the database with a COPY FROM STDIN statement.
+	 */
+	private void copyIn(String statement, List<String[]> rows) throws SQLException {
+		CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(statement);
+		try {
+			StringBuilder buffer = new StringBuilder();
+			for (String[] row : rows) {
+				CopyInsert.appendCopyRow(buffer, row);
+				if (buffer.length() >= COPY_BUFFER_SIZE) {
+					byte[] data = buffer.toString().getBytes(StandardCharsets.UTF_8);
+					copy.writeToCopy(data, 0, data.length);
+					buffer.setLength(0);
+				}
+			}
+			byte[] data = buffer.toString().getBytes(StandardCharsets.UTF_8);
+			copy.writeToCopy(data, 0, data.length);
+			copy.endCopy();
+		} finally {
+			if (copy.isActive())
+				copy.cancelCopy();
+		}
+	}
+
 	/**
 	 * Executes a single query statement.
 	 * 
@@ -14,7 +14,9 @@ package uk.ac.ox.cs.pdq.reasoningdatabase;
  * multiple instances over one physical database by adding an id for each fact
  * and a mapping table that describes which fact belongs to which instance.<br>
  * - InternalDatabaseManager: does the same as the LogicalDatabaseInstance
- * without the need for an external database.
+ * without the need for an external database.<br>
+ * The StateExporter saves and loads the facts of a database as csv files, or
+ * as a binary snapshot (StateSnapshotWriter, StateSnapshotReader).
  * 
  * @author Gabor Gyorkei
  */
@@ -165,6 +165,24 @@ public class Command {
 		return termInSqlString;
 	}
 
+	/**
+	 * The text of the SQL literal convertTermToSQLString creates for a constant
+	 * term, without the quotes. Used by the commands that send their values as
+	 * parameters instead of SQL text.
+	 * 
+	 * @param a
+	 *            - attribute of the database relation where we want to store the
+	 *            term.
+	 * @param term
+	 *            constant term to convert.
+	 * @return
+	 */
+	protected static String convertTermToSQLValue(Attribute a, Term term) {
+		if (a.getType() == String.class && term instanceof TypedConstant && !"DatabaseInstanceID".equals(a.getName()) && !"FactId".equals(a.getName()))
+			return ((TypedConstant) term).serializeToString();
+		return term.toString();
+	}
+
 	/*
 	 * For debugging purpose only.
 	 * 
@@ -0,0 +1,80 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands;
+
+import java.util.Collection;
+
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+import uk.ac.ox.cs.pdq.fol.Atom;
+
+/**
+ * Inserts large amount of facts with the Postgres "COPY table FROM STDIN"
+ * command. The statements are the COPY commands of the relations, the rows are
+ * streamed to the database in the text format of the COPY command (one line
+ * per row, tab separated values), see appendCopyRow.
+ *
+ * Only Postgres supports this command, for other databases use the
+ * PreparedInsert.
+ *
+ * @author Gabor
+ *
+ */
+public class CopyInsert extends PreparedInsert {
+
+	/**
+	 * Groups the facts by relation, creates a COPY command and the rows to copy
+	 * for each group.
+	 *
+	 * @param facts
+	 *            to store.
+	 * @param schema
+	 *            for attribute types.
+	 * @throws DatabaseException
+	 */
+	public CopyInsert(Collection<Atom> facts, Schema schema) throws DatabaseException {
+		super(facts, schema);
+	}
+
+	@Override
+	protected String createStatement(String tableName, int arity) {
+		return "COPY " + DATABASENAME + "." + tableName + " FROM STDIN";
+	}
+
+	/**
+	 * Appends a row in the text format of the COPY command: the values are
+	 * separated by tabs, and the row is terminated by a new line. Backslashes,
+	 * tabs and line breaks in the values are escaped.
+	 *
+	 * @param builder
+	 * @param row
+	 */
+	public static void appendCopyRow(StringBuilder builder, String[] row) {
+		for (int index = 0; index < row.length; index++) {
+			if (index > 0)
+				builder.append('\t');
+			String value = row[index];
+			for (int position = 0; position < value.length(); position++) {
+				char c = value.charAt(position);
+				switch (c) {
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				default:
+					builder.append(c);
+				}
+			}
+		}
+		builder.append('\n');
+	}
+}
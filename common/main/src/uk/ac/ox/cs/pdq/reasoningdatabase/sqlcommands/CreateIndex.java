@@ -3,7 +3,10 @@
 
 package uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands;
 
+import java.util.List;
+
 import com.google.common.base.Joiner;
+import com.google.common.collect.Multimap;
 
 import uk.ac.ox.cs.pdq.db.Relation;
 import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
@@ -27,6 +30,25 @@ public class CreateIndex extends Command {
 				statements.add(createIndexStatement(r));
 		}
 	}
+
+	/**
+	 * Constructs one index for each list of attributes of the relations. The
+	 * indices of a relation are named relationName_Index1, relationName_Index2,
+	 * etc.
+	 * 
+	 * @param indices
+	 *            lists of attribute names to index, for each relation.
+	 */
+	public CreateIndex(Multimap<Relation, List<String>> indices) {
+		super();
+		for (Relation r : indices.keySet()) {
+			int counter = 1;
+			for (List<String> attributes : indices.get(r))
+				statements.add("CREATE INDEX " + r.getName() + "_Index" + counter++ + " ON " + DATABASENAME + "." + r.getName() + " ("
+						+ Joiner.on(",").join(attributes) + ");");
+		}
+	}
+
 	private String createIndexStatement(Relation r) {
 		return "CREATE INDEX " + r.getName() + "_Index" + " ON " + DATABASENAME + "." + r.getName() + " ("+Joiner.on(",").join(r.getIndexedAttributes())+");";		
 	}
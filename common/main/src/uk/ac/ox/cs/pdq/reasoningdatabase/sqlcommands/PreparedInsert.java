@@ -0,0 +1,121 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Predicate;
+import uk.ac.ox.cs.pdq.fol.Term;
+
+/**
+ * Parameterised version of the BulkInsert. Instead of rendering every fact into
+ * the SQL text, it has a single "INSERT INTO table VALUES (?,..,?)" statement
+ * for each relation, and the values of the facts are kept as rows of
+ * parameters. The executor binds the rows to a prepared statement and
+ * executes them in JDBC batches, so the database parses the statement only
+ * once, and the values need no quoting.
+ *
+ * @author Gabor
+ *
+ */
+public class PreparedInsert extends Command {
+
+	/**
+	 * The parameter rows of each statement, in the same order as the statements.
+	 */
+	protected List<List<String[]>> rows = new ArrayList<>();
+
+	/**
+	 * Groups the facts by relation, creates a statement and the parameter rows
+	 * for each group.
+	 *
+	 * @param facts
+	 *            to store.
+	 * @param schema
+	 *            for attribute types.
+	 * @throws DatabaseException
+	 *             in case a fact does not belong to the schema, or it contains a
+	 *             variable.
+	 */
+	public PreparedInsert(Collection<Atom> facts, Schema schema) throws DatabaseException {
+		// Group facts by relation.
+		Map<Predicate, List<String[]>> groupedRows = new LinkedHashMap<>();
+		for (Atom a : facts) {
+			// Error checking
+			if (a == null || schema == null)
+				throw new DatabaseException("Cant insert unset fact or into an unset schema. Fact: " + a + ", schema: " + schema);
+			Relation r = schema.getRelation(a.getPredicate().getName());
+			if (r == null)
+				throw new DatabaseException("Fact : " + a + " doesn't belong to schema " + schema);
+			Attribute[] attributes = r.getAttributes();
+			if (attributes.length != a.getTerms().length)
+				throw new DatabaseException("Fact have different number of terms then the attributes of the relation: " + a + ", relation " + r);
+
+			String[] row = new String[attributes.length];
+			for (int termIndex = 0; termIndex < row.length; ++termIndex) {
+				Term term = a.getTerms()[termIndex];
+				if (term.isVariable())
+					throw new DatabaseException("It is not allowed to insert Variables to the database: " + a);
+				row[termIndex] = convertTermToSQLValue(attributes[termIndex], term);
+			}
+			groupedRows.computeIfAbsent(a.getPredicate(), p -> new ArrayList<>()).add(row);
+		}
+
+		// create a single statement for each relation group.
+		for (Map.Entry<Predicate, List<String[]>> group : groupedRows.entrySet()) {
+			this.statements.add(this.createStatement(group.getKey().getName(), group.getKey().getArity()));
+			this.rows.add(group.getValue());
+		}
+	}
+
+	/**
+	 * Creates the parameterised statement of a relation.
+	 *
+	 * @param tableName
+	 * @param arity
+	 *            number of columns of the table.
+	 * @return
+	 */
+	protected String createStatement(String tableName, int arity) {
+		StringBuilder insertInto = new StringBuilder("INSERT INTO " + DATABASENAME + "." + tableName + " VALUES (");
+		for (int index = 0; index < arity; index++) {
+			if (index > 0)
+				insertInto.append(',');
+			insertInto.append('?');
+		}
+		return insertInto.append(')').toString();
+	}
+
+	/**
+	 * @param statementIndex
+	 *            index of a statement, as returned by the toXYZStatement methods.
+	 * @return the parameter rows of the statement. Each value is the text of the
+	 *         SQL literal of the term, without quotes.
+	 */
+	public List<String[]> getRows(int statementIndex) {
+		return this.rows.get(statementIndex);
+	}
+
+	/*
+	 * For debugging purpose only.
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		int size = 0;
+		for (List<String[]> r : this.rows)
+			size += r.size();
+		return this.getClass().getSimpleName() + "(" + statements + ", " + size + " rows)";
+	}
+}
@@ -12,6 +12,7 @@ package uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands;
  *  -- BasicSelect, which represents a SQL query
  *  -- BulkInsert, which constructs a single SQL statement that inserts a list of records (facts) into a database table.
  *  -- Command, which is the main superclass of all database commands in this package
+ *  -- CopyInsert, which streams a list of records into database tables with the Postgres COPY command.
  *  -- CreateDatabase, which creates an empty schema with the given databaseName.
  *  -- CreateIndex, which represents a CREATE INDEX sql command
  *  -- CreateTable, which represents a CREATE TABLE sql command
@@ -20,5 +21,6 @@ package uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands;
  *  -- DropDatabase, which represents a DROP DATABASE sql command
  *  -- ExplainSelect, which represents a SQL query with an EXPLAIN clause.
  *  -- Insert, which represents an INSERT statement.
+ *  -- PreparedInsert, which inserts a list of records with parameterised INSERT statements.
  *
  */
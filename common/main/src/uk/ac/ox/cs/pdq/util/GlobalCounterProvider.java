@@ -42,6 +42,20 @@ public class GlobalCounterProvider {
 	public static synchronized Integer getCurrent(String key) {
 		return counters.get(key);
 	}
+
+	/**
+	 * Makes sure the following getNext calls with the given key return more than
+	 * the given value, e.g. when the numbers were generated by an earlier run and
+	 * loaded from a file.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public static synchronized void advanceTo(String key, int value) {
+		Integer current = counters.get(key);
+		if (current == null || current < value)
+			counters.put(key, value);
+	}
 	
 	public static synchronized void resetCounters() {
 		counters.clear();
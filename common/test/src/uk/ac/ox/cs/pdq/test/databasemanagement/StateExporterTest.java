@@ -24,14 +24,18 @@ import uk.ac.ox.cs.pdq.fol.Atom;
 import uk.ac.ox.cs.pdq.fol.Dependency;
 import uk.ac.ox.cs.pdq.fol.Term;
 import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
 import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
 import uk.ac.ox.cs.pdq.reasoningdatabase.ExternalDatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.StateExporter;
+import uk.ac.ox.cs.pdq.reasoningdatabase.StateSnapshotReader;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Command;
 import uk.ac.ox.cs.pdq.test.util.PdqTest;
+import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
+import uk.ac.ox.cs.pdq.util.QNames;
 
 /**
  * @author gabor
@@ -139,6 +143,50 @@ public class StateExporterTest extends PdqTest {
 		deleteDir(dir);
 	}
 	
+	/**
+	 * Exports typed constants and labelled nulls into a compressed snapshot, and
+	 * imports them into a new database. The snapshot also holds the equality
+	 * facts of an EGD chase, whose relation is not in the schema.
+	 */
+	@Test
+	public void testSnapshot() throws IOException, DatabaseException {
+		Relation R = Relation.create("R", new Attribute[] { Attribute.create(Integer.class, "attribute0"),
+				Attribute.create(String.class, "attribute1"), Attribute.create(Double.class, "attribute2") });
+		Relation S = Relation.create("S",
+				new Attribute[] { Attribute.create(String.class, "attribute0"), Attribute.create(String.class, "attribute1") });
+		Schema s = new Schema(new Relation[] { R, S }, new Dependency[0]);
+		List<Atom> facts = new ArrayList<>();
+		for (int i = 1; i <= NUMBER_OF_DUMMY_DATA; i++) {
+			facts.add(Atom.create(R, new Term[] { TypedConstant.create(i), TypedConstant.create("value, " + (i % 10)), TypedConstant.create(i / 4.0) }));
+			facts.add(Atom.create(S, new Term[] { TypedConstant.create("s" + i), UntypedConstant.create("k" + (1000 + i)) }));
+		}
+		// the equality relation is added to the database by the chase state, as in DatabaseChaseInstance.
+		Relation equality = Relation.create(QNames.EQUALITY.toString(),
+				new Attribute[] { Attribute.create(String.class, "x0"), Attribute.create(String.class, "x1") }, true);
+		facts.add(Atom.create(equality, new Term[] { UntypedConstant.create("k1001"), UntypedConstant.create("k1002") }));
+		facts.add(Atom.create(equality, new Term[] { UntypedConstant.create("k1002"), UntypedConstant.create("k1001") }));
+		DatabaseManager dbm = createConnection(s);
+		dbm.addRelation(equality);
+		dbm.addFacts(facts);
+		Collection<Atom> originalFacts = dbm.getCachedFacts();
+
+		File snapshot = File.createTempFile("StateExporterTest", ".snapshot");
+		try {
+			Assert.assertEquals(originalFacts.size(), new StateExporter(dbm).exportSnapshot(snapshot, true));
+			Assert.assertTrue(StateSnapshotReader.isSnapshot(snapshot));
+			DatabaseManager newDbm = createConnection(s);
+			newDbm.addRelation(equality);
+			Assert.assertEquals(originalFacts.size(), new StateExporter(newDbm).importSnapshot(snapshot, s));
+			Assert.assertEquals(originalFacts.size(), newDbm.getCachedFacts().size());
+			Assert.assertTrue(newDbm.getCachedFacts().containsAll(originalFacts));
+			Assert.assertEquals(2, newDbm.getCachedFacts().stream().filter(Atom::isEquality).count());
+			// the labelled nulls generated after the import are new ones.
+			Assert.assertTrue(GlobalCounterProvider.getNext("CannonicalName") > 1000 + NUMBER_OF_DUMMY_DATA);
+		} finally {
+			snapshot.delete();
+		}
+	}
+
 	/** This test will attempt to export the whole 1Gb tpch database into csv files.
 	 * @throws IOException
 	 * @throws DatabaseException
@@ -0,0 +1,101 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.databasemanagement;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.db.Match;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.EncodedMultiInstanceFactCache;
+
+/**
+ * Runs the tests of the internal database manager on dictionary encoded facts,
+ * and tests the deletion of encoded facts.
+ *
+ * @author Gabor
+ *
+ */
+public class TestEncodedInternalDatabaseManager extends TestInternalDatabaseManager {
+
+	@Override
+	protected InternalDatabaseManager createManager() throws DatabaseException {
+		return new InternalDatabaseManager(new EncodedMultiInstanceFactCache(), 1);
+	}
+
+	private List<Atom> createFacts(int from, int to) {
+		List<Atom> facts = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			facts.add(Atom.create(this.R, new Term[] { TypedConstant.create(i), TypedConstant.create(i % 10), UntypedConstant.create("c" + (i % 3)) }));
+		}
+		return facts;
+	}
+
+	/**
+	 * Deletes facts after the position indexes were used, then checks that the
+	 * queries and the facts agree with the remaining facts.
+	 */
+	@Test
+	public void testDeleteFacts() throws DatabaseException {
+		InternalDatabaseManager manager = createManager();
+		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R }));
+		manager.addFacts(createFacts(0, 1000));
+		ConjunctiveQuery query = ConjunctiveQuery.create(new Variable[] { x }, new Atom[] { Atom.create(this.R, new Term[] { x, TypedConstant.create(7), y }) });
+		Assert.assertEquals(100, manager.answerConjunctiveQuery(query).size());
+
+		// deletes every second fact, and one that is not there.
+		List<Atom> deleted = new ArrayList<>();
+		for (int i = 0; i < 1000; i += 2)
+			deleted.add(createFacts(i, i + 1).get(0));
+		deleted.add(Atom.create(this.R, new Term[] { TypedConstant.create(-1), TypedConstant.create(7), UntypedConstant.create("c0") }));
+		manager.deleteFacts(deleted);
+
+		Assert.assertEquals(500, manager.getCachedFacts().size());
+		List<Match> matches = manager.answerConjunctiveQuery(query);
+		Assert.assertEquals(100, matches.size());
+		for (Match match : matches)
+			Assert.assertEquals(1, ((Integer) ((TypedConstant) match.getMapping().get(x)).getValue()) % 2);
+		query = ConjunctiveQuery.create(new Variable[] { x }, new Atom[] { Atom.create(this.R, new Term[] { x, TypedConstant.create(8), y }) });
+		Assert.assertEquals(0, manager.answerConjunctiveQuery(query).size());
+
+		// the deleted facts can be added again.
+		manager.addFacts(deleted);
+		Assert.assertEquals(1001, new HashSet<>(manager.getCachedFacts()).size());
+		manager.dropDatabase();
+		Assert.assertEquals(0, manager.getCachedFacts().size());
+	}
+
+	/**
+	 * The clones share the dictionary but not the facts.
+	 */
+	@Test
+	public void testInstances() throws DatabaseException {
+		EncodedMultiInstanceFactCache cache = new EncodedMultiInstanceFactCache();
+		List<Atom> facts = createFacts(0, 100);
+		Assert.assertEquals(100, cache.addFacts(facts, 1).size());
+		Assert.assertEquals(100, cache.checkExistsInOtherInstances(facts, 1).size());
+
+		List<Atom> facts2 = createFacts(50, 150);
+		Assert.assertEquals(100, cache.addFacts(facts2, 2).size());
+		Assert.assertEquals(50, cache.checkExistsInOtherInstances(facts2, 2).size());
+		Assert.assertEquals(50, cache.deleteFactsAndListUnusedFacts(facts2, 2).size());
+		Assert.assertEquals(100, cache.getFacts(1).size());
+		Assert.assertEquals(0, cache.getFacts(2).size());
+		Assert.assertEquals(10, cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3), 1).size());
+		Assert.assertEquals(150 + 3, cache.getDictionary().size());
+	}
+}
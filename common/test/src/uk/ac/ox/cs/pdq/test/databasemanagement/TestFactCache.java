@@ -0,0 +1,76 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.databasemanagement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.FactCache;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests the hash based storage and the position indexes of the FactCache.
+ *
+ * @author Gabor
+ *
+ */
+public class TestFactCache extends PdqTest {
+
+	@Test
+	public void testAddContainsRemove() {
+		FactCache cache = new FactCache(1);
+		List<Atom> facts = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			facts.add(Atom.create(this.R, new Term[] { TypedConstant.create(i), TypedConstant.create(i % 10), TypedConstant.create(1) }));
+		}
+		Assert.assertEquals(1000, cache.addFacts(facts).size());
+		// duplicates are ignored
+		Assert.assertEquals(0, cache.addFacts(facts).size());
+		Assert.assertEquals(1000, cache.getFacts().size());
+		Assert.assertTrue(cache.containsFact(facts.get(500)));
+		Assert.assertEquals(Integer.valueOf(1000), cache.getStatistics().get(this.R.getName()));
+
+		Assert.assertTrue(cache.removeFacts(facts.subList(0, 500)));
+		Assert.assertFalse(cache.removeFacts(facts.subList(0, 500)));
+		Assert.assertFalse(cache.containsFact(facts.get(0)));
+		Assert.assertEquals(500, cache.contains(facts).size());
+		// insertion order is kept
+		Assert.assertEquals(facts.subList(500, 1000), cache.getFactsOfRelation(this.R.getName()));
+	}
+
+	@Test
+	public void testPositionIndex() {
+		FactCache cache = new FactCache(1);
+		List<Atom> facts = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			facts.add(Atom.create(this.R, new Term[] { TypedConstant.create(i), TypedConstant.create(i % 10), TypedConstant.create(1) }));
+		}
+		cache.addFacts(facts);
+		Assert.assertEquals(10, cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3)).size());
+		Assert.assertEquals(100, cache.getFactsOfRelation(this.R.getName(), 2, TypedConstant.create(1)).size());
+		Assert.assertTrue(cache.getFactsOfRelation(this.S.getName(), 0, TypedConstant.create(1)).isEmpty());
+
+		// the existing index has to follow the changes of the cache.
+		Atom newFact = Atom.create(this.R, new Term[] { TypedConstant.create(1000), TypedConstant.create(3), TypedConstant.create(2) });
+		cache.addFacts(Arrays.asList(newFact));
+		Collection<Atom> bound = cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3));
+		Assert.assertEquals(11, bound.size());
+		Assert.assertTrue(bound.contains(newFact));
+
+		cache.removeFacts(Arrays.asList(newFact, facts.get(3)));
+		Assert.assertEquals(9, cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3)).size());
+		Assert.assertEquals(99, cache.getFactsOfRelation(this.R.getName(), 2, TypedConstant.create(1)).size());
+
+		cache.clearCache();
+		Assert.assertTrue(cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3)).isEmpty());
+	}
+}
@@ -37,6 +37,13 @@ import uk.ac.ox.cs.pdq.test.util.PdqTest;
  */
 public class TestInternalDatabaseManager extends PdqTest {
 
+	/**
+	 * @return the manager the tests run on.
+	 */
+	protected InternalDatabaseManager createManager() throws DatabaseException {
+		return new InternalDatabaseManager();
+	}
+
 	/**
 	 * In this test: Left query: exists[x,y](R(x,y,z) & S(x,y)) Right
 	 * query:exists[x,y,z](R(x,y,z) & (S(x,y) & T(z,res1,res2)))
@@ -49,7 +56,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	 */
 	@Test
 	public void largeTableQueryDifferenceTGD() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R, S, T }));
 		List<Atom> facts = new ArrayList<>();
 
@@ -98,6 +105,54 @@ public class TestInternalDatabaseManager extends PdqTest {
 		Assert.assertEquals(TypedConstant.create(115), diffFacts.get(0).getMapping().get(Variable.create("z")));
 	}
 
+	/**
+	 * Same queries as above, but the S atom is only matched against the delta
+	 * facts.
+	 * 
+	 * @throws DatabaseException
+	 */
+	@Test
+	public void deltaQueryDifference() throws DatabaseException {
+		InternalDatabaseManager manager = createManager();
+		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R, S, T }));
+		// not active
+		Atom a1 = Atom.create(this.R, new Term[] { TypedConstant.create(13), TypedConstant.create(14), TypedConstant.create(15) });
+		Atom b1 = Atom.create(this.S, new Term[] { TypedConstant.create(13), TypedConstant.create(14) });
+		Atom c1 = Atom.create(this.T, new Term[] { TypedConstant.create(15), TypedConstant.create(16), TypedConstant.create(17) });
+		// active
+		Atom a2 = Atom.create(this.R, new Term[] { TypedConstant.create(113), TypedConstant.create(114), TypedConstant.create(115) });
+		Atom b2 = Atom.create(this.S, new Term[] { TypedConstant.create(113), TypedConstant.create(114) });
+		manager.addFacts(Arrays.asList(a1, b1, c1, a2, b2));
+
+		Atom q1 = Atom.create(this.R, new Term[] { Variable.create("x"), Variable.create("y"), Variable.create("z") });
+		Atom q2 = Atom.create(this.S, new Term[] { Variable.create("x"), Variable.create("y") });
+		Atom q3 = Atom.create(this.T, new Term[] { Variable.create("z"), Variable.create("res1"), Variable.create("res2") });
+		ConjunctiveQuery left = ConjunctiveQuery.create(new Variable[] { z }, new Atom[] {q1, q2});
+		ConjunctiveQuery right = ConjunctiveQuery.create(new Variable[] { Variable.create("res1"), Variable.create("res2") }, new Atom[] {q1, q2, q3});
+
+		int deltaID = manager.addDeltaFacts(Arrays.asList(b2));
+		List<Match> diffFacts = manager.answerQueryDifferences(left, right, q2, deltaID);
+		Assert.assertEquals(1, diffFacts.size());
+		Assert.assertEquals(TypedConstant.create(115), diffFacts.get(0).getMapping().get(Variable.create("z")));
+		manager.removeDeltaFacts(deltaID);
+
+		deltaID = manager.addDeltaFacts(Arrays.asList(b1));
+		Assert.assertEquals(0, manager.answerQueryDifferences(left, right, q2, deltaID).size());
+		manager.removeDeltaFacts(deltaID);
+
+		// each delta has its own id, and stays until it is removed.
+		int deltaID1 = manager.addDeltaFacts(Arrays.asList(b2));
+		int deltaID2 = manager.addDeltaFacts(Arrays.asList(b1));
+		Assert.assertNotEquals(deltaID1, deltaID2);
+		Assert.assertEquals(1, manager.answerQueryDifferences(left, right, q2, deltaID1).size());
+		Assert.assertEquals(0, manager.answerQueryDifferences(left, right, q2, deltaID2).size());
+		manager.removeDeltaFacts(deltaID2);
+		Assert.assertEquals(1, manager.answerQueryDifferences(left, right, q2, deltaID1).size());
+		manager.removeDeltaFacts(deltaID1);
+		// the delta facts are not facts of the instance.
+		Assert.assertEquals(5, manager.getCachedFacts().size());
+	}
+
 	/**
 	 * In this test: Left query: exists[x,y](R(x,y,z) & S(x,y)) Right
 	 * query:exists[x,y,z,res2](R(x,y,z) & (S(x,y) & T(res1,res2,z)))
@@ -110,7 +165,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	 */
 	@Test
 	public void largeTableQueryDifferenceEGD() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R, S, T }));
 		List<Atom> facts = new ArrayList<>();
 
@@ -175,7 +230,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	 */
 	@Test
 	public void largeTableTest() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R, S, T }));
 		List<Atom> facts = new ArrayList<>();
 		for (int i = 0; i < 100; i++) {
@@ -249,7 +304,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	 */
 	@Test
 	public void largeTableTestWithConstantsInQuery() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		Relation R = Relation.create("R", new Attribute[] { a_s, b_s, c_s }, new AccessMethodDescriptor[] { this.method0, this.method2 });
 		Relation S = Relation.create("S", new Attribute[] { b_s, c_s }, new AccessMethodDescriptor[] { this.method0, this.method1, this.method2 });
 		Relation T = Relation.create("T", new Attribute[] { b_s, c_s, d_s }, new AccessMethodDescriptor[] { this.method0, this.method1, this.method2 });
@@ -311,7 +366,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	
 	@Test
 	public void testQuery() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R }));
 		List<Atom> facts = new ArrayList<>();
 
@@ -342,7 +397,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	
 	@Test
 	public void testQuerySelfEquality() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R }));
 		List<Atom> facts = new ArrayList<>();
 
@@ -372,7 +427,7 @@ public class TestInternalDatabaseManager extends PdqTest {
 	}
 	@Test
 	public void testQueryInEquality() throws DatabaseException {
-		InternalDatabaseManager manager = new InternalDatabaseManager();
+		InternalDatabaseManager manager = createManager();
 		manager.initialiseDatabaseForSchema(new Schema(new Relation[] { R }));
 		List<Atom> facts = new ArrayList<>();
 
@@ -0,0 +1,144 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.databasemanagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.MultiInstanceFactCache;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests how the MultiInstanceFactCache tracks the facts shared by many
+ * instances.
+ *
+ * @author Gabor
+ *
+ */
+public class TestMultiInstanceFactCache extends PdqTest {
+
+	private List<Atom> createFacts(int from, int to) {
+		List<Atom> facts = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			facts.add(Atom.create(this.R, new Term[] { TypedConstant.create(i), TypedConstant.create(i % 10), TypedConstant.create(1) }));
+		}
+		return facts;
+	}
+
+	@Test
+	public void testCheckExistsInOtherInstances() {
+		MultiInstanceFactCache cache = new MultiInstanceFactCache();
+		List<Atom> facts = createFacts(0, 100);
+		Assert.assertEquals(100, cache.addFacts(facts, 1).size());
+		Assert.assertEquals(100, cache.checkExistsInOtherInstances(facts, 1).size());
+
+		// half of the facts are shared with instance 1
+		List<Atom> facts2 = createFacts(50, 150);
+		Assert.assertEquals(100, cache.addFacts(facts2, 2).size());
+		Assert.assertEquals(50, cache.checkExistsInOtherInstances(facts2, 2).size());
+		Assert.assertEquals(50, cache.checkExistsInOtherInstances(facts, 1).size());
+		// an instance without facts sees all facts of the others
+		Assert.assertEquals(50, cache.checkExistsInOtherInstances(createFacts(100, 200), 3).size());
+
+		// adding the same facts again does not change the counts
+		Assert.assertEquals(0, cache.addFacts(facts2, 2).size());
+		cache.clearCache(2);
+		Assert.assertEquals(100, cache.checkExistsInOtherInstances(facts, 1).size());
+	}
+
+	@Test
+	public void testDeleteFactsAndListUnusedFacts() {
+		MultiInstanceFactCache cache = new MultiInstanceFactCache();
+		List<Atom> facts = createFacts(0, 10);
+		for (int instance = 1; instance <= 3; instance++) {
+			cache.addFacts(facts, instance);
+		}
+		Assert.assertTrue(cache.deleteFactsAndListUnusedFacts(facts.subList(0, 5), 1).isEmpty());
+		Assert.assertTrue(cache.deleteFactsAndListUnusedFacts(facts.subList(0, 5), 2).isEmpty());
+		// deleting again from the same instance does not release the facts
+		Assert.assertTrue(cache.deleteFactsAndListUnusedFacts(facts.subList(0, 5), 2).isEmpty());
+		Assert.assertEquals(facts.subList(0, 5), cache.deleteFactsAndListUnusedFacts(facts.subList(0, 5), 3));
+		Assert.assertEquals(facts.subList(0, 5), cache.checkExistsInOtherInstances(facts.subList(0, 6), 1));
+		Assert.assertEquals(5, cache.getFacts(3).size());
+	}
+
+	/**
+	 * The copies of an instance share its facts until they are updated.
+	 */
+	@Test
+	public void testCopyInstance() {
+		MultiInstanceFactCache cache = new MultiInstanceFactCache();
+		List<Atom> facts = createFacts(0, 100);
+		cache.addFacts(facts, 1);
+		cache.copyInstance(1, 2);
+		cache.copyInstance(1, 3);
+		Assert.assertEquals(100, cache.getFacts(2).size());
+		Assert.assertEquals(10, cache.getFactsOfRelation(this.R.getName(), 1, TypedConstant.create(3), 3).size());
+		// the facts of a shared instance are held by the other instances
+		Assert.assertTrue(cache.checkExistsInOtherInstances(facts, 1).isEmpty());
+		// adding facts that are there already does not copy the instance
+		Assert.assertTrue(cache.addFacts(facts.subList(0, 10), 2).isEmpty());
+
+		Assert.assertEquals(50, cache.addFacts(createFacts(50, 150), 2).size());
+		Assert.assertEquals(150, cache.getFacts(2).size());
+		Assert.assertEquals(100, cache.getFacts(1).size());
+		Assert.assertEquals(100, cache.getFacts(3).size());
+		Assert.assertEquals(50, cache.checkExistsInOtherInstances(createFacts(50, 150), 2).size());
+
+		Assert.assertTrue(cache.deleteFacts(facts.subList(0, 10), 1));
+		Assert.assertEquals(90, cache.getFacts(1).size());
+		Assert.assertEquals(100, cache.getFacts(3).size());
+		// instance 2 still holds the deleted facts
+		Assert.assertTrue(cache.checkExistsInOtherInstances(facts.subList(0, 10), 3).isEmpty());
+		cache.clearCache(3);
+		Assert.assertTrue(cache.getFacts(3).isEmpty());
+		Assert.assertEquals(facts.subList(0, 10), cache.deleteFactsAndListUnusedFacts(facts.subList(0, 10), 2));
+	}
+
+	/**
+	 * Copies an instance while facts are added to it. A copy keeps the facts
+	 * the instance had when it was copied.
+	 */
+	@Test
+	public void testConcurrentCopyInstance() throws Exception {
+		MultiInstanceFactCache cache = new MultiInstanceFactCache();
+		cache.addFacts(createFacts(0, 100), 1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			tasks.add(executor.submit(() -> {
+				for (int i = 100; i < 600; i += 10)
+					cache.addFacts(createFacts(i, i + 10), 1);
+			}));
+			List<Future<Integer>> copies = new ArrayList<>();
+			for (int target = 2; target < 50; target++) {
+				int targetId = target;
+				copies.add(executor.submit(() -> {
+					cache.copyInstance(1, targetId);
+					return cache.getFacts(targetId).size();
+				}));
+			}
+			for (Future<?> task : tasks)
+				task.get();
+			for (int target = 2; target < 50; target++)
+				Assert.assertEquals(copies.get(target - 2).get().intValue(), cache.getFacts(target).size());
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(600, cache.getFacts(1).size());
+		for (int target = 2; target < 50; target++)
+			cache.clearCache(target);
+		// no other instance holds the facts
+		Assert.assertEquals(600, cache.checkExistsInOtherInstances(cache.getFacts(1), 1).size());
+	}
+}
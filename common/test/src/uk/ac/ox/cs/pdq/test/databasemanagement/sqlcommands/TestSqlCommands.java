@@ -10,6 +10,9 @@ import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
 import uk.ac.ox.cs.pdq.db.Relation;
 import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
 import uk.ac.ox.cs.pdq.fol.Atom;
@@ -17,12 +20,15 @@ import uk.ac.ox.cs.pdq.fol.TypedConstant;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.BasicSelect;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.BulkInsert;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Command;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CopyInsert;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateDatabase;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateIndex;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.CreateTable;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Delete;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.DifferenceQuery;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.DropDatabase;
 import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.Insert;
+import uk.ac.ox.cs.pdq.reasoningdatabase.sqlcommands.PreparedInsert;
 import uk.ac.ox.cs.pdq.test.util.PdqTest;
 
 /** This class has a test case for each command object in the sqlcommands package.
@@ -104,6 +110,19 @@ public class TestSqlCommands extends PdqTest {
 		Assert.assertTrue(cr.toPostgresStatement(databaseNameKeyWord ).get(0).contains(databaseNameKeyWord));
 	}
 	@Test
+	public void testCreateIndex() throws DatabaseException {
+		Multimap<Relation, List<String>> indices = LinkedHashMultimap.create();
+		indices.put(R, Arrays.asList(R.getAttribute(0).getName()));
+		indices.put(R, Arrays.asList(R.getAttribute(0).getName(), R.getAttribute(1).getName()));
+		indices.put(S, Arrays.asList(S.getAttribute(1).getName()));
+		List<String> st = new CreateIndex(indices).toPostgresStatement(databaseNameKeyWord);
+		Assert.assertEquals(3, st.size());
+		Assert.assertEquals("CREATE INDEX R_Index1 ON " + databaseNameKeyWord + ".R (" + R.getAttribute(0).getName() + ");", st.get(0));
+		Assert.assertEquals("CREATE INDEX R_Index2 ON " + databaseNameKeyWord + ".R (" + R.getAttribute(0).getName() + ","
+				+ R.getAttribute(1).getName() + ");", st.get(1));
+		Assert.assertTrue(st.get(2).startsWith("CREATE INDEX S_Index1 ON " + databaseNameKeyWord + ".S ("));
+	}
+	@Test
 	public void testDelete() throws DatabaseException {
 		Delete d = new Delete(Atom.create(getScenario1().getSchema().getRelation(0), TypedConstant.create(123), TypedConstant.create(223),
 				TypedConstant.create(323)),getScenario1().getSchema());
@@ -158,4 +177,38 @@ public class TestSqlCommands extends PdqTest {
 			Assert.assertTrue(st.get(0).contains("323"));
 		}
 	}
+	@Test
+	public void testPreparedInsert() throws DatabaseException {
+		TestScenario sc = getScenario1();
+		PreparedInsert pi = new PreparedInsert(sc.getExampleAtoms1(),sc.getSchema());
+		List<String> st = pi.toPostgresStatement(databaseNameKeyWord);
+		Assert.assertEquals(3, st.size());
+		int rows = 0;
+		for (int index = 0; index < st.size(); index++) {
+			Assert.assertTrue(st.get(index).startsWith("INSERT INTO " + databaseNameKeyWord + "."));
+			Assert.assertTrue(st.get(index).endsWith("VALUES (?,?,?)"));
+			for (String[] row : pi.getRows(index)) {
+				Assert.assertEquals(3, row.length);
+				// no quotes around the values
+				Assert.assertFalse(row[0].startsWith("'"));
+			}
+			rows += pi.getRows(index).size();
+		}
+		Assert.assertEquals(sc.getExampleAtoms1().size(), rows);
+	}
+	@Test
+	public void testCopyInsert() throws DatabaseException {
+		TestScenario sc = getScenario1();
+		CopyInsert ci = new CopyInsert(sc.getExampleAtoms1(),sc.getSchema());
+		List<String> st = ci.toPostgresStatement(databaseNameKeyWord);
+		Assert.assertEquals(3, st.size());
+		Assert.assertTrue(st.get(0).startsWith("COPY " + databaseNameKeyWord + "."));
+		Assert.assertTrue(st.get(0).endsWith(" FROM STDIN"));
+
+		StringBuilder data = new StringBuilder();
+		// tabs, line breaks and backslashes in the values are escaped.
+		CopyInsert.appendCopyRow(data, new String[] {"a'b", "c\td", "e\\f\ng"});
+		CopyInsert.appendCopyRow(data, new String[] {"1"});
+		Assert.assertEquals("a'b\tc\\td\te\\\\f\\ng\n1\n", data.toString());
+	}
 }
@@ -9,6 +9,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -381,4 +384,29 @@ public class AtomTest {
 		Atom p = Atom.create(s, t);
 		Assert.assertFalse("Fact terms must contain schema constants only", p.isGround());
 	}
+
+	// Creates the same atoms from several threads, all of them have to get the same instances.
+	@Test public void testConcurrentCreate() throws Exception {
+		final int threads = 8, n = 5000;
+		final Predicate s = Predicate.create("s", 2);
+		final Atom[][] created = new Atom[threads][n];
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < threads; thread++) {
+			final int id = thread;
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < n; i++) {
+					int k = (i + id * 997) % n;
+					created[id][k] = Atom.create(s, TypedConstant.create(k), UntypedConstant.create("c" + k));
+				}
+			}));
+		}
+		for (Future<?> future : futures)
+			future.get();
+		executor.shutdown();
+		for (int i = 0; i < n; i++) {
+			for (int thread = 1; thread < threads; thread++)
+				Assert.assertSame(created[0][i], created[thread][i]);
+		}
+	}
 }
@@ -0,0 +1,113 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.io.CsvImporter;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+
+/**
+ * Tests the CsvImporter, splitting the files into many small chunks.
+ *
+ * @author Gabor
+ *
+ */
+public class CsvImporterTest {
+
+	private static final int NUMBER_OF_LINES = 10000;
+
+	private File csvFile;
+
+	@Before
+	public void setup() throws IOException {
+		this.csvFile = File.createTempFile("CsvImporterTest", ".csv");
+		try (FileWriter writer = new FileWriter(this.csvFile)) {
+			for (int line = 0; line < NUMBER_OF_LINES; line++) {
+				// mixed line endings, and an empty line.
+				writer.write(line + ",value" + (line % 10) + (line % 2 == 0 ? "\r\n" : "\n"));
+				if (line == 500)
+					writer.write("\n");
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		this.csvFile.delete();
+	}
+
+	private CsvImporter<String> createImporter(AtomicInteger parsed) {
+		CsvImporter<String> importer = new CsvImporter<>((column, cell) -> {
+			parsed.incrementAndGet();
+			return column == 0 ? Integer.valueOf(cell) : cell;
+		}, values -> Arrays.toString(values));
+		importer.setChunkSize(1024);
+		importer.setBatchSize(100);
+		importer.setQueueCapacity(2);
+		importer.setParallelism(4);
+		return importer;
+	}
+
+	@Test
+	public void testParallelImport() throws IOException {
+		AtomicInteger parsed = new AtomicInteger();
+		Set<String> records = new HashSet<>();
+		Assert.assertEquals(NUMBER_OF_LINES, this.createImporter(parsed).importFile(this.csvFile, records));
+		Assert.assertEquals(NUMBER_OF_LINES, records.size());
+		Assert.assertTrue(records.contains("[0, value0]"));
+		Assert.assertTrue(records.contains("[" + (NUMBER_OF_LINES - 1) + ", value9]"));
+		// The second column has ten values, parsed once per chunk.
+		Assert.assertTrue(parsed.get() < 2 * NUMBER_OF_LINES);
+	}
+
+	@Test
+	public void testConsumerFailure() throws IOException {
+		CsvImporter<String> importer = this.createImporter(new AtomicInteger());
+		AtomicInteger batches = new AtomicInteger();
+		try {
+			importer.importFile(this.csvFile, batch -> {
+				if (batches.incrementAndGet() == 3)
+					throw new DatabaseException("Failed to store the batch");
+			});
+			Assert.fail();
+		} catch (DatabaseException e) {
+			Assert.assertEquals(3, batches.get());
+		}
+	}
+
+	@Test
+	public void testImportFacts() throws IOException, DatabaseException {
+		Relation relation = Relation.create("R",
+				new Attribute[] { Attribute.create(Integer.class, "a"), Attribute.create(String.class, "b") });
+		Set<Atom> facts = new HashSet<>();
+		for (int index = 0; index < 5000; index++)
+			facts.add(Atom.create(relation, TypedConstant.create(index), TypedConstant.create("value" + (index % 7))));
+		File folder = this.csvFile.getParentFile();
+		File exported = IOManager.exportFacts("CsvImporterTest", folder, facts);
+		try {
+			Collection<Atom> imported = IOManager.importFacts(relation, exported, null, false);
+			Assert.assertEquals(facts, new HashSet<>(imported));
+		} finally {
+			exported.delete();
+		}
+	}
+}
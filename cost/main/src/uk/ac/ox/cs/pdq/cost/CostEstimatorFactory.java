@@ -4,12 +4,21 @@
 package uk.ac.ox.cs.pdq.cost;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.SQLException;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 import uk.ac.ox.cs.pdq.cost.CostParameters.CostTypes;
 import uk.ac.ox.cs.pdq.cost.estimators.CardinalityEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.CardinalityMetadataStore;
 import uk.ac.ox.cs.pdq.cost.estimators.CostEstimator;
 import uk.ac.ox.cs.pdq.cost.estimators.CountNumberOfAccessedRelationsCostEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.ExplainCostCache;
 import uk.ac.ox.cs.pdq.cost.estimators.FixedCostPerAccessCostEstimator;
 import uk.ac.ox.cs.pdq.cost.estimators.LengthBasedCostEstimator;
 import uk.ac.ox.cs.pdq.cost.estimators.NaiveCardinalityEstimator;
@@ -92,7 +101,9 @@ public class CostEstimatorFactory {
 			CardinalityEstimator card = null;
 			switch (costParams.getCardinalityEstimationType()) {
 			case NAIVE:
-				card = new NaiveCardinalityEstimator(catalog);
+				card = new NaiveCardinalityEstimator(catalog, costParams.getCardinalityCacheSize() != null
+						? new CardinalityMetadataStore(costParams.getCardinalityCacheSize())
+						: new CardinalityMetadataStore());
 				break;
 			default:
 				throw new IllegalArgumentException("Cardinality estimation " + costParams.getCardinalityEstimationType() + "  not yet supported.");
@@ -110,7 +121,11 @@ public class CostEstimatorFactory {
 				dbParams.setUseInternalDatabaseManager(false);
 				DatabaseManager dbm = new ExternalDatabaseManager(dbParams);
 				dbm.initialiseDatabaseForSchema(schema);
-				result = new QueryExplainCostEstimator(dbm);
+				ExplainCostCache cache = null;
+				if (costParams.getBlackBoxExplainCache() != null)
+					cache = new ExplainCostCache(new File(costParams.getBlackBoxExplainCache()), getFingerprint(costParams, schema));
+				result = new QueryExplainCostEstimator(dbm, QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES,
+						!Boolean.FALSE.equals(costParams.getBlackBoxBatchExplain()), cache);
 			} catch (DatabaseException e) {
 				e.printStackTrace();
 				throw new UnsupportedOperationException("BLACKBOX_DB cost estimator is not currently supported.",e);
@@ -133,4 +148,23 @@ public class CostEstimatorFactory {
 		}
 		return result;
 	}
+
+	/**
+	 * Fingerprint of the explained costs: a hash of the schema, the catalog and
+	 * the database they were explained on.
+	 */
+	private static String getFingerprint(CostParameters costParams, Schema schema) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(schema.toString(), StandardCharsets.UTF_8);
+		hasher.putString(String.valueOf(costParams.getBlackBoxConnectionUrl()), StandardCharsets.UTF_8);
+		hasher.putString(String.valueOf(costParams.getBlackBoxDatabaseName()), StandardCharsets.UTF_8);
+		if (costParams.getCatalog() != null) {
+			try {
+				hasher.putBytes(Files.readAllBytes(new File(costParams.getCatalog()).toPath()));
+			} catch (IOException e) {
+				hasher.putString(costParams.getCatalog(), StandardCharsets.UTF_8);
+			}
+		}
+		return hasher.hash().toString();
+	}
 }
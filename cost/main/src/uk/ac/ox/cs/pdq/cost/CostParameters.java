@@ -50,6 +50,18 @@ public class CostParameters extends uk.ac.ox.cs.pdq.Parameters {
 	@Parameter(description="Password for the database used by the BLACKBOX_DB "
 			+ "cost estimator (required if the cost_type=BLACKBOX_DB)")
 	protected String blackBoxDatabasePassword;
+
+	/** The black box batch explain. */
+	@Parameter(description="If true, the BLACKBOX_DB cost estimator explains the "
+			+ "queries costed at the same time by several planner threads together.",
+			defaultValue = "true")
+	protected Boolean blackBoxBatchExplain = true;
+
+	/** The black box explain cache. */
+	@Parameter(description="File which keeps the costs explained by the database of "
+			+ "the BLACKBOX_DB cost estimator between planner runs on the same schema and catalog. "
+			+ "The costs are not kept if this is not set.")
+	protected String blackBoxExplainCache;
 	
 	/** The cost type. */
 	@Parameter(description="Type of cost estimation to use. This has an "
@@ -68,6 +80,19 @@ public class CostParameters extends uk.ac.ox.cs.pdq.Parameters {
 	@Parameter(description="File which stores the database metadata ")
 	protected String catalog;
 
+	/** The cost cache size. */
+	@Parameter(description="Maximum number of plan costs cached by the DAG planners, "
+			+ "so that the same plan is costed once. 0 disables the cache.",
+			defaultValue = "10000")
+	protected Integer costCacheSize = 10000;
+
+	/** The cardinality metadata store size. */
+	@Parameter(description="Maximum number of subplans whose estimated cardinalities are kept "
+			+ "by the cardinality estimator. The estimations of the subplans no longer used "
+			+ "by the planner are dropped regardless.",
+			defaultValue = "100000")
+	protected Integer cardinalityCacheSize = 100000;
+
 	/**  Properties file name. */
 	static final String DEFAULT_CONFIG_FILE_NAME = "pdq-cost.properties";
 
@@ -233,6 +258,42 @@ public class CostParameters extends uk.ac.ox.cs.pdq.Parameters {
 		this.blackBoxDatabaseUser = databaseUser;
 	}
 	
+	/**
+	 * Gets the black box batch explain.
+	 *
+	 * @return Boolean
+	 */
+	public Boolean getBlackBoxBatchExplain() {
+		return this.blackBoxBatchExplain;
+	}
+
+	/**
+	 * Sets the black box batch explain.
+	 *
+	 * @param batchExplain Boolean
+	 */
+	public void setBlackBoxBatchExplain(Boolean batchExplain) {
+		this.blackBoxBatchExplain = batchExplain;
+	}
+
+	/**
+	 * Gets the black box explain cache file.
+	 *
+	 * @return String
+	 */
+	public String getBlackBoxExplainCache() {
+		return this.blackBoxExplainCache;
+	}
+
+	/**
+	 * Sets the black box explain cache file.
+	 *
+	 * @param explainCache String
+	 */
+	public void setBlackBoxExplainCache(String explainCache) {
+		this.blackBoxExplainCache = explainCache;
+	}
+
 	/**
 	 * Sets the catalog.
 	 *
@@ -250,6 +311,42 @@ public class CostParameters extends uk.ac.ox.cs.pdq.Parameters {
 	public String getCatalog() {
 		return this.catalog;
 	}
+
+	/**
+	 * Gets the maximum number of cached plan costs.
+	 *
+	 * @return Integer
+	 */
+	public Integer getCostCacheSize() {
+		return this.costCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of cached plan costs, 0 disables the cache.
+	 *
+	 * @param costCacheSize Number
+	 */
+	public void setCostCacheSize(Number costCacheSize) {
+		this.costCacheSize = costCacheSize != null ? costCacheSize.intValue() : null;
+	}
+
+	/**
+	 * Gets the maximum number of subplans with estimated cardinalities.
+	 *
+	 * @return Integer
+	 */
+	public Integer getCardinalityCacheSize() {
+		return this.cardinalityCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of subplans with estimated cardinalities.
+	 *
+	 * @param cardinalityCacheSize Number
+	 */
+	public void setCardinalityCacheSize(Number cardinalityCacheSize) {
+		this.cardinalityCacheSize = cardinalityCacheSize != null ? cardinalityCacheSize.intValue() : null;
+	}
 	
 	/**
 	 * 
@@ -0,0 +1,110 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.cost.estimators;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+import uk.ac.ox.cs.pdq.cost.Cost;
+
+/**
+ * Wraps a cost estimator with a size bounded cache of plan costs. The relational
+ * terms are hash-consed, so the same subplan is the same key whichever explorer
+ * step builds it, and its cost is estimated once: e.g. the DAG explorers cost
+ * the join plan of a pair of configurations both when checking whether it can
+ * beat the best plan and after creating the binary configuration.
+ *
+ * The cache is thread safe, and it is shared by the clones of the estimator.
+ * Once the cache holds the maximum number of plans, the least recently used
+ * ones are evicted.
+ *
+ * @author Gabor
+ *
+ */
+public class CachedCostEstimator implements CostEstimator {
+
+	private final CostEstimator costEstimator;
+
+	private final long maximumSize;
+
+	private final Cache<RelationalTerm, Cost> cache;
+
+	/**
+	 * @param costEstimator
+	 *            the estimator of the plans that are not cached.
+	 * @param maximumSize
+	 *            maximum number of plans held by the cache.
+	 */
+	public CachedCostEstimator(CostEstimator costEstimator, long maximumSize) {
+		Preconditions.checkArgument(maximumSize > 0, "The maximum size of the cache must be positive");
+		this.costEstimator = costEstimator;
+		this.maximumSize = maximumSize;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	private CachedCostEstimator(CostEstimator costEstimator, long maximumSize, Cache<RelationalTerm, Cost> cache) {
+		this.costEstimator = costEstimator;
+		this.maximumSize = maximumSize;
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the cached cost of the plan, or estimates and caches it. Null
+	 * costs are not cached.
+	 */
+	@Override
+	public Cost cost(RelationalTerm plan) {
+		Cost cost = this.cache.getIfPresent(plan);
+		if (cost == null) {
+			cost = this.costEstimator.cost(plan);
+			if (cost != null)
+				this.cache.put(plan, cost);
+		}
+		return cost;
+	}
+
+	/**
+	 * The clone wraps a clone of the underlying estimator, and shares the cache
+	 * of this estimator.
+	 */
+	@Override
+	public CachedCostEstimator clone() {
+		return new CachedCostEstimator(this.costEstimator.clone(), this.maximumSize, this.cache);
+	}
+
+	public CostEstimator getCostEstimator() {
+		return this.costEstimator;
+	}
+
+	public long getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	/**
+	 * @return the number of plans that are cached.
+	 */
+	public long size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * @return the number of costs answered from the cache.
+	 */
+	public long getHitCount() {
+		return this.cache.stats().hitCount();
+	}
+
+	/**
+	 * @return the number of costs that had to be estimated.
+	 */
+	public long getMissCount() {
+		return this.cache.stats().missCount();
+	}
+
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+}
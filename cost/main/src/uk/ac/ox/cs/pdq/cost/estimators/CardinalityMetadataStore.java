@@ -0,0 +1,128 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.cost.estimators;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+
+/**
+ * Thread safe store of the cardinality metadata of the relational terms,
+ * shared by the clones of a cardinality estimator, so that the threads of the
+ * multi-threaded planners estimate a subplan once.
+ *
+ * The relational terms are hash-consed in a weak cache, so a subplan is the
+ * same object for as long as a configuration (or a plan being costed) refers
+ * to it. The store holds its terms weakly, the metadata of a subplan is
+ * dropped once nothing else refers to the subplan. A maximum size bounds the
+ * store on top of that, the least recently used entries are evicted first;
+ * it should be well above the number of operators of the largest plan.
+ *
+ * @author Gabor
+ *
+ */
+public class CardinalityMetadataStore {
+
+	/** Size of the store when it is not given. */
+	public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+
+	private final long maximumSize;
+
+	private final Cache<RelationalTerm, RelationalTermCardinalityMetadata> cache;
+
+	public CardinalityMetadataStore() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize
+	 *            maximum number of terms held by the store.
+	 */
+	public CardinalityMetadataStore(long maximumSize) {
+		Preconditions.checkArgument(maximumSize > 0, "The maximum size of the store must be positive");
+		this.maximumSize = maximumSize;
+		this.cache = CacheBuilder.newBuilder().weakKeys().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 * Returns the metadata of the term, creating it with the given function if
+	 * the store does not have it. Concurrent calls for the same term get the
+	 * same metadata.
+	 */
+	public RelationalTermCardinalityMetadata get(RelationalTerm term,
+			Function<RelationalTerm, ? extends RelationalTermCardinalityMetadata> initialiser) {
+		try {
+			return this.cache.get(term, () -> initialiser.apply(term));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Failed to create the metadata of " + term, e.getCause());
+		}
+	}
+
+	/**
+	 * @return the metadata of the term, or null if the store does not have it.
+	 */
+	public RelationalTermCardinalityMetadata getIfPresent(RelationalTerm term) {
+		return this.cache.getIfPresent(term);
+	}
+
+	public long getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	/**
+	 * @return the number of terms in the store, including the collected ones
+	 *         that are not cleaned up yet.
+	 */
+	public long size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * @return the number of metadata found in the store.
+	 */
+	public long getHitCount() {
+		return this.cache.stats().hitCount();
+	}
+
+	/**
+	 * @return the number of metadata that had to be created.
+	 */
+	public long getMissCount() {
+		return this.cache.stats().missCount();
+	}
+
+	/**
+	 * @return the ratio of the requests found in the store, 1.0 if there were no
+	 *         requests.
+	 */
+	public double getHitRate() {
+		return this.cache.stats().hitRate();
+	}
+
+	/**
+	 * @return the number of entries evicted because of the size bound or
+	 *         because their term was garbage collected.
+	 */
+	public long getEvictionCount() {
+		return this.cache.stats().evictionCount();
+	}
+
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "(size: " + this.size() + ", hits: " + this.getHitCount()
+				+ ", misses: " + this.getMissCount() + ")";
+	}
+}
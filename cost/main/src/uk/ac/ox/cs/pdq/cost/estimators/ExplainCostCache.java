@@ -0,0 +1,168 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.cost.estimators;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.Variable;
+
+/**
+ * A cache of the costs explained by the database, that is kept in a file so
+ * that it survives between planner runs. The queries are normalised by
+ * renaming their variables in the order of their first occurrence, so the
+ * same query gets the same key whatever variable names the planner generated.
+ *
+ * The first line of the file is a fingerprint of the schema, catalog and
+ * database the costs were explained on. A file with a different fingerprint
+ * is ignored, and overwritten by the costs of the new runs. Each further line
+ * holds a cost and a normalised query, separated by a tab.
+ *
+ * @author Gabor
+ *
+ */
+public class ExplainCostCache {
+	protected static Logger log = Logger.getLogger(ExplainCostCache.class);
+
+	private static final String HEADER = "# ";
+
+	private final File file;
+
+	private final String fingerprint;
+
+	private final Map<String, Double> costs = new ConcurrentHashMap<>();
+
+	/** True once the header of the file matches the fingerprint. */
+	private boolean fileValid = false;
+
+	/**
+	 * Loads the costs of the file, if it exists and was written with the same
+	 * fingerprint.
+	 *
+	 * @param file
+	 *            the file holding the costs.
+	 * @param fingerprint
+	 *            identifies the schema, catalog and database of the costs, must
+	 *            not contain line breaks.
+	 */
+	public ExplainCostCache(File file, String fingerprint) {
+		this.file = file;
+		this.fingerprint = fingerprint;
+		if (file.isFile()) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String line = reader.readLine();
+				if (line != null && line.equals(HEADER + fingerprint)) {
+					this.fileValid = true;
+					while ((line = reader.readLine()) != null) {
+						int separator = line.indexOf('\t');
+						if (separator > 0)
+							this.costs.put(line.substring(separator + 1), Double.valueOf(line.substring(0, separator)));
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				log.warn("Failed to read the explain cost cache " + file + ", starting with an empty cache.", e);
+				this.costs.clear();
+				this.fileValid = false;
+			}
+		}
+	}
+
+	/**
+	 * @param query
+	 *            a normalised query, see normalise.
+	 * @return the cached cost of the query, or null if it is not cached.
+	 */
+	public Double get(String query) {
+		return this.costs.get(query);
+	}
+
+	/**
+	 * Adds the costs of the normalised queries to the cache, and appends the new
+	 * ones to the file.
+	 */
+	public synchronized void putAll(Map<String, Double> costs) {
+		Map<String, Double> added = new HashMap<>();
+		for (Map.Entry<String, Double> entry : costs.entrySet())
+			if (this.costs.putIfAbsent(entry.getKey(), entry.getValue()) == null)
+				added.put(entry.getKey(), entry.getValue());
+		if (added.isEmpty())
+			return;
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.file, this.fileValid), StandardCharsets.UTF_8)) {
+			if (!this.fileValid) {
+				// a new or outdated file, it is written again from scratch.
+				writer.write(HEADER + this.fingerprint + "\n");
+				for (Map.Entry<String, Double> entry : this.costs.entrySet())
+					writer.write(entry.getValue() + "\t" + entry.getKey() + "\n");
+				this.fileValid = true;
+			} else {
+				for (Map.Entry<String, Double> entry : added.entrySet())
+					writer.write(entry.getValue() + "\t" + entry.getKey() + "\n");
+			}
+		} catch (IOException e) {
+			log.warn("Failed to write the explain cost cache " + this.file, e);
+		}
+	}
+
+	/**
+	 * @return the number of cached costs.
+	 */
+	public int size() {
+		return this.costs.size();
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Normalises the query: the variables are renamed to ?x0, ?x1, ... in the
+	 * order of their first occurrence, the free variables first.
+	 *
+	 * @param cq
+	 * @return the normalised query, as a single line.
+	 */
+	public static String normalise(ConjunctiveQuery cq) {
+		Map<Variable, String> names = new HashMap<>();
+		StringBuilder result = new StringBuilder("(");
+		Variable[] free = cq.getFreeVariables();
+		for (int index = 0; index < free.length; index++) {
+			if (index > 0)
+				result.append(',');
+			result.append(names.computeIfAbsent(free[index], v -> "?x" + names.size()));
+		}
+		result.append(") :- ");
+		Atom[] atoms = cq.getAtoms();
+		for (int index = 0; index < atoms.length; index++) {
+			if (index > 0)
+				result.append(" & ");
+			result.append(atoms[index].getPredicate().getName()).append('(');
+			Term[] terms = atoms[index].getTerms();
+			for (int position = 0; position < terms.length; position++) {
+				if (position > 0)
+					result.append(',');
+				if (terms[position] instanceof Variable)
+					result.append(names.computeIfAbsent((Variable) terms[position], v -> "?x" + names.size()));
+				else
+					result.append(terms[position]);
+			}
+			result.append(')');
+		}
+		return result.toString().replace("\r", "\\r").replace("\n", "\\n");
+	}
+}
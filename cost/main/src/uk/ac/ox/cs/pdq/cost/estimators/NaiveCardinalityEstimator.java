@@ -3,9 +3,6 @@
 
 package uk.ac.ox.cs.pdq.cost.estimators;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 import com.google.common.base.Preconditions;
 
 import uk.ac.ox.cs.pdq.algebra.AccessTerm;
@@ -27,11 +24,16 @@ import uk.ac.ox.cs.pdq.db.Relation;
  * and its descendants, based on a naive criteria, in particular using fixed
  * selectivity ratios.
  *
+ * The metadata are kept in a CardinalityMetadataStore, shared by the clones of
+ * the estimator. The output cardinality of a subterm does not depend on the
+ * plan it occurs in, while its input cardinality is the one of the last plan
+ * estimated.
+ *
  * @author Julien Leblay
  */
 public class NaiveCardinalityEstimator implements CardinalityEstimator {
 
-	private final Map<RelationalTerm,RelationalTermCardinalityMetadata> cardinalityMetadata;
+	private final CardinalityMetadataStore cardinalityMetadata;
 
 	/** The Constant UNION_REDUCTION. */
 	public static final Double UNION_REDUCTION = 2.0;
@@ -52,9 +54,19 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 	 * @param schema Schema
 	 */
 	public NaiveCardinalityEstimator(Catalog catalog) {
+		this(catalog, new CardinalityMetadataStore());
+	}
+
+	/**
+	 * Constructor for NaiveCardinalityEstimator.
+	 * @param catalog Catalog
+	 * @param store of the cardinality metadata, possibly shared with other estimators.
+	 */
+	public NaiveCardinalityEstimator(Catalog catalog, CardinalityMetadataStore store) {
 		Preconditions.checkNotNull(catalog);
+		Preconditions.checkNotNull(store);
 		this.catalog = catalog;
-		this.cardinalityMetadata = new LinkedHashMap<>();
+		this.cardinalityMetadata = store;
 	}
 
 	/**
@@ -70,64 +82,64 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 	}
 
 	/**
-	 * Main estimation function
+	 * Main estimation function. The input cardinalities of the descendants of
+	 * the term are computed from their context in the term, rather than from the
+	 * parents recorded in the metadata, as a subterm is shared by many plans.
+	 * The estimation holds the lock of the store, so that the metadata of the
+	 * term are not updated by the estimation of another plan meanwhile.
 	 *
 	 * @param term LogicalOperator
 	 * @see uk.ac.ox.cs.pdq.cost.estimators.CardinalityEstimator#estimateCardinality(RelationalOperator)
 	 */
 	@Override
 	public void estimateCardinality(RelationalTerm term) {
-		synchronized (term) {
-			Double output = -1.0;
-			RelationalTermCardinalityMetadata metadata = this.getCardinalityMetadata(term);
-			Double input = metadata.getInputCardinality();
-			RelationalTerm parent = metadata.getParent();
-			if (input < 0) {
-				input = 0.0;
-				if (parent != null) 
-					input = this.getCardinalityMetadata(parent).getInputCardinality();
-				throw new IllegalStateException("Inconsistent input cardinality '" + input + "' for " + term);
-			}
-
-			// For Scan, Access, Distinct, Union, Selection and Join
-			// The estimation is delegated to specialised estimators.
-			if (term instanceof DependentJoinTerm) {
-				output = this.estimateOutputCardinality((DependentJoinTerm) term);
-			} 
-			else if (term instanceof JoinTerm) {
-					output = this.estimateOutputCardinality((JoinTerm) term);
-			} 
-			else if (term instanceof AccessTerm) {
-				output = this.estimateOutputCardinality((AccessTerm) term);
-			} 
-			else if (term instanceof SelectionTerm) {
-				output = this.estimateOutputCardinality((SelectionTerm) term);
-			} 
-			else if (term instanceof ProjectionTerm || term instanceof RenameTerm) {
-				RelationalTerm child = term.getChild(0);
-				RelationalTermCardinalityMetadata childMetadata = this.getCardinalityMetadata(child);
-				childMetadata.setParent(term);
-				childMetadata.setInputCardinality(input);
-				this.estimateCardinalityIfNeeded(child);
-				output = childMetadata.getOutputCardinality();
-			} 
-			// Cross Products: cardinality is the product of the children's cardinalities
-			else if (term instanceof CartesianProductTerm) {
-				output = 1.0;
-				for (int childIndex = 0; childIndex < 2; ++childIndex) {
-					RelationalTerm child = term.getChild(childIndex);
-					RelationalTermCardinalityMetadata childMetadata = this.getCardinalityMetadata(child);
-					childMetadata.setParent(term);
-					childMetadata.setInputCardinality(input);
-					this.estimateCardinalityIfNeeded(child);
-					output *= childMetadata.getOutputCardinality();
-				}
-			} 
-			metadata.setInputCardinality(input);
-			metadata.setOutputCardinality(output);
+		synchronized (this.cardinalityMetadata) {
+			this.estimateCardinality(term, 0.0, 0.0);
 		}
 	}
 
+	/**
+	 * Estimates the cardinalities of the term and its descendants.
+	 *
+	 * @param term LogicalOperator
+	 * @param input the input cardinality of the term
+	 * @param parentInput the input cardinality of the parent of the term
+	 * @return the output cardinality of the term
+	 */
+	private Double estimateCardinality(RelationalTerm term, Double input, Double parentInput) {
+		if (input < 0)
+			throw new IllegalStateException("Inconsistent input cardinality '" + input + "' for " + term);
+		Double output = -1.0;
+		RelationalTermCardinalityMetadata metadata = this.getCardinalityMetadata(term);
+
+		// For Scan, Access, Distinct, Union, Selection and Join
+		// The estimation is delegated to specialised estimators.
+		if (term instanceof DependentJoinTerm) {
+			output = this.estimateOutputCardinality((DependentJoinTerm) term, input, parentInput);
+		} 
+		else if (term instanceof JoinTerm) {
+				output = this.estimateOutputCardinality((JoinTerm) term, input, parentInput);
+		} 
+		else if (term instanceof AccessTerm) {
+			output = this.estimateOutputCardinality((AccessTerm) term);
+		} 
+		else if (term instanceof SelectionTerm) {
+			output = this.estimateOutputCardinality((SelectionTerm) term, input, parentInput);
+		} 
+		else if (term instanceof ProjectionTerm || term instanceof RenameTerm) {
+			output = this.estimateCardinality(term.getChild(0), input, input);
+		} 
+		// Cross Products: cardinality is the product of the children's cardinalities
+		else if (term instanceof CartesianProductTerm) {
+			output = 1.0;
+			for (int childIndex = 0; childIndex < 2; ++childIndex) 
+				output *= this.estimateCardinality(term.getChild(childIndex), input, input);
+		} 
+		metadata.setInputCardinality(input);
+		metadata.setOutputCardinality(output);
+		return output;
+	}
+
 	/**
 	 * 
 	 *
@@ -136,23 +148,25 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 	 */
 	@Override
 	public RelationalTermCardinalityMetadata getCardinalityMetadata(RelationalTerm o) {
-		RelationalTermCardinalityMetadata result = this.cardinalityMetadata.get(o);
-		if (result == null) {
-			result = this.initMetadata(o);
-			this.cardinalityMetadata.put(o, result);
-		}
-		return result;
+		return this.cardinalityMetadata.get(o, this::initMetadata);
 	}
 
 	/**
-	 * 
+	 * @return the store of the cardinality metadata.
+	 */
+	public CardinalityMetadataStore getCardinalityMetadataStore() {
+		return this.cardinalityMetadata;
+	}
+
+	/**
+	 * The clone shares the metadata store of this estimator.
 	 *
 	 * @return NaiveCardinalityEstimator
 	 * @see uk.ac.ox.cs.pdq.cost.estimators.CardinalityEstimator#clone()
 	 */
 	@Override
 	public NaiveCardinalityEstimator clone() {
-		return new NaiveCardinalityEstimator(this.catalog);
+		return new NaiveCardinalityEstimator(this.catalog, this.cardinalityMetadata);
 	}
 
 	/**
@@ -165,46 +179,23 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 		return new NaiveRelationalTermCardinalityMetadata();
 	}
 
-	/**
-	 * Gets the parent input cardinality.
-	 *
-	 * @param o LogicalOperator
-	 * @return Double
-	 */
-	private Double getParentInputCardinality(RelationalTerm o) {
-		RelationalTermCardinalityMetadata metadata = this.getCardinalityMetadata(o);
-		RelationalTerm parent = metadata.getParent();
-		if (parent != null) {
-			return this.getCardinalityMetadata(parent).getInputCardinality();
-		}
-		return 0.0;
-	}
-
 	/**
 	 * Call to estimate a join
 	 *
 	 * @param o Join
+	 * @param input the input cardinality of the join
+	 * @param parentInput the input cardinality of the parent of the join
 	 * @return Double
 	 */
-	protected Double estimateOutputCardinality(JoinTerm o) {
+	protected Double estimateOutputCardinality(JoinTerm o, Double input, Double parentInput) {
 		Double result = 1.0;
 		Double largestChild = 1.0;
-		Double inputCard = this.getParentInputCardinality(o);
+		Double inputCard = parentInput;
 		// Compute the horizontal increase of input card.
-		RelationalTerm leftChild = o.getChild(0);
-		RelationalTermCardinalityMetadata lcMetadata = this.getCardinalityMetadata(leftChild);
-		lcMetadata.setParent(o);
-		lcMetadata.setInputCardinality(inputCard);
-		this.estimateCardinalityIfNeeded(leftChild);
+		this.estimateCardinality(o.getChild(0), inputCard, input);
 		// Compute the join cardinality itself.
-		RelationalTerm rightChild = o.getChild(1);
-
 		Double rightInputCard = inputCard;
-
-		RelationalTermCardinalityMetadata rcMetadata = this.getCardinalityMetadata(rightChild);
-		rcMetadata.setParent(o);
-		rcMetadata.setInputCardinality(rightInputCard);
-		this.estimateCardinalityIfNeeded(rightChild);
+		this.estimateCardinality(o.getChild(1), rightInputCard, input);
 		for (int childIndex = 0; childIndex < o.getNumberOfChildren(); ++childIndex) {
 			RelationalTerm child = o.getChild(childIndex);
 			Double childCard = this.getCardinalityMetadata(child).getOutputCardinality();
@@ -224,27 +215,19 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 	 * Estimate call for a dependent join
 	 *
 	 * @param o Join
+	 * @param input the input cardinality of the join
+	 * @param parentInput the input cardinality of the parent of the join
 	 * @return Double
 	 */
-	protected Double estimateOutputCardinality(DependentJoinTerm o) {
+	protected Double estimateOutputCardinality(DependentJoinTerm o, Double input, Double parentInput) {
 		Double result = 1.0;
 		Double largestChild = 1.0;
-		Double inputCard = this.getParentInputCardinality(o);
+		Double inputCard = parentInput;
 		// Compute the horizontal increase of input card.
-		RelationalTerm leftChild = o.getChild(0);
-		RelationalTermCardinalityMetadata lcMetadata = this.getCardinalityMetadata(leftChild);
-		lcMetadata.setParent(o);
-		lcMetadata.setInputCardinality(inputCard);
-		this.estimateCardinalityIfNeeded(leftChild);
+		Double leftOutputCard = this.estimateCardinality(o.getChild(0), inputCard, input);
 		// Compute the join cardinality itself.
-		RelationalTerm rightChild = o.getChild(1);
-
-		Double rightInputCard = lcMetadata.getOutputCardinality() * Math.max(1.0, inputCard);
-
-		RelationalTermCardinalityMetadata rcMetadata = this.getCardinalityMetadata(rightChild);
-		rcMetadata.setParent(o);
-		rcMetadata.setInputCardinality(rightInputCard);
-		this.estimateCardinalityIfNeeded(rightChild);
+		Double rightInputCard = leftOutputCard * Math.max(1.0, inputCard);
+		this.estimateCardinality(o.getChild(1), rightInputCard, input);
 		for (int childIndex = 0; childIndex < o.getNumberOfChildren(); ++childIndex) {
 			RelationalTerm child = o.getChild(childIndex);
 			Double childCard = this.getCardinalityMetadata(child).getOutputCardinality();
@@ -273,19 +256,16 @@ public class NaiveCardinalityEstimator implements CardinalityEstimator {
 	 * Call for a selection
 	 *
 	 * @param o Selection
+	 * @param input the input cardinality of the selection
+	 * @param parentInput the input cardinality of the parent of the selection
 	 * @return Double
 	 */
-	protected Double estimateOutputCardinality(SelectionTerm o) {
-		RelationalTerm child = o.getChild(0);
-		RelationalTermCardinalityMetadata cMetadata = this.getCardinalityMetadata(child);
-		cMetadata.setParent(o);
-		Double inputCard = this.getParentInputCardinality(o);
-		cMetadata.setInputCardinality(inputCard);
-		this.estimateCardinality(child);
+	protected Double estimateOutputCardinality(SelectionTerm o, Double input, Double parentInput) {
+		Double childOutputCard = this.estimateCardinality(o.getChild(0), parentInput, input);
 		if(o.getSelectionCondition() instanceof SimpleCondition) 
-			return Math.max(1L, (cMetadata.getOutputCardinality() / Math.pow(SELECTIVITY_REDUCTION,1)));
+			return Math.max(1L, (childOutputCard / Math.pow(SELECTIVITY_REDUCTION,1)));
 		else if(o.getSelectionCondition() instanceof ConjunctiveCondition) 
-			return Math.max(1L, (cMetadata.getOutputCardinality() / Math.pow(SELECTIVITY_REDUCTION, ((ConjunctiveCondition) o.getSelectionCondition()).getNumberOfConjuncts())));
+			return Math.max(1L, (childOutputCard / Math.pow(SELECTIVITY_REDUCTION, ((ConjunctiveCondition) o.getSelectionCondition()).getNumberOfConjuncts())));
 		else 
 			throw new IllegalStateException("Unknown condition type");	
 	}
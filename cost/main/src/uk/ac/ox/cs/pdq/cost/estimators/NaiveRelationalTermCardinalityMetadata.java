@@ -3,25 +3,30 @@
 
 package uk.ac.ox.cs.pdq.cost.estimators;
 
+import java.lang.ref.WeakReference;
+
 import com.google.common.base.Preconditions;
 
 import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
 
 /**
- * 
+ * The estimated cardinalities of a relational term. The fields are volatile as
+ * the metadata are shared by the threads of the planner. The parent is
+ * referenced weakly, otherwise the metadata of a term would keep its parent,
+ * and through it the term itself, in the weak CardinalityMetadataStore.
  *
  * @author Julien Leblay
  */
 public class NaiveRelationalTermCardinalityMetadata implements RelationalTermCardinalityMetadata {
 
 	/**  */
-	private double inputCard = 0L;
+	private volatile double inputCard = 0L;
 	
 	/**  */
-	private double outputCard = -1L;
+	private volatile double outputCard = -1L;
 	
 	/**  */
-	private RelationalTerm parent;
+	private volatile WeakReference<RelationalTerm> parent;
 
 	/**
 	 * 
@@ -31,7 +36,8 @@ public class NaiveRelationalTermCardinalityMetadata implements RelationalTermCar
 	 */
 	@Override
 	public RelationalTerm getParent() {
-		return this.parent;
+		WeakReference<RelationalTerm> reference = this.parent;
+		return reference == null ? null : reference.get();
 	}
 
 	/**
@@ -42,7 +48,7 @@ public class NaiveRelationalTermCardinalityMetadata implements RelationalTermCar
 	 */
 	@Override
 	public void setParent(RelationalTerm o) {
-		this.parent = o;
+		this.parent = o == null ? null : new WeakReference<>(o);
 	}
 
 	/**
@@ -87,7 +93,7 @@ public class NaiveRelationalTermCardinalityMetadata implements RelationalTermCar
 	 */
 	@Override
 	public final void setOutputCardinality(Double  l) {
-		Preconditions.checkArgument(l >= 0.0, "Estimated output cardinality cannot be negative. " + l + " " + this.parent);
+		Preconditions.checkArgument(l >= 0.0, "Estimated output cardinality cannot be negative. " + l + " " + this.getParent());
 		this.outputCard = l;
 	}
 
@@ -102,6 +108,6 @@ public class NaiveRelationalTermCardinalityMetadata implements RelationalTermCar
 	
 	@Override
 	public String toString() {
-		return "(" + this.inputCard + " " + this.outputCard + " " + "{" + this.parent + "}" + ")";
+		return "(" + this.inputCard + " " + this.outputCard + " " + "{" + this.getParent() + "}" + ")";
 	}
 }
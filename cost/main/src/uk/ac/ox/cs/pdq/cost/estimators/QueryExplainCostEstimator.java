@@ -3,8 +3,12 @@
 
 package uk.ac.ox.cs.pdq.cost.estimators;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,6 +23,14 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 /**
  * Calculates costs by passing "EXPLAIN SELECT ..." commands to the database manager and parse the cost from the result	.
  * 
+ * In batched mode the queries costed at the same time by several planner
+ * threads are explained together: while a batch is being explained the new
+ * requests queue up, and the next thread to get through explains all of them
+ * at once, on the threads of the database manager. The explained costs can be
+ * kept in an ExplainCostCache, so that the same query is explained once, even
+ * across planner runs. The costs of a batch are added to the cache together,
+ * so the cache file is written once per batch.
+ * 
  * @author gabor
  *
  */
@@ -26,6 +38,14 @@ public class QueryExplainCostEstimator implements CostEstimator,OrderIndependent
 	public static final String COST_REGEXP_PATTERN_FOR_POSTGRES = "\\(cost=\\d+\\.\\d+\\.\\.(?<cost>\\d+\\.\\d+)\\s.*\\)";
 	private DatabaseManager dm;
 	private String pattern = null;
+	private final Pattern costPattern;
+	private final boolean batched;
+	private final ExplainCostCache cache;
+
+	/** The queries waiting to be explained in batched mode. */
+	private final ConcurrentLinkedQueue<ExplainRequest> pending = new ConcurrentLinkedQueue<>();
+	/** Held while a batch is explained. */
+	private final Object BATCH_LOCK = new Object();
 
 	/**
 	 * @param dm
@@ -36,8 +56,7 @@ public class QueryExplainCostEstimator implements CostEstimator,OrderIndependent
 	 *            and will pass down the default patter for it.
 	 */
 	public QueryExplainCostEstimator(DatabaseManager dm, String pattern) {
-		this.pattern = pattern;
-		this.dm = dm;
+		this(dm, pattern, false, null);
 	}
 
 	/**
@@ -49,6 +68,25 @@ public class QueryExplainCostEstimator implements CostEstimator,OrderIndependent
 		this(dm, COST_REGEXP_PATTERN_FOR_POSTGRES);
 	}
 
+	/**
+	 * @param dm
+	 *            the database manager to execute the explain select command.
+	 * @param pattern
+	 *            the result pattern to parse costs.
+	 * @param batched
+	 *            whether the queries costed concurrently are explained together.
+	 * @param cache
+	 *            the cache of the explained costs, null to always explain the
+	 *            queries.
+	 */
+	public QueryExplainCostEstimator(DatabaseManager dm, String pattern, boolean batched, ExplainCostCache cache) {
+		this.pattern = pattern;
+		this.costPattern = Pattern.compile(pattern);
+		this.dm = dm;
+		this.batched = batched;
+		this.cache = cache;
+	}
+
 	/* (non-Javadoc)
 	 * @see uk.ac.ox.cs.pdq.cost.estimators.CostEstimator#cost(uk.ac.ox.cs.pdq.algebra.RelationalTerm)
 	 */
@@ -62,16 +100,96 @@ public class QueryExplainCostEstimator implements CostEstimator,OrderIndependent
 	 * @return
 	 */
 	public DoubleCost costQuery(ConjunctiveQuery cq) {
-		List<String> explainedQuery;
+		String key = null;
+		if (this.cache != null) {
+			key = ExplainCostCache.normalise(cq);
+			Double cost = this.cache.get(key);
+			if (cost != null)
+				return new DoubleCost(cost);
+		}
+		return this.batched ? this.explainBatched(cq, key) : this.explain(cq, key);
+	}
+
+	/**
+	 * Explains a single query, its cost is cached as a batch of one.
+	 */
+	private DoubleCost explain(ConjunctiveQuery cq, String key) {
+		DoubleCost result;
 		try {
-			explainedQuery = dm.executeQueryExplain(cq);
+			result = this.parse(dm.executeQueryExplain(cq));
 		} catch (DatabaseException e) {
 			e.printStackTrace();
 			return new DoubleCost(Double.MAX_VALUE);
 		}
+		Map<String, Double> costs = new HashMap<>();
+		this.collect(key, result, costs);
+		this.save(costs);
+		return result;
+	}
+
+	/**
+	 * Queues the query, and explains the pending queries unless another thread
+	 * explained this one in the meantime.
+	 */
+	private DoubleCost explainBatched(ConjunctiveQuery cq, String key) {
+		ExplainRequest request = new ExplainRequest(cq, key);
+		this.pending.add(request);
+		synchronized (this.BATCH_LOCK) {
+			if (!request.done) {
+				List<ExplainRequest> batch = new ArrayList<>();
+				for (ExplainRequest next = this.pending.poll(); next != null; next = this.pending.poll())
+					batch.add(next);
+				this.explain(batch);
+			}
+			return request.cost;
+		}
+	}
+
+	private void explain(List<ExplainRequest> batch) {
+		try {
+			List<ConjunctiveQuery> queries = new ArrayList<>();
+			for (ExplainRequest request : batch)
+				queries.add(request.query);
+			List<List<String>> explained = dm.executeQueryExplain(queries);
+			Map<String, Double> costs = new HashMap<>();
+			for (int index = 0; index < batch.size(); index++) {
+				ExplainRequest request = batch.get(index);
+				request.cost = explained == null ? null : this.parse(explained.get(index));
+				this.collect(request.key, request.cost, costs);
+			}
+			this.save(costs);
+		} catch (DatabaseException e) {
+			e.printStackTrace();
+			for (ExplainRequest request : batch)
+				request.cost = new DoubleCost(Double.MAX_VALUE);
+		} finally {
+			for (ExplainRequest request : batch)
+				request.done = true;
+		}
+	}
+
+	/**
+	 * Adds the explained cost of a query to the costs to be cached, unless there
+	 * is no cache or the query could not be explained.
+	 */
+	private void collect(String key, DoubleCost cost, Map<String, Double> costs) {
+		if (key != null && cost != null && cost.getCost() != Double.MAX_VALUE)
+			costs.put(key, cost.getCost());
+	}
+
+	/**
+	 * Adds the collected costs to the cache, with a single write of the cache file.
+	 */
+	private void save(Map<String, Double> costs) {
+		if (this.cache != null && !costs.isEmpty())
+			this.cache.putAll(costs);
+	}
+
+	private DoubleCost parse(List<String> explainedQuery) {
+		if (explainedQuery == null)
+			return null;
 		for (String line : explainedQuery) {
-			Pattern p = Pattern.compile(pattern);
-			Matcher m = p.matcher(line);
+			Matcher m = this.costPattern.matcher(line);
 			if (m.find()) {
 				String cost = m.group("cost");
 				Double result = Double.valueOf(cost);
@@ -90,4 +208,33 @@ public class QueryExplainCostEstimator implements CostEstimator,OrderIndependent
 	public OrderIndependentCostEstimator clone() {
 		return this;
 	}
+
+	public String getPattern() {
+		return this.pattern;
+	}
+
+	public boolean isBatched() {
+		return this.batched;
+	}
+
+	public ExplainCostCache getCache() {
+		return this.cache;
+	}
+
+	/**
+	 * A query waiting to be explained in batched mode. Its fields are accessed
+	 * while holding the BATCH_LOCK.
+	 */
+	private static class ExplainRequest {
+		final ConjunctiveQuery query;
+		/** The normalised query, null when the costs are not cached. */
+		final String key;
+		DoubleCost cost = null;
+		boolean done = false;
+
+		ExplainRequest(ConjunctiveQuery query, String key) {
+			this.query = query;
+			this.key = key;
+		}
+	}
 }
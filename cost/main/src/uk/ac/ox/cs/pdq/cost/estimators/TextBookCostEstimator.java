@@ -46,7 +46,8 @@ public class TextBookCostEstimator implements OrderDependentCostEstimator {
 	}
 
 	/*
-	 * (non-Javadoc)
+	 * The clone shares the cardinality metadata store (if any) of this
+	 * estimator, through the clone of the cardinality estimator.
 	 * @see java.lang.Object#clone()
 	 */
 	@Override
@@ -63,6 +64,18 @@ public class TextBookCostEstimator implements OrderDependentCostEstimator {
 		return this.cardEstimator;
 	}
 
+	/**
+	 * Gets the store of the cardinality metadata.
+	 *
+	 * @return the store of the cardinality estimator, or null if it does not
+	 *         use one.
+	 */
+	public CardinalityMetadataStore getCardinalityMetadataStore() {
+		if (this.cardEstimator instanceof NaiveCardinalityEstimator)
+			return ((NaiveCardinalityEstimator) this.cardEstimator).getCardinalityMetadataStore();
+		return null;
+	}
+
 	/**
 	 * Recursively computes the cost of the given operator.
 	 *
@@ -72,11 +85,12 @@ public class TextBookCostEstimator implements OrderDependentCostEstimator {
 	 */
 	private double recursiveCost(RelationalTerm logOp) {
 		double subCost = 0;
-		double inputCard = this.cardEstimator.getCardinalityMetadata(logOp).getInputCardinality();
-		double card = Math.max(1.0, this.cardEstimator.getCardinalityMetadata(logOp).getOutputCardinality());
+		RelationalTermCardinalityMetadata metadata = this.cardEstimator.getCardinalityMetadata(logOp);
+		double inputCard = metadata.getInputCardinality();
+		double card = Math.max(1.0, metadata.getOutputCardinality());
 		double localCost = Math.max(0.0, card * perCostPerOutputTuple(logOp));
 		if(logOp instanceof AccessTerm) {
-			localCost *= Math.max(1.0, Math.log(this.cardEstimator.getCardinalityMetadata(logOp).getOutputCardinality()));
+			localCost *= Math.max(1.0, Math.log(metadata.getOutputCardinality()));
 		}
 		else if (logOp instanceof ProjectionTerm || logOp instanceof RenameTerm || logOp instanceof SelectionTerm) 
 			subCost = this.recursiveCost(logOp.getChild(0));
@@ -153,7 +167,9 @@ public class TextBookCostEstimator implements OrderDependentCostEstimator {
 	}
 
 	/**
-	 * 
+	 * The input cardinalities of the subplans depend on the plan they occur in,
+	 * so the estimation and the costing of a plan hold the lock of the store
+	 * shared by the clones of the estimator.
 	 *
 	 * @param plan P
 	 * @return DoubleCost
@@ -161,9 +177,12 @@ public class TextBookCostEstimator implements OrderDependentCostEstimator {
 	 */
 	@Override
 	public Cost cost(RelationalTerm plan) {
-		if (plan.isClosed())
-			this.cardEstimator.estimateCardinality(plan);
-		DoubleCost result = new DoubleCost(this.recursiveCost(plan));
-		return result;
+		CardinalityMetadataStore store = this.getCardinalityMetadataStore();
+		synchronized (store != null ? store : this.cardEstimator) {
+			if (plan.isClosed())
+				this.cardEstimator.estimateCardinality(plan);
+			DoubleCost result = new DoubleCost(this.recursiveCost(plan));
+			return result;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.cost;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import uk.ac.ox.cs.pdq.cost.DoubleCost;
+import uk.ac.ox.cs.pdq.cost.estimators.ExplainCostCache;
+import uk.ac.ox.cs.pdq.cost.estimators.QueryExplainCostEstimator;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests the batched mode and the explain cost cache of the
+ * QueryExplainCostEstimator, with a mocked database manager that explains a
+ * query with a cost equal to its number of atoms.
+ *
+ * @author Gabor
+ *
+ */
+public class TestQueryExplainCostEstimator extends PdqTest {
+
+	private static List<String> explain(ConjunctiveQuery query) {
+		return Arrays.asList("Hash Join  (cost=0.00.." + query.getAtoms().length + ".00 rows=1 width=8)");
+	}
+
+	private DatabaseManager createDatabaseManager(AtomicInteger batches) throws Exception {
+		DatabaseManager dm = Mockito.mock(DatabaseManager.class);
+		when(dm.executeQueryExplain(any(ConjunctiveQuery.class))).thenAnswer(i -> explain(i.getArgument(0)));
+		when(dm.executeQueryExplain(anyList())).thenAnswer(i -> {
+			batches.incrementAndGet();
+			// slow enough for the concurrent requests to queue up.
+			Thread.sleep(100);
+			List<List<String>> result = new ArrayList<>();
+			for (Object query : (List<?>) i.getArgument(0))
+				result.add(explain((ConjunctiveQuery) query));
+			return result;
+		});
+		return dm;
+	}
+
+	/**
+	 * Query with the given number of R atoms, joined on their first attribute.
+	 */
+	private ConjunctiveQuery createQuery(int atoms, String prefix) {
+		Variable join = Variable.create(prefix + "j");
+		Atom[] children = new Atom[atoms];
+		for (int index = 0; index < atoms; index++)
+			children[index] = Atom.create(this.R, new Term[] { join, Variable.create(prefix + index), TypedConstant.create("c") });
+		return ConjunctiveQuery.create(new Variable[] { join }, children);
+	}
+
+	/**
+	 * Costs a query with 1, 2, ... atoms on each thread, all at the same time.
+	 */
+	private DoubleCost[] costConcurrently(QueryExplainCostEstimator estimator, int threads) throws InterruptedException {
+		DoubleCost[] costs = new DoubleCost[threads];
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int index = 0; index < threads; index++) {
+			final int atoms = index + 1;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				costs[atoms - 1] = estimator.costQuery(this.createQuery(atoms, "t" + atoms));
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		return costs;
+	}
+
+	@Test
+	public void testBatched() throws Exception {
+		AtomicInteger batches = new AtomicInteger();
+		DatabaseManager dm = this.createDatabaseManager(batches);
+		QueryExplainCostEstimator estimator = new QueryExplainCostEstimator(dm,
+				QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES, true, null);
+
+		int threads = 8;
+		DoubleCost[] costs = this.costConcurrently(estimator, threads);
+		for (int index = 0; index < threads; index++)
+			Assert.assertEquals(index + 1, costs[index].getCost(), 0.0001);
+		// The queries were explained together, in fewer batches than queries.
+		Assert.assertTrue(batches.get() < threads);
+		verify(dm, never()).executeQueryExplain(any(ConjunctiveQuery.class));
+	}
+
+	@Test
+	public void testBatchedCache() throws Exception {
+		File file = File.createTempFile("explainCosts", ".txt");
+		file.delete();
+		try {
+			AtomicInteger batches = new AtomicInteger();
+			DatabaseManager dm = this.createDatabaseManager(batches);
+			ExplainCostCache cache = Mockito.spy(new ExplainCostCache(file, "schema1"));
+			QueryExplainCostEstimator estimator = new QueryExplainCostEstimator(dm,
+					QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES, true, cache);
+
+			int threads = 8;
+			DoubleCost[] costs = this.costConcurrently(estimator, threads);
+			for (int index = 0; index < threads; index++)
+				Assert.assertEquals(index + 1, costs[index].getCost(), 0.0001);
+			// The costs of each batch are written to the file together.
+			verify(cache, times(batches.get())).putAll(anyMap());
+			Assert.assertEquals(threads, new ExplainCostCache(file, "schema1").size());
+
+			// The cached costs are not written again.
+			Assert.assertEquals(threads, this.costConcurrently(estimator, threads).length);
+			verify(cache, times(batches.get())).putAll(anyMap());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		File file = File.createTempFile("explainCosts", ".txt");
+		file.delete();
+		try {
+			AtomicInteger batches = new AtomicInteger();
+			DatabaseManager dm = this.createDatabaseManager(batches);
+			QueryExplainCostEstimator estimator = new QueryExplainCostEstimator(dm,
+					QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES, false, new ExplainCostCache(file, "schema1"));
+			Assert.assertEquals(3.0, estimator.costQuery(this.createQuery(3, "a")).getCost(), 0.0001);
+			Assert.assertEquals(3.0, estimator.costQuery(this.createQuery(3, "b")).getCost(), 0.0001);
+			verify(dm, times(1)).executeQueryExplain(any(ConjunctiveQuery.class));
+
+			// The costs are read back by the next run with the same fingerprint, the
+			// variable names do not matter.
+			DatabaseManager dm2 = this.createDatabaseManager(batches);
+			ExplainCostCache cache = new ExplainCostCache(file, "schema1");
+			Assert.assertEquals(1, cache.size());
+			QueryExplainCostEstimator estimator2 = new QueryExplainCostEstimator(dm2,
+					QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES, false, cache);
+			Assert.assertEquals(3.0, estimator2.costQuery(this.createQuery(3, "c")).getCost(), 0.0001);
+			Assert.assertEquals(2.0, estimator2.costQuery(this.createQuery(2, "c")).getCost(), 0.0001);
+			verify(dm2, times(1)).executeQueryExplain(any(ConjunctiveQuery.class));
+			Assert.assertEquals(2, new ExplainCostCache(file, "schema1").size());
+
+			// The costs of another schema are ignored, and replaced.
+			ExplainCostCache otherSchema = new ExplainCostCache(file, "schema2");
+			Assert.assertEquals(0, otherSchema.size());
+			QueryExplainCostEstimator estimator3 = new QueryExplainCostEstimator(dm2,
+					QueryExplainCostEstimator.COST_REGEXP_PATTERN_FOR_POSTGRES, false, otherSchema);
+			estimator3.costQuery(this.createQuery(3, "d"));
+			verify(dm2, times(2)).executeQueryExplain(any(ConjunctiveQuery.class));
+			Assert.assertEquals(1, new ExplainCostCache(file, "schema2").size());
+			Assert.assertEquals(0, new ExplainCostCache(file, "schema1").size());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.cost.estimators.statistics.estimators;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.algebra.AccessTerm;
+import uk.ac.ox.cs.pdq.algebra.JoinTerm;
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+import uk.ac.ox.cs.pdq.cost.DoubleCost;
+import uk.ac.ox.cs.pdq.cost.estimators.CachedCostEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.CountNumberOfAccessedRelationsCostEstimator;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests the CachedCostEstimator, that estimates the cost of the same plan once.
+ *
+ * @author Gabor
+ *
+ */
+public class TestCachedCostEstimator extends PdqTest {
+
+	/**
+	 * Counts the plans it estimates the cost of.
+	 */
+	private static class CountingCostEstimator extends CountNumberOfAccessedRelationsCostEstimator {
+		int estimates = 0;
+
+		@Override
+		public DoubleCost cost(RelationalTerm plan) {
+			this.estimates++;
+			return super.cost(plan);
+		}
+	}
+
+	@Test
+	public void testCache() {
+		CountingCostEstimator underlying = new CountingCostEstimator();
+		CachedCostEstimator estimator = new CachedCostEstimator(underlying, 100);
+
+		// The plans are hash-consed, the plans created again hit the cache.
+		RelationalTerm plan1 = JoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method0));
+		RelationalTerm plan2 = JoinTerm.create(plan1, AccessTerm.create(T, method0));
+		Assert.assertEquals(2.0, estimator.cost(plan1).getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(3.0, estimator.cost(plan2).getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(2.0, estimator.cost(JoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method0)))
+				.getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(3.0, estimator.cost(plan2).getValue().doubleValue(), 0.0001);
+
+		Assert.assertEquals(2, underlying.estimates);
+		Assert.assertEquals(2, estimator.size());
+		Assert.assertEquals(2, estimator.getHitCount());
+		Assert.assertEquals(2, estimator.getMissCount());
+
+		// The clones share the cache.
+		CachedCostEstimator clone = estimator.clone();
+		Assert.assertEquals(3.0, clone.cost(plan2).getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(3, estimator.getHitCount());
+		Assert.assertEquals(2, underlying.estimates);
+	}
+
+	@Test
+	public void testMaximumSize() {
+		CountingCostEstimator underlying = new CountingCostEstimator();
+		CachedCostEstimator estimator = new CachedCostEstimator(underlying, 1);
+		RelationalTerm plan1 = AccessTerm.create(R, method0);
+		RelationalTerm plan2 = AccessTerm.create(S, method0);
+		estimator.cost(plan1);
+		estimator.cost(plan2);
+		Assert.assertEquals(1, estimator.size());
+		estimator.cost(plan2);
+		Assert.assertEquals(2, underlying.estimates);
+		estimator.cost(plan1);
+		Assert.assertEquals(3, underlying.estimates);
+	}
+}
@@ -0,0 +1,147 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.cost.estimators.statistics.estimators;
+
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import uk.ac.ox.cs.pdq.algebra.AccessTerm;
+import uk.ac.ox.cs.pdq.algebra.DependentJoinTerm;
+import uk.ac.ox.cs.pdq.algebra.JoinTerm;
+import uk.ac.ox.cs.pdq.algebra.ProjectionTerm;
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
+import uk.ac.ox.cs.pdq.cost.estimators.CardinalityMetadataStore;
+import uk.ac.ox.cs.pdq.cost.estimators.NaiveCardinalityEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.TextBookCostEstimator;
+import uk.ac.ox.cs.pdq.cost.statistics.SimpleCatalog;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests the CardinalityMetadataStore, shared by the clones of the
+ * NaiveCardinalityEstimator and the TextBookCostEstimator.
+ *
+ * @author Gabor
+ *
+ */
+public class TestCardinalityMetadataStore extends PdqTest {
+
+	@Mock
+	protected SimpleCatalog catalog;
+
+	@Before
+	public void setup() throws Exception {
+		super.setup();
+		when(this.catalog.getCardinality(this.R)).thenReturn(100);
+		when(this.catalog.getCardinality(this.S)).thenReturn(100);
+		when(this.catalog.getCardinality(this.T)).thenReturn(1000);
+	}
+
+	@Test
+	public void testSharedStore() {
+		CardinalityMetadataStore store = new CardinalityMetadataStore(100);
+		TextBookCostEstimator estimator = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog, store));
+		TextBookCostEstimator clone = estimator.clone();
+		Assert.assertSame(store, clone.getCardinalityMetadataStore());
+
+		RelationalTerm plan = JoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method0));
+		double cost = estimator.cost(plan).getValue().doubleValue();
+		Assert.assertEquals(3, store.size());
+		long misses = store.getMissCount();
+		Assert.assertEquals(3, misses);
+
+		// The clone finds the estimations of the hash-consed plan.
+		Assert.assertEquals(cost, clone.cost(JoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method0)))
+				.getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(misses, store.getMissCount());
+		Assert.assertEquals(3, store.size());
+		Assert.assertTrue(store.getHitRate() > 0.5);
+	}
+
+	@Test
+	public void testMaximumSize() {
+		CardinalityMetadataStore store = new CardinalityMetadataStore(2);
+		NaiveCardinalityEstimator estimator = new NaiveCardinalityEstimator(this.catalog, store);
+		estimator.estimateCardinality(AccessTerm.create(R, method0));
+		estimator.estimateCardinality(AccessTerm.create(S, method0));
+		estimator.estimateCardinality(AccessTerm.create(T, method0));
+		Assert.assertTrue(store.size() <= 2);
+		Assert.assertTrue(store.getEvictionCount() >= 1);
+		// Evicted estimations are estimated again.
+		RelationalTerm access = AccessTerm.create(R, method0);
+		estimator.estimateCardinality(access);
+		Assert.assertEquals(100.0, estimator.getCardinalityMetadata(access).getOutputCardinality(), 0.0001);
+	}
+
+	/**
+	 * The threads of a planner cost the same subplans with clones of the
+	 * estimator, and get the same estimations.
+	 */
+	@Test
+	public void testConcurrentEstimations() throws Exception {
+		TextBookCostEstimator estimator = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog));
+		RelationalTerm join = JoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method0));
+		RelationalTerm plan = JoinTerm.create(join, AccessTerm.create(T, method0));
+		double expected = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog)).cost(plan).getValue().doubleValue();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Double>> costs = new ArrayList<>();
+			for (int task = 0; task < 16; task++) {
+				TextBookCostEstimator clone = estimator.clone();
+				costs.add(executor.submit(() -> clone.cost(plan).getValue().doubleValue()));
+			}
+			for (Future<Double> cost : costs)
+				Assert.assertEquals(expected, cost.get(), 0.0001);
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(5, estimator.getCardinalityMetadataStore().size());
+	}
+
+	/**
+	 * Two plans share a dependent join, which has a different input
+	 * cardinality in each of them. Costing the plans concurrently, or one
+	 * after the other, with clones of the estimator gives the costs of the
+	 * plans costed on their own.
+	 */
+	@Test
+	public void testConcurrentEstimationsOfSharedSubplan() throws Exception {
+		TextBookCostEstimator estimator = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog));
+		RelationalTerm dependentJoin = DependentJoinTerm.create(AccessTerm.create(R, method0), AccessTerm.create(S, method1));
+		RelationalTerm plan1 = JoinTerm.create(dependentJoin, AccessTerm.create(T, method0));
+		RelationalTerm join = JoinTerm.create(dependentJoin, AccessTerm.create(S, method1));
+		RelationalTerm plan2 = DependentJoinTerm.create(AccessTerm.create(T, method0),
+				ProjectionTerm.create(join.getOutputAttributes(), join));
+		double expected1 = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog)).cost(plan1).getValue().doubleValue();
+		double expected2 = new TextBookCostEstimator(new NaiveCardinalityEstimator(this.catalog)).cost(plan2).getValue().doubleValue();
+
+		Assert.assertEquals(expected1, estimator.cost(plan1).getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(expected2, estimator.cost(plan2).getValue().doubleValue(), 0.0001);
+		Assert.assertEquals(expected1, estimator.cost(plan1).getValue().doubleValue(), 0.0001);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Double>> costs = new ArrayList<>();
+			for (int task = 0; task < 64; task++) {
+				TextBookCostEstimator clone = estimator.clone();
+				RelationalTerm plan = task % 2 == 0 ? plan1 : plan2;
+				costs.add(executor.submit(() -> clone.cost(plan).getValue().doubleValue()));
+			}
+			for (int task = 0; task < costs.size(); task++)
+				Assert.assertEquals(task % 2 == 0 ? expected1 : expected2, costs.get(task).get(), 0.0001);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
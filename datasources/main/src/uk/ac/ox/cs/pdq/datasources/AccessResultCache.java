@@ -0,0 +1,107 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.datasources;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+
+/**
+ * A size bounded cache of access results, mapping the values of an input tuple
+ * of an access method to the output tuples of the access. The size of the
+ * cache is measured in tuples: once the cached results hold more than the
+ * maximum number of tuples, the least recently used results are evicted.
+ * Results expire after the time to live of the cache. The cache is thread
+ * safe, so that one cache can serve all the plans that execute the same access
+ * method, see CachedAccessMethod.
+ *
+ * @author Gabor
+ *
+ */
+public class AccessResultCache {
+
+	/** Maximum number of tuples in the cache. */
+	private final long maximumTuples;
+
+	/** Time to live of the cached results in milliseconds, no expiry if not positive. */
+	private final long timeToLive;
+
+	private final Cache<List<Object>, List<Tuple>> cache;
+
+	/**
+	 * @param maximumTuples
+	 *            maximum number of tuples held by the cache. An empty result
+	 *            counts as a single tuple.
+	 * @param timeToLive
+	 *            milliseconds after which a cached result expires, the results
+	 *            do not expire if this is not positive.
+	 */
+	public AccessResultCache(long maximumTuples, long timeToLive) {
+		Preconditions.checkArgument(maximumTuples > 0, "The maximum number of tuples must be positive");
+		this.maximumTuples = maximumTuples;
+		this.timeToLive = timeToLive;
+		CacheBuilder<List<Object>, List<Tuple>> builder = CacheBuilder.newBuilder()
+				.maximumWeight(maximumTuples)
+				.weigher((List<Object> input, List<Tuple> output) -> Math.max(1, output.size()))
+				.recordStats();
+		if (timeToLive > 0)
+			builder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS);
+		this.cache = builder.build();
+	}
+
+	/**
+	 * @param input
+	 *            the values of an input tuple, the empty list for free accesses.
+	 * @return the cached output tuples of the access with the given input, or
+	 *         null if they are not cached.
+	 */
+	public List<Tuple> get(List<Object> input) {
+		return this.cache.getIfPresent(input);
+	}
+
+	/**
+	 * Caches the output tuples of the access with the given input.
+	 */
+	public void put(List<Object> input, List<Tuple> output) {
+		this.cache.put(input, output);
+	}
+
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	/**
+	 * @return the number of inputs that are cached.
+	 */
+	public long size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * @return the number of inputs answered from the cache.
+	 */
+	public long getHitCount() {
+		return this.cache.stats().hitCount();
+	}
+
+	/**
+	 * @return the number of inputs that had to be accessed.
+	 */
+	public long getMissCount() {
+		return this.cache.stats().missCount();
+	}
+
+	public long getMaximumTuples() {
+		return this.maximumTuples;
+	}
+
+	public long getTimeToLive() {
+		return this.timeToLive;
+	}
+}
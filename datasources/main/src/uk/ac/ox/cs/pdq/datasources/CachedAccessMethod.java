@@ -0,0 +1,139 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.datasources;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+
+/**
+ * Wraps an executable access method with an AccessResultCache. The wrapper has
+ * the same name, attributes and inputs as the wrapped access method, and
+ * answers the inputs that were accessed before from the cache. The remaining
+ * inputs are accessed together, with the wrapped access method, and their
+ * results are added to the cache.
+ *
+ * The results are assigned to the inputs by the values of the input
+ * attributes of the output tuples. If some output tuple does not match any of
+ * the accessed inputs (e.g. when the source returns values of a different
+ * type) the results are returned but not cached.
+ *
+ * @author Gabor
+ *
+ */
+public class CachedAccessMethod extends ExecutableAccessMethod {
+	private static final long serialVersionUID = 1L;
+
+	private final ExecutableAccessMethod accessMethod;
+	private final transient AccessResultCache cache;
+
+	public CachedAccessMethod(ExecutableAccessMethod accessMethod, AccessResultCache cache) {
+		super(accessMethod.getName(), accessMethod.outputAttributes(false), accessMethod.inputPositions(false).clone(),
+				accessMethod.getRelation(), accessMethod.getAttributeMapping(false));
+		this.accessMethod = accessMethod;
+		this.cache = cache;
+	}
+
+	@Override
+	protected Stream<Tuple> fetchTuples(Iterator<Tuple> inputTuples) {
+		return this.fetchTuples(inputTuples, 1);
+	}
+
+	@Override
+	protected Stream<Tuple> fetchTuplesAsync(Iterator<Tuple> inputTuples, int requests) {
+		return this.fetchTuples(inputTuples, requests);
+	}
+
+	private Stream<Tuple> fetchTuples(Iterator<Tuple> inputTuples, int requests) {
+		if (inputTuples == null) {
+			List<Tuple> output = this.cache.get(Collections.emptyList());
+			if (output == null) {
+				output = this.accessMethod.fetchTuples(null).collect(Collectors.toList());
+				this.cache.put(Collections.emptyList(), output);
+			}
+			return output.stream();
+		}
+
+		// Answer the cached inputs, and collect the others.
+		List<Tuple> result = new ArrayList<>();
+		Map<List<Object>, Tuple> missed = new LinkedHashMap<>();
+		while (inputTuples.hasNext()) {
+			Tuple input = inputTuples.next();
+			List<Object> key = Arrays.asList(input.getValues().clone());
+			List<Tuple> output = this.cache.get(key);
+			if (output != null)
+				result.addAll(output);
+			else
+				missed.putIfAbsent(key, input);
+		}
+		if (missed.isEmpty())
+			return result.stream();
+
+		// Access the missed inputs with the underlying access method.
+		Stream<Tuple> accessed = requests > 1 ? this.accessMethod.fetchTuplesAsync(missed.values().iterator(), requests)
+				: this.accessMethod.fetchTuples(missed.values().iterator());
+		List<Tuple> output = accessed.collect(Collectors.toList());
+		result.addAll(output);
+
+		Map<List<Object>, List<Tuple>> outputs = this.groupByInput(missed.keySet(), output);
+		if (outputs != null)
+			outputs.forEach(this.cache::put);
+		return result.stream();
+	}
+
+	/*
+	 * Groups the output tuples by the values of their input attributes. Returns
+	 * null if some output tuple does not match any of the given inputs.
+	 */
+	private Map<List<Object>, List<Tuple>> groupByInput(Iterable<List<Object>> inputs, List<Tuple> output) {
+		Integer[] positions = this.inputPositions(false);
+		Map<List<Object>, List<Tuple>> result = new HashMap<>();
+		for (List<Object> input : inputs)
+			result.put(input, new ArrayList<>());
+		for (Tuple tuple : output) {
+			Object[] key = new Object[positions.length];
+			for (int index = 0; index < positions.length; index++)
+				key[index] = tuple.getValue(positions[index]);
+			List<Tuple> tuples = result.get(Arrays.asList(key));
+			if (tuples == null)
+				return null;
+			tuples.add(tuple);
+		}
+		return result;
+	}
+
+	public ExecutableAccessMethod getAccessMethod() {
+		return this.accessMethod;
+	}
+
+	public AccessResultCache getCache() {
+		return this.cache;
+	}
+
+	@Override
+	public void updateRelation(Relation relation) {
+		this.accessMethod.updateRelation(relation);
+		super.updateRelation(relation);
+	}
+
+	@Override
+	public void close() {
+		this.accessMethod.close();
+	}
+
+	@Override
+	public boolean isClosed() throws Exception {
+		return this.accessMethod.isClosed();
+	}
+}
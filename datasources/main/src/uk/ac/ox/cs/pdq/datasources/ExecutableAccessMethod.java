@@ -196,6 +196,25 @@ public abstract class ExecutableAccessMethod extends AccessMethodDescriptor {
 	 */
 	protected abstract Stream<Tuple> fetchTuples(Iterator<Tuple> inputTuples);
 
+	/**
+	 * Fetches the same tuples as {@code fetchTuples}, keeping up to
+	 * {@code requests} accesses in flight at the same time. The returned
+	 * {@code Stream} fills as the responses arrive, so the order of the tuples
+	 * may differ from that of {@code fetchTuples}. Access methods over remote
+	 * sources override this, by default the accesses are made one by one by
+	 * {@code fetchTuples}.
+	 * 
+	 * @param inputTuples
+	 *            An {@code Iterator} of type {@code Tuple}, or null if there are no
+	 *            inputs.
+	 * @param requests
+	 *            The maximum number of accesses in flight.
+	 * @return A {@code Stream} over {@code Tuple}s.
+	 */
+	protected Stream<Tuple> fetchTuplesAsync(Iterator<Tuple> inputTuples, int requests) {
+		return this.fetchTuples(inputTuples);
+	}
+
 	public Iterable<Tuple> access(boolean relationSchema) {
 
 		Preconditions.checkState(this.inputAttributes().length == 0);
@@ -203,6 +222,23 @@ public abstract class ExecutableAccessMethod extends AccessMethodDescriptor {
 	}
 
 	public Iterable<Tuple> access(Iterator<Tuple> inputTuples, boolean relationSchema) {
+		return this.access(inputTuples, relationSchema, 1);
+	}
+
+	/**
+	 * Accesses the input tuples with up to {@code requests} accesses in flight
+	 * at the same time, see {@code fetchTuplesAsync}.
+	 */
+	public Iterable<Tuple> accessAsync(Iterator<Tuple> inputTuples, int requests, boolean relationSchema) {
+		Preconditions.checkArgument(requests > 0);
+		return this.access(inputTuples, relationSchema, requests);
+	}
+
+	public Iterable<Tuple> accessAsync(Iterator<Tuple> inputTuples, int requests) {
+		return this.accessAsync(inputTuples, requests, true);
+	}
+
+	private Iterable<Tuple> access(Iterator<Tuple> inputTuples, boolean relationSchema, int requests) {
 
 		// If necessary, map the inputTuples from the internal to the external schema.
 		if (inputTuples != null && relationSchema) {
@@ -214,7 +250,7 @@ public abstract class ExecutableAccessMethod extends AccessMethodDescriptor {
 
 		if (inputTuples != null)
 			inputTuples = new DistinctIterator<Tuple>(inputTuples);
-		Stream<Tuple> ret = this.fetchTuples(inputTuples);
+		Stream<Tuple> ret = requests > 1 ? this.fetchTuplesAsync(inputTuples, requests) : this.fetchTuples(inputTuples);
 
 		if (relationSchema)
 			ret = ret.map(tuple -> this.mapOutputTuple(tuple));
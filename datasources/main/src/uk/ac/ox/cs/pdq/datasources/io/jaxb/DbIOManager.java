@@ -3,13 +3,12 @@
 
 package uk.ac.ox.cs.pdq.datasources.io.jaxb;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
@@ -36,6 +35,7 @@ import uk.ac.ox.cs.pdq.db.tuple.TupleType;
 import uk.ac.ox.cs.pdq.exceptions.DatabaseException;
 import uk.ac.ox.cs.pdq.fol.Atom;
 import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.io.CsvImporter;
 import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
 import uk.ac.ox.cs.pdq.io.jaxb.adapted.AdaptedAccessMethod;
 import uk.ac.ox.cs.pdq.io.jaxb.adapted.AdaptedRelation;
@@ -267,42 +267,23 @@ public class DbIOManager extends IOManager {
 		return s.replaceAll("//", "/");
 	}
 
+	/**
+	 * Imports a csv file written by exportTuples, converting the values to the
+	 * types of the attributes.
+	 */
 	public static Collection<Tuple> importTuples(Attribute[] attributes, String csvFile) throws IOException {
 		Collection<Tuple> facts = Sets.newHashSet();
-		BufferedReader reader = null;
 		TupleType tt = TupleType.DefaultFactory.createFromTyped(attributes);
-		try {
-			// Open the csv file for reading
-			reader = new BufferedReader(new FileReader(csvFile));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				String[] tuple = line.split(",");
-				Object[] constants = new Object[attributes.length];
-				for (int i = 0; i < tuple.length; ++i) {
-					if (i>=attributes.length) {
-						System.out.println("Warning this tuple has more attributes then expected: " + tuple);
-					} else {
-						constants[i] = (TypedConstant.convertStringToType(decodeValue(tuple[i]),
-							attributes[i].getType()));
-					}
-				}
-				facts.add(tt.createTuple(constants));
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			throw e;
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw e;
-		} finally {
-			if (reader != null) {
-				try {
-					reader.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		}
+		CsvImporter<Tuple> importer = new CsvImporter<>((column, cell) -> {
+			if (column >= attributes.length)
+				return null;
+			return TypedConstant.convertStringToType(decodeValue(cell), attributes[column].getType());
+		}, values -> {
+			if (values.length > attributes.length)
+				System.out.println("Warning this tuple has more attributes then expected: " + Arrays.toString(values));
+			return tt.createTuple(Arrays.copyOf(values, attributes.length));
+		});
+		importer.importFile(new File(csvFile), facts);
 		return facts;
 	}
 
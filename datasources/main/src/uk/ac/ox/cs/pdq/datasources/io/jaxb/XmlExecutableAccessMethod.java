@@ -21,11 +21,15 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
 
+import uk.ac.ox.cs.pdq.datasources.AccessResultCache;
+import uk.ac.ox.cs.pdq.datasources.CachedAccessMethod;
 import uk.ac.ox.cs.pdq.datasources.ExecutableAccessMethod;
 import uk.ac.ox.cs.pdq.datasources.memory.InMemoryAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.services.policies.Periods;
 import uk.ac.ox.cs.pdq.datasources.simplewebservice.JsonWebService;
 import uk.ac.ox.cs.pdq.datasources.simplewebservice.XmlWebService;
 import uk.ac.ox.cs.pdq.datasources.sql.SqlAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.sql.StreamingSqlAccessMethod;
 import uk.ac.ox.cs.pdq.db.Attribute;
 import uk.ac.ox.cs.pdq.db.Relation;
 import uk.ac.ox.cs.pdq.db.Schema;
@@ -40,7 +44,7 @@ import uk.ac.ox.cs.pdq.db.tuple.Tuple;
  *
  */
 @XmlRootElement(name = "Access")
-@XmlType(propOrder = { "accessType", "accessMethodName", "relationName", "xmlAttributes", "data", "dbProperties", "webServiceUrl","requestTemplates" })
+@XmlType(propOrder = { "accessType", "accessMethodName", "relationName", "xmlAttributes", "data", "dbProperties", "webServiceUrl","requestTemplates","cache" })
 public class XmlExecutableAccessMethod {
 	public enum ACCESS_TYPE {
 		IN_MEMORY_ACCESS_METHOD, DB_ACCESS_METHOD, XML_WEB_ACCESS_METHOD, JSON_WEB_ACCESS_METHOD
@@ -71,6 +75,9 @@ public class XmlExecutableAccessMethod {
 	private Properties dbProperties;
 	private File datafolder;
 
+	/* Optional result cache of any AccessMethod */
+	private CacheParameters cache;
+
 	public XmlExecutableAccessMethod() {
 	}
 
@@ -83,6 +90,10 @@ public class XmlExecutableAccessMethod {
 		else
 			this.datafolder = datafolder;
 		this.datafolder.mkdirs();
+		if (eam instanceof CachedAccessMethod) {
+			cache = new CacheParameters(((CachedAccessMethod) eam).getCache());
+			eam = ((CachedAccessMethod) eam).getAccessMethod();
+		}
 		accessMethodName = eam.getName();
 		relationName = eam.getRelation().getName();
 		attributes = Arrays.asList(eam.outputAttributes(false));
@@ -119,6 +130,13 @@ public class XmlExecutableAccessMethod {
 	}
 
 	public ExecutableAccessMethod toExecutableAccessMethod(Schema s, File parentDir) throws IOException {
+		ExecutableAccessMethod eam = toUncachedAccessMethod(s, parentDir);
+		if (cache == null)
+			return eam;
+		return new CachedAccessMethod(eam, cache.toAccessResultCache());
+	}
+
+	private ExecutableAccessMethod toUncachedAccessMethod(Schema s, File parentDir) throws IOException {
 		Relation r = getRelationObject(s);
 		switch (accessType) {
 		case IN_MEMORY_ACCESS_METHOD:
@@ -135,6 +153,11 @@ public class XmlExecutableAccessMethod {
 			am.load(DbIOManager.importTuples(attributes.toArray(new Attribute[attributes.size()]), dataFileName));
 			return am;
 		case DB_ACCESS_METHOD:
+			// <entry key="streaming">true</entry> streams the results over pooled connections.
+			if (Boolean.parseBoolean(dbProperties.getProperty("streaming")))
+				return new StreamingSqlAccessMethod(accessMethodName,
+						attributes.toArray(new Attribute[attributes.size()]), inputAttributes, r, attributeMapping,
+						dbProperties);
 			SqlAccessMethod dam = new SqlAccessMethod(accessMethodName,
 					attributes.toArray(new Attribute[attributes.size()]), inputAttributes, r, attributeMapping,
 					dbProperties);
@@ -272,7 +295,53 @@ public class XmlExecutableAccessMethod {
 	public void setRequestTemplates(List<PostParameter> postParams) {
 		this.postParams = postParams;
 	}
+
+	// <cache maximum-tuples="100000" time-to-live="1h"/> caches the results of the access method.
+	@XmlElement(name = "cache")
+	public CacheParameters getCache() {
+		return cache;
+	}
+
+	public void setCache(CacheParameters cache) {
+		this.cache = cache;
+	}
 	
+	/**
+	 * Parameters of the AccessResultCache of an access method: the maximum
+	 * number of cached tuples, and the time to live of the cached results in the
+	 * format of Periods.parse (e.g. 10m or 1h). The results do not expire if no
+	 * time to live is given.
+	 */
+	public static class CacheParameters {
+		private static final long DEFAULT_MAXIMUM_TUPLES = 100000;
+		private long maximumTuples = DEFAULT_MAXIMUM_TUPLES;
+		private String timeToLive;
+		public CacheParameters() {
+		}
+		public CacheParameters(AccessResultCache cache) {
+			this.maximumTuples = cache.getMaximumTuples();
+			if (cache.getTimeToLive() > 0)
+				this.timeToLive = Math.max(1, cache.getTimeToLive() / 1000) + "s";
+		}
+		public AccessResultCache toAccessResultCache() {
+			return new AccessResultCache(maximumTuples, timeToLive == null ? 0 : Periods.parse(timeToLive));
+		}
+		@XmlAttribute(name = "maximum-tuples")
+		public long getMaximumTuples() {
+			return maximumTuples;
+		}
+		public void setMaximumTuples(long maximumTuples) {
+			this.maximumTuples = maximumTuples;
+		}
+		@XmlAttribute(name = "time-to-live")
+		public String getTimeToLive() {
+			return timeToLive;
+		}
+		public void setTimeToLive(String timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+	}
+
 	/**
 	 * @author gabor
 	 *	Name value pairs for the post or get web methods.
@@ -3,29 +3,43 @@
 
 package uk.ac.ox.cs.pdq.datasources.memory;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import jersey.repackaged.com.google.common.base.Preconditions;
-import uk.ac.ox.cs.pdq.algebra.ConjunctiveCondition;
 import uk.ac.ox.cs.pdq.datasources.ExecutableAccessMethod;
 import uk.ac.ox.cs.pdq.db.Attribute;
 import uk.ac.ox.cs.pdq.db.Relation;
 import uk.ac.ox.cs.pdq.db.tuple.Tuple;
 import uk.ac.ox.cs.pdq.db.tuple.TupleType;
 
+/**
+ * Access method over tuples held in memory. Accesses with inputs are answered
+ * from a hash index on the input positions of this access method, built on the
+ * first access with inputs and dropped when more tuples are loaded. Every
+ * access method has its own index, so a relation with several access methods
+ * gets an index for each of them.
+ */
 public class InMemoryAccessMethod extends ExecutableAccessMethod {
 
 	private static final long serialVersionUID = 5268175711548627539L;
 
 	/**  The underlying data. */
-	private Collection<Tuple> data = new ArrayList<>();
+	private List<Tuple> data = new ArrayList<>();
+
+	/**  Positions in data of the tuples, by their values in the input positions. Null until first needed. */
+	private transient volatile Map<List<Object>, int[]> index = null;
 
 	public InMemoryAccessMethod(Attribute[] attributes, Integer[] inputs, Relation relation,
 			Map<Attribute, Attribute> attributeMapping) {
@@ -49,7 +63,7 @@ public class InMemoryAccessMethod extends ExecutableAccessMethod {
 
 	/**  Get the underlying data. */
 	public Collection<Tuple> getData() {
-		return this.data;
+		return this.data == null ? null : Collections.unmodifiableList(this.data);
 	}
 
 	@Override
@@ -60,14 +74,72 @@ public class InMemoryAccessMethod extends ExecutableAccessMethod {
 		
 		Preconditions.checkArgument(inputTuples.hasNext());
 
-		// In the case of in-memory data, free access is possible so we need only filter according to the input tuples.
-		// Construct a predicate that returns true on tuples matching _any_ of the input tuples.
-		List<ConjunctiveCondition> accessConditions = new ArrayList<ConjunctiveCondition>();
-		while (inputTuples.hasNext())
-			accessConditions.add(this.accessCondition(inputTuples.next()));
-		Predicate<Tuple> filterPredicate = (tuple) -> accessConditions.stream().anyMatch(c -> c.isSatisfied(tuple)); 
+		// In the case of in-memory data, free access is possible so we only need the tuples matching _any_ of the input tuples.
+		// These are looked up in the index, and returned in the order they were loaded.
+		Map<List<Object>, int[]> index = this.getIndex();
+		Set<List<Object>> keys = new HashSet<>();
+		List<int[]> matches = new ArrayList<>();
+		int size = 0;
+		while (inputTuples.hasNext()) {
+			Tuple inputTuple = inputTuples.next();
+			// The input tuple must conform to the internal schema.
+			Preconditions.checkArgument(inputTuple.getType().getTypes().equals(this.inputTupleTypeInternal.getTypes()));
+			List<Object> key = indexKey(inputTuple.getValues().clone());
+			int[] positions = index.get(key);
+			if (positions != null && keys.add(key)) {
+				matches.add(positions);
+				size += positions.length;
+			}
+		}
+		int[] positions = new int[size];
+		int next = 0;
+		for (int[] match : matches) {
+			System.arraycopy(match, 0, positions, next, match.length);
+			next += match.length;
+		}
+		if (matches.size() > 1)
+			Arrays.sort(positions);
+		List<Tuple> data = this.data;
+		return IntStream.of(positions).mapToObj(data::get);
+	}
+
+	/**
+	 * Returns the index on the input positions, building it if needed.
+	 */
+	private Map<List<Object>, int[]> getIndex() {
+		Map<List<Object>, int[]> index = this.index;
+		if (index != null)
+			return index;
+		synchronized (this) {
+			if (this.index == null) {
+				Integer[] inputs = this.inputPositions(false);
+				Map<List<Object>, List<Integer>> rows = new HashMap<>();
+				for (int row = 0; row < this.data.size(); row++) {
+					Object[] values = new Object[inputs.length];
+					for (int i = 0; i < inputs.length; i++)
+						values[i] = this.data.get(row).getValue(inputs[i]);
+					rows.computeIfAbsent(indexKey(values), k -> new ArrayList<>()).add(row);
+				}
+				Map<List<Object>, int[]> newIndex = new HashMap<>(rows.size() * 4 / 3 + 1);
+				for (Map.Entry<List<Object>, List<Integer>> entry : rows.entrySet())
+					newIndex.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+				this.index = newIndex;
+			}
+			return this.index;
+		}
+	}
 
-		return this.getData().stream().filter(filterPredicate);	
+	/**
+	 * The key of the given input values in the index. Access conditions compare
+	 * values with compareTo, so numbers that compare equal but are not equal
+	 * (BigDecimals with different scales) are normalised.
+	 */
+	private static List<Object> indexKey(Object[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof BigDecimal)
+				values[i] = ((BigDecimal) values[i]).signum() == 0 ? BigDecimal.ZERO : ((BigDecimal) values[i]).stripTrailingZeros();
+		}
+		return Arrays.asList(values);
 	}
 
 	public void load(Collection<Tuple> tuples) {
@@ -79,11 +151,13 @@ public class InMemoryAccessMethod extends ExecutableAccessMethod {
 					"Failed to load tuple. Invalid type: %s", tuple.getType().toString());
 			this.data.add(tuple);
 		}
+		this.index = null;
 	}
 
 	@Override
 	public void close() {
 		data = null; // let garbage collector do its magic.
+		index = null;
 	}
 	@Override
 	public boolean isClosed() throws Exception {
@@ -52,6 +52,10 @@ executing the access method. An ExecutableAccessMethod is described
 and positions of the corresponding relation, and this class includes
 the necessary mapping information.
 
+ CachedAccessMethod wraps any ExecutableAccessMethod with an AccessResultCache,
+ a size bounded cache of the results of the accesses with each input tuple.
+ It is configured by the cache element of the xml descriptor of the access.
+
 
 
 **/
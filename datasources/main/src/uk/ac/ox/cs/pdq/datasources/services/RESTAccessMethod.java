@@ -4,12 +4,19 @@
 package uk.ac.ox.cs.pdq.datasources.services;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -18,6 +25,7 @@ import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 
 import com.fasterxml.jackson.jaxrs.annotation.JacksonFeatures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import uk.ac.ox.cs.pdq.datasources.AccessException;
 import uk.ac.ox.cs.pdq.datasources.ExecutableAccessMethod;
@@ -46,6 +54,10 @@ import uk.ac.ox.cs.pdq.io.ReaderException;
 public class RESTAccessMethod extends ExecutableAccessMethod {
 
 	private static final long serialVersionUID = 1L;
+
+	// Threads that send the requests of the asynchronous accesses (fetchTuplesAsync), shared by all REST access methods.
+	private static final ExecutorService requestExecutor = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rest-access-%d").build());
 	
 	private ServiceGroup sgr;
 	private Service sr;
@@ -59,7 +71,10 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 	private Attribute[] inputattributes;
 	private Attribute[] outputattributes;
 	private TreeMap<String, AttributeEncoding> attributeEncodingMap;
+	// Compiled once, so that the periodical allowances account for all requests of this access method.
 	private TreeMap<String, UsagePolicy> usagePolicyMap;
+	// The usage policies of the service, applied to every request.
+	private List<UsagePolicy> servicePolicies;
 	
 	public RESTAccessMethod(String name, Attribute[] attributes, Integer[] inputs, Relation relation,
 			Map<Attribute, Attribute> attributeMapping, WebTarget target, MediaType mediaType,
@@ -114,13 +129,25 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 		this.url = sr.getUrl();
 		this.template = "";
 		this.attributeEncodingMap = new TreeMap<String, AttributeEncoding>();
-		this.usagePolicyMap = new TreeMap<String, UsagePolicy>();
 
 		// Setup the attributeEncodingMap by putting in all AttributeEncodings from the ServiceGroupsRoot object
 		for(AttributeEncoding ae: sgr.getAttributeEncoding()) if(ae.getName() != null) attributeEncodingMap.put(ae.getName(), ae);
 
-		// Parse the usage policies from the ServiceGroupsRoot object
-		compileUsagePolicies(sgr);
+		// Parse the usage policies from the ServiceGroupsRoot object, the first time only
+		if(this.usagePolicyMap == null)
+		{
+			this.usagePolicyMap = new TreeMap<String, UsagePolicy>();
+			compileUsagePolicies(sgr);
+			this.servicePolicies = new ArrayList<UsagePolicy>();
+			if(sr.getServiceUsagePolicy() != null)
+			{
+				for(ServiceUsagePolicy sup: sr.getServiceUsagePolicy())
+				{
+					UsagePolicy up = (sup.getName() != null) ? usagePolicyMap.get(sup.getName()) : null;
+					if(up != null) this.servicePolicies.add(up);
+				}
+			}
+		}
 
 		// Format the templates stored in the AttributeEncodings from the ServiceGroupsRoot object 
 		formatTemplate(sgr, sr, am);
@@ -417,14 +444,26 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 	}
 	
 
+	// Process a single tuple of input and setup the RESTRequestEvent for it.
+	// The input is processed in the fields of this object, hence the synchronisation.
+	private synchronized RESTRequestEvent prepareRequest(Tuple tuple)
+	{
+		processInput(tuple);
+		return new RESTRequestEvent(target, mediaType);
+	}
+
 	// Perform the main access to the REST protocol and parse the results
 	public Table accessTable()
 	{
 		// Setup a RESTRequestEvent from web target and mediaType
-		RESTRequestEvent request = new RESTRequestEvent(target, mediaType);
-		
+		return accessTable(new RESTRequestEvent(target, mediaType));
+	}
+
+	// Perform the access of a prepared request, this may run concurrently with other requests
+	private Table accessTable(RESTRequestEvent request)
+	{
 		// For all AccessPreProcessors call the processAccessRequest method with the RESTRequestEvent
-		Collection<UsagePolicy> cup = usagePolicyMap.values();
+		Collection<UsagePolicy> cup = servicePolicies;
 		for(UsagePolicy up : cup)
 		{
 			if(up instanceof AccessPreProcessor)
@@ -478,8 +517,7 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 		Stream<Tuple> result = Stream.empty();
 		if(inputTuples == null)
 		{
-			processInput(null);
-			Table t = accessTable();
+			Table t = accessTable(prepareRequest(null));
 			list.add(StreamSupport.stream(t.spliterator(), false));
 		}
 		else
@@ -487,8 +525,7 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 			while(inputTuples.hasNext())
 			{
 				Tuple tuple = inputTuples.next();
-				processInput(tuple);
-				Table t = accessTable();
+				Table t = accessTable(prepareRequest(tuple));
 				list.add(StreamSupport.stream(t.spliterator(), false));
 			}
 		}
@@ -498,11 +535,76 @@ public class RESTAccessMethod extends ExecutableAccessMethod {
 		}
 		return result;
 	}
+
+	// Keeps up to the given number of requests in flight, the tables are streamed in the order the responses arrive.
+	// The usage policies are applied to every request, so a periodical allowance holds back the requests that exceed it.
+	@Override
+	protected Stream<Tuple> fetchTuplesAsync(Iterator<Tuple> inputTuples, int requests) {
+		if(inputTuples == null || requests <= 1) return fetchTuples(inputTuples);
+		Iterator<Table> tables = new PipelinedAccessIterator(inputTuples, requests);
+		Iterable<Table> iterable = () -> tables;
+		return StreamSupport.stream(iterable.spliterator(), false).flatMap(t -> StreamSupport.stream(t.spliterator(), false));
+	}
 	
 	// This is specifically not an override
 	public Table accessTable(Tuple tuple)
 	{
-		processInput(tuple);
-		return accessTable();
+		return accessTable(prepareRequest(tuple));
+	}
+
+	// Iterator over the tables of the accesses, sending the request of the next input whenever a response has arrived.
+	private class PipelinedAccessIterator implements Iterator<Table>
+	{
+		private final Iterator<Tuple> inputTuples;
+		private final int requests;
+		private final CompletionService<Table> responses = new ExecutorCompletionService<Table>(requestExecutor);
+		private int inFlight = 0;
+
+		PipelinedAccessIterator(Iterator<Tuple> inputTuples, int requests)
+		{
+			this.inputTuples = inputTuples;
+			this.requests = requests;
+		}
+
+		// Send requests until the maximum number of requests is in flight or the inputs are exhausted
+		private void fill()
+		{
+			while(inFlight < requests && inputTuples.hasNext())
+			{
+				RESTRequestEvent request = prepareRequest(inputTuples.next());
+				responses.submit(() -> accessTable(request));
+				inFlight++;
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			fill();
+			return inFlight > 0;
+		}
+
+		@Override
+		public Table next()
+		{
+			if(!hasNext()) throw new NoSuchElementException();
+			try
+			{
+				Table t = responses.take().get();
+				inFlight--;
+				return t;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new AccessException("Interrupted while waiting for the response of " + getName(), e);
+			}
+			catch(ExecutionException e)
+			{
+				inFlight--;
+				if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				throw new AccessException(e.getCause().getMessage(), e.getCause());
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -38,4 +38,9 @@ public class DataDownloadAllowance extends PeriodicalAllowance {
 	protected int getAmount(RESTResponseEvent event) {
 		return event.getResponse().getLength();
 	}
+
+	@Override
+	protected int getAmount(uk.ac.ox.cs.pdq.datasources.services.RESTResponseEvent event) {
+		return Math.max(0, event.getResponse().getLength());
+	}
 }
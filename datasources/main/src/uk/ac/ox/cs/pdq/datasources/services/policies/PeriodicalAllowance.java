@@ -20,11 +20,19 @@ import uk.ac.ox.cs.pdq.datasources.services.servicegroup.GroupUsagePolicy;
  * feature of a sequence of accesses exceed a certain threshold for a given 
  * time period.
  * 
+ * The policy handles the events of both the legacy services and of the
+ * RESTAccessMethod. The latter may have several requests in flight at the same
+ * time (RESTAccessMethod.fetchTuplesAsync), so its requests are checked and
+ * recorded atomically, and the amount known before the response arrives
+ * (getRequestAmount) is recorded when the request is let through.
+ * 
  * @author Julien Leblay
  */
 public abstract class PeriodicalAllowance
 			implements UsagePolicy, AccessPreProcessor<RESTRequestEvent>,
-					AccessPostProcessor<RESTResponseEvent> {
+					AccessPostProcessor<RESTResponseEvent>,
+					uk.ac.ox.cs.pdq.datasources.services.AccessPreProcessor<uk.ac.ox.cs.pdq.datasources.services.RESTRequestEvent>,
+					uk.ac.ox.cs.pdq.datasources.services.AccessPostProcessor<uk.ac.ox.cs.pdq.datasources.services.RESTResponseEvent> {
 
 	public int getTotal() {
 		return this.total;
@@ -112,8 +120,63 @@ public abstract class PeriodicalAllowance
 		}
 	}
 	
+	/**
+	 * Checks the allowance before a request of a RESTAccessMethod is sent. If
+	 * the allowance is exhausted, the calling thread waits until enough of the
+	 * history expired, or an exception is thrown if the policy does not wait.
+	 *
+	 * @param event the event
+	 * @throws UsagePolicyViolationException if the allowance is exceeded and the policy does not wait
+	 */
+	@Override
+	public synchronized void processAccessRequest(uk.ac.ox.cs.pdq.datasources.services.RESTRequestEvent event) throws UsagePolicyViolationException {
+		this.updateHistory();
+		while (this.total >= this.limit) {
+			if (!this.wait) {
+				throw new UsagePolicyViolationException("Exceeded periodical allowance (" + this.limit + " history, per " + this.period + " ms)");
+			}
+			long waitPeriod = Math.max(1L, this.getWaitPeriod());
+			log.warn("Exceeded periodical allowance (" + this.limit + "/" + this.period + " ms), waiting for " + waitPeriod + "ms...");
+			try {
+				this.wait(waitPeriod);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UsagePolicyViolationException("Interrupted while waiting for the periodical allowance", e);
+			}
+			this.updateHistory();
+		}
+		this.record(this.getRequestAmount());
+	}
+
+	@Override
+	public synchronized void processAccessResponse(uk.ac.ox.cs.pdq.datasources.services.RESTResponseEvent event) throws UsagePolicyViolationException {
+		this.record(this.getAmount(event));
+	}
+
 	protected abstract int getAmount(RESTResponseEvent event);
 
+	/**
+	 * The amount that is known as soon as a request of a RESTAccessMethod is
+	 * sent. It is recorded before the request is sent, so the requests that are
+	 * in flight at the same time are counted.
+	 *
+	 * @return the amount of a single request, zero by default
+	 */
+	protected int getRequestAmount() {
+		return 0;
+	}
+
+	/**
+	 * The amount that is known once the response of a RESTAccessMethod has
+	 * arrived, in addition to getRequestAmount().
+	 *
+	 * @param event the event
+	 * @return the amount of the response, zero by default
+	 */
+	protected int getAmount(uk.ac.ox.cs.pdq.datasources.services.RESTResponseEvent event) {
+		return 0;
+	}
+
 	@Override
 	public void processAccessResponse(RESTResponseEvent event) throws UsagePolicyViolationException {
 		int total = this.getAmount(event);
@@ -121,6 +184,13 @@ public abstract class PeriodicalAllowance
 		this.total += total;
 	}
 
+	private void record(int amount) {
+		if (amount > 0) {
+			this.history.merge(System.currentTimeMillis(), amount, Integer::sum);
+			this.total += amount;
+		}
+	}
+
 	private void updateHistory() {
 		Iterator<Long> i = this.history.keySet().iterator();
 		Long key = null;
@@ -38,4 +38,9 @@ public class RequestAllowance extends PeriodicalAllowance {
 	protected int getAmount(RESTResponseEvent event) {
 		return 1;
 	}
+
+	@Override
+	protected int getRequestAmount() {
+		return 1;
+	}
 }
@@ -31,6 +31,7 @@ import uk.ac.ox.cs.pdq.datasources.tuple.Table;
 import uk.ac.ox.cs.pdq.db.Attribute;
 import uk.ac.ox.cs.pdq.db.Relation;
 import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
 import uk.ac.ox.cs.pdq.fol.TypedConstant;
 
 /**
@@ -168,7 +169,7 @@ public class SqlAccessMethod extends ExecutableAccessMethod {
 	 *
 	 * @return the select clause of the SQL statement
 	 */
-	private String selectClause() {
+	protected String selectClause() {
 		return "SELECT " + Joiner.on(",").join(this.outputAttributes(false)) 
 				+ " FROM " + this.relation.getName();
 	}
@@ -185,31 +186,8 @@ public class SqlAccessMethod extends ExecutableAccessMethod {
 		try(Connection conn = this.getConnection();
 				Statement stmt = conn.createStatement();
 				ResultSet rs = stmt.executeQuery(queryString)) {
-			while (rs.next()) {
-				Object[] ndata = new Object[result.columns()];
-				for (int index = 0; index < ndata.length; ++index) {
-					Type columnType = result.getType().getType(index);
-					if (columnType == Integer.class) {
-						ndata[index] = (Integer)(rs.getInt(index + 1));
-
-					} else if (columnType == String.class) {
-						ndata[index] = rs.getString(index + 1).trim();
-
-					} else {
-						String simpleName = null;
-						if (columnType instanceof Class) {
-							simpleName =  ((Class<?>) columnType).getSimpleName();
-						}
-						try {
-							Method m = ResultSet.class.getMethod("get" + simpleName, int.class);
-							ndata[index] = m.invoke(rs, index + 1);
-						} catch(NoSuchMethodException e) {
-							ndata[index] = TypedConstant.convertStringToType(rs.getString(index+1), columnType);
-						}
-					}
-				}
-				result.appendRow(result.getType().createTuple(ndata));
-			}
+			while (rs.next())
+				result.appendRow(this.readTuple(rs, result.getType()));
 		} catch (SQLException | ReflectiveOperationException e) {
 			log.warn(queryString, e);
 			throw new AccessException(this.getName() + "\n" + 
@@ -218,6 +196,39 @@ public class SqlAccessMethod extends ExecutableAccessMethod {
 		return result;
 	}
 
+	/**
+	 * Reads the current row of the result set.
+	 *
+	 * @param rs the result set, positioned on a row
+	 * @param type the type of the output tuples
+	 * @return the tuple of the current row
+	 */
+	protected Tuple readTuple(ResultSet rs, TupleType type) throws SQLException, ReflectiveOperationException {
+		Object[] ndata = new Object[type.size()];
+		for (int index = 0; index < ndata.length; ++index) {
+			Type columnType = type.getType(index);
+			if (columnType == Integer.class) {
+				ndata[index] = (Integer)(rs.getInt(index + 1));
+
+			} else if (columnType == String.class) {
+				ndata[index] = rs.getString(index + 1).trim();
+
+			} else {
+				String simpleName = null;
+				if (columnType instanceof Class) {
+					simpleName =  ((Class<?>) columnType).getSimpleName();
+				}
+				try {
+					Method m = ResultSet.class.getMethod("get" + simpleName, int.class);
+					ndata[index] = m.invoke(rs, index + 1);
+				} catch(NoSuchMethodException e) {
+					ndata[index] = TypedConstant.convertStringToType(rs.getString(index+1), columnType);
+				}
+			}
+		}
+		return type.createTuple(ndata);
+	}
+
 	/**
 	 * Gets the connection.
 	 *
@@ -0,0 +1,162 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.datasources.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A small pool of connections to an SQL database, shared by the
+ * StreamingSqlAccessMethods that connect to the same database with the same
+ * user. The pool keeps up to "pool-size" idle connections (4 by default) for
+ * reuse. A connection is opened whenever none is idle, so nested accesses to
+ * the same database never wait for each other; the connections returned when
+ * the pool is full are closed.
+ *
+ * The connections are not in auto-commit mode, so that the databases that
+ * need a transaction for it (e.g. Postgres) honour the fetch size of the
+ * statements. The transaction is rolled back when a connection is returned.
+ *
+ * The access methods acquire the pool on their first access and release it
+ * when they are closed. The idle connections are closed once the last access
+ * method released the pool.
+ *
+ * @author Gabor
+ *
+ */
+public class SqlConnectionPool {
+
+	/** Logger. */
+	private static Logger log = Logger.getLogger(SqlConnectionPool.class);
+
+	public static final int DEFAULT_POOL_SIZE = 4;
+
+	/** The pools in use, by url, database and user. */
+	private static final Map<String, SqlConnectionPool> pools = new HashMap<>();
+
+	private final String key;
+	private final String url;
+	private final String username;
+	private final String password;
+	private final int maximumIdle;
+
+	/** Guarded by this. */
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	/** Guarded by the pools. */
+	private int references = 0;
+	/** Guarded by this. */
+	private long opened = 0;
+	/** True once the last user released the pool. Guarded by this. */
+	private boolean released = false;
+
+	private SqlConnectionPool(String key, Properties properties) {
+		this.key = key;
+		this.url = properties.getProperty("url") + properties.getProperty("database");
+		this.username = properties.getProperty("username");
+		this.password = properties.getProperty("password");
+		this.maximumIdle = Integer.parseInt(properties.getProperty("pool-size", String.valueOf(DEFAULT_POOL_SIZE)));
+	}
+
+	/**
+	 * Gets the pool of the database of the properties ("url", "database",
+	 * "username", "password" and the optional "pool-size"), and registers a new
+	 * user of the pool.
+	 */
+	public static SqlConnectionPool acquire(Properties properties) {
+		String key = properties.getProperty("url") + properties.getProperty("database") + "|" + properties.getProperty("username");
+		synchronized (pools) {
+			SqlConnectionPool pool = pools.computeIfAbsent(key, k -> new SqlConnectionPool(k, properties));
+			pool.references++;
+			return pool;
+		}
+	}
+
+	/**
+	 * Unregisters a user of the pool, the last one closes the idle connections.
+	 */
+	public void release() {
+		synchronized (pools) {
+			if (--this.references > 0)
+				return;
+			pools.remove(this.key);
+		}
+		synchronized (this) {
+			this.released = true;
+			for (Connection connection : this.idle)
+				this.close(connection);
+			this.idle.clear();
+		}
+	}
+
+	/**
+	 * @return an idle connection, or a new one if none is idle.
+	 * @throws SQLException
+	 */
+	public Connection getConnection() throws SQLException {
+		synchronized (this) {
+			while (!this.idle.isEmpty()) {
+				Connection connection = this.idle.pop();
+				if (!connection.isClosed())
+					return connection;
+			}
+			this.opened++;
+		}
+		Connection connection = DriverManager.getConnection(this.url, this.username, this.password);
+		connection.setAutoCommit(false);
+		return connection;
+	}
+
+	/**
+	 * Gives back a connection got from the pool. It is kept for reuse if the
+	 * pool is not full, closed otherwise.
+	 */
+	public void returnConnection(Connection connection) {
+		try {
+			if (connection.isClosed())
+				return;
+			connection.rollback();
+		} catch (SQLException e) {
+			log.warn("Failed to reset the connection to " + this.url, e);
+			this.close(connection);
+			return;
+		}
+		synchronized (this) {
+			if (!this.released && this.idle.size() < this.maximumIdle) {
+				this.idle.push(connection);
+				return;
+			}
+		}
+		this.close(connection);
+	}
+
+	private void close(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			log.warn("Failed to close a connection to " + this.url, e);
+		}
+	}
+
+	/**
+	 * @return the number of idle connections.
+	 */
+	public synchronized int getIdleConnections() {
+		return this.idle.size();
+	}
+
+	/**
+	 * @return the number of connections opened by the pool.
+	 */
+	public synchronized long getOpenedConnections() {
+		return this.opened;
+	}
+}
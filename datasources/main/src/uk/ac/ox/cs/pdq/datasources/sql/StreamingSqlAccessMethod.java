@@ -0,0 +1,252 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.datasources.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.log4j.Logger;
+
+import uk.ac.ox.cs.pdq.datasources.AccessException;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+
+/**
+ * An SQL access method that streams its results. Unlike the SqlAccessMethod,
+ * that reads all the results of an access into a table over a new connection:
+ * <ul>
+ * <li>the connections come from the SqlConnectionPool of the database, and are
+ * given back once the results are read (or the stream is closed),</li>
+ * <li>the inputs are bound to prepared statements, "batch-size" inputs (100 by
+ * default) per statement. Smaller batches are padded to the next power of two
+ * by repeating their last input, so that an access method prepares a handful
+ * of distinct statements,</li>
+ * <li>the results are read lazily, as the returned stream is consumed, the
+ * driver fetching "fetch-size" rows (1000 by default) at a time. The inputs
+ * are read lazily too, one batch at a time.</li>
+ * </ul>
+ * The database is given by the same properties as for the SqlAccessMethod, the
+ * xml descriptors select this access method with the "streaming" property.
+ *
+ * @author Gabor
+ *
+ */
+public class StreamingSqlAccessMethod extends SqlAccessMethod {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Logger. */
+	private static Logger log = Logger.getLogger(StreamingSqlAccessMethod.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	/** The pool of the database, acquired on the first access. */
+	private transient SqlConnectionPool pool = null;
+
+	public StreamingSqlAccessMethod(Relation relation, Properties properties) {
+		super(relation, properties);
+	}
+
+	public StreamingSqlAccessMethod(String name, Attribute[] attributes, Integer[] inputs, Relation relation,
+			Map<Attribute, Attribute> attributeMapping, Properties properties) {
+		super(name, attributes, inputs, relation, attributeMapping, properties);
+	}
+
+	public StreamingSqlAccessMethod(String name, Attribute[] attributes, Set<Attribute> inputAttributes,
+			Relation relation, Map<Attribute, Attribute> attributeMapping, Properties properties) {
+		super(name, attributes, inputAttributes, relation, attributeMapping, properties);
+	}
+
+	@Override
+	protected Stream<Tuple> fetchTuples(Iterator<Tuple> inputTuples) {
+		ResultIterator results = new ResultIterator(inputTuples);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(results::close);
+	}
+
+	/**
+	 * The statement selecting the output attributes of the tuples matching one
+	 * of the given number of inputs.
+	 */
+	private String queryString(int inputs) {
+		StringBuilder result = new StringBuilder(this.selectClause());
+		Attribute[] inputAttributes = this.inputAttributes(false);
+		if (inputs > 0 && inputAttributes.length > 0) {
+			result.append(" WHERE ");
+			for (int input = 0; input < inputs; input++) {
+				if (input > 0)
+					result.append(" OR ");
+				result.append('(');
+				for (int index = 0; index < inputAttributes.length; index++) {
+					if (index > 0)
+						result.append(" AND ");
+					result.append(inputAttributes[index].getName()).append("=?");
+				}
+				result.append(')');
+			}
+		}
+		return result.toString();
+	}
+
+	private synchronized SqlConnectionPool getPool() {
+		if (this.pool == null)
+			this.pool = SqlConnectionPool.acquire(this.getProperties());
+		return this.pool;
+	}
+
+	public int getBatchSize() {
+		return Integer.parseInt(this.getProperties().getProperty("batch-size", String.valueOf(DEFAULT_BATCH_SIZE)));
+	}
+
+	public int getFetchSize() {
+		return Integer.parseInt(this.getProperties().getProperty("fetch-size", String.valueOf(DEFAULT_FETCH_SIZE)));
+	}
+
+	@Override
+	public boolean isClosed() throws Exception {
+		return this.pool == null;
+	}
+
+	/**
+	 * Releases the pool of the database, the results being streamed can still be
+	 * read.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.pool != null) {
+			this.pool.release();
+			this.pool = null;
+		}
+	}
+
+	/**
+	 * Iterates over the results of the batches of inputs, executing the
+	 * statement of the next batch once the results of the previous one are read.
+	 * The connection is given back to the pool once all the results are read, or
+	 * when the iterator is closed.
+	 */
+	private class ResultIterator implements Iterator<Tuple>, AutoCloseable {
+		private final Iterator<Tuple> inputs;
+		private final TupleType type = TupleType.DefaultFactory.createFromTyped(StreamingSqlAccessMethod.this.outputAttributes(false));
+		private final int batchSize = StreamingSqlAccessMethod.this.getBatchSize();
+		private SqlConnectionPool pool = null;
+		private Connection connection = null;
+		private PreparedStatement statement = null;
+		private ResultSet resultSet = null;
+		private Tuple next = null;
+		private boolean started = false;
+		private boolean finished = false;
+		private String queryString = null;
+
+		ResultIterator(Iterator<Tuple> inputs) {
+			this.inputs = inputs;
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (this.next == null && !this.finished) {
+					if (this.resultSet != null && this.resultSet.next()) {
+						this.next = StreamingSqlAccessMethod.this.readTuple(this.resultSet, this.type);
+					} else {
+						this.closeStatement();
+						if (!this.executeNext())
+							this.close();
+					}
+				}
+				return this.next != null;
+			} catch (SQLException | ReflectiveOperationException e) {
+				this.close();
+				log.warn(this.queryString, e);
+				throw new AccessException(StreamingSqlAccessMethod.this.getName() + "\n" + this.queryString + "\n connection:"
+						+ StreamingSqlAccessMethod.this.getProperties().getProperty("url") + ", database: "
+						+ StreamingSqlAccessMethod.this.getProperties().getProperty("database"), e);
+			}
+		}
+
+		@Override
+		public Tuple next() {
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+			Tuple result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		/**
+		 * Executes the statement of the next batch of inputs, or of the free
+		 * access. Returns false if there are no more statements to execute.
+		 */
+		private boolean executeNext() throws SQLException {
+			List<Tuple> batch = new ArrayList<>();
+			if (this.inputs == null || StreamingSqlAccessMethod.this.inputAttributes(false).length == 0) {
+				if (this.started)
+					return false;
+			} else {
+				while (batch.size() < this.batchSize && this.inputs.hasNext())
+					batch.add(this.inputs.next());
+				if (batch.isEmpty())
+					return false;
+			}
+			this.started = true;
+			int padded = batch.isEmpty() ? 0 : Math.min(this.batchSize, Integer.highestOneBit(batch.size() - 1) << 1);
+			padded = Math.max(padded, batch.size());
+			if (this.connection == null) {
+				this.pool = StreamingSqlAccessMethod.this.getPool();
+				this.connection = this.pool.getConnection();
+			}
+			this.queryString = StreamingSqlAccessMethod.this.queryString(padded);
+			this.statement = this.connection.prepareStatement(this.queryString);
+			this.statement.setFetchSize(StreamingSqlAccessMethod.this.getFetchSize());
+			int parameter = 1;
+			for (int input = 0; input < padded; input++) {
+				Tuple tuple = batch.get(Math.min(input, batch.size() - 1));
+				for (int index = 0; index < tuple.size(); index++)
+					this.statement.setObject(parameter++, tuple.getValue(index));
+			}
+			this.resultSet = this.statement.executeQuery();
+			return true;
+		}
+
+		private void closeStatement() throws SQLException {
+			if (this.resultSet != null)
+				this.resultSet.close();
+			this.resultSet = null;
+			if (this.statement != null)
+				this.statement.close();
+			this.statement = null;
+		}
+
+		@Override
+		public void close() {
+			this.finished = true;
+			try {
+				this.closeStatement();
+			} catch (SQLException e) {
+				log.warn("Failed to close the statement " + this.queryString, e);
+			}
+			if (this.connection != null) {
+				this.pool.returnConnection(this.connection);
+				this.connection = null;
+			}
+		}
+	}
+}
@@ -8,6 +8,7 @@ package uk.ac.ox.cs.pdq.datasources.sql;
 
 	This package contains a class that build DBMS wrappers, i.e., methods that access data from different DBMSs.
 	The current implementation supports accessing data from MySQL and Postgres databases.
+	The StreamingSqlAccessMethod streams the results of prepared statements over the pooled connections of a SqlConnectionPool.
 	. 
 	
 **/
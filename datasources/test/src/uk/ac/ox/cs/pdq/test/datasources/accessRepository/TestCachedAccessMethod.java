@@ -0,0 +1,197 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.datasources.accessRepository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.datasources.AccessResultCache;
+import uk.ac.ox.cs.pdq.datasources.CachedAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.ExecutableAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.io.jaxb.DbIOManager;
+import uk.ac.ox.cs.pdq.datasources.memory.InMemoryAccessMethod;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+
+/**
+ * Tests the CachedAccessMethod, and its configuration in the xml descriptors of
+ * the access repository.
+ *
+ * @author Gabor
+ *
+ */
+public class TestCachedAccessMethod {
+	private final static String cachedAccessesDir = "test/src/uk/ac/ox/cs/pdq/test/datasources/accessRepository/schemas/cachedAccesses/";
+
+	private final Relation relation = Relation.create("R",
+			new Attribute[] { Attribute.create(Integer.class, "a"), Attribute.create(Integer.class, "b") });
+	private final TupleType inputType = TupleType.DefaultFactory.create(Integer.class);
+
+	/**
+	 * In memory access method on R(a,b) with input a, that counts its accesses.
+	 * R holds 10 tuples (a, b) for each a in 0..9.
+	 */
+	private static class CountingAccessMethod extends InMemoryAccessMethod {
+		private static final long serialVersionUID = 1L;
+		int accesses = 0;
+		int inputs = 0;
+
+		CountingAccessMethod(Relation relation) {
+			super(relation.getAttributes(), new Integer[] { 0 }, relation, ExecutableAccessMethod.getDefaultMapping(relation));
+			TupleType type = TupleType.DefaultFactory.create(Integer.class, Integer.class);
+			Collection<Tuple> data = new ArrayList<>();
+			for (int a = 0; a < 10; a++)
+				for (int b = 0; b < 10; b++)
+					data.add(type.createTuple(a, b));
+			this.load(data);
+		}
+
+		@Override
+		protected Stream<Tuple> fetchTuples(Iterator<Tuple> inputTuples) {
+			this.accesses++;
+			List<Tuple> inputList = new ArrayList<>();
+			inputTuples.forEachRemaining(inputList::add);
+			this.inputs += inputList.size();
+			return super.fetchTuples(inputList.iterator());
+		}
+	}
+
+	private List<Tuple> inputs(Integer... values) {
+		List<Tuple> inputs = new ArrayList<>();
+		for (Integer value : values)
+			inputs.add(this.inputType.createTuple(value));
+		return inputs;
+	}
+
+	private int count(ExecutableAccessMethod method, List<Tuple> inputs) {
+		int count = 0;
+		for (Iterator<Tuple> it = method.access(inputs.iterator()).iterator(); it.hasNext(); it.next())
+			count++;
+		return count;
+	}
+
+	@Test
+	public void testCache() {
+		CountingAccessMethod underlying = new CountingAccessMethod(this.relation);
+		CachedAccessMethod cached = new CachedAccessMethod(underlying, new AccessResultCache(1000, 0));
+		Assert.assertEquals(underlying.getName(), cached.getName());
+		Assert.assertArrayEquals(underlying.getInputs(), cached.getInputs());
+
+		Assert.assertEquals(30, this.count(cached, this.inputs(0, 1, 2)));
+		Assert.assertEquals(1, underlying.accesses);
+		Assert.assertEquals(3, underlying.inputs);
+
+		// Only the inputs that are not cached are accessed, inputs without results are cached too.
+		Assert.assertEquals(40, this.count(cached, this.inputs(1, 2, 3, 4, 42)));
+		Assert.assertEquals(2, underlying.accesses);
+		Assert.assertEquals(6, underlying.inputs);
+		Assert.assertEquals(40, this.count(cached, this.inputs(1, 2, 3, 4, 42)));
+		Assert.assertEquals(2, underlying.accesses);
+
+		Assert.assertEquals(6, cached.getCache().size());
+		Assert.assertEquals(6, cached.getCache().getMissCount());
+		Assert.assertEquals(7, cached.getCache().getHitCount());
+
+		// The results are the same as those of the underlying access method.
+		List<String> expected = new ArrayList<>();
+		underlying.access(this.inputs(0, 3, 7).iterator()).forEach(t -> expected.add(t.toString()));
+		List<String> actual = new ArrayList<>();
+		cached.access(this.inputs(0, 3, 7).iterator()).forEach(t -> actual.add(t.toString()));
+		expected.sort(null);
+		actual.sort(null);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testMaximumTuples() {
+		CountingAccessMethod underlying = new CountingAccessMethod(this.relation);
+		// Room for the results of 2 inputs.
+		CachedAccessMethod cached = new CachedAccessMethod(underlying, new AccessResultCache(20, 0));
+		for (int a = 0; a < 10; a++)
+			Assert.assertEquals(10, this.count(cached, this.inputs(a)));
+		Assert.assertTrue(cached.getCache().size() <= 2);
+		Assert.assertEquals(10, this.count(cached, this.inputs(0)));
+		Assert.assertEquals(11, underlying.accesses);
+	}
+
+	@Test
+	public void testTimeToLive() throws InterruptedException {
+		CountingAccessMethod underlying = new CountingAccessMethod(this.relation);
+		CachedAccessMethod cached = new CachedAccessMethod(underlying, new AccessResultCache(1000, 100));
+		Assert.assertEquals(10, this.count(cached, this.inputs(5)));
+		Assert.assertEquals(10, this.count(cached, this.inputs(5)));
+		Assert.assertEquals(1, underlying.accesses);
+		Thread.sleep(200);
+		Assert.assertEquals(10, this.count(cached, this.inputs(5)));
+		Assert.assertEquals(2, underlying.accesses);
+	}
+
+	@Test
+	public void testFreeAccess() {
+		CountingAccessMethod underlying = new CountingAccessMethod(this.relation);
+		InMemoryAccessMethod free = new InMemoryAccessMethod(this.relation.getAttributes(), new Integer[0], this.relation,
+				ExecutableAccessMethod.getDefaultMapping(this.relation));
+		free.load(underlying.getData());
+		CachedAccessMethod cached = new CachedAccessMethod(free, new AccessResultCache(1000, 0));
+		int count = 0;
+		for (Tuple t : cached.access())
+			count++;
+		Assert.assertEquals(100, count);
+		Assert.assertEquals(1, cached.getCache().size());
+		Assert.assertEquals(0, cached.getCache().getHitCount());
+		cached.access().forEach(t -> {
+		});
+		Assert.assertEquals(1, cached.getCache().getHitCount());
+	}
+
+	/**
+	 * Imports an in memory access method with a cache element from xml, and
+	 * exports it again.
+	 */
+	@Test
+	public void testCacheImportExport() throws Exception {
+		File accessMethodXml = new File(cachedAccessesDir + "InMemoryCachedAccessMethod.xml");
+		ExecutableAccessMethod imported = DbIOManager.importAccess(accessMethodXml);
+		Assert.assertTrue(imported instanceof CachedAccessMethod);
+		CachedAccessMethod cached = (CachedAccessMethod) imported;
+		Assert.assertTrue(cached.getAccessMethod() instanceof InMemoryAccessMethod);
+		Assert.assertEquals("NATION_MEM_CACHED", cached.getName());
+		Assert.assertEquals(1000, cached.getCache().getMaximumTuples());
+		Assert.assertEquals(60 * 60 * 1000, cached.getCache().getTimeToLive());
+
+		TupleType type = TupleType.DefaultFactory.create(Integer.class);
+		List<Tuple> inputs = Arrays.asList(type.createTuple(1), type.createTuple(2));
+		Assert.assertEquals(2, this.count(cached, inputs));
+		Assert.assertEquals(2, this.count(cached, inputs));
+		Assert.assertEquals(2, cached.getCache().getHitCount());
+
+		File exported = new File(cachedAccessesDir + "InMemoryCachedAccessMethodOut.xml");
+		File exportedData = new File(cachedAccessesDir + "data");
+		try {
+			DbIOManager.exportAccessMethod(cached, exported);
+			CachedAccessMethod reimported = (CachedAccessMethod) DbIOManager.importAccess(exported);
+			Assert.assertEquals(1000, reimported.getCache().getMaximumTuples());
+			Assert.assertEquals(60 * 60 * 1000, reimported.getCache().getTimeToLive());
+			Map<Attribute, Attribute> mapping = reimported.getAttributeMapping(false);
+			Assert.assertEquals(cached.getAttributeMapping(false), mapping);
+		} finally {
+			exported.delete();
+			if (exportedData.listFiles() != null)
+				for (File f : exportedData.listFiles())
+					f.delete();
+			exportedData.delete();
+		}
+	}
+}
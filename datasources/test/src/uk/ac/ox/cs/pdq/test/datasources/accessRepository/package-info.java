@@ -10,5 +10,8 @@ package uk.ac.ox.cs.pdq.test.datasources.accessRepository;
 	
 	- TestAccessRepository.java
 		* A set of 6 unit tests for the AccessRepository class
+	
+	- TestCachedAccessMethod.java
+		* Tests the CachedAccessMethod and its cache element in the xml descriptors of the accesses
 
 **/
\ No newline at end of file
@@ -5,6 +5,7 @@ package uk.ac.ox.cs.pdq.test.datasources.memory;
 
 import static org.mockito.Mockito.when;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -418,6 +419,55 @@ public class InMemoryAccessMethodTest {
 		Assert.assertEquals("Alice", actualArray[0].getValue(0));
 	}
 
+	/*
+	 * Accesses with inputs are answered from an index on the input positions:
+	 * two access methods over the same data, loading more data after an access,
+	 * and BigDecimal inputs that compare equal with a different scale.
+	 */
+	@Test
+	public void testAccessIndex() {
+
+		Attribute[] relationAttributes = new Attribute[] {Attribute.create(Integer.class, "a"),
+				Attribute.create(String.class, "b"), Attribute.create(BigDecimal.class, "c")};
+		Relation relation = Relation.create("R", relationAttributes);
+		Map<Attribute, Attribute> attributeMapping = new HashMap<Attribute, Attribute>();
+		for (Attribute attribute: relationAttributes)
+			attributeMapping.put(attribute, attribute);
+
+		TupleType tt = TupleType.DefaultFactory.create(Integer.class, String.class, BigDecimal.class);
+		Collection<Tuple> tuples = new ArrayList<Tuple>();
+		for (int i = 0; i != 1000; i++)
+			tuples.add(tt.createTuple(i % 10, "s" + i, new BigDecimal(i % 7).setScale(2)));
+
+		InMemoryAccessMethod byA = new InMemoryAccessMethod(relationAttributes, new Integer[] {0}, relation, attributeMapping);
+		InMemoryAccessMethod byC = new InMemoryAccessMethod(relationAttributes, new Integer[] {2}, relation, attributeMapping);
+		byA.load(tuples);
+		byC.load(tuples);
+
+		TupleType ttInteger = TupleType.DefaultFactory.create(Integer.class);
+		List<Tuple> result = new ArrayList<Tuple>();
+		byA.access(Arrays.asList(ttInteger.createTuple(3), ttInteger.createTuple(1), ttInteger.createTuple(42)).iterator()).forEach(result::add);
+		Assert.assertEquals(200, result.size());
+		// The tuples are returned in the order they were loaded.
+		Assert.assertEquals("s1", result.get(0).getValue(1));
+		Assert.assertEquals("s3", result.get(1).getValue(1));
+		Assert.assertEquals("s11", result.get(2).getValue(1));
+
+		TupleType ttBigDecimal = TupleType.DefaultFactory.create(BigDecimal.class);
+		result = new ArrayList<Tuple>();
+		byC.access(Arrays.asList(ttBigDecimal.createTuple(new BigDecimal("5.0"))).iterator()).forEach(result::add);
+		Assert.assertEquals(143, result.size());
+		for (Tuple tuple: result)
+			Assert.assertEquals(0, new BigDecimal(5).compareTo((BigDecimal) tuple.getValue(2)));
+
+		// Loading more tuples updates the index.
+		byA.load(Arrays.asList(tt.createTuple(42, "new", BigDecimal.ONE)));
+		result = new ArrayList<Tuple>();
+		byA.access(Arrays.asList(ttInteger.createTuple(42)).iterator()).forEach(result::add);
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("new", result.get(0).getValue(1));
+	}
+
 	@Test
 	public void stressTest1() {
 
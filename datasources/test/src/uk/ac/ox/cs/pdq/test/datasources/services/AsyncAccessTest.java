@@ -0,0 +1,131 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.datasources.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.ac.ox.cs.pdq.datasources.services.RESTAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.services.RESTAccessMethodGenerator;
+import uk.ac.ox.cs.pdq.datasources.services.ServiceManager;
+import uk.ac.ox.cs.pdq.datasources.services.policies.UsagePolicyViolationException;
+import uk.ac.ox.cs.pdq.datasources.services.service.Service;
+import uk.ac.ox.cs.pdq.datasources.services.servicegroup.ServiceGroup;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+
+/**
+ * Tests the asynchronous accesses of the RESTAccessMethod
+ * (ExecutableAccessMethod.accessAsync) against a local stub server, that
+ * answers the nation with the key given in the request after a short delay.
+ */
+public class AsyncAccessTest {
+	private static final String FOLDER = "test" + File.separator + "src" + File.separator + "uk" + File.separator + "ac" + File.separator + "ox" + File.separator + "cs" + File.separator + "pdq" + File.separator + "test" + File.separator + "datasources" + File.separator + "services" + File.separator;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private AtomicInteger received = new AtomicInteger();
+	private AtomicInteger inFlight = new AtomicInteger();
+	private AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void setup() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/nation", this::handle);
+		this.serverExecutor = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.serverExecutor);
+		this.server.start();
+	}
+
+	@After
+	public void tearDown() {
+		this.server.stop(0);
+		this.serverExecutor.shutdownNow();
+	}
+
+	// Answers n_nationkey=k with the nation k.
+	private void handle(HttpExchange exchange) throws IOException {
+		this.received.incrementAndGet();
+		this.maxInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		String key = exchange.getRequestURI().getQuery().replace("n_nationkey=", "");
+		byte[] body = ("{\"nations\":[{\"n_nationkey\":" + key + ",\"n_name\":\"nation" + key + "\"}]}").getBytes(StandardCharsets.UTF_8);
+		this.inFlight.decrementAndGet();
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private RESTAccessMethod createAccessMethod(String serviceFile) throws Exception {
+		ServiceGroup sgr = ServiceManager.importServiceGroups(new File(FOLDER + "stub-service-groups.xml"));
+		Service sr = ServiceManager.importAccessMethod(new File(FOLDER + serviceFile));
+		sr.setUrl("http://localhost:" + this.server.getAddress().getPort() + "/nation");
+		return new RESTAccessMethodGenerator(sgr, sr, sr.getAccessMethod()[0]).getRestAccessMethod();
+	}
+
+	private List<Tuple> inputs(int size) {
+		TupleType type = TupleType.DefaultFactory.create(Integer.class);
+		List<Tuple> inputs = new ArrayList<>();
+		for (int key = 0; key < size; key++)
+			inputs.add(type.createTuple(key));
+		return inputs;
+	}
+
+	private List<String> sorted(Iterable<Tuple> tuples) {
+		List<String> result = new ArrayList<>();
+		tuples.forEach(tuple -> result.add(tuple.toString()));
+		return result.stream().sorted().collect(Collectors.toList());
+	}
+
+	@Test
+	public void testAccessAsync() throws Exception {
+		RESTAccessMethod method = this.createAccessMethod("stub-nationInput.xml");
+		List<String> expected = this.sorted(method.access(this.inputs(20).iterator()));
+		Assert.assertEquals(20, expected.size());
+		Assert.assertEquals(1, this.maxInFlight.get());
+
+		Assert.assertEquals(expected, this.sorted(method.accessAsync(this.inputs(20).iterator(), 4)));
+		Assert.assertEquals(40, this.received.get());
+		Assert.assertTrue(this.maxInFlight.get() > 1);
+		Assert.assertTrue(this.maxInFlight.get() <= 4);
+	}
+
+	@Test
+	public void testRequestAllowance() throws Exception {
+		// At most 5 requests per minute, the policy does not wait.
+		RESTAccessMethod method = this.createAccessMethod("stub-nationInputLimited.xml");
+		try {
+			this.sorted(method.accessAsync(this.inputs(10).iterator(), 4));
+			Assert.fail("The request allowance should have been exceeded");
+		} catch (UsagePolicyViolationException e) {
+		}
+		// The violation may be reported while the allowed requests are still in flight.
+		for (int wait = 0; wait < 100 && this.received.get() < 5; wait++)
+			Thread.sleep(50);
+		Assert.assertEquals(5, this.received.get());
+	}
+}
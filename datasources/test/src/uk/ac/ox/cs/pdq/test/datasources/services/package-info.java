@@ -10,5 +10,8 @@ package uk.ac.ox.cs.pdq.test.datasources.services;
 	
 	- ServiceMxlTest.java
 		* A set of 5 unit tests for the RESTExecutableAccessMethod class
+	
+	- AsyncAccessTest.java
+		* Tests the asynchronous accesses and the request allowance of the RESTAccessMethod against a local stub server
 
 **/
\ No newline at end of file
@@ -0,0 +1,180 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.datasources.sql;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.datasources.ExecutableAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.io.jaxb.XmlExecutableAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.sql.SqlAccessMethod;
+import uk.ac.ox.cs.pdq.datasources.sql.SqlConnectionPool;
+import uk.ac.ox.cs.pdq.datasources.sql.StreamingSqlAccessMethod;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+
+/**
+ * Tests the StreamingSqlAccessMethod against an in memory H2 database, holding
+ * a NATION table with 25 nations in 5 regions.
+ *
+ * @author Gabor
+ *
+ */
+public class TestStreamingSqlAccessMethod {
+
+	private final Attribute[] attributes = new Attribute[] { Attribute.create(Integer.class, "N_NATIONKEY"),
+			Attribute.create(String.class, "N_NAME"), Attribute.create(Integer.class, "N_REGIONKEY") };
+	private final Relation relation = Relation.create("NATION", this.attributes);
+	private final TupleType inputType = TupleType.DefaultFactory.create(Integer.class);
+
+	/** Keeps the in memory database open during a test. */
+	private Connection database;
+
+	private Properties getProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("url", "jdbc:h2:mem:");
+		properties.setProperty("database", "nations");
+		properties.setProperty("username", "sa");
+		properties.setProperty("password", "");
+		properties.setProperty("batch-size", "4");
+		properties.setProperty("fetch-size", "2");
+		return properties;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		this.database = DriverManager.getConnection("jdbc:h2:mem:nations", "sa", "");
+		try (Statement statement = this.database.createStatement()) {
+			statement.execute("CREATE TABLE NATION (N_NATIONKEY INT, N_NAME VARCHAR(25), N_REGIONKEY INT)");
+			for (int nation = 0; nation < 25; nation++)
+				statement.execute("INSERT INTO NATION VALUES (" + nation + ", 'nation" + nation + "', " + (nation % 5) + ")");
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.database.close();
+	}
+
+	private StreamingSqlAccessMethod createAccessMethod(Integer... inputs) {
+		return new StreamingSqlAccessMethod("NATION", this.attributes, inputs, this.relation,
+				ExecutableAccessMethod.getDefaultMapping(this.relation), this.getProperties());
+	}
+
+	private List<Tuple> inputs(Integer... values) {
+		List<Tuple> inputs = new ArrayList<>();
+		for (Integer value : values)
+			inputs.add(this.inputType.createTuple(value));
+		return inputs;
+	}
+
+	private List<String> toStrings(Iterable<Tuple> tuples) {
+		List<String> result = new ArrayList<>();
+		tuples.forEach(t -> result.add(t.toString()));
+		result.sort(null);
+		return result;
+	}
+
+	@Test
+	public void testFreeAccess() throws Exception {
+		StreamingSqlAccessMethod method = this.createAccessMethod();
+		try {
+			Assert.assertEquals(25, this.toStrings(method.access()).size());
+		} finally {
+			method.close();
+		}
+	}
+
+	/**
+	 * The inputs are accessed in batches of 4, the results are the same as those
+	 * of the SqlAccessMethod.
+	 */
+	@Test
+	public void testInputs() throws Exception {
+		StreamingSqlAccessMethod method = this.createAccessMethod(2);
+		SqlAccessMethod reference = new SqlAccessMethod("NATION", this.attributes, new Integer[] { 2 }, this.relation,
+				ExecutableAccessMethod.getDefaultMapping(this.relation), this.getProperties());
+		try {
+			List<Tuple> inputs = this.inputs(0, 1, 3, 1, 4, 42);
+			List<String> results = this.toStrings(method.access(inputs.iterator()));
+			Assert.assertEquals(20, results.size());
+			Assert.assertEquals(this.toStrings(reference.access(inputs.iterator())), results);
+			Assert.assertEquals(5, this.toStrings(method.access(this.inputs(2).iterator())).size());
+			Assert.assertEquals(0, this.toStrings(method.access(this.inputs(42).iterator())).size());
+		} finally {
+			method.close();
+			reference.close();
+		}
+	}
+
+	/**
+	 * The results are read as they are consumed, and the connections are given
+	 * back to the pool and reused.
+	 */
+	@Test
+	public void testStreaming() throws Exception {
+		StreamingSqlAccessMethod method = this.createAccessMethod(2);
+		SqlConnectionPool pool = SqlConnectionPool.acquire(this.getProperties());
+		try {
+			Iterator<Tuple> first = method.access(this.inputs(0, 1, 2, 3, 4).iterator()).iterator();
+			Assert.assertTrue(first.hasNext());
+			first.next();
+			// Nested accesses get connections of their own.
+			Iterator<Tuple> second = method.access(this.inputs(0).iterator()).iterator();
+			Assert.assertEquals(5, this.toStrings(() -> second).size());
+			Assert.assertEquals(2, pool.getOpenedConnections());
+			int count = 1;
+			while (first.hasNext()) {
+				first.next();
+				count++;
+			}
+			Assert.assertEquals(25, count);
+			Assert.assertEquals(2, pool.getIdleConnections());
+
+			Assert.assertEquals(5, this.toStrings(method.access(this.inputs(3).iterator())).size());
+			Assert.assertEquals(2, pool.getOpenedConnections());
+		} finally {
+			method.close();
+			pool.release();
+		}
+		Assert.assertEquals(0, pool.getIdleConnections());
+	}
+
+	/**
+	 * The xml descriptors select the streaming access method with the
+	 * "streaming" database property.
+	 */
+	@Test
+	public void testXml() throws Exception {
+		Properties properties = this.getProperties();
+		properties.setProperty("streaming", "true");
+		StreamingSqlAccessMethod method = new StreamingSqlAccessMethod("NATION", this.attributes, new Integer[] { 2 },
+				this.relation, ExecutableAccessMethod.getDefaultMapping(this.relation), properties);
+		File folder = new File("test/src/uk/ac/ox/cs/pdq/test/datasources/sql/data");
+		try {
+			ExecutableAccessMethod imported = new XmlExecutableAccessMethod(method, folder).toExecutableAccessMethod(null, folder);
+			Assert.assertTrue(imported instanceof StreamingSqlAccessMethod);
+			Assert.assertEquals(Arrays.asList(method.inputAttributes()), Arrays.asList(imported.inputAttributes()));
+			Assert.assertEquals(5, this.toStrings(imported.access(this.inputs(1).iterator())).size());
+			imported.close();
+		} finally {
+			method.close();
+			folder.delete();
+		}
+	}
+}
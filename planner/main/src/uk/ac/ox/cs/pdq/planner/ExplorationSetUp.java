@@ -32,7 +32,10 @@ import uk.ac.ox.cs.pdq.algebra.SimpleCondition;
 import uk.ac.ox.cs.pdq.cost.Cost;
 import uk.ac.ox.cs.pdq.cost.CostEstimatorFactory;
 import uk.ac.ox.cs.pdq.cost.CostParameters;
+import uk.ac.ox.cs.pdq.cost.estimators.CachedCostEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.CardinalityMetadataStore;
 import uk.ac.ox.cs.pdq.cost.estimators.CostEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.TextBookCostEstimator;
 import uk.ac.ox.cs.pdq.db.AccessMethodDescriptor;
 import uk.ac.ox.cs.pdq.db.Attribute;
 import uk.ac.ox.cs.pdq.db.Relation;
@@ -47,6 +50,7 @@ import uk.ac.ox.cs.pdq.fol.Formula;
 import uk.ac.ox.cs.pdq.fol.Term;
 import uk.ac.ox.cs.pdq.fol.TypedConstant;
 import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters.PlannerTypes;
 import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleQuery;
 import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
 import uk.ac.ox.cs.pdq.planner.dag.explorer.DAGOptimizedMultiThread;
@@ -58,6 +62,7 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
 import uk.ac.ox.cs.pdq.reasoningdatabase.ExternalDatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.LogicalDatabaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.EncodedMultiInstanceFactCache;
 import uk.ac.ox.cs.pdq.reasoningdatabase.cache.MultiInstanceFactCache;
 import uk.ac.ox.cs.pdq.reasoningdatabase.monitor.DatabaseMonitor;
 import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
@@ -189,7 +194,9 @@ public class ExplorationSetUp {
 		try {
 			if (plannerParams.getUseInternalDatabase() || this.databaseParams.getUseInternalDatabaseManager()) {
 				// internal
-				databaseConnection = new InternalDatabaseManager(new MultiInstanceFactCache(),GlobalCounterProvider.getNext("DatabaseInstanceId"));
+				MultiInstanceFactCache cache = this.databaseParams != null && this.databaseParams.getEncodedInternalDatabase()
+						? new EncodedMultiInstanceFactCache() : new MultiInstanceFactCache();
+				databaseConnection = new InternalDatabaseManager(cache,GlobalCounterProvider.getNext("DatabaseInstanceId"));
 				convertTypes = false; // the internal database can handle types correctly.
 			} else {
 				// external database.
@@ -208,6 +215,13 @@ public class ExplorationSetUp {
 			generateAccessibleQueryAndStoreSubstitutionToCanonicalVariables(query);
 			// Top-level initialisations
 			CostEstimator costEstimator = CostEstimatorFactory.getEstimator(this.costParams, this.schema);
+			// The DAG planners cost the same join plans over and over again. The linear
+			// planners need the order (in)dependent estimators themselves, they are not wrapped.
+			if (this.costParams.getCostCacheSize() != null && this.costParams.getCostCacheSize() > 0
+					&& (this.plannerParams.getPlannerType().equals(PlannerTypes.DAG_GENERIC)
+							|| this.plannerParams.getPlannerType().equals(PlannerTypes.DAG_OPTIMIZED))) {
+				costEstimator = new CachedCostEstimator(costEstimator, this.costParams.getCostCacheSize());
+			}
 
 			Chaser reasoner = new ReasonerFactory(this.reasoningParams).getInstance();
 
@@ -221,6 +235,17 @@ public class ExplorationSetUp {
 		    explorer.setMaxElapsedTime(this.plannerParams.getTimeout());
 			explorer.setFindBestPlan(this.plannerParams.getFindBestPlan());
 			explorer.explore();
+			if (costEstimator instanceof CachedCostEstimator) {
+				log.debug("Cost cache hits: " + ((CachedCostEstimator) costEstimator).getHitCount() + " misses: "
+						+ ((CachedCostEstimator) costEstimator).getMissCount());
+			}
+			CostEstimator estimator = costEstimator instanceof CachedCostEstimator
+					? ((CachedCostEstimator) costEstimator).getCostEstimator() : costEstimator;
+			if (estimator instanceof TextBookCostEstimator && ((TextBookCostEstimator) estimator).getCardinalityMetadataStore() != null) {
+				CardinalityMetadataStore store = ((TextBookCostEstimator) estimator).getCardinalityMetadataStore();
+				log.debug("Cardinality metadata hit rate: " + store.getHitRate() + " resident: " + store.size()
+						+ " evicted: " + store.getEvictionCount());
+			}
 			if (explorer.getBestPlan() != null && explorer.getBestCost() != null) {
 				RelationalTerm bestPlan = explorer.getBestPlan();
 				if (convertTypes) {
@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +30,7 @@ import uk.ac.ox.cs.pdq.cost.estimators.CountNumberOfAccessedRelationsCostEstimat
 import uk.ac.ox.cs.pdq.exceptions.LimitReachedException;
 import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
 import uk.ac.ox.cs.pdq.fol.Dependency;
+import uk.ac.ox.cs.pdq.logging.StatisticsCollector;
 import uk.ac.ox.cs.pdq.planner.PlannerException;
 import uk.ac.ox.cs.pdq.planner.PlannerParameters;
 import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
@@ -113,7 +115,7 @@ public class DAGOptimized extends DAGExplorer {
 			initialConfigurations.removeAll(toDelete);
 		}
 		this.leftSideConfigurations = new ConcurrentLinkedQueue<>();
-		this.equivalenceClasses = new DAGEquivalenceClasses();
+		this.equivalenceClasses = new DAGEquivalenceClasses(new StatisticsCollector(eventBus));
 		this.leftSideConfigurations.addAll(initialConfigurations);
 		for (DAGChaseConfiguration initialConfiguration : initialConfigurations) {
 			this.equivalenceClasses.addEntry(initialConfiguration);
@@ -236,42 +238,15 @@ public class DAGOptimized extends DAGExplorer {
 				for (DAGChaseConfiguration configuration : rightInput) {
 					Preconditions.checkNotNull(equivalenceClasses.getEquivalenceClass(configuration));
 					Preconditions.checkState(!equivalenceClasses.getEquivalenceClass(configuration).isEmpty());
-					if (DagChaseConfigurationValidation.validate(left, configuration,
-									Arrays.asList(this.validator), depth)
-							&& isPotentialBestPlan(left, configuration,
-									bestConfiguration == null ? null : bestConfiguration.getPlan(),
-									bestConfiguration == null ? null : bestConfiguration.getCost(), this.costEstimator,
-									this.successDominance))
+					if (this.isCombinable(left, configuration, bestConfiguration))
 						selected.add(configuration);
 				}
 				
 				for (DAGChaseConfiguration entry : selected) {
 					// If the new configuration is not already in the output
 					if (!output.containsKey(Pair.of(left, entry))) {
-						DAGChaseConfiguration configuration = null;
-						// A configuration BinConfiguration(c,c'), where c and c' belong to the
-						// equivalence classes of
-						// the left and right input configuration, respectively.
-						DAGChaseConfiguration representative = representatives.getRepresentativeForLeftRightComposition(this.equivalenceClasses, left, entry);
-						if (representative == null) {
-							representative = representatives.getRepresentativeForLeftRightComposition(this.equivalenceClasses, entry, left);
-						}
-						// If the representative of composition is null, then create a binary configuration
-						// from scratch by fully chasing its state
-						if (representative == null) {
-							configuration = new BinaryConfiguration(left, entry);
-							this.chaser.reasonUntilTermination(configuration.getState(), inferredAccessibilityAxioms);
-							representatives.put(this.equivalenceClasses, left, entry, configuration);
-						}
-						// otherwise, re-use the state of the representative
-						else if (representative != null) {
-							configuration = new BinaryConfiguration(left, entry, representative.getState().clone());
-						}
-						Cost cost = this.costEstimator.cost(configuration.getPlan());
-						configuration.setCost(cost);							
-						
 						// Create a new binary configuration
-						output.put(Pair.of(left, entry), configuration);
+						output.put(Pair.of(left, entry), this.createBinaryConfiguration(left, entry, inferredAccessibilityAxioms, representatives));
 					}
 				}
 			}
@@ -283,6 +258,55 @@ public class DAGOptimized extends DAGExplorer {
 		}
 	}
 
+	/**
+	 * @param left the left
+	 * @param right the right
+	 * @param bestConfiguration Best configuration found so far
+	 * @return true if the left and right configurations are valid and their composition is not success dominated by the best plan
+	 */
+	protected boolean isCombinable(DAGChaseConfiguration left, DAGChaseConfiguration right, DAGChaseConfiguration bestConfiguration) {
+		return DagChaseConfigurationValidation.validate(left, right, Arrays.asList(this.validator), depth)
+				&& isPotentialBestPlan(left, right,
+						bestConfiguration == null ? null : bestConfiguration.getPlan(),
+						bestConfiguration == null ? null : bestConfiguration.getCost(), this.costEstimator,
+						this.successDominance);
+	}
+
+	/**
+	 * Creates the binary configuration of the left and right configurations, and sets its cost. 
+	 * 
+	 * @param left the left
+	 * @param right the right
+	 * @param inferredAccessibilityAxioms the axioms to chase the state of the new configuration with
+	 * @param representatives the configurations already created for pairs of equivalence classes 
+	 * @return the binary configuration
+	 */
+	protected DAGChaseConfiguration createBinaryConfiguration(DAGChaseConfiguration left, DAGChaseConfiguration right,
+			Dependency[] inferredAccessibilityAxioms, MapOfPairsOfConfigurationsToTheEquivalentBinaryConfiguration representatives) {
+		DAGChaseConfiguration configuration = null;
+		// A configuration BinConfiguration(c,c'), where c and c' belong to the
+		// equivalence classes of
+		// the left and right input configuration, respectively.
+		DAGChaseConfiguration representative = representatives.getRepresentativeForLeftRightComposition(this.equivalenceClasses, left, right);
+		if (representative == null) {
+			representative = representatives.getRepresentativeForLeftRightComposition(this.equivalenceClasses, right, left);
+		}
+		// If the representative of composition is null, then create a binary configuration
+		// from scratch by fully chasing its state
+		if (representative == null) {
+			configuration = new BinaryConfiguration(left, right);
+			this.chaser.reasonUntilTermination(configuration.getState(), inferredAccessibilityAxioms);
+			representatives.put(this.equivalenceClasses, left, right, configuration);
+		}
+		// otherwise, re-use the state of the representative
+		else if (representative != null) {
+			configuration = new BinaryConfiguration(left, right, representative.getState().clone());
+		}
+		Cost cost = this.costEstimator.cost(configuration.getPlan());
+		configuration.setCost(cost);
+		return configuration;
+	}
+
 	/**
 	 *
 	 * @param left the left
@@ -313,6 +337,10 @@ public class DAGOptimized extends DAGExplorer {
 	 * there is a better one, and updates the equavalence classes. Returns the new
 	 * configurations that did not exists in the equavalence classes before
 	 * 
+	 * The configurations are processed in the order of orderConfigurations, so
+	 * that the same configurations are kept and the same best configuration is
+	 * selected among the ones of equal cost, whatever the order they were created in.
+	 * 
 	 * @param input
 	 *            - new configurations to update the equavalence classes with.
 	 * @param bestConfiguration
@@ -324,9 +352,8 @@ public class DAGOptimized extends DAGExplorer {
 			DAGChaseConfiguration bestConfiguration) throws Exception {
 		
 		Set<DAGChaseConfiguration> output = new HashSet<DAGChaseConfiguration>();
-		DAGChaseConfiguration configuration;
-		// Poll the next configuration
-		while ((configuration = input.poll()) != null) {
+		// Take the next configuration
+		for (DAGChaseConfiguration configuration : orderConfigurations(input)) {
 			this.checkLimitReached();
 
 			// If the configuration is not dominated
@@ -345,16 +372,7 @@ public class DAGOptimized extends DAGExplorer {
 					}
 					// Update the best configuration
 					if (configuration.isClosed() && configuration.isSuccessful(this.accessibleQuery) == true) {
-						if (bestConfiguration != null && bestConfiguration.getCost() == null && configuration != null
-								&& configuration.getCost() != null) {
-							// in case the old best had no cost the new one is better, no matter what the
-							// cost value is.
-							bestConfiguration = configuration;
-						}
-						if (bestConfiguration == null || (bestConfiguration != null && configuration != null
-								&& bestConfiguration.getCost().greaterThan(configuration.getCost()))) {
-							bestConfiguration = configuration;
-						}
+						bestConfiguration = selectBestConfiguration(bestConfiguration, configuration);
 					} else {
 						this.equivalenceClasses.addEntry(configuration);
 						output.add(configuration);
@@ -390,4 +408,52 @@ public class DAGOptimized extends DAGExplorer {
 		}
 		throw new PlannerException(e);
 	}
+
+	/**
+	 * Selects the best of the best configuration found so far and a new closed
+	 * successful configuration. The configuration found first is kept when their
+	 * costs are equal.
+	 * 
+	 * @param bestConfiguration
+	 *            - previous best config, or null
+	 * @param configuration
+	 *            - a closed successful configuration
+	 * @return the best configuration
+	 */
+	protected static DAGChaseConfiguration selectBestConfiguration(DAGChaseConfiguration bestConfiguration,
+			DAGChaseConfiguration configuration) {
+		if (bestConfiguration != null && bestConfiguration.getCost() == null && configuration != null
+				&& configuration.getCost() != null) {
+			// in case the old best had no cost the new one is better, no matter what the
+			// cost value is.
+			bestConfiguration = configuration;
+		}
+		if (bestConfiguration == null || (bestConfiguration != null && configuration != null
+				&& bestConfiguration.getCost().greaterThan(configuration.getCost()))) {
+			bestConfiguration = configuration;
+		}
+		return bestConfiguration;
+	}
+
+	/**
+	 * Removes the configurations from the queue, and orders them by height, then
+	 * by their plans. Since the configurations of equal cost are compared in this
+	 * order, the best configuration does not depend on the order in which the
+	 * threads created the configurations.
+	 * 
+	 * @param input
+	 *            - new configurations
+	 * @return the configurations in deterministic order
+	 */
+	protected static List<DAGChaseConfiguration> orderConfigurations(Queue<DAGChaseConfiguration> input) {
+		Map<DAGChaseConfiguration, String> plans = new HashMap<>();
+		List<DAGChaseConfiguration> configurations = new ArrayList<>();
+		DAGChaseConfiguration configuration;
+		while ((configuration = input.poll()) != null) {
+			configurations.add(configuration);
+			plans.put(configuration, String.valueOf(configuration.getPlan()));
+		}
+		configurations.sort(Comparator.comparing(DAGChaseConfiguration::getHeight).thenComparing(plans::get));
+		return configurations;
+	}
 }
@@ -6,15 +6,24 @@ package uk.ac.ox.cs.pdq.planner.dag.explorer;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.collections4.CollectionUtils;
 
 import com.google.common.eventbus.EventBus;
 
+import uk.ac.ox.cs.pdq.algebra.RelationalTerm;
 import uk.ac.ox.cs.pdq.cost.Cost;
 import uk.ac.ox.cs.pdq.cost.estimators.CostEstimator;
 import uk.ac.ox.cs.pdq.exceptions.LimitReachedException;
@@ -25,7 +34,7 @@ import uk.ac.ox.cs.pdq.planner.PlannerParameters;
 import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
 import uk.ac.ox.cs.pdq.planner.dag.DAGChaseConfiguration;
 import uk.ac.ox.cs.pdq.planner.dag.explorer.filters.Filter;
-import uk.ac.ox.cs.pdq.planner.equivalence.dag.DAGEquivalenceClasses;
+import uk.ac.ox.cs.pdq.planner.equivalence.dag.DAGEquivalenceClass;
 import uk.ac.ox.cs.pdq.reasoning.chase.Chaser;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 
@@ -37,14 +46,25 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
  * Most of what is new here over dagoptimized has to do with threading
  * It makes calls to some of the methods for updating best plans that are in dagoptimized
  * 
+ * The work is done in a ForkJoinPool, as a task for every pair of configurations
+ * to combine and for every new configuration to check for dominance. The tasks are
+ * split recursively, so that idle threads steal the remaining work of busy ones.
+ * When a task fails, or the limits of the exploration are reached, the remaining
+ * tasks of the step are skipped.
+ * 
+ * The dominance checks of the new configurations against the equivalence classes
+ * run in parallel, then the results are reconciled in the order of the new configurations,
+ * so that the same configurations are kept and the same best plan is found as by the
+ * sequential DAGOptimized.
+ * 
  * @author Gabor
  *
  */
 public class DAGOptimizedMultiThread extends DAGOptimized {
 
-	/** Configurations produced during the previous round. */
-	private final Queue<Runnable> createQueue;
-	private List<ThreadPoolWorker> threadPool;
+	/** Executes the tasks of the exploration steps. */
+	private final ForkJoinPool pool;
+	/** Maximum time in milliseconds to wait for the tasks of an exploration step. */
 	private long TIMEOUT;
 	/**
 	 * Instantiates a new DAG optimized.
@@ -70,11 +90,7 @@ public class DAGOptimizedMultiThread extends DAGOptimized {
 			throws PlannerException, SQLException {
 		super(eventBus, parameters, query, accessibleSchema, chaser, connection, costEstimator, filter, maxDepth);
 		
-		this.createQueue = new ConcurrentLinkedQueue<>();
-		threadPool = new ArrayList<>();
-		for (int i = 0; i < parameters.getDagThreads(); i++) {
-			threadPool.add(new ThreadPoolWorker(createQueue,"CreatePoolThread"+i));
-		}
+		this.pool = new ForkJoinPool(parameters.getDagThreads());
 		TIMEOUT = parameters.getDagThreadTimeout();
 	}
 	
@@ -82,8 +98,7 @@ public class DAGOptimizedMultiThread extends DAGOptimized {
 	 * Stops the pool.
 	 */
 	public void shutdownThreads() {
-		if (threadPool != null) 
-			for (ThreadPoolWorker t: threadPool) t.setShutdown(true);
+		this.pool.shutdownNow();
 	}
 	/**
 	 * _explore.
@@ -97,6 +112,7 @@ public class DAGOptimizedMultiThread extends DAGOptimized {
 	public void performSingleExplorationStep() throws PlannerException, LimitReachedException {
 		if (this.depth > this.maxDepth) {
 			this.forcedTermination = true;
+			shutdownThreads();
 			return;
 		}
 		// Check the ApplyRule configurations for success
@@ -114,38 +130,10 @@ public class DAGOptimizedMultiThread extends DAGOptimized {
 		} else if (this.depth > 1) {
 			//generate new configurations by composing old
 			this.checkLimitReached();
-			List<CreateBinaryConfigurationsTask> currentTasks = new ArrayList<>();
-			Queue<DAGChaseConfiguration> leftCopy = new ConcurrentLinkedQueue<>();
-			leftCopy.addAll(this.leftSideConfigurations);
-			ArrayList<DAGChaseConfiguration> right = new ArrayList<>();
-			right.addAll(this.equivalenceClasses.getConfigurations());
-			int groupSize = right.size()/threadPool.size()+1;
-			// group the right side configurations to create multiple tasks. 
-			for (int i = 0; i < right.size(); i += groupSize) {
-				Collection<DAGChaseConfiguration> rightGroup = new ArrayList<>();
-				for (int j = i; j< i+groupSize; j++) {
-					if (j < right.size())
-						rightGroup.add(right.get(j));
-				}
-				// Instead of combining all left and right configurations we combine all left with a small group from the right in one thread. 
-				CreateBinaryConfigurationsTask a = new CreateBinaryConfigurationsTask(this,
-						new ConcurrentLinkedQueue<>(leftCopy), new ConcurrentLinkedQueue<>(rightGroup),
-						this.accessibleSchema.getInferredAccessibilityAxioms(), this.bestConfiguration,
-						this.equivalenceClasses);
-				CreateBinaryConfigurationsTask b = new CreateBinaryConfigurationsTask(this,
-						new ConcurrentLinkedQueue<>(rightGroup), new ConcurrentLinkedQueue<>(leftCopy), 
-						this.accessibleSchema.getInferredAccessibilityAxioms(), this.bestConfiguration,
-						this.equivalenceClasses);
-				currentTasks.add(a);
-				currentTasks.add(b);
-				createQueue.add(a);
-				createQueue.add(b);
-			}
-			
-			Collection<DAGChaseConfiguration> newlyCreatedConfigurations = new ArrayList<>();
-			for (CreateBinaryConfigurationsTask t:currentTasks) {
-				newlyCreatedConfigurations.addAll(t.getReturnValue());
-			}
+			List<DAGChaseConfiguration> left = new ArrayList<>(this.leftSideConfigurations);
+			List<DAGChaseConfiguration> right = new ArrayList<>(this.equivalenceClasses.getConfigurations());
+			Collection<DAGChaseConfiguration> newlyCreatedConfigurations = this.createBinaryConfigurations(left, right);
+
 			// Check for new configurations
 			if (newlyCreatedConfigurations == null || newlyCreatedConfigurations.isEmpty()) {
 				this.forcedTermination = true;
@@ -188,115 +176,254 @@ public class DAGOptimizedMultiThread extends DAGOptimized {
 		this.depth++;
 	}
 	/**
-	 * @author gabor
-	 * This thread will execute runnable tasks from the given queue. In case the queue is empty it will wait for new tasks to appear in it.
+	 * Parallel version of DAGOptimized.findBestAndUpdateEquivalences. The new
+	 * configurations are checked by the tasks of the pool, which check them
+	 * against the equivalence classes as they were before this step: each thread
+	 * finds a configuration dominating the new one or, if there is none, the
+	 * configurations dominated by the new one. The results are then reconciled on
+	 * the calling thread, in the order of the input, taking into account the
+	 * configurations removed and added by the configurations before. When the
+	 * dominator found in parallel has been removed meanwhile, the configuration is
+	 * checked again against the current classes. The best configuration is updated
+	 * in the order of the input too, so ties are broken like in the sequential
+	 * version: the input is sorted by orderConfigurations, and the configuration
+	 * found first is kept.
 	 */
-	private class ThreadPoolWorker extends Thread{
-		private Queue<Runnable> queue;
-		private boolean shutdown = false;
-
-		public ThreadPoolWorker(Queue<Runnable> queue,String name) {
-			super(name);
-			this.queue = queue;
-			this.start();
+	@Override
+	protected Set<DAGChaseConfiguration> findBestAndUpdateEquivalences(Queue<DAGChaseConfiguration> input,
+			DAGChaseConfiguration bestConfiguration) throws Exception {
+		List<DAGChaseConfiguration> configurations = orderConfigurations(input);
+		// Check the dominance against the current classes in parallel
+		DAGChaseConfiguration[] dominators = new DAGChaseConfiguration[configurations.size()];
+		List<Collection<DAGChaseConfiguration>> dominatedConfigurations = new ArrayList<>();
+		for (int i = 0; i < configurations.size(); i++) {
+			dominatedConfigurations.add(null);
 		}
-		public void run() {
-			try {
-				while (!shutdown) {
-					Runnable task = queue.poll();
-					if (task == null) {
-						// wait until task arrives
-						synchronized (queue) {
-							try {
-								queue.wait(100);
-							} catch (InterruptedException e) {
-							}
-						}
+		this.runInParallel(configurations.size(), index -> {
+			DAGChaseConfiguration configuration = configurations.get(index);
+			dominators[index] = this.equivalenceClasses.dominate(this.dominance, configuration);
+			if (dominators[index] == null) {
+				dominatedConfigurations.set(index, this.equivalenceClasses.dominatedBy(this.dominance, configuration));
+			}
+		});
+
+		// Reconcile the results in the order of the input
+		Set<DAGChaseConfiguration> output = new HashSet<DAGChaseConfiguration>();
+		Set<DAGChaseConfiguration> removed = new HashSet<>();
+		Collection<DAGChaseConfiguration> added = new LinkedHashSet<>();
+		for (int i = 0; i < configurations.size(); i++) {
+			this.checkLimitReached();
+			DAGChaseConfiguration configuration = configurations.get(i);
+			// If the configuration is not dominated
+			if (!this.isDominated(configuration, dominators[i], removed, added)) {
+				// Assess its potential
+				RelationalTerm currentBestPlan = bestConfiguration == null ? null : bestConfiguration.getPlan();
+				Cost currentCost = bestConfiguration == null ? null : bestConfiguration.getCost();
+				if (currentBestPlan == null || !successDominance.isDominated(configuration.getPlan(), configuration.getCost(), currentBestPlan, currentCost)) {
+					// Find the configurations dominated by the current one and remove them
+					Collection<DAGChaseConfiguration> dominated = this.dominatedBy(configuration, dominators[i],
+							dominatedConfigurations.get(i), removed, added);
+					if (!dominated.isEmpty()) {
+						output.removeAll(dominated);
+						this.equivalenceClasses.removeAll(dominated);
+						removed.addAll(dominated);
+						added.removeAll(dominated);
+					}
+					// Update the best configuration
+					if (configuration.isClosed() && configuration.isSuccessful(this.accessibleQuery) == true) {
+						bestConfiguration = selectBestConfiguration(bestConfiguration, configuration);
 					} else {
-						// run the task, it shouldn't have a return value nor should it throw anything.
-						task.run();
+						this.equivalenceClasses.addEntry(configuration);
+						output.add(configuration);
+						added.add(configuration);
 					}
-						
 				}
-			} catch(Throwable t) {
-				// since it will be executed as a thread we need to make sure we log any events...
-				t.printStackTrace();
 			}
 		}
-		public void setShutdown(boolean shutdown) {
-			this.shutdown = shutdown;
+		if (bestConfiguration != null) {
+			this.setBestPlan(bestConfiguration);
 		}
+		return output;
 	}
-	
+
 	/**
-	 * This class represents one part of the exploration. Multiple instances will be executed at the same time by executor threads.
+	 * Checks if a new configuration is dominated by the current classes.
 	 *
+	 * @param configuration the new configuration
+	 * @param dominator the configuration found to dominate the new one before this step, or null
+	 * @param removed the configurations removed from the classes in this step
+	 * @param added the configurations added to the classes in this step, and not removed since
+	 * @return true if the configuration is dominated
 	 */
-	private class CreateBinaryConfigurationsTask implements Runnable {
-		private DAGOptimizedMultiThread executor;
-		private Queue<DAGChaseConfiguration> leftSideConfigurations;
-		private Collection<DAGChaseConfiguration> rightSideConfigurations;
-		private Dependency[] inferredAccessibilityAxioms;
-		private DAGChaseConfiguration bestConfiguration;
-		private DAGEquivalenceClasses equivalenceClasses;
-		private Collection<DAGChaseConfiguration> returnValue;
-		private Throwable t;
-		volatile private boolean finished = false;
-		
-		/**
-		 * Constructor to store all parameters needed for the selectAndCreateBinaryConfigurationsToCreateAndReason call.
-		 */
-		public CreateBinaryConfigurationsTask(DAGOptimizedMultiThread executor,
-				Queue<DAGChaseConfiguration> leftSideConfigurations,
-				Collection<DAGChaseConfiguration> rightSideConfigurations, Dependency[] inferredAccessibilityAxioms,
-				DAGChaseConfiguration bestConfiguration, DAGEquivalenceClasses equivalenceClasses) {
-					this.executor = executor;
-					this.leftSideConfigurations = leftSideConfigurations;
-					this.rightSideConfigurations = rightSideConfigurations;
-					this.inferredAccessibilityAxioms = inferredAccessibilityAxioms;
-					this.bestConfiguration = bestConfiguration;
-					this.equivalenceClasses = equivalenceClasses;
-					t = null;
+	private boolean isDominated(DAGChaseConfiguration configuration, DAGChaseConfiguration dominator,
+			Set<DAGChaseConfiguration> removed, Collection<DAGChaseConfiguration> added) {
+		if (dominator != null) {
+			return !removed.contains(dominator) || this.equivalenceClasses.dominate(this.dominance, configuration) != null;
 		}
-		public void run() {
-			try {
-				returnValue = executor.selectAndCreateBinaryConfigurationsToCreateAndReason(
-						leftSideConfigurations, rightSideConfigurations, inferredAccessibilityAxioms, bestConfiguration, equivalenceClasses);
-			} catch(Throwable t) {
-				// store any exception to re throw it later when the thread is joined.
-				this.t = t;
+		for (DAGChaseConfiguration candidate : added) {
+			if (DAGEquivalenceClass.isDominatedBy(this.dominance, candidate, configuration)) {
+				return true;
 			}
-			synchronized (this) {
-				// mark it done, and notify anyone waiting for the results.
-				finished = true;
-				this.notifyAll();
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the configurations of the current classes dominated by a new configuration.
+	 *
+	 * @param configuration the new configuration
+	 * @param dominator the configuration found to dominate the new one before this step, or null
+	 * @param dominated the configurations found to be dominated by the new one before this step,
+	 *            null if a dominator was found
+	 * @param removed the configurations removed from the classes in this step
+	 * @param added the configurations added to the classes in this step, and not removed since
+	 * @return the dominated configurations
+	 */
+	private Collection<DAGChaseConfiguration> dominatedBy(DAGChaseConfiguration configuration, DAGChaseConfiguration dominator,
+			Collection<DAGChaseConfiguration> dominated, Set<DAGChaseConfiguration> removed, Collection<DAGChaseConfiguration> added) {
+		if (dominated == null) {
+			return this.equivalenceClasses.dominatedBy(this.dominance, configuration);
+		}
+		Collection<DAGChaseConfiguration> result = new LinkedHashSet<>();
+		for (DAGChaseConfiguration candidate : dominated) {
+			if (!removed.contains(candidate)) {
+				result.add(candidate);
 			}
 		}
-		/**
-		 * Waits until the results are generated. In case exception was thrown while executing the task this function will re-throw it.
-		 * @return
-		 * @throws PlannerException
-		 */
-		public Collection<DAGChaseConfiguration> getReturnValue() throws PlannerException {
-			long start = System.currentTimeMillis();
-			try {
-				while (!finished && System.currentTimeMillis() - start < TIMEOUT ) { 
-					synchronized (this) {
-							this.wait(100);
-					}
-				}
-			} catch (InterruptedException e) {
-				// in case the thread is interrupted we ignore it, and return.
+		for (DAGChaseConfiguration candidate : added) {
+			if (DAGEquivalenceClass.isDominatedBy(this.dominance, configuration, candidate)) {
+				result.add(candidate);
 			}
-			if (!finished) {
-				throw new PlannerException("Worker thread read error (probably timeout) at createBinaryConfigurations. ");
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the binary configurations of the pairs of left and right
+	 * configurations, and of the pairs of right and left ones, that are valid and
+	 * can lead to a better plan than the best one. Each pair is a task of its own,
+	 * so that the chasing of the configurations is balanced between the threads.
+	 * The configurations created for the same pair of equivalence classes are
+	 * shared between the tasks, to re-use their chased states.
+	 * 
+	 * @param left
+	 *            the configurations created in the previous step
+	 * @param right
+	 *            all configurations
+	 * @return the new configurations, in the order of the pairs
+	 * @throws PlannerException
+	 * @throws LimitReachedException
+	 */
+	private Collection<DAGChaseConfiguration> createBinaryConfigurations(List<DAGChaseConfiguration> left,
+			List<DAGChaseConfiguration> right) throws PlannerException, LimitReachedException {
+		int pairs = left.size() * right.size();
+		DAGChaseConfiguration[] created = new DAGChaseConfiguration[2 * pairs];
+		Dependency[] inferredAccessibilityAxioms = this.accessibleSchema.getInferredAccessibilityAxioms();
+		DAGChaseConfiguration bestConfiguration = this.bestConfiguration;
+		MapOfPairsOfConfigurationsToTheEquivalentBinaryConfiguration representatives = new MapOfPairsOfConfigurationsToTheEquivalentBinaryConfiguration();
+		this.runInParallel(2 * pairs, index -> {
+			DAGChaseConfiguration l = left.get(index % pairs / right.size());
+			DAGChaseConfiguration r = right.get(index % right.size());
+			// left to right for the first half of the pairs, right to left for the second half
+			DAGChaseConfiguration first = index < pairs ? l : r;
+			DAGChaseConfiguration second = index < pairs ? r : l;
+			if (this.isCombinable(first, second, bestConfiguration)) {
+				created[index] = this.createBinaryConfiguration(first, second, inferredAccessibilityAxioms, representatives);
+			}
+		});
+		List<DAGChaseConfiguration> output = new ArrayList<>();
+		for (DAGChaseConfiguration configuration : created) {
+			if (configuration != null) {
+				output.add(configuration);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Runs an action on every index from 0 to size in the pool, and waits until
+	 * all of them are done. If one of the actions fails, the limits of the
+	 * exploration are reached or the timeout expires, the actions that have not
+	 * started yet are skipped and the exception is rethrown.
+	 * 
+	 * @param size
+	 *            the number of indices
+	 * @param action
+	 *            the action
+	 * @throws PlannerException
+	 * @throws LimitReachedException
+	 */
+	private void runInParallel(int size, IndexedAction action) throws PlannerException, LimitReachedException {
+		if (size == 0) {
+			return;
+		}
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		IndexedTask task = new IndexedTask(action, 0, size, failure);
+		try {
+			this.pool.submit(task).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			failure.compareAndSet(null, e.getCause());
+		} catch (TimeoutException e) {
+			failure.compareAndSet(null, new PlannerException("Worker thread timeout in exploration step " + this.depth + "."));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		}
+		Throwable t = failure.get();
+		if (t != null) {
+			task.cancel(true);
+			if (t instanceof LimitReachedException)
+				throw (LimitReachedException) t;
+			if (t instanceof PlannerException)
+				throw (PlannerException) t;
+			throw new PlannerException(t);
+		}
+	}
+
+	/**
+	 * An action on an index, run by an IndexedTask.
+	 */
+	private interface IndexedAction {
+		void apply(int index) throws Exception;
+	}
+
+	/**
+	 * Runs an action on a range of indices. The range is split in halves until a
+	 * single index is left, so that idle threads can steal the halves that have not
+	 * started yet. The first exception thrown by an action is kept in failure, the
+	 * tasks skip their actions once it is set.
+	 */
+	private class IndexedTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IndexedAction action;
+		private final int from;
+		private final int to;
+		private final AtomicReference<Throwable> failure;
+
+		public IndexedTask(IndexedAction action, int from, int to, AtomicReference<Throwable> failure) {
+			this.action = action;
+			this.from = from;
+			this.to = to;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.failure.get() != null) {
+				return;
+			}
+			if (this.to - this.from > 1) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new IndexedTask(this.action, this.from, middle, this.failure),
+						new IndexedTask(this.action, middle, this.to, this.failure));
+				return;
 			}
-			if (t != null) {
-				if (t instanceof PlannerException)
-					throw (PlannerException)t;
-				throw new PlannerException(t);
+			try {
+				checkLimitReached();
+				this.action.apply(this.from);
+			} catch (Throwable t) {
+				this.failure.compareAndSet(null, t);
 			}
-			return returnValue;
 		}
 	}
 }
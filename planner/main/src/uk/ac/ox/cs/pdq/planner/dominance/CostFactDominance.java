@@ -91,6 +91,15 @@ public class CostFactDominance implements Dominance{
 			return false;
 	}
 
+	/**
+	 * Gets the fact dominance, which holds for all pairs of configurations this dominance holds for.
+	 *
+	 * @return FactDominance
+	 */
+	public FactDominance getFactDominance() {
+		return this.inputFactDominance;
+	}
+
 	/**
 	 * Clone.
 	 *
@@ -4,22 +4,37 @@
 package uk.ac.ox.cs.pdq.planner.equivalence.dag;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Constant;
+import uk.ac.ox.cs.pdq.logging.StatisticsCollector;
 import uk.ac.ox.cs.pdq.planner.dag.DAGChaseConfiguration;
+import uk.ac.ox.cs.pdq.planner.dominance.CostFactDominance;
 import uk.ac.ox.cs.pdq.planner.dominance.Dominance;
+import uk.ac.ox.cs.pdq.planner.dominance.FastFactDominance;
+import uk.ac.ox.cs.pdq.planner.logging.PlannerStatKeys;
 
 
 /**
  * A collection of structurally equivalent classes that supports multi-threading.
  * According to this implementation different threads can add, remove or perform domination detection inside each class concurrently.
+ * 
+ * Each configuration added to the classes gets a signature: the bitsets of the ids of its inferred accessible facts and of its input constants.
+ * When the dominance detectors imply fact dominance (FastFactDominance), a configuration can only dominate another one if
+ * its input constants are a subset and its facts a superset of the other's, so the candidates failing these bitset tests
+ * are skipped before the exact dominance check. The number of performed and avoided exact checks is posted to the statistics collector.
  *
  * @author Efthymia Tsamoura
  *
@@ -29,11 +44,37 @@ public class DAGEquivalenceClasses {
 	/**  Maps each configuration to its class. */
 	private final Map<DAGChaseConfiguration, DAGEquivalenceClass> configurationToEquivalenceClass;
 
+	/**  The signatures of the configurations in the classes. */
+	private final Map<DAGChaseConfiguration, Signature> signatures = new ConcurrentHashMap<>();
+
+	/**  The ids of the facts and of the constants appearing in the signatures. */
+	private final Map<Atom, Integer> factIds = new ConcurrentHashMap<>();
+	private final Map<Constant, Integer> constantIds = new ConcurrentHashMap<>();
+	private final AtomicInteger nextFactId = new AtomicInteger();
+	private final AtomicInteger nextConstantId = new AtomicInteger();
+
+	/**  The number of exact dominance checks performed and avoided. */
+	private final AtomicLong dominanceChecks = new AtomicLong();
+	private final AtomicLong dominanceChecksAvoided = new AtomicLong();
+
+	/**  Collects the number of performed and avoided dominance checks. */
+	private final StatisticsCollector statistics;
+
 	/**
 	 * Instantiates a new equivalence classes.
 	 */
 	public DAGEquivalenceClasses() {
+		this(new StatisticsCollector(null));
+	}
+
+	/**
+	 * Instantiates a new equivalence classes.
+	 *
+	 * @param statistics the collector of the dominance check statistics
+	 */
+	public DAGEquivalenceClasses(StatisticsCollector statistics) {
 		this.configurationToEquivalenceClass = new ConcurrentHashMap<>();
+		this.statistics = statistics;
 	}
 
 	/**
@@ -43,6 +84,7 @@ public class DAGEquivalenceClasses {
 	 * @see uk.ac.ox.cs.pdq.planner.equivalence.dag.equivalence.dag.DAGEquivalenceClasses#addEntry(DAGChaseConfiguration)
 	 */
 	public void addEntry(DAGChaseConfiguration configuration) {
+		this.signatures.put(configuration, this.createSignature(configuration));
 		DAGEquivalenceClass e;
 		DAGChaseConfiguration equivalent = this.structurallyEquivalentTo(configuration);
 		if(equivalent != null) {
@@ -102,6 +144,7 @@ public class DAGEquivalenceClasses {
 	 */
 	public void removeAll(Collection<DAGChaseConfiguration> configurations) {
 		for(DAGChaseConfiguration configuration: configurations) {
+			this.signatures.remove(configuration);
 			DAGEquivalenceClass e = this.configurationToEquivalenceClass.get(configuration);
 			if (e != null) {
 				this.configurationToEquivalenceClass.remove(configuration);
@@ -120,9 +163,22 @@ public class DAGEquivalenceClasses {
 	 */
 	public Collection<DAGChaseConfiguration> dominatedBy(Dominance[] dominance, DAGChaseConfiguration configuration) {
 		Collection<DAGChaseConfiguration> dominated = new LinkedHashSet<>();
-		for(DAGEquivalenceClass c: this.configurationToEquivalenceClass.values()) {
-			dominated.addAll(c.dominatedBy(dominance, configuration));
+		Signature signature = this.getSignature(configuration);
+		boolean prune = impliesFactDominance(dominance);
+		long checks = 0, avoided = 0;
+		for(DAGEquivalenceClass c: this.getEquivalenceClassesInOrder()) {
+			for(DAGChaseConfiguration candidate: c.getAll()) {
+				if(prune && !this.getSignature(candidate).mayBeDominatedBy(signature)) {
+					avoided++;
+				} else {
+					checks++;
+					if(DAGEquivalenceClass.isDominatedBy(dominance, configuration, candidate)) {
+						dominated.add(candidate);
+					}
+				}
+			}
 		}
+		this.countDominanceChecks(checks, avoided);
 		return dominated;
 	}
 
@@ -134,7 +190,12 @@ public class DAGEquivalenceClasses {
 	 * @see uk.ac.ox.cs.pdq.planner.equivalence.dag.equivalence.dag.DAGEquivalenceClasses#structurallyEquivalentTo(DAGChaseConfiguration)
 	 */
 	public DAGChaseConfiguration structurallyEquivalentTo(DAGChaseConfiguration configuration) {
-		for(DAGEquivalenceClass c: this.configurationToEquivalenceClass.values()) {
+		Signature signature = this.getSignature(configuration);
+		for(DAGEquivalenceClass c: this.getEquivalenceClassesInOrder()) {
+			Signature representative = this.signatures.get(c.getRepresentative());
+			if(representative != null && !Arrays.equals(representative.facts, signature.facts)) {
+				continue;
+			}
 			if(c.structurallyEquivalentTo(configuration)) {
 				return c.getRepresentative();
 			}
@@ -151,13 +212,144 @@ public class DAGEquivalenceClasses {
 	 * @see uk.ac.ox.cs.pdq.planner.equivalence.dag.equivalence.dag.DAGEquivalenceClasses#dominate(DAGChaseConfiguration)
 	 */
 	public DAGChaseConfiguration dominate(Dominance[] dominance,DAGChaseConfiguration configuration) {
-		for(DAGEquivalenceClass c: this.configurationToEquivalenceClass.values()) {
-			DAGChaseConfiguration dominating = c.dominate(dominance, configuration);
-			if(dominating != null) {
-				return dominating;
+		Signature signature = this.getSignature(configuration);
+		boolean prune = impliesFactDominance(dominance);
+		long checks = 0, avoided = 0;
+		try {
+			for(DAGEquivalenceClass c: this.getEquivalenceClassesInOrder()) {
+				for(DAGChaseConfiguration candidate: c.getAll()) {
+					if(prune && !signature.mayBeDominatedBy(this.getSignature(candidate))) {
+						avoided++;
+					} else {
+						checks++;
+						if(DAGEquivalenceClass.isDominatedBy(dominance, candidate, configuration)) {
+							return candidate;
+						}
+					}
+				}
 			}
+			return null;
+		} finally {
+			this.countDominanceChecks(checks, avoided);
+		}
+	}
+
+	/**
+	 * Gets the number of exact dominance checks performed by dominate and dominatedBy.
+	 *
+	 * @return long
+	 */
+	public long getDominanceChecks() {
+		return this.dominanceChecks.get();
+	}
+
+	/**
+	 * Gets the number of exact dominance checks that dominate and dominatedBy avoided by comparing signatures.
+	 *
+	 * @return long
+	 */
+	public long getDominanceChecksAvoided() {
+		return this.dominanceChecksAvoided.get();
+	}
+
+	private void countDominanceChecks(long checks, long avoided) {
+		this.dominanceChecks.addAndGet(checks);
+		this.dominanceChecksAvoided.addAndGet(avoided);
+		if(checks > 0) {
+			this.statistics.increase(PlannerStatKeys.DOMINANCE_CHECKS, checks);
+		}
+		if(avoided > 0) {
+			this.statistics.increase(PlannerStatKeys.DOMINANCE_CHECKS_AVOIDED, avoided);
+		}
+	}
+
+	/**
+	 * Gets the distinct classes, in the order of the configurations.
+	 * Each class is mapped to by all of its configurations.
+	 *
+	 * @return Collection<DAGEquivalenceClass>
+	 */
+	private Collection<DAGEquivalenceClass> getEquivalenceClassesInOrder() {
+		return new LinkedHashSet<>(this.configurationToEquivalenceClass.values());
+	}
+
+	/**
+	 * Checks whether every detector only holds for pairs of configurations where fact dominance holds,
+	 * so that the signatures can be used to skip the candidates.
+	 *
+	 * @param dominance the dominance detectors
+	 * @return boolean
+	 */
+	private static boolean impliesFactDominance(Dominance[] dominance) {
+		for(Dominance detector: dominance) {
+			if(!(detector instanceof FastFactDominance || detector instanceof CostFactDominance
+					&& ((CostFactDominance) detector).getFactDominance() instanceof FastFactDominance)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the signature of a configuration in the classes, or computes the one of a new configuration.
+	 *
+	 * @param configuration DAGChaseConfiguration
+	 * @return Signature
+	 */
+	private Signature getSignature(DAGChaseConfiguration configuration) {
+		Signature signature = this.signatures.get(configuration);
+		return signature != null ? signature : this.createSignature(configuration);
+	}
+
+	private Signature createSignature(DAGChaseConfiguration configuration) {
+		BitSet facts = new BitSet();
+		for(Atom fact: configuration.getState().getInferredAccessibleFacts()) {
+			facts.set(this.factIds.computeIfAbsent(fact, f -> this.nextFactId.getAndIncrement()));
+		}
+		BitSet inputs = new BitSet();
+		for(Constant constant: configuration.getInput()) {
+			inputs.set(this.constantIds.computeIfAbsent(constant, c -> this.nextConstantId.getAndIncrement()));
+		}
+		return new Signature(facts, inputs);
+	}
+
+	/**
+	 * The bitsets of the ids of the inferred accessible facts and of the input constants of a configuration,
+	 * with their sizes.
+	 */
+	private static final class Signature {
+		private final long[] facts;
+		private final long[] inputs;
+		private final int factCount;
+		private final int inputCount;
+
+		Signature(BitSet facts, BitSet inputs) {
+			this.facts = facts.toLongArray();
+			this.inputs = inputs.toLongArray();
+			this.factCount = facts.cardinality();
+			this.inputCount = inputs.cardinality();
+		}
+
+		/**
+		 * Checks the necessary condition of fact dominance: the configuration of this signature can only be dominated
+		 * by the one of the other signature if it has a superset of the other's input constants and a subset of its facts.
+		 *
+		 * @param other the signature of the dominating configuration
+		 * @return boolean
+		 */
+		boolean mayBeDominatedBy(Signature other) {
+			return this.inputCount >= other.inputCount && this.factCount <= other.factCount
+					&& isSubset(other.inputs, this.inputs) && isSubset(this.facts, other.facts);
+		}
+
+		private static boolean isSubset(long[] subset, long[] superset) {
+			for(int i = 0; i < subset.length; i++) {
+				if((subset[i] & ~(i < superset.length ? superset[i] : 0L)) != 0L) {
+					return false;
+				}
+			}
+			return true;
 		}
-		return null;
 	}
 
 
@@ -4,8 +4,10 @@
 package uk.ac.ox.cs.pdq.planner.linear.plantree;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.commons.collections4.map.MultiValueMap;
@@ -18,6 +20,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 
 import uk.ac.ox.cs.pdq.fol.Atom;
@@ -25,6 +28,11 @@ import uk.ac.ox.cs.pdq.fol.Dependency;
 
 /**
  * Implementation of a FiringGraph.
+ * The chase graph and the map of preconditions to consequences are shared by all clones. 
+ * The fact provenance and the fired dependencies are copied on write: a clone shares them 
+ * with the original graph until one of the two is updated. A merged graph starts from the 
+ * provenance and the firings of the larger graph, and only adds what the smaller one has on top of them. 
+ * Cloning does not update the original graph, so a graph can be cloned by several threads at once.
  *
  * @author Efthymia Tsamoura
  */
@@ -37,21 +45,44 @@ public class MapFiringGraph implements FiringGraph{
 	/** Chase graph. */
 	private final Graph<Atom, DefaultEdge> graph;
 
+	/** The fact provenance and the fired dependencies. */
+	private Firings firings;
+
 	/**
-	 * Fact history map. Associates each chase fact with the facts and the dependency that were last fired to produce this fact
+	 * The fact provenance and the fired dependencies of a graph, shared by the graph and its clones until one of them is updated.
 	 */
-	private final Map<Atom, Pair<Dependency, Collection<Atom>>> provenance;
+	private static final class Firings {
+		/**
+		 * Fact history map. Associates each chase fact with the facts and the dependency that were last fired to produce this fact
+		 */
+		private final Map<Atom, Pair<Dependency, Collection<Atom>>> provenance;
+
+		/** Keeps the set of facts that were used to fire each dependency. */
+		private final Multimap<Collection<Atom>, Dependency> firings;
 
-	/** Keeps the set of facts that were used to fire each dependency. */
-	private final Multimap<Collection<Atom>, Dependency> firings;
+		/** Set once the provenance and the firings are shared with a clone, they are not updated afterwards. */
+		private volatile boolean shared = false;
+
+		private Firings(Map<Atom, Pair<Dependency, Collection<Atom>>> provenance, Multimap<Collection<Atom>, Dependency> firings) {
+			this.provenance = provenance;
+			this.firings = firings;
+		}
+
+		private Firings(Firings firings) {
+			this(Maps.newLinkedHashMap(firings.provenance), LinkedHashMultimap.create(firings.firings));
+		}
+
+		private int size() {
+			return this.provenance.size() + this.firings.size();
+		}
+	}
 
 	/**
 	 * Instantiates a new map firing graph.
 	 */
 	public MapFiringGraph() {
 		this.map = new MultiValueMap<>();
-		this.provenance = new LinkedHashMap<>();
-		this.firings = LinkedHashMultimap.create();
+		this.firings = new Firings(new LinkedHashMap<>(), LinkedHashMultimap.create());
 		this.graph = new SimpleGraph<Atom, DefaultEdge>(DefaultEdge.class);
 	}
 
@@ -59,18 +90,36 @@ public class MapFiringGraph implements FiringGraph{
 	 * Constructor for MapFiringGraph.
 	 * @param map MultiValueMap<Collection<PredicateFormula>,Collection<PredicateFormula>>
 	 * @param graph Graph<PredicateFormula,DefaultEdge>
-	 * @param factProvenance Map<PredicateFormula,Pair<IC,Collection<PredicateFormula>>>
-	 * @param firedDependencies Multimap<Collection<PredicateFormula>,IC>
+	 * @param firings the shared fact provenance and fired dependencies
 	 */
 	private MapFiringGraph(
 			MultiValueMap<Collection<Atom>, Collection<Atom>> map,
 			Graph<Atom, DefaultEdge> graph,
-			Map<Atom, Pair<Dependency, Collection<Atom>>> factProvenance,
-			Multimap<Collection<Atom>, Dependency> firedDependencies) {
+			Firings firings) {
+		Preconditions.checkArgument(firings.shared);
 		this.map = map;
 		this.graph = graph;
-		this.provenance = factProvenance;
-		this.firings = firedDependencies;
+		this.firings = firings;
+	}
+
+	/**
+	 * Marks the provenance and the firings of this graph as shared.
+	 *
+	 * @return the provenance and the firings of this graph
+	 */
+	private Firings share() {
+		Firings firings = this.firings;
+		firings.shared = true;
+		return firings;
+	}
+
+	/**
+	 * Copies the provenance and the firings if they are shared with a clone.
+	 */
+	private void unshare() {
+		if (this.firings.shared) {
+			this.firings = new Firings(this.firings);
+		}
 	}
 
 	/**
@@ -83,12 +132,13 @@ public class MapFiringGraph implements FiringGraph{
 	 */
 	@Override
 	public void put(Dependency dependency, Collection<Atom> sources, Collection<Atom> targets) {
+		this.unshare();
 		for (Atom fact:targets) {
-			if (!this.provenance.containsKey(fact)) {
-				this.provenance.put(fact, Pair.of(dependency, sources));
+			if (!this.firings.provenance.containsKey(fact)) {
+				this.firings.provenance.put(fact, Pair.of(dependency, sources));
 			}
 		}
-		this.firings.put(sources, dependency);
+		this.firings.firings.put(sources, dependency);
 		this.map.put(sources, targets);
 		this.updateGraph(sources, targets);
 	}
@@ -114,10 +164,7 @@ public class MapFiringGraph implements FiringGraph{
 	 */
 	@Override
 	public MapFiringGraph clone() {
-		Multimap<Collection<Atom>, Dependency> firedDependencies = LinkedHashMultimap.create();
-		firedDependencies.putAll(this.firings);
-		Map<Atom, Pair<Dependency, Collection<Atom>>> factProvenance = Maps.newLinkedHashMap(this.getFactProvenance());
-		return new MapFiringGraph(this.map, this.graph, factProvenance, firedDependencies);
+		return new MapFiringGraph(this.map, this.graph, this.share());
 	}
 
 	/**
@@ -203,7 +250,7 @@ public class MapFiringGraph implements FiringGraph{
 	 */
 	@Override
 	public Pair<Dependency, Collection<Atom>> getFactProvenance(Atom fact) {
-		return this.provenance.get(fact);
+		return this.firings.provenance.get(fact);
 	}
 
 	/**
@@ -216,7 +263,7 @@ public class MapFiringGraph implements FiringGraph{
 	 */
 	@Override
 	public boolean isFired(Dependency dependency, Collection<Atom> facts) {
-		return this.firings.get(facts).contains(dependency);
+		return this.firings.firings.get(facts).contains(dependency);
 	}
 
 	/**
@@ -229,15 +276,25 @@ public class MapFiringGraph implements FiringGraph{
 	@Override
 	public FiringGraph merge(FiringGraph source) {
 		Preconditions.checkArgument(source instanceof MapFiringGraph);
-
-		Multimap<Collection<Atom>, Dependency> firedDependencies = LinkedHashMultimap.create();
-		firedDependencies.putAll(this.firings);
-		firedDependencies.putAll(((MapFiringGraph)source).getFiredDependencies());
-
-		Map<Atom, Pair<Dependency, Collection<Atom>>> factProvenance = Maps.newLinkedHashMap(this.getFactProvenance());
-		factProvenance.putAll(((MapFiringGraph)source).getFactProvenance());
-
-		return new MapFiringGraph(this.map, this.graph, factProvenance, firedDependencies);
+		MapFiringGraph other = (MapFiringGraph) source;
+		// The merged graph starts from the larger graph, the provenance of the source graph wins
+		boolean larger = this.firings.size() >= other.firings.size();
+		Firings added = larger ? other.firings : this.firings;
+		MapFiringGraph merged = new MapFiringGraph(this.map, this.graph, larger ? this.share() : other.share());
+		for (Map.Entry<Atom, Pair<Dependency, Collection<Atom>>> entry:added.provenance.entrySet()) {
+			Pair<Dependency, Collection<Atom>> provenance = merged.firings.provenance.get(entry.getKey());
+			if (larger ? !Objects.equals(provenance, entry.getValue()) : provenance == null) {
+				merged.unshare();
+				merged.firings.provenance.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<Collection<Atom>, Dependency> entry:added.firings.entries()) {
+			if (!merged.firings.firings.containsEntry(entry.getKey(), entry.getValue())) {
+				merged.unshare();
+				merged.firings.firings.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return merged;
 	}
 
 	/**
@@ -257,7 +314,7 @@ public class MapFiringGraph implements FiringGraph{
 	 */
 	@Override
 	public Map<Atom, Pair<Dependency, Collection<Atom>>> getFactProvenance() {
-		return this.provenance;
+		return Collections.unmodifiableMap(this.firings.provenance);
 	}
 
 	/**
@@ -266,7 +323,7 @@ public class MapFiringGraph implements FiringGraph{
 	 * @return Multimap<Collection<PredicateFormula>,IC>
 	 */
 	public Multimap<Collection<Atom>, Dependency> getFiredDependencies() {
-		return this.firings;
+		return Multimaps.unmodifiableMultimap(this.firings.firings);
 	}
 
 	/* (non-Javadoc)
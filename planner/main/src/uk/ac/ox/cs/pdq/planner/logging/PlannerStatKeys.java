@@ -0,0 +1,32 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.planner.logging;
+
+import com.google.common.base.CaseFormat;
+
+import uk.ac.ox.cs.pdq.logging.StatKey;
+
+
+/**
+ * Static collection of key to be used in planning statistics collections.
+ *
+ * @author Gabor
+ */
+public enum PlannerStatKeys implements StatKey {
+
+	/** The number of exact dominance checks performed between configurations. */
+	DOMINANCE_CHECKS, /** The number of exact dominance checks avoided by comparing the signatures of the configurations. */
+ DOMINANCE_CHECKS_AVOIDED;
+
+	/**
+	 * To string.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, this.name());
+	}
+
+}
@@ -4,23 +4,27 @@
 package uk.ac.ox.cs.pdq.planner.reasoning.chase.accessiblestate;
 
 import java.sql.SQLException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 
 import uk.ac.ox.cs.pdq.db.Match;
@@ -59,21 +63,57 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
  * 	the database facts are updated; update includes replacing every chase constant c, with a constant c' that is equal to c
  * 	under the constraints and c' is a representative.
  * 	The database is cleared from the obsolete facts after a chase step is applied.
+ * 
+ * 	The inferred accessible facts, the facts grouped by relation and the accessible terms are only ever extended, 
+ * 	so a clone shares them with the original state, and each of the two copies them before its first update 
+ * 	(copy-on-write). The facts of the database instance are shared the same way when the database is an 
+ * 	InternalDatabaseManager, so cloning a state that is never chased again costs nothing. A merged state starts 
+ * 	from the collections and the facts of the larger state, and only adds what the smaller state has on top of them.
+ * 	Cloning does not update the original state, so a state can be cloned and merged by several threads at once.
  */
 public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.chase.state.DatabaseChaseInstance implements AccessibleChaseInstance {
 
 	/**  The firings that took place in this state. */
 	protected FiringGraph graph;
 	
-	/**  String signatures of
-	 *  the inferred accessible facts. */
-	private final Collection<Atom> inferredAccessibleAtoms;
+	/**  The inferred accessible facts, the facts grouped by relation and the accessible terms. */
+	private AccessibleFacts accessibleFacts;
+
+	/**  True if the state is the result of a merge (or a clone of one), its inferred accessible facts are then
+	 *  read as a list, so that it is never structurally equivalent to a state that was not merged. */
+	private boolean merged = false;
+
+	/**
+	 * The collections of a state that are shared by the state and its clones until one of them is updated.
+	 */
+	private static final class AccessibleFacts {
+		/**  String signatures of
+		 *  the inferred accessible facts. */
+		private final Set<Atom> inferredAccessibleAtoms;
 
-	/**  Maps each schema signature (relation) to its chase facts. */
-	private final Multimap<Predicate, Atom> atomsMap;
+		/**  Maps each schema signature (relation) to its chase facts. */
+		private final Multimap<Predicate, Atom> atomsMap;
 
-	/**  Maps each chase constant the Accessed facts it appears. */
-	private final Multimap<Term,Atom> accessibleTerms;
+		/**  Maps each chase constant the Accessed facts it appears. */
+		private final Multimap<Term,Atom> accessibleTerms;
+
+		/**  Set once the collections are shared with a clone, they are not updated afterwards. */
+		private volatile boolean shared = false;
+
+		private AccessibleFacts(Set<Atom> inferredAccessibleAtoms, Multimap<Predicate, Atom> atomsMap, Multimap<Term,Atom> accessibleTerms) {
+			this.inferredAccessibleAtoms = inferredAccessibleAtoms;
+			this.atomsMap = atomsMap;
+			this.accessibleTerms = accessibleTerms;
+		}
+
+		private AccessibleFacts(AccessibleFacts facts) {
+			this(new LinkedHashSet<>(facts.inferredAccessibleAtoms), LinkedHashMultimap.create(facts.atomsMap), LinkedHashMultimap.create(facts.accessibleTerms));
+		}
+
+		private int size() {
+			return this.inferredAccessibleAtoms.size() + this.atomsMap.size() + this.accessibleTerms.size();
+		}
+	}
 
 	/**
 	 * Instantiates a new accessible database list state.
@@ -155,9 +195,27 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 		Preconditions.checkNotNull(atomsMap);
 		Preconditions.checkNotNull(accessibleTerms);
 		this.graph = graph;
-		this.inferredAccessibleAtoms = inferredAccessibleAtoms;
-		this.atomsMap = atomsMap;
-		this.accessibleTerms = accessibleTerms;
+		this.accessibleFacts = new AccessibleFacts(new LinkedHashSet<>(inferredAccessibleAtoms), atomsMap, accessibleTerms);
+	}
+
+	/**
+	 * Instantiates a new accessible database list state holding the facts of the given state.
+	 *
+	 * @param state the state whose facts are copied
+	 * @param graph the graph
+	 * @param constantClasses the constant classes
+	 * @param accessibleFacts the shared collections of the given state
+	 */
+	private AccessibleDatabaseChaseInstance(
+			AccessibleDatabaseChaseInstance state,
+			FiringGraph graph,
+			EqualConstantsClasses constantClasses,
+			AccessibleFacts accessibleFacts) {
+		super(state, constantClasses);
+		Preconditions.checkArgument(accessibleFacts.shared);
+		this.graph = graph;
+		this.accessibleFacts = accessibleFacts;
+		this.merged = state.merged;
 	}
 
 	/**
@@ -168,7 +226,41 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 */
 	@Override
 	public Collection<Atom> getInferredAccessibleFacts() {
-		return this.inferredAccessibleAtoms;
+		if (this.merged) {
+			return new InferredFactsList(this.accessibleFacts.inferredAccessibleAtoms);
+		}
+		return Collections.unmodifiableSet(this.accessibleFacts.inferredAccessibleAtoms);
+	}
+
+	/**
+	 * Read-only list view of the inferred accessible facts of a merged state.
+	 */
+	private static final class InferredFactsList extends AbstractList<Atom> {
+		private final Set<Atom> facts;
+
+		private InferredFactsList(Set<Atom> facts) {
+			this.facts = facts;
+		}
+
+		@Override
+		public Atom get(int index) {
+			return Iterables.get(this.facts, index);
+		}
+
+		@Override
+		public int size() {
+			return this.facts.size();
+		}
+
+		@Override
+		public Iterator<Atom> iterator() {
+			return Iterators.unmodifiableIterator(this.facts.iterator());
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return this.facts.contains(o);
+		}
 	}
 
 	/**
@@ -176,7 +268,55 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 * @return Multimap<Term,PredicateFormula>
 	 */
 	protected Multimap<Term,Atom> getAccessibleTerms() {
-		return this.accessibleTerms;
+		return Multimaps.unmodifiableMultimap(this.accessibleFacts.accessibleTerms);
+	}
+
+	/**
+	 * Copies the inferred accessible facts, the facts grouped by relation and the accessible terms
+	 * if they are shared with a clone.
+	 */
+	private void unshare() {
+		if (this.accessibleFacts.shared) {
+			this.accessibleFacts = new AccessibleFacts(this.accessibleFacts);
+		}
+	}
+
+	/**
+	 * Marks the collections of this state as shared, the state and the clone copy them before their first update.
+	 *
+	 * @return the collections of this state
+	 */
+	private AccessibleFacts share() {
+		AccessibleFacts facts = this.accessibleFacts;
+		facts.shared = true;
+		return facts;
+	}
+
+	/**
+	 * Adds the inferred accessible facts, the facts grouped by relation and the accessible terms that this state does not have yet.
+	 * The collections of this state are copied only if they are shared and something is missing from them.
+	 *
+	 * @param facts the collections of another state
+	 */
+	private void addAll(AccessibleFacts facts) {
+		for (Atom fact:facts.inferredAccessibleAtoms) {
+			if (!this.accessibleFacts.inferredAccessibleAtoms.contains(fact)) {
+				this.unshare();
+				this.accessibleFacts.inferredAccessibleAtoms.add(fact);
+			}
+		}
+		for (Map.Entry<Predicate, Atom> entry:facts.atomsMap.entries()) {
+			if (!this.accessibleFacts.atomsMap.containsEntry(entry.getKey(), entry.getValue())) {
+				this.unshare();
+				this.accessibleFacts.atomsMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<Term, Atom> entry:facts.accessibleTerms.entries()) {
+			if (!this.accessibleFacts.accessibleTerms.containsEntry(entry.getKey(), entry.getValue())) {
+				this.unshare();
+				this.accessibleFacts.accessibleTerms.put(entry.getKey(), entry.getValue());
+			}
+		}
 	}
 
 	/* 
@@ -193,6 +333,7 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	@Override
 	public boolean chaseStep(Collection<Match> matches) {
 		Preconditions.checkNotNull(matches);
+		this.unshare();
 		Collection<Atom> newFacts = new LinkedHashSet<>();
 		for(Match match:matches) {
 			Dependency dependency = (Dependency) match.getFormula();
@@ -203,12 +344,12 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 			Formula right = grounded.getChild(1);
 			for(Atom fact:right.getAtoms()) {
 				if(fact.getPredicate().getName().startsWith(AccessibleSchema.inferredAccessiblePrefix)) {
-					this.inferredAccessibleAtoms.add(fact);
+					this.accessibleFacts.inferredAccessibleAtoms.add(fact);
 				}
 				else if (fact.getPredicate().getName().equals(AccessibleSchema.accessibleRelation.getName())) 
-					this.accessibleTerms.put(fact.getTerm(0), fact);
+					this.accessibleFacts.accessibleTerms.put(fact.getTerm(0), fact);
 				else 
-					this.atomsMap.put(fact.getPredicate(), fact);
+					this.accessibleFacts.atomsMap.put(fact.getPredicate(), fact);
 			}
 			newFacts.addAll(Arrays.asList(right.getAtoms()));
 			if(this.graph != null) {
@@ -236,7 +377,7 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 * When there are multiple inputs it will create groups for each unique input configuration. 
 	 */
 	public List<Pair<AccessibilityAxiom, Collection<Atom>>> groupFactsByAccessMethods(AccessibilityAxiom[] axioms) {
-		return AccessibleQuery.groupFactsByAccessMethods(axioms, this.atomsMap);
+		return AccessibleQuery.groupFactsByAccessMethods(axioms, this.accessibleFacts.atomsMap);
 	}
 
 	/**
@@ -248,7 +389,7 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 */
 	@Override
 	public Map<AccessibilityAxiom, List<Match>> getUnexposedFacts(AccessibleSchema accessibleSchema) {
-		return this.getUnexposedFacts(accessibleSchema, this.atomsMap, this.accessibleTerms, this.getFacts());
+		return this.getUnexposedFacts(accessibleSchema, this.accessibleFacts.atomsMap, this.accessibleFacts.accessibleTerms, this.getFacts());
 	}
 
 	/* (non-Javadoc)
@@ -256,7 +397,7 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 */
 	@Override
 	public void generate(AccessibilityAxiom axiom, Collection<Atom> facts) {
-
+		this.unshare();
 		Collection<Atom> createdFacts = new LinkedHashSet<>();
 		for(Atom fact:facts) {			
 			Atom accessedFact = Atom.create(fact.getPredicate(), fact.getTerms());
@@ -265,7 +406,7 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 				predicate = Predicate.create(AccessibleSchema.inferredAccessiblePrefix + fact.getPredicate().getName(), fact.getPredicate().getArity());
 			Atom inferredAccessibleFact = Atom.create(predicate, fact.getTerms());
 			createdFacts.add(inferredAccessibleFact);
-			this.inferredAccessibleAtoms.add(inferredAccessibleFact);
+			this.accessibleFacts.inferredAccessibleAtoms.add(inferredAccessibleFact);
 			if(this.graph != null) 
 				this.graph.put(axiom, accessedFact, inferredAccessibleFact);
 			for(Term term:fact.getTerms()) 
@@ -346,18 +487,11 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	 */
 	@Override
 	public AccessibleDatabaseChaseInstance clone() {
-		try {
-			return new AccessibleDatabaseChaseInstance(
-					Sets.newHashSet(this.getFacts()), 
-					this.graph == null ? null : this.graph.clone(),
-					this.classes.clone(),
-					null,
-					new LinkedHashSet<>(this.inferredAccessibleAtoms),
-					LinkedHashMultimap.create(this.atomsMap), 
-					LinkedHashMultimap.create(this.accessibleTerms),databaseInstance);
-		} catch (SQLException e) {
-			throw new RuntimeException("Cloning of AccessibleDatabaseListState failed due to an SQL exception "+e);
-		}
+		return new AccessibleDatabaseChaseInstance(
+				this,
+				this.graph == null ? null : this.graph.clone(),
+				this.classes.clone(),
+				this.share());
 	}
 
 	/* (non-Javadoc)
@@ -366,36 +500,25 @@ public class AccessibleDatabaseChaseInstance extends uk.ac.ox.cs.pdq.reasoning.c
 	@Override
 	public AccessibleChaseInstance merge(AccessibleChaseInstance s) {
 		Preconditions.checkState(s instanceof AccessibleDatabaseChaseInstance);
-		Collection<Atom> facts =  new LinkedHashSet<>(this.getFacts());
-		facts.addAll(s.getFacts());
-		
-		Collection<Atom> inferred = CollectionUtils.union(this.inferredAccessibleAtoms, ((AccessibleDatabaseChaseInstance)s).inferredAccessibleAtoms);
-		Multimap<Predicate, Atom> map = LinkedHashMultimap.create(this.atomsMap);
-		map.putAll(((AccessibleDatabaseChaseInstance)s).atomsMap);
-		Multimap<Term,Atom> accessibleTerms = LinkedHashMultimap.create(this.accessibleTerms);
-		accessibleTerms.putAll(((AccessibleDatabaseChaseInstance)s).accessibleTerms);
+		AccessibleDatabaseChaseInstance other = (AccessibleDatabaseChaseInstance) s;
+		// The merged state starts from the larger state, and adds the smaller state on top of it
+		AccessibleDatabaseChaseInstance larger = this.accessibleFacts.size() >= other.accessibleFacts.size() ? this : other;
+		AccessibleDatabaseChaseInstance smaller = larger == this ? other : this;
 		
-		EqualConstantsClasses classes = this.classes.clone();
-		if(!classes.merge(((DatabaseChaseInstance)s).getConstantClasses())) {
+		EqualConstantsClasses classes = larger.classes.clone();
+		if(!classes.merge(smaller.getConstantClasses())) {
 			return null;
 		}
 		
-		try {
-			AccessibleDatabaseChaseInstance ret = new AccessibleDatabaseChaseInstance(
-					facts, 
-					this.graph == null ? null : this.graph.merge(((AccessibleDatabaseChaseInstance)s).graph),
-					classes,
-					HashMultimap.create(),
-					inferred,
-					map, 
-					accessibleTerms,
-					databaseInstance);
-			
-			ret.addFacts(facts);
-			return ret;
-		} catch (SQLException e) {
-				throw new RuntimeException("Merging of AccessibleDatabaseListState failed due to an SQL exception "+e);
-		}
+		AccessibleDatabaseChaseInstance ret = new AccessibleDatabaseChaseInstance(
+				larger,
+				this.graph == null ? null : this.graph.merge(other.graph),
+				classes,
+				larger.share());
+		ret.merged = true;
+		ret.addAll(smaller.accessibleFacts);
+		ret.addFacts(smaller.getFacts());
+		return ret;
 	}
 
 }
@@ -0,0 +1,92 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.planner.dag.explorer;
+
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.eventbus.EventBus;
+
+import uk.ac.ox.cs.pdq.cost.estimators.CostEstimator;
+import uk.ac.ox.cs.pdq.cost.estimators.CountNumberOfAccessedRelationsCostEstimator;
+import uk.ac.ox.cs.pdq.fol.ConjunctiveQuery;
+import uk.ac.ox.cs.pdq.fol.Constant;
+import uk.ac.ox.cs.pdq.fol.Variable;
+import uk.ac.ox.cs.pdq.planner.ExplorationSetUp;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters.DominanceTypes;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters.FollowUpHandling;
+import uk.ac.ox.cs.pdq.planner.PlannerParameters.ValidatorTypes;
+import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleQuery;
+import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
+import uk.ac.ox.cs.pdq.planner.dag.explorer.DAGOptimized;
+import uk.ac.ox.cs.pdq.planner.dag.explorer.DAGOptimizedMultiThread;
+import uk.ac.ox.cs.pdq.planner.reasoning.chase.ChaseConfiguration;
+import uk.ac.ox.cs.pdq.reasoning.chase.ParallelChaser;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+import uk.ac.ox.cs.pdq.test.util.PdqTest;
+
+/**
+ * Tests that the DAGOptimizedMultiThread class, that checks the dominance of
+ * the new configurations in parallel, finds the same best plan as the
+ * sequential DAGOptimized class.
+ *
+ * @author Gabor
+ */
+public class TestDAGOptimizedMultiThread extends PdqTest {
+
+	@Test
+	public void testSameBestPlan() throws Exception {
+		TestScenario ts = getScenario3();
+		AccessibleSchema accessibleSchema = new AccessibleSchema(ts.getSchema());
+		ConjunctiveQuery accessibleQuery = AccessibleQuery.createAccessibleQuery(ts.getQuery());
+		ConjunctiveQuery query = ts.getQuery();
+		Map<Variable, Constant> substitution = ChaseConfiguration.generateSubstitutionToCanonicalVariables(query);
+		Map<Variable, Constant> substitutionFiltered = new HashMap<>();
+		substitutionFiltered.putAll(substitution);
+		for(Variable variable:query.getBoundVariables())
+			substitutionFiltered.remove(variable);
+		ExplorationSetUp.getCanonicalSubstitution().put(query,substitution);
+		ExplorationSetUp.getCanonicalSubstitutionOfFreeVariables().put(query,substitutionFiltered);
+		ExplorationSetUp.getCanonicalSubstitution().put(accessibleQuery,substitution);
+		ExplorationSetUp.getCanonicalSubstitutionOfFreeVariables().put(accessibleQuery,substitutionFiltered);
+
+		DatabaseManager databaseConnection = new InternalDatabaseManager();
+		databaseConnection.initialiseDatabaseForSchema(accessibleSchema);
+		CostEstimator costEstimator = new CountNumberOfAccessedRelationsCostEstimator();
+
+		// Mock the planner parameters
+		PlannerParameters parameters = Mockito.mock(PlannerParameters.class);
+		when(parameters.getSeed()).thenReturn(1);
+		when(parameters.getMaxDepth()).thenReturn(3);
+		when(parameters.getFollowUpHandling()).thenReturn(FollowUpHandling.MINIMAL);
+		when(parameters.getDominanceType()).thenReturn(DominanceTypes.OPEN);
+		when(parameters.getValidatorType()).thenReturn(ValidatorTypes.DEFAULT_VALIDATOR);
+		when(parameters.getDepthThreshold()).thenReturn(2);
+		when(parameters.getDagThreads()).thenReturn(4);
+		when(parameters.getDagThreadTimeout()).thenReturn(60000L);
+
+		DAGOptimized sequential = new DAGOptimized(new EventBus(), parameters, ts.getQuery(), accessibleSchema,
+				new ParallelChaser(), databaseConnection, costEstimator, null, 3);
+		sequential.explore();
+		Assert.assertNotNull(sequential.getBestPlan());
+
+		DAGOptimizedMultiThread parallel = new DAGOptimizedMultiThread(new EventBus(), parameters, ts.getQuery(), accessibleSchema,
+				new ParallelChaser(), databaseConnection, costEstimator, null, 3);
+		try {
+			parallel.explore();
+		} finally {
+			parallel.shutdownThreads();
+		}
+		Assert.assertEquals(sequential.getBestCost(), parallel.getBestCost());
+		Assert.assertEquals(sequential.getBestPlan().toString(), parallel.getBestPlan().toString());
+	}
+}
@@ -22,11 +22,13 @@ import uk.ac.ox.cs.pdq.fol.Term;
 import uk.ac.ox.cs.pdq.fol.TypedConstant;
 import uk.ac.ox.cs.pdq.planner.PlannerParameters.DominanceTypes;
 import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibilityAxiom;
+import uk.ac.ox.cs.pdq.planner.accessibleschema.AccessibleSchema;
 import uk.ac.ox.cs.pdq.planner.dag.ApplyRule;
 import uk.ac.ox.cs.pdq.planner.dag.BinaryConfiguration;
 import uk.ac.ox.cs.pdq.planner.dag.DAGChaseConfiguration;
 import uk.ac.ox.cs.pdq.planner.dominance.Dominance;
 import uk.ac.ox.cs.pdq.planner.dominance.DominanceFactory;
+import uk.ac.ox.cs.pdq.planner.equivalence.dag.DAGEquivalenceClass;
 import uk.ac.ox.cs.pdq.planner.equivalence.dag.DAGEquivalenceClasses;
 import uk.ac.ox.cs.pdq.planner.reasoning.chase.accessiblestate.AccessibleChaseInstance;
 import uk.ac.ox.cs.pdq.planner.reasoning.chase.accessiblestate.AccessibleDatabaseChaseInstance;
@@ -93,6 +95,71 @@ public class TestDAGEquivalenceClasses extends PdqTest {
 		Assert.assertEquals(1, se.dominatedBy(dominance, shouldBeDominated).size());
 	}
 	
+	/**
+	 * The candidates that fail the signature tests are skipped, without changing the
+	 * results of dominate and dominatedBy.
+	 */
+	@Test
+	public void testDominanceChecksAvoided() {
+		DAGEquivalenceClasses se = new DAGEquivalenceClasses();
+		Set<Atom> factsT = new HashSet<>();
+		factsT.add(Atom.create(T, new Term[] { TypedConstant.create("A" + 1),TypedConstant.create("C" + 1),TypedConstant.create("B" + 1)}));
+		Set<Atom> factsS = new HashSet<>();
+		factsS.add(Atom.create(S_s, new Term[] { TypedConstant.create("sA" + 1),TypedConstant.create("sC" + 1)}));
+		AccessibilityAxiom ruleT = new AccessibilityAxiom(T, this.method0);
+		AccessibilityAxiom ruleS = new AccessibilityAxiom(S_s, this.method1); 
+
+		// each configuration has its own inferred accessible facts
+		DAGChaseConfiguration configuration = new ApplyRule(this.createState(1), ruleT, factsT);
+		DAGChaseConfiguration configuration2 = new ApplyRule(this.createState(2), ruleT, factsT);
+		DAGChaseConfiguration configuration3 = new ApplyRule(this.createState(3), ruleS, factsS);
+		configuration.setCost(new DoubleCost(10));
+		BinaryConfiguration testConfig = new BinaryConfiguration(configuration2,configuration);
+		testConfig.setCost(new DoubleCost(15));
+		BinaryConfiguration binary = new BinaryConfiguration(configuration3,configuration);
+		binary.setCost(new DoubleCost(5));
+		BinaryConfiguration cheaper = new BinaryConfiguration(configuration2,configuration);
+		cheaper.setCost(new DoubleCost(5));
+
+		se.addEntry(configuration);
+		se.addEntry(configuration3);
+		se.addEntry(testConfig);
+		Collection<DAGChaseConfiguration> all = new ArrayList<>();
+		se.getEquivalenceClasses().forEach(c -> all.addAll(c.getAll()));
+
+		for (DAGChaseConfiguration input: new DAGChaseConfiguration[] { configuration, configuration3, testConfig, binary, cheaper }) {
+			Set<DAGChaseConfiguration> expected = new HashSet<>();
+			for (DAGChaseConfiguration candidate: all) {
+				if (DAGEquivalenceClass.isDominatedBy(dominance, input, candidate))
+					expected.add(candidate);
+			}
+			long performed = se.getDominanceChecks() + se.getDominanceChecksAvoided();
+			Assert.assertEquals(expected, new HashSet<>(se.dominatedBy(dominance, input)));
+			Assert.assertEquals(all.size(), se.getDominanceChecks() + se.getDominanceChecksAvoided() - performed);
+
+			DAGChaseConfiguration dominator = se.dominate(dominance, input);
+			if (dominator == null) {
+				for (DAGChaseConfiguration candidate: all)
+					Assert.assertFalse(DAGEquivalenceClass.isDominatedBy(dominance, candidate, input));
+			} else {
+				Assert.assertTrue(DAGEquivalenceClass.isDominatedBy(dominance, dominator, input));
+			}
+		}
+		Assert.assertTrue(se.dominatedBy(dominance, cheaper).contains(testConfig));
+		Assert.assertTrue(se.getDominanceChecksAvoided() > 0);
+	}
+
+	private AccessibleChaseInstance createState(int i) {
+		Relation inferredT = Relation.create(AccessibleSchema.inferredAccessiblePrefix + T.getName(), T.getAttributes());
+		Collection<Atom> facts = new ArrayList<>();
+		facts.add(Atom.create(inferredT, new Term[] { TypedConstant.create("A" + i),TypedConstant.create("C" + i),TypedConstant.create("B" + i)}));
+		try {
+			return new AccessibleDatabaseChaseInstance(facts, new InternalDatabaseManager(), false);
+		} catch (SQLException | DatabaseException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private Collection<Atom> getFacts() {
 		Collection<Atom> atoms = new ArrayList<>();
 		for (int i = 0 ; i < 10; i++) 
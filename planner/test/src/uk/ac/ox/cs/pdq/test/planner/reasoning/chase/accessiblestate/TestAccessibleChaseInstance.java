@@ -512,6 +512,87 @@ public class TestAccessibleChaseInstance extends PdqTest {
 
 	}
 
+	/** <pre>
+	 * Creates facts:
+	 * R2(c,c1)
+	 * R2(c,c4)
+	 * R2(c2,c4)
+	 * 
+	 * Clones the state, and exposes different facts in the clone and in the original state.
+	 * 
+	 * Checks that the inferred accessible facts and the provenance of the two states are independent.
+	 * </pre>
+	 */
+	@Test
+	public void test5_clone() throws SQLException {
+		this.connection = createConnection(this.accessibleSchema);
+		Atom f0 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c"), UntypedConstant.create("c1") });
+		Atom f1 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c"), UntypedConstant.create("c4") });
+		Atom f2 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c2"), UntypedConstant.create("c4") });
+		this.state = new AccessibleDatabaseChaseInstance(Sets.<Atom>newHashSet(f0, f1, f2), this.connection, true);
+		AccessibilityAxiom axiom = this.accessibleSchema.getAccessibilityAxioms()[0];
+
+		AccessibleDatabaseChaseInstance clone = this.state.clone();
+		Assert.assertEquals(this.state.getFacts(), clone.getFacts());
+		clone.generate(axiom, Arrays.asList(f0, f1));
+		Assert.assertEquals(0, this.state.getInferredAccessibleFacts().size());
+		Assert.assertEquals(2, clone.getInferredAccessibleFacts().size());
+		Assert.assertEquals(2, clone.getProvenance().size());
+		Assert.assertEquals(3, this.state.getUnexposedFacts(this.accessibleSchema).get(axiom).size());
+		Assert.assertEquals(1, clone.getUnexposedFacts(this.accessibleSchema).get(axiom).size());
+
+		this.state.generate(axiom, Arrays.asList(f2));
+		Assert.assertEquals(1, this.state.getInferredAccessibleFacts().size());
+		Assert.assertEquals(1, this.state.getProvenance().size());
+		Assert.assertEquals(2, clone.getInferredAccessibleFacts().size());
+		Assert.assertEquals(2, clone.getProvenance().size());
+	}
+
+	/** <pre>
+	 * Creates facts:
+	 * R2(c,c1)
+	 * R2(c,c4)
+	 * R2(c2,c4)
+	 * 
+	 * Exposes different facts in two clones of the state, and merges the clones in both orders.
+	 * 
+	 * Checks that the merged states have the facts of both clones, and that the clones do not change.
+	 * </pre>
+	 */
+	@Test
+	public void test6_merge() throws SQLException {
+		this.connection = createConnection(this.accessibleSchema);
+		Atom f0 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c"), UntypedConstant.create("c1") });
+		Atom f1 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c"), UntypedConstant.create("c4") });
+		Atom f2 = Atom.create(this.rel2, new Term[] { UntypedConstant.create("c2"), UntypedConstant.create("c4") });
+		this.state = new AccessibleDatabaseChaseInstance(Sets.<Atom>newHashSet(f0, f1, f2), this.connection, true);
+		AccessibilityAxiom axiom = this.accessibleSchema.getAccessibilityAxioms()[0];
+
+		AccessibleDatabaseChaseInstance larger = this.state.clone();
+		larger.generate(axiom, Arrays.asList(f0, f1));
+		AccessibleDatabaseChaseInstance smaller = this.state.clone();
+		smaller.generate(axiom, Arrays.asList(f2));
+		Collection<Atom> largerFacts = larger.getFacts();
+		Collection<Atom> smallerFacts = smaller.getFacts();
+
+		for (AccessibleChaseInstance merged : new AccessibleChaseInstance[] { larger.merge(smaller), smaller.merge(larger) }) {
+			Assert.assertEquals(3, merged.getInferredAccessibleFacts().size());
+			Assert.assertEquals(3, merged.getProvenance().size());
+			Assert.assertEquals(Sets.union(Sets.newHashSet(largerFacts), Sets.newHashSet(smallerFacts)), Sets.newHashSet(merged.getFacts()));
+			Assert.assertTrue(merged.getUnexposedFacts(this.accessibleSchema).isEmpty());
+		}
+		Assert.assertEquals(largerFacts, larger.getFacts());
+		Assert.assertEquals(smallerFacts, smaller.getFacts());
+		Assert.assertEquals(2, larger.getInferredAccessibleFacts().size());
+		Assert.assertEquals(1, smaller.getInferredAccessibleFacts().size());
+		Assert.assertEquals(3, this.state.getUnexposedFacts(this.accessibleSchema).get(axiom).size());
+		try {
+			larger.getInferredAccessibleFacts().clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
 	/**
 	 * Uses StandardScenario1 for schema and query. 
 	 * Tests if we get 4 facts in the database after reasoning.
@@ -19,6 +19,7 @@ import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
 import uk.ac.ox.cs.pdq.reasoningdatabase.ExternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.StateExporter;
 import uk.ac.ox.cs.pdq.reasoningdatabase.StateExporter.BufferedFactExport;
 
 /**
@@ -81,6 +82,32 @@ public class CertainAnswerExecutor {
 		findCertainAnswersQuery(IOManager.importQuery(queryFile), outputFile);
 	}
 
+	/**
+	 * Saves the (typically chased) database into a binary snapshot, so that later
+	 * runs can load it with loadSnapshot instead of chasing again.
+	 * 
+	 * @param snapshot
+	 * @param compress
+	 * @return the number of facts saved.
+	 * @throws DatabaseException
+	 * @throws IOException
+	 */
+	public long saveSnapshot(File snapshot, boolean compress) throws DatabaseException, IOException {
+		return new StateExporter(databaseManager).exportSnapshot(snapshot, compress);
+	}
+
+	/**
+	 * Loads a snapshot written by saveSnapshot into the database.
+	 * 
+	 * @param snapshot
+	 * @return the number of facts loaded.
+	 * @throws DatabaseException
+	 * @throws IOException
+	 */
+	public long loadSnapshot(File snapshot) throws DatabaseException, IOException {
+		return new StateExporter(databaseManager).importSnapshot(snapshot, databaseManager.getSchema());
+	}
+
 	/**
 	 * One by one finds certain answers of all queries in the queryfolder and creates a csv result
 	 * file in the output folder. The csv files will be named according to the name
@@ -41,6 +41,8 @@ import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
 import uk.ac.ox.cs.pdq.reasoningdatabase.ExternalDatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.StateSnapshotReader;
+import uk.ac.ox.cs.pdq.reasoningdatabase.StateSnapshotWriter;
 import uk.ac.ox.cs.pdq.reasoningdatabase.cache.FactCache;
 
 /**
@@ -66,7 +68,8 @@ public class Reason {
 	private String queryPath;
 
 	@Parameter(names = { "-f",
-			"--facts" }, required = false, description = "Path to the folder containing [RelationName].csv files containing data for the given relation. Either facts or a query is mandatory.")
+			"--facts" }, required = false, description = "Path to the folder containing [RelationName].csv files containing data for the given relation, "
+					+ "or to a snapshot file written with --snapshot. Either facts or a query is mandatory.")
 	private String factsPath;
 
 	@Parameter(names = { "-c",
@@ -86,6 +89,11 @@ public class Reason {
 			description ="Path to the output csv file.")
 	private File output;
 
+	@Parameter(names = { "-sn", "--snapshot" }, required = false,
+			description ="Path to a binary snapshot file to write the chased instance into. It can be loaded back with --facts. "
+					+ "The snapshot is compressed if the file name ends with .gz")
+	private File snapshot;
+
 	@DynamicParameter(names = "-D", description = "Dynamic parameters. Override values defined in the configuration files.")
 	protected Map<String, String> dynamicParams = new LinkedHashMap<>();
 	
@@ -148,7 +156,11 @@ public class Reason {
 			if (this.getQueryPath() != null)
 				query = IOManager.importQuery(new File(this.getQueryPath()));
 			List<Atom> facts = new ArrayList<>();
-			if (this.getFactsPath() != null) {
+			if (this.getFactsPath() != null && StateSnapshotReader.isSnapshot(new File(this.getFactsPath()))) {
+				try (StateSnapshotReader reader = new StateSnapshotReader(new File(this.getFactsPath()), schema)) {
+					facts.addAll(reader.readAll());
+				}
+			} else if (this.getFactsPath() != null) {
 				for (Relation r : schema.getRelations()) {
 					File rXml = new File(this.getFactsPath(),r.getName() + ".csv");
 					if (rXml.exists())
@@ -172,7 +184,7 @@ public class Reason {
 				: DatabaseParameters.Postgres;
 			
 			if (dbParams.getUseInternalDatabaseManager()) {
-				manager = new InternalDatabaseManager();
+				manager = new InternalDatabaseManager(dbParams, 1);
 			} else  {
 				schema = convertTypesToString(schema);
 				manager = new ExternalDatabaseManager(dbParams);
@@ -203,6 +215,11 @@ public class Reason {
 			if (output!=null) {
 				writeOutput(results,schema);
 			}
+			if (snapshot!=null) {
+				try (StateSnapshotWriter writer = new StateSnapshotWriter(snapshot, snapshot.getName().endsWith(".gz"))) {
+					writer.addFacts(results);
+				}
+			}
 			System.out.println("Reasoning results generated in " + (System.currentTimeMillis() - start)/1000.0 + " sec.");
 			System.out.println("Found " + results.size() + " amount of tuples.");
 			if (userQueryFolder!=null) {
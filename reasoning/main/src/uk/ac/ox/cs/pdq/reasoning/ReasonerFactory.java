@@ -58,6 +58,9 @@ public class ReasonerFactory {
 	/**  K for the KTermination chase. */
 	private final Integer terminationK;
 
+	/**  True if the chasers should compute the triggers from the new facts only. */
+	private final boolean semiNaive;
+
 	/**
 	 * Instantiates a new reasoner factory.
 	 *
@@ -70,6 +73,7 @@ public class ReasonerFactory {
 	public ReasonerFactory(ReasoningParameters params) {
 		this.type = params.getReasoningType();
 		this.terminationK = params.getTerminationK();
+		this.semiNaive = params.getSemiNaiveChase();
 	}
 
 	/**
@@ -81,9 +85,9 @@ public class ReasonerFactory {
 	public Chaser getInstance() {
 		switch (this.type) {
 		case RESTRICTED_CHASE:
-			return new ParallelChaser();
+			return new ParallelChaser(this.semiNaive);
 		case PARALLEL_EGD_CHASE:
-			return new AlternatingEgdTgdChase();			
+			return new AlternatingEgdTgdChase(this.semiNaive);			
 		case KTERMINATION_CHASE:
 			return new KTerminationChaser(this.terminationK);
 		default:
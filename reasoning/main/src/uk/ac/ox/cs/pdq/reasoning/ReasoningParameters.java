@@ -124,6 +124,13 @@ public class ReasoningParameters extends Parameters {
 			defaultValue = "10")
 	protected Integer terminationK = 10;
 
+	/** True if the chase should compute the triggers from the new facts only. */
+	@Parameter(description = "If true, after the first round each dependency is "
+			+ "evaluated only on the facts created since its previous evaluation (semi-naive chase). "
+			+ "\nOnly applies to RESTRICTED_CHASE and PARALLEL_EGD_CHASE reasoning types.",
+			defaultValue = "false")
+	protected Boolean semiNaiveChase = false;
+
 	/**
 	 * Gets the database driver.
 	 *
@@ -279,6 +286,22 @@ public class ReasoningParameters extends Parameters {
 		this.terminationK = terminationK;
 	}
 
+	/**
+	 * @return Boolean
+	 */
+	public Boolean getSemiNaiveChase() {
+		return this.semiNaiveChase == null ? false : this.semiNaiveChase;
+	}
+
+	/**
+	 * Sets the semi-naive chase option.
+	 *
+	 * @param semiNaiveChase Boolean
+	 */
+	public void setSemiNaiveChase(Boolean semiNaiveChase) {
+		this.semiNaiveChase = semiNaiveChase;
+	}
+
 
 	/**
 	 * The Enum ReasoningTypes.
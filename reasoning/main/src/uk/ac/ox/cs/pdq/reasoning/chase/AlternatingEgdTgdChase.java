@@ -12,7 +12,6 @@ import uk.ac.ox.cs.pdq.fol.Dependency;
 import uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor.DependencyAssessor;
 import uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor.DependencyAssessor.EGDROUND;
 import uk.ac.ox.cs.pdq.reasoning.chase.state.ChaseInstance;
-import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
 
 
 /**
@@ -38,6 +37,22 @@ import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
  */
 public class AlternatingEgdTgdChase extends Chaser {
 
+	/** True if the triggers are computed from the new facts only. */
+	private final boolean semiNaive;
+
+	public AlternatingEgdTgdChase() {
+		this(false);
+	}
+
+	/**
+	 * @param semiNaive
+	 *            true to find the triggers using the facts created in the last
+	 *            rounds only.
+	 */
+	public AlternatingEgdTgdChase(boolean semiNaive) {
+		this.semiNaive = semiNaive;
+	}
+
 	/**
 	 * Chases the input state until termination.
 	 * The EGDs and the TGDs are applied in rounds, i.e., during even round we apply parallel EGD chase steps,
@@ -62,12 +77,14 @@ public class AlternatingEgdTgdChase extends Chaser {
 			++step;
 			//Find all active triggers
 			Dependency[] d = step % 2 == 0 ? accessor.getDependencies(EGDROUND.TGD):accessor.getDependencies(EGDROUND.EGD);
-			List<Match> activeTriggers = instance.getTriggers(d, TriggerProperty.ACTIVE);
+			List<Match> activeTriggers = getActiveTriggers(instance, d, accessor, this.semiNaive);
 			boolean succeeds = instance.chaseStep(activeTriggers);
 			if(failedLast && ! succeeds ) {
 				break;
 			}
-			accessor.addNewFacts(instance.getNewFacts());
+			// without triggers the chase step does nothing, the new and deleted facts of the instance are left from an earlier step.
+			if (!this.semiNaive || !activeTriggers.isEmpty())
+				updateAccessor(instance, accessor, this.semiNaive);
 			
 			failedLast = !succeeds;
 			if(succeeds && !activeTriggers.isEmpty()) {
@@ -96,7 +113,7 @@ public class AlternatingEgdTgdChase extends Chaser {
 	 */
 	@Override
 	public AlternatingEgdTgdChase clone() {
-		return new AlternatingEgdTgdChase();
+		return new AlternatingEgdTgdChase(this.semiNaive);
 	}
 
 }
@@ -3,10 +3,16 @@
 
 package uk.ac.ox.cs.pdq.reasoning.chase;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
+import uk.ac.ox.cs.pdq.db.Match;
 import uk.ac.ox.cs.pdq.fol.Dependency;
+import uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor.DependencyAssessor;
 import uk.ac.ox.cs.pdq.reasoning.chase.state.ChaseInstance;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
 
 /**
  * (From A. C. Onet) 
@@ -36,4 +42,41 @@ public abstract class Chaser {
 	 * @see java.lang.Object#clone()
 	 */
 	public abstract Chaser clone();
+
+	/**
+	 * Finds the active triggers of the input dependencies. In semi-naive mode only
+	 * the triggers that use at least one fact created since the last evaluation of
+	 * the dependency are returned, the deltas are maintained by the accessor.
+	 *
+	 * @param instance the instance
+	 * @param dependencies the dependencies
+	 * @param accessor keeps track of the new facts
+	 * @param semiNaive true to restrict the evaluation to the deltas
+	 * @return the active triggers
+	 */
+	protected static List<Match> getActiveTriggers(ChaseInstance instance, Dependency[] dependencies, DependencyAssessor accessor, boolean semiNaive) {
+		if (!semiNaive)
+			return instance.getTriggers(dependencies, TriggerProperty.ACTIVE);
+		List<Match> results = new ArrayList<>();
+		for (Dependency dependency : dependencies)
+			results.addAll(instance.getTriggers(new Dependency[] { dependency }, TriggerProperty.ACTIVE, accessor.getDelta(dependency)));
+		return results;
+	}
+
+	/**
+	 * Registers the facts created and deleted by the last chase step in the
+	 * accessor.
+	 *
+	 * @param instance the instance
+	 * @param accessor keeps track of the new facts
+	 * @param semiNaive true when the deltas of the accessor are used
+	 */
+	protected static void updateAccessor(ChaseInstance instance, DependencyAssessor accessor, boolean semiNaive) {
+		if (semiNaive) {
+			accessor.removeFacts(instance.getDeletedFacts());
+			accessor.addNewFacts(instance.getNewFacts());
+		} else if (instance.getNewFacts() != null) {
+			accessor.addNewFacts(instance.getNewFacts());
+		}
+	}
 }
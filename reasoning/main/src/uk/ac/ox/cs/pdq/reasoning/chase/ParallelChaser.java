@@ -12,7 +12,6 @@ import uk.ac.ox.cs.pdq.fol.Dependency;
 import uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor.DependencyAssessor;
 import uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor.DependencyAssessor.EGDROUND;
 import uk.ac.ox.cs.pdq.reasoning.chase.state.ChaseInstance;
-import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
 
 
 /**
@@ -29,12 +28,30 @@ import uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty;
  * The output of the chase step is a new instance in which h is no longer an active trigger.
  * 
  * The facts that are generated during chasing are stored in a list.
+ * In semi-naive mode each dependency is evaluated on the facts created since
+ * its previous evaluation only (see ChaseInstance#getTriggers(Dependency[], TriggerProperty, java.util.Collection)).
  *
  * @author Efthymia Tsamoura
  *
  */
 public class ParallelChaser extends Chaser {
 
+	/** True if the triggers are computed from the new facts only. */
+	private final boolean semiNaive;
+
+	public ParallelChaser() {
+		this(false);
+	}
+
+	/**
+	 * @param semiNaive
+	 *            true to find the triggers using the facts created in the last
+	 *            rounds only.
+	 */
+	public ParallelChaser(boolean semiNaive) {
+		this.semiNaive = semiNaive;
+	}
+
 	/**
 	 * Chases the input state until termination.
 	 *
@@ -51,13 +68,13 @@ public class ParallelChaser extends Chaser {
 		do {
 			appliedStep = false;
 			for(Dependency dependency:d) {
-				List<Match> matches = instance.getTriggers(new Dependency[]{dependency}, TriggerProperty.ACTIVE);
+				List<Match> matches = getActiveTriggers(instance, new Dependency[]{dependency}, accessor, this.semiNaive);
 				if(!matches.isEmpty()) {
 					boolean success = instance.chaseStep(matches);
 					if (success) {
 						appliedStep = true;
 					}
-					accessor.addNewFacts(instance.getNewFacts());
+					updateAccessor(instance, accessor, this.semiNaive);
 				}
 			}
 			d = accessor.getDependencies(EGDROUND.BOTH);	
@@ -70,6 +87,6 @@ public class ParallelChaser extends Chaser {
 	 */
 	@Override
 	public ParallelChaser clone() {
-		return new ParallelChaser();
+		return new ParallelChaser(this.semiNaive);
 	}
 }
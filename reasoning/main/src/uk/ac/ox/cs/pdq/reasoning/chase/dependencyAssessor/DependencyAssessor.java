@@ -6,7 +6,9 @@ package uk.ac.ox.cs.pdq.reasoning.chase.dependencyAssessor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
@@ -25,6 +27,10 @@ import uk.ac.ox.cs.pdq.fol.TGD;
  * returns all the dependencies that have in their left-hand side at least one
  * atom with predicate that matches one of the predicates in the generated
  * facts.
+ * <br>
+ * For semi-naive chasing it also keeps a delta for each dependency: the facts
+ * that were added since the last time the triggers of that dependency were
+ * computed.
  * 
  * @author Efthymia Tsamoura
  * @author Gabor
@@ -37,12 +43,24 @@ public final class DependencyAssessor {
 		/** The tgd. */ TGD,
 		/** Both . */ BOTH};
 
-	/** The facts of this database instance*. */
-	private Collection<Atom> newFacts = null;
+	/** The facts created since the last EGD (or BOTH) round. */
+	private Collection<Atom> newFactsForEgds = null;
+
+	/** The facts created since the last TGD (or BOTH) round. */
+	private Collection<Atom> newFactsForTgds = null;
 
 	/** All schema dependencies *. */
 	private final Collection<Dependency> dependencies;
 
+	/** Dependencies having a body atom with the given predicate name. */
+	private final Multimap<String, Dependency> dependenciesByBodyPredicate;
+
+	/**
+	 * Facts added since the last evaluation of each dependency. A dependency
+	 * without entry was not evaluated yet, or its delta was invalidated.
+	 */
+	private final Map<Dependency, Collection<Atom>> deltas;
+
 	/**
 	 * Instantiates a new default restricted chase dependency assessor.
 	 *
@@ -54,23 +72,83 @@ public final class DependencyAssessor {
 		this.dependencies = new ArrayList<Dependency>();
 		this.dependencies.addAll(Arrays.asList(dependencies));
 		// cache of new recent facts
-		this.newFacts = new LinkedHashSet<>();
+		this.newFactsForEgds = new LinkedHashSet<>();
+		this.newFactsForTgds = new LinkedHashSet<>();
+		this.dependenciesByBodyPredicate = ArrayListMultimap.create();
+		for (Dependency dependency : dependencies) {
+			Collection<String> bodyPredicates = new LinkedHashSet<>();
+			for (Atom atom : dependency.getBodyAtoms())
+				bodyPredicates.add(atom.getPredicate().getName());
+			for (String name : bodyPredicates)
+				this.dependenciesByBodyPredicate.put(name, dependency);
+		}
+		this.deltas = new HashMap<>();
 	}
 
+	/**
+	 * Registers the facts created by the last chase step. A null input means the
+	 * new facts are unknown, in this case every delta is invalidated and the next
+	 * getDelta call returns null for each dependency.
+	 * 
+	 * @param facts
+	 */
 	public void addNewFacts(Collection<Atom> facts) {
-		if (facts!=null) this.newFacts.addAll(facts);
+		if (facts == null) {
+			this.deltas.clear();
+			return;
+		}
+		this.newFactsForEgds.addAll(facts);
+		this.newFactsForTgds.addAll(facts);
+		if (this.deltas.isEmpty())
+			return;
+		for (Atom fact : facts) {
+			for (Dependency dependency : this.dependenciesByBodyPredicate.get(fact.getPredicate().getName())) {
+				Collection<Atom> delta = this.deltas.get(dependency);
+				if (delta != null)
+					delta.add(fact);
+			}
+		}
+	}
+
+	/**
+	 * Removes the facts deleted by the last chase step from the deltas.
+	 * 
+	 * @param facts
+	 */
+	public void removeFacts(Collection<Atom> facts) {
+		if (facts == null || facts.isEmpty() || this.deltas.isEmpty())
+			return;
+		for (Collection<Atom> delta : this.deltas.values())
+			delta.removeAll(facts);
+	}
+
+	/**
+	 * Returns the facts added since the last call of this method for the same
+	 * dependency, and starts collecting the next delta of the dependency.
+	 * 
+	 * @param dependency
+	 * @return null when the dependency has to be evaluated on the whole instance
+	 *         (first call or invalidated delta), the delta otherwise.
+	 */
+	public Collection<Atom> getDelta(Dependency dependency) {
+		return this.deltas.put(dependency, new LinkedHashSet<Atom>());
 	}
 
 	/**
-	 * For every fact that was added since the last call of getDependencies it will
-	 * check if there is any predicate match between these new facts and the
-	 * dependencies.
+	 * For every fact that was added since the last call of getDependencies (for
+	 * the same type of dependencies) it will check if there is any predicate match
+	 * between these new facts and the dependencies.
 	 *
 	 * @return the dependencies that have a chance to fire in the next chase
 	 *         round.
 	 */
 	public Dependency[] getDependencies(EGDROUND round) {
 		Collection<Dependency> constraints = new LinkedHashSet<>();
+		Collection<Atom> newFacts = new LinkedHashSet<>();
+		if (!round.equals(EGDROUND.TGD))
+			newFacts.addAll(this.newFactsForEgds);
+		if (!round.equals(EGDROUND.EGD))
+			newFacts.addAll(this.newFactsForTgds);
 		Multimap<String, Atom> newFactsMap = ArrayListMultimap.create();
 		for (Atom fact : newFacts)
 			newFactsMap.put(fact.getPredicate().getName(), fact);
@@ -96,7 +174,11 @@ public final class DependencyAssessor {
 				}
 			}
 		}
-		this.newFacts = new LinkedHashSet<>();
+		// an EGD round must not consume the facts the next TGD round is waiting for.
+		if (!round.equals(EGDROUND.TGD))
+			this.newFactsForEgds = new LinkedHashSet<>();
+		if (!round.equals(EGDROUND.EGD))
+			this.newFactsForTgds = new LinkedHashSet<>();
 		return constraints.toArray(new Dependency[constraints.size()]);
 	}
 }
@@ -4,13 +4,11 @@
 package uk.ac.ox.cs.pdq.reasoning.chase.schemaconstantequality;
 
 import java.util.Collection;
-import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.TreeSet;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
 
 import uk.ac.ox.cs.pdq.fol.Atom;
 import uk.ac.ox.cs.pdq.fol.Constant;
@@ -48,10 +46,19 @@ public class EqualConstantsClass {
 	 * @throws ChaseException the chase exception
 	 */
 	public EqualConstantsClass(Atom equality) throws ChaseException{
+		this(checkEquality(equality).getTerm(0), equality.getTerm(1));
+	}
+
+	/**
+	 * Instantiates a new constant equality class of two equal constants.
+	 *
+	 * @param left the left constant of the equality
+	 * @param right the right constant of the equality
+	 * @throws ChaseException if the constants are different schema constants
+	 */
+	EqualConstantsClass(Term left, Term right) throws ChaseException{
 		this.constants = new TreeSet<>();
-		Term[] terms = equality.getTerms();
-		Preconditions.checkArgument(equality.isEquality());
-		Preconditions.checkArgument(terms.length == 2);
+		Term[] terms = new Term[] { left, right };
 		Preconditions.checkArgument(terms[0]!=null);
 		Preconditions.checkArgument(terms[1]!=null);
 		Preconditions.checkArgument(terms[0] instanceof Constant && terms[1] instanceof Constant);
@@ -85,6 +92,12 @@ public class EqualConstantsClass {
 		this.setRepresentative();
 	}
 
+	private static Atom checkEquality(Atom equality) {
+		Preconditions.checkArgument(equality.isEquality());
+		Preconditions.checkArgument(equality.getNumberOfTerms() == 2);
+		return equality;
+	}
+
 	/**
 	 * Instantiates a new constant equality class.
 	 *
@@ -94,8 +107,7 @@ public class EqualConstantsClass {
 	 */
 	private EqualConstantsClass(Collection<Term> constants, Term representative, TypedConstant schemaConstant) {
 		Preconditions.checkNotNull(constants);
-		this.constants = new LinkedHashSet<>();
-		this.constants.addAll(constants);
+		this.constants = new TreeSet<>(constants);
 		this.schemaConstant = schemaConstant;
 		this.representative = representative;
 	}
@@ -290,7 +302,7 @@ public class EqualConstantsClass {
 
 	@Override
 	public EqualConstantsClass clone() {
-		return new EqualConstantsClass(Sets.newHashSet(this.constants), this.representative, this.schemaConstant);
+		return new EqualConstantsClass(this.constants, this.representative, this.schemaConstant);
 	}
 
 	/**
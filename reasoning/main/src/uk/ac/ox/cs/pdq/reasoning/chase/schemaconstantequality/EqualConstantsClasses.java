@@ -3,14 +3,15 @@
 
 package uk.ac.ox.cs.pdq.reasoning.chase.schemaconstantequality;
 
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
-import org.apache.commons.collections4.CollectionUtils;
-
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 
@@ -20,31 +21,78 @@ import uk.ac.ox.cs.pdq.reasoning.chase.ChaseException;
 
 /**
  * Keeps the multiple classes of equal constants created during EGD chasing.
+ * 
+ * The classes are kept in a union-find (disjoint-set) structure over the
+ * constants, with union by rank and path compression, so that finding the
+ * class of a constant and merging two classes take almost constant time. The
+ * root of each tree is mapped to the EqualConstantsClass, that keeps the
+ * schema constant and the representative of the class.
+ * 
+ * Cloning is copy-on-write: a clone shares the maps and the classes with the
+ * original, and each of them copies the maps on its first update, and the
+ * classes that it updates afterwards, since the chase states are cloned much
+ * more often than their classes change.
+ * 
+ * Cloning and the read methods do not update the instance (the paths are only
+ * compressed by updates), so an instance can be cloned and read by several
+ * threads at once. Updates of the same instance still have to be serialised by
+ * the caller.
  *
  * @author Efthymia Tsamoura
  * @author Gabor
  */
 public class EqualConstantsClasses {
 
-	/**  The classes of equal constants*. */
-	private Set<EqualConstantsClass> classes = new HashSet<>();
+	/**
+	 * The maps of the union-find structure, shared by an instance and its clones
+	 * until one of them updates it.
+	 */
+	private static final class Forest {
+		/** Maps each constant to its parent, the roots are mapped to themselves. */
+		private final Map<Term, Term> parents;
+
+		/** Upper bound of the height of the tree under each root. */
+		private final Map<Term, Integer> ranks;
+
+		/**  The classes of equal constants, keyed by the root of their tree. */
+		private final Map<Term, EqualConstantsClass> classes;
+
+		/** Set once the forest is shared with a clone, the maps are not updated afterwards. */
+		private volatile boolean shared = false;
+
+		private Forest() {
+			this.parents = new HashMap<>();
+			this.ranks = new HashMap<>();
+			this.classes = new HashMap<>();
+		}
+
+		private Forest(Forest forest) {
+			this.parents = new HashMap<>(forest.parents);
+			this.ranks = new HashMap<>(forest.ranks);
+			this.classes = new HashMap<>(forest.classes);
+		}
+	}
+
+	private Forest forest;
+
+	/** The classes that are not shared with a clone, that can be updated in place. */
+	private Set<EqualConstantsClass> owned = Collections.newSetFromMap(new IdentityHashMap<>());
 
 	/**
 	 * Instantiates a new  class of equal constants .
 	 */
-	public EqualConstantsClasses() {}
+	public EqualConstantsClasses() {
+		this.forest = new Forest();
+	}
 
 	/**
-	 * Instantiates a new class of equal constants .
+	 * Instantiates a new class of equal constants, that shares the given forest.
 	 *
-	 * @param classes the classes
+	 * @param forest the forest
 	 */
-	private EqualConstantsClasses(Set<EqualConstantsClass> classes) {
-		Preconditions.checkNotNull(classes);
-		this.classes.addAll(classes);
-		for(EqualConstantsClass clas:classes) {
-			this.classes.add(clas.clone());
-		}
+	private EqualConstantsClasses(Forest forest) {
+		Preconditions.checkNotNull(forest);
+		this.forest = forest;
 	}
 
 	/**
@@ -56,47 +104,135 @@ public class EqualConstantsClasses {
 	public boolean add(Atom equality) { 
 		Preconditions.checkArgument(equality.isEquality());
 		Term[] terms = equality.getTerms();
-		EqualConstantsClass c0 = this.getClass(terms[0]);
-		EqualConstantsClass c1 = this.getClass(terms[1]);
+		return this.union(terms[0], terms[1]);
+	}
 
-		if(c0 != null && c1 != null && c0.equals(c1)) {
+	/**
+	 * Puts the given constants in the same class.
+	 *
+	 * @return 		false if the classes of the constants contain different schema constants
+	 */
+	private boolean union(Term t0, Term t1) {
+		Term r0 = this.find(t0);
+		Term r1 = this.find(t1);
+		if (r0 != null && r1 != null && r0.equals(r1)) {
 			return true;
 		}
-		if(c0 != null && c1 != null) {
-			if(c0.add(terms[1], c1)) { // add all content from c1 to c0
-				if(!c0.equals(c1)) { // two class becomes one, so we have to remove the second one.
-					Set<EqualConstantsClass> classes = new HashSet<>(this.classes);
-					classes.remove(c1); // remove object from a clone and then replace in order to be thread safe.
-					this.classes = classes;
-				}
-			}
-			else {
+		if (r0 == null && r1 == null) {
+			EqualConstantsClass c;
+			try {
+				c = new EqualConstantsClass(t0, t1);
+			} catch (ChaseException e) {
 				return false;
 			}
+			this.unshare();
+			this.owned.add(c);
+			Iterator<Term> constants = c.getConstants().iterator();
+			Term root = constants.next();
+			this.forest.parents.put(root, root);
+			this.forest.ranks.put(root, c.getConstants().size() > 1 ? 1 : 0);
+			this.forest.classes.put(root, c);
+			while (constants.hasNext()) {
+				this.forest.parents.put(constants.next(), root);
+			}
+			return true;
 		}
-		if(c0 != null) {
-			return c0.add(terms[1], c1);
-		}
-		if(c1 != null) {
-			return c1.add(terms[0], c0);
-		}
-		if(c0 == null && c1 == null) {
-			try {
-				this.classes.add(new EqualConstantsClass(equality));
-			} catch (ChaseException e) {
+		if (r1 == null || r0 == null) {
+			// Add a new constant to an existing class
+			Term root = r0 != null ? r0 : r1;
+			Term input = r0 != null ? t1 : t0;
+			this.unshare();
+			this.compress(r0 != null ? t0 : t1, root);
+			EqualConstantsClass c = this.own(root);
+			if (!c.add(input, null)) {
 				return false;
 			}
+			if (c.contains(input) && !this.forest.parents.containsKey(input)) {
+				this.forest.parents.put(input, root);
+			}
+			return true;
+		}
+		// Merge two classes, the tree with the lower rank goes under the other
+		this.unshare();
+		this.compress(t0, r0);
+		this.compress(t1, r1);
+		int rank0 = this.forest.ranks.get(r0);
+		int rank1 = this.forest.ranks.get(r1);
+		Term root = rank0 >= rank1 ? r0 : r1;
+		Term child = rank0 >= rank1 ? r1 : r0;
+		EqualConstantsClass c = this.own(root);
+		if (!c.add(child.equals(r1) ? t1 : t0, this.forest.classes.get(child))) {
+			return false;
+		}
+		this.forest.parents.put(child, root);
+		this.forest.classes.remove(child);
+		this.forest.ranks.remove(child);
+		if (rank0 == rank1) {
+			this.forest.ranks.put(root, rank0 + 1);
 		}
 		return true;
 	}
 
+	/**
+	 * Finds the root of the tree of the given constant.
+	 *
+	 * @return the root, or null if the constant does not belong to any class
+	 */
+	private Term find(Term term) {
+		Map<Term, Term> parents = this.forest.parents;
+		Term root = parents.get(term);
+		if (root == null) {
+			return null;
+		}
+		for (Term parent = parents.get(root); !parent.equals(root); parent = parents.get(root)) {
+			root = parent;
+		}
+		return root;
+	}
+
+	/**
+	 * Points the constants on the path from the given constant to its root
+	 * directly to the root. Called by the updates, once the maps are not shared.
+	 */
+	private void compress(Term term, Term root) {
+		while (!term.equals(root)) {
+			term = this.forest.parents.put(term, root);
+		}
+	}
+
+	/**
+	 * Copies the maps if they are shared with a clone. The copied classes are
+	 * shared with the clone as well, so none of them is owned any more.
+	 */
+	private void unshare() {
+		if (this.forest.shared) {
+			this.forest = new Forest(this.forest);
+			this.owned = Collections.newSetFromMap(new IdentityHashMap<>());
+		}
+	}
+
+	/**
+	 * Copies the class with the given root if it is shared with a clone.
+	 *
+	 * @return the class, that can be updated in place
+	 */
+	private EqualConstantsClass own(Term root) {
+		EqualConstantsClass c = this.forest.classes.get(root);
+		if (!this.owned.contains(c)) {
+			c = c.clone();
+			this.owned.add(c);
+			this.forest.classes.put(root, c);
+		}
+		return c;
+	}
+
 	/**
 	 * Size.
 	 *
 	 * @return the int
 	 */
 	public int size() {
-		return this.classes.size();
+		return this.forest.classes.size();
 	}
 
 	/**
@@ -106,12 +242,8 @@ public class EqualConstantsClasses {
 	 * @return the class
 	 */
 	public EqualConstantsClass getClass(Term term) {
-		for(EqualConstantsClass c:this.classes) {
-			if(c.contains(term)) {
-				return c;
-			}
-		}
-		return null;
+		Term root = this.find(term);
+		return root == null ? null : this.forest.classes.get(root);
 	}
 
 	/**
@@ -129,7 +261,7 @@ public class EqualConstantsClasses {
 			return false;
 		}
 		return this.getClass().isInstance(o)
-				&& this.classes.equals(((EqualConstantsClasses) o).classes);
+				&& new HashSet<>(this.forest.classes.values()).equals(new HashSet<>(((EqualConstantsClasses) o).forest.classes.values()));
 	}
 
 	/**
@@ -139,7 +271,7 @@ public class EqualConstantsClasses {
 	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(this.classes);
+		return Objects.hash(new HashSet<>(this.forest.classes.values()));
 	}
 
 	/**
@@ -149,19 +281,22 @@ public class EqualConstantsClasses {
 	 */
 	@Override
 	public String toString() {
-		return Joiner.on("\n").join(this.classes);
+		return Joiner.on("\n").join(this.forest.classes.values());
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * Returns a clone sharing the forest of this instance. The forest is marked
+	 * as shared (only ever from false to true, so concurrent clones agree), the
+	 * fields of this instance are left unchanged, and the clone starts with no
+	 * owned classes.
+	 * 
 	 * @see java.lang.Object#clone()
 	 */
 	@Override
 	public EqualConstantsClasses clone() {
-		Set<EqualConstantsClass> classes = new HashSet<>();
-		for(EqualConstantsClass clas:classes) {
-			this.classes.add(clas.clone());
-		}
-		return new EqualConstantsClasses(classes);
+		Forest forest = this.forest;
+		forest.shared = true;
+		return new EqualConstantsClasses(forest);
 	}
 
 	/**
@@ -172,21 +307,18 @@ public class EqualConstantsClasses {
 	 * 		Two classes of equal constants fail to merge if they contain different schema constants.
 	 */
 	public boolean merge(EqualConstantsClasses classes) {
-		Collection<EqualConstantsClass> classesToAppend = new LinkedHashSet<>();
-		for(EqualConstantsClass cls:this.classes) {
-			for(EqualConstantsClass target:classes.classes) {
-				if(CollectionUtils.containsAny(cls.getConstants(), target.getConstants())) {
-					boolean successfull = cls.merge(target);
-					if(!successfull) {
-						return false;
-					}
-				}
-				else {
-					classesToAppend.add(target);
+		for(EqualConstantsClass target:classes.forest.classes.values()) {
+			Iterator<Term> constants = target.getConstants().iterator();
+			Term first = constants.next();
+			if(!this.union(first, first)) {
+				return false;
+			}
+			while(constants.hasNext()) {
+				if(!this.union(first, constants.next())) {
+					return false;
 				}
 			}
 		}
-		this.classes.addAll(classesToAppend);
 		return true;
 	}
 }
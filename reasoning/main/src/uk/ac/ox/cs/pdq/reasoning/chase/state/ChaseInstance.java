@@ -51,6 +51,20 @@ public interface ChaseInstance extends Instance {
 	 * @return 		the list of matches (both candidates and not candidates) of the input dependencies in this database instance.
 	 */
 	List<Match> getTriggers(Dependency[] dependencies, TriggerProperty t);
+
+	/**
+	 * Semi-naive version of getTriggers. Returns the active triggers of the input
+	 * dependencies that map at least one body atom to a fact of the delta. When all
+	 * active triggers that do not use the delta were already fired, this is the
+	 * same as the set of all active triggers. Implementations that cannot restrict
+	 * the evaluation to the delta may return all active triggers.
+	 *
+	 * @param dependencies the dependencies
+	 * @param t 		The TriggerProperty constraints that should be satisfied, only ACTIVE is supported 
+	 * @param delta 	facts added since the last evaluation of the dependencies, or null to evaluate them on the whole instance.
+	 * @return 		the list of active triggers that use at least one fact of the delta.
+	 */
+	List<Match> getTriggers(Dependency[] dependencies, TriggerProperty t, Collection<Atom> delta);
 	
 	/**
 	 * Checks if is failed.
@@ -88,4 +102,9 @@ public interface ChaseInstance extends Instance {
 	 * @return the new facts generated in the last chase step
 	 */
 	Collection<Atom> getNewFacts();
+
+	/**
+	 * @return the facts deleted in the last chase step
+	 */
+	Collection<Atom> getDeletedFacts();
 }
@@ -49,6 +49,7 @@ import uk.ac.ox.cs.pdq.reasoning.chase.schemaconstantequality.EqualConstantsClas
 import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
 import uk.ac.ox.cs.pdq.reasoningdatabase.LogicalDatabaseInstance;
 import uk.ac.ox.cs.pdq.reasoningdatabase.StateExporter;
+import uk.ac.ox.cs.pdq.reasoningdatabase.StateSnapshotReader;
 import uk.ac.ox.cs.pdq.util.GlobalCounterProvider;
 
 /**
@@ -82,6 +83,10 @@ public class DatabaseChaseInstance implements ChaseInstance {
 	 * Cache of facts created in the last chase step.
 	 */
 	private LinkedHashSet<Atom> newFacts;
+	/**
+	 * Cache of facts deleted in the last chase step.
+	 */
+	private Collection<Atom> deletedFacts;
 
 	/**
 	 * Instantiates a new DatabaseChaseInstance in order to chase a (canonical
@@ -117,7 +122,8 @@ public class DatabaseChaseInstance implements ChaseInstance {
 		this.initDatabase();
 	}
 	/**
-	 * Instantiates a new database list state using a directory that contains facts in csv data files.
+	 * Instantiates a new database list state using a directory that contains facts in csv data files,
+	 * or a binary snapshot written by the StateExporter.
 	 *
 	 * @param connection 
 	 * @param csvFactDirectory
@@ -134,11 +140,14 @@ public class DatabaseChaseInstance implements ChaseInstance {
 			throw new RuntimeException("database failure", e);
 		}
 		Preconditions.checkNotNull(csvFactDirectory);
-		StateExporter se = new StateExporter(this.databaseInstance);
-		se.importFrom(csvFactDirectory, connection.getSchema());
-		
 		this.classes = new EqualConstantsClasses();
+		// the equality relation is added first, a snapshot of a chase with EGDs holds equality facts.
 		this.initDatabase();
+		StateExporter se = new StateExporter(this.databaseInstance);
+		if (StateSnapshotReader.isSnapshot(csvFactDirectory))
+			se.importSnapshot(csvFactDirectory, connection.getSchema());
+		else
+			se.importFrom(csvFactDirectory, connection.getSchema());
 	}
 
 	/**
@@ -159,9 +168,10 @@ public class DatabaseChaseInstance implements ChaseInstance {
 			throw new RuntimeException("database failure", e);
 		}
 		Preconditions.checkNotNull(facts);
-		this.addFacts(facts);
 		this.classes = new EqualConstantsClasses();
+		// the equality relation is added first, the facts can come from a snapshot of a chase with EGDs.
 		this.initDatabase();
+		this.addFacts(facts);
 	}
 
 	/**
@@ -185,6 +195,28 @@ public class DatabaseChaseInstance implements ChaseInstance {
 		}
 	}
 
+	/**
+	 * Instantiates a new DatabaseChaseInstance holding the facts of the given
+	 * instance, in a new instance of its database. The InternalDatabaseManager
+	 * shares the facts of the two instances until one of them is updated, so this
+	 * does not copy the facts.
+	 * 
+	 * @param instance
+	 *            the instance whose facts are copied
+	 * @param classes
+	 *            an EqualConstantsClasses object that keeps multiple classes of
+	 *            equal constants created during EGD chasing.
+	 */
+	protected DatabaseChaseInstance(DatabaseChaseInstance instance, EqualConstantsClasses classes) {
+		Preconditions.checkNotNull(classes);
+		try {
+			databaseInstance = instance.databaseInstance.cloneWithFacts(GlobalCounterProvider.getNext("DatabaseInstanceId"));
+		} catch (DatabaseException e) {
+			throw new RuntimeException("database failure", e);
+		}
+		this.classes = classes;
+	}
+
 	/**
 	 * Instantiates a new DatabaseChaseInstance in order to chase a set of facts.
 	 * This protected constructor does not(!) add the facts into the RDBMS. Using
@@ -283,6 +315,7 @@ public class DatabaseChaseInstance implements ChaseInstance {
 	public boolean TGDchaseStep(Collection<Match> matches) {
 		Preconditions.checkNotNull(matches);
 		newFacts = new LinkedHashSet<>();
+		deletedFacts = new ArrayList<>();
 		for (Match match : matches) {
 			Dependency dependency = (Dependency) match.getFormula();
 			Preconditions.checkArgument(dependency instanceof TGD, "EGDs are not allowed inside TGDchaseStep");
@@ -385,6 +418,7 @@ public class DatabaseChaseInstance implements ChaseInstance {
 
 		obsoleteFacts.removeAll(newFacts); // do not delete what we will add back anyway.
 		deleteFacts(obsoleteFacts);
+		deletedFacts = obsoleteFacts;
 		this.addFacts(newFacts);
 		return !this._isFailed;
 	}
@@ -638,22 +672,7 @@ public class DatabaseChaseInstance implements ChaseInstance {
 		Preconditions.checkNotNull(dependencies);
 		List<Match> results = new ArrayList<>();
 		for (Dependency source : dependencies) {
-			// gather free variables, and map of predicates to terms.
-			Set<Variable> freeVariables = new HashSet<>();
-			for (Atom a : source.getBodyAtoms()) {
-				for (Term t : a.getTerms()) {
-					if (t.isVariable())
-						freeVariables.add((Variable) t);
-				}
-			}
-			ConjunctiveQuery leftQuery = null;
-			List<Pair<Variable,Variable>> inequalities = new ArrayList<>();
-			if (source instanceof EGD) {
-				// filter self pointing equalities
-				for (int i = 0; i < source.getHead().getTerms().length/2; i++)
-					inequalities.add(Pair.of((Variable)source.getHead().getTerms()[2*i],(Variable)source.getHead().getTerms()[2*i+1]));
-			}
-			leftQuery = ConjunctiveQueryWithInequality.create(freeVariables.toArray(new Variable[freeVariables.size()]), source.getBodyAtoms(),inequalities);
+			ConjunctiveQuery leftQuery = createLeftQuery(source);
 			if (triggerProperty == TriggerProperty.ALL) {
 				try {
 					results.addAll(replaceFormulaInMatches(source, databaseInstance.answerConjunctiveQuery(leftQuery)));
@@ -661,15 +680,8 @@ public class DatabaseChaseInstance implements ChaseInstance {
 					throw new RuntimeException("getTriggers error: ", e);
 				}
 			} else if (triggerProperty == TriggerProperty.ACTIVE) {
-				List<Atom> rightQueryAtoms = new ArrayList<>();
-				// right query will contain the same as the left, plus extra conditions
-				rightQueryAtoms.addAll(Arrays.asList(source.getBodyAtoms()));
-				ConjunctiveQuery rightQuery = null;
-				rightQueryAtoms.addAll(Arrays.asList(source.getHeadAtoms()));
-				rightQuery = ConjunctiveQueryWithInequality.create(freeVariables.toArray(new Variable[freeVariables.size()]),
-						rightQueryAtoms.toArray(new Atom[rightQueryAtoms.size()]),inequalities);
 				try {
-					List<Match> queryResults = databaseInstance.answerQueryDifferences(leftQuery, rightQuery);
+					List<Match> queryResults = databaseInstance.answerQueryDifferences(leftQuery, createRightQuery(source, leftQuery));
 					results.addAll(replaceFormulaInMatches(source, queryResults));
 				} catch (DatabaseException e) {
 					e.printStackTrace();
@@ -682,6 +694,93 @@ public class DatabaseChaseInstance implements ChaseInstance {
 		return results;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * uk.ac.ox.cs.pdq.reasoning.chase.state.ChaseInstance#getTriggers(uk.ac.ox.cs.
+	 * pdq.fol.Dependency[], uk.ac.ox.cs.pdq.reasoning.chase.state.TriggerProperty,
+	 * java.util.Collection)
+	 */
+	public List<Match> getTriggers(Dependency[] dependencies, TriggerProperty triggerProperty, Collection<Atom> delta) {
+		Preconditions.checkNotNull(dependencies);
+		Preconditions.checkArgument(triggerProperty == TriggerProperty.ACTIVE, "Semi-naive trigger detection supports active triggers only.");
+		if (delta == null || !(databaseInstance instanceof LogicalDatabaseInstance))
+			return getTriggers(dependencies, triggerProperty);
+		if (delta.isEmpty())
+			return new ArrayList<>();
+		Set<String> deltaPredicates = new HashSet<>();
+		for (Atom fact : delta)
+			deltaPredicates.add(fact.getPredicate().getName());
+		try {
+			LogicalDatabaseInstance instance = (LogicalDatabaseInstance) databaseInstance;
+			int deltaID = instance.addDeltaFacts(delta);
+			try {
+				// a match is new only if at least one body atom is mapped to a delta fact,
+				// so the union over the body atoms of the delta joins gives every new match.
+				Set<Match> results = new LinkedHashSet<>();
+				for (Dependency source : dependencies) {
+					ConjunctiveQuery leftQuery = createLeftQuery(source);
+					ConjunctiveQuery rightQuery = createRightQuery(source, leftQuery);
+					for (Atom bodyAtom : source.getBodyAtoms()) {
+						if (!deltaPredicates.contains(bodyAtom.getPredicate().getName()))
+							continue;
+						List<Match> queryResults = instance.answerQueryDifferences(leftQuery, rightQuery, bodyAtom, deltaID);
+						results.addAll(replaceFormulaInMatches(source, queryResults));
+					}
+				}
+				return new ArrayList<>(results);
+			} finally {
+				instance.removeDeltaFacts(deltaID);
+			}
+		} catch (DatabaseException e) {
+			throw new RuntimeException("getTriggers error: ", e);
+		}
+	}
+
+	/**
+	 * Creates the query that finds the matches of the body of the dependency. In
+	 * case of EGDs the self pointing equalities are filtered out by inequalities.
+	 * 
+	 * @param source
+	 * @return
+	 */
+	private ConjunctiveQuery createLeftQuery(Dependency source) {
+		// gather free variables, and map of predicates to terms.
+		Set<Variable> freeVariables = new HashSet<>();
+		for (Atom a : source.getBodyAtoms()) {
+			for (Term t : a.getTerms()) {
+				if (t.isVariable())
+					freeVariables.add((Variable) t);
+			}
+		}
+		List<Pair<Variable,Variable>> inequalities = new ArrayList<>();
+		if (source instanceof EGD) {
+			// filter self pointing equalities
+			for (int i = 0; i < source.getHead().getTerms().length/2; i++)
+				inequalities.add(Pair.of((Variable)source.getHead().getTerms()[2*i],(Variable)source.getHead().getTerms()[2*i+1]));
+		}
+		return ConjunctiveQueryWithInequality.create(freeVariables.toArray(new Variable[freeVariables.size()]), source.getBodyAtoms(),inequalities);
+	}
+
+	/**
+	 * Creates the query that finds the matches of the body that are already
+	 * satisfied by the head of the dependency.
+	 * 
+	 * @param source
+	 * @param leftQuery
+	 *            the body query created by createLeftQuery
+	 * @return
+	 */
+	private ConjunctiveQuery createRightQuery(Dependency source, ConjunctiveQuery leftQuery) {
+		List<Atom> rightQueryAtoms = new ArrayList<>();
+		// right query will contain the same as the left, plus extra conditions
+		rightQueryAtoms.addAll(Arrays.asList(source.getBodyAtoms()));
+		rightQueryAtoms.addAll(Arrays.asList(source.getHeadAtoms()));
+		return ConjunctiveQueryWithInequality.create(leftQuery.getFreeVariables(),
+				rightQueryAtoms.toArray(new Atom[rightQueryAtoms.size()]),((ConjunctiveQueryWithInequality) leftQuery).getInequalities());
+	}
+
 	/**
 	 * Updates the formula from a CQ to a dependency
 	 * 
@@ -697,6 +796,11 @@ public class DatabaseChaseInstance implements ChaseInstance {
 		return results;
 	}
 
+	@Override
+	public Collection<Atom> getDeletedFacts() {
+		return deletedFacts;
+	}
+
 	@Override
 	public int hashCode() {
 		if (this.hash == null)
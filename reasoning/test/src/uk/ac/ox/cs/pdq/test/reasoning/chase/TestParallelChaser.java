@@ -568,6 +568,28 @@ public class TestParallelChaser extends PdqTest {
 		return null;
 	}
 
+	/**
+	 * Same as test_reasonUntilTermination1, testA and testB but with the
+	 * semi-naive chaser, the results have to be the same.
+	 */
+	@Test
+	public void testSemiNaive_reasonUntilTermination1() {
+		this.chaser = new AlternatingEgdTgdChase(true);
+		test_reasonUntilTermination1();
+	}
+
+	@Test
+	public void testSemiNaiveA() {
+		this.chaser = new AlternatingEgdTgdChase(true);
+		testA();
+	}
+
+	@Test
+	public void testSemiNaiveB() {
+		this.chaser = new AlternatingEgdTgdChase(true);
+		testB();
+	}
+
 	/**
 	 * Shuting this test down.
 	 * 
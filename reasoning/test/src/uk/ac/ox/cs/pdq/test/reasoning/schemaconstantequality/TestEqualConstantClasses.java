@@ -3,6 +3,12 @@
 
 package uk.ac.ox.cs.pdq.test.reasoning.schemaconstantequality;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -115,4 +121,107 @@ public class TestEqualConstantClasses extends PdqTest {
 		Assert.assertEquals(true, !_isFailed);		
 	}
 	
+	/**
+	 * Tests that a clone and the original classes can be updated independently of each other.
+	 */
+	@Test 
+	public void test_clone() {
+		Atom eq1 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c1"), UntypedConstant.create("c2"));
+		Atom eq2 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c2"), UntypedConstant.create("c3"));
+		Atom eq3 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c4"), TypedConstant.create(new String("John")));
+		Assert.assertTrue(this.classes.add(eq1));
+		
+		EqualConstantsClasses clone = this.classes.clone();
+		Assert.assertEquals(this.classes, clone);
+		Assert.assertTrue(clone.add(eq2));
+		Assert.assertTrue(this.classes.add(eq3));
+		
+		Assert.assertEquals(2, this.classes.size());
+		Assert.assertEquals(2, this.classes.getClass(UntypedConstant.create("c1")).getConstants().size());
+		Assert.assertNull(this.classes.getClass(UntypedConstant.create("c3")));
+		Assert.assertEquals(1, clone.size());
+		Assert.assertEquals(3, clone.getClass(UntypedConstant.create("c1")).getConstants().size());
+		Assert.assertNull(clone.getClass(UntypedConstant.create("c4")));
+	}
+	
+	/**
+	 * Tests merging classes of equal constants. Asserts that the classes sharing a constant are merged, and that
+	 * merging classes with different schema constants fails.
+	 */
+	@Test 
+	public void test_merge() {
+		Atom eq1 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c1"), UntypedConstant.create("c2"));
+		Atom eq2 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c3"), UntypedConstant.create("c4"));
+		Atom eq3 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c2"), TypedConstant.create(new String("John")));
+		Atom eq4 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c3"), UntypedConstant.create("c5"));
+		Atom eq5 = Atom.create(Predicate.create(QNames.EQUALITY.toString(), 2, true),UntypedConstant.create("c1"), TypedConstant.create(new String("Michael")));
+		Assert.assertTrue(this.classes.add(eq1));
+		Assert.assertTrue(this.classes.add(eq2));
+		
+		EqualConstantsClasses other = new EqualConstantsClasses();
+		Assert.assertTrue(other.add(eq3));
+		Assert.assertTrue(other.add(eq4));
+		EqualConstantsClasses merged = this.classes.clone();
+		Assert.assertTrue(merged.merge(other));
+		Assert.assertEquals(2, merged.size());
+		Assert.assertEquals(TypedConstant.create(new String("John")), merged.getClass(UntypedConstant.create("c1")).getRepresentative());
+		Assert.assertEquals(3, merged.getClass(UntypedConstant.create("c5")).getConstants().size());
+		Assert.assertEquals(2, this.classes.size());
+		Assert.assertNull(this.classes.getClass(UntypedConstant.create("c5")));
+		
+		EqualConstantsClasses conflicting = new EqualConstantsClasses();
+		Assert.assertTrue(conflicting.add(eq5));
+		Assert.assertFalse(merged.merge(conflicting));
+	}
+	
+	/**
+	 * Clones and reads the same classes from several threads, and updates the clones. Asserts that the clones
+	 * have the updates of their own thread only, and that the original classes do not change.
+	 */
+	@Test 
+	public void test_concurrentClone() throws Exception {
+		Predicate equality = Predicate.create(QNames.EQUALITY.toString(), 2, true);
+		// the pairs are added first and merged afterwards, so that the trees are higher than one level
+		for (int start = 0; start < 2; start++) {
+			for (int i = start; i < 100; i += 2) {
+				Assert.assertTrue(this.classes.add(Atom.create(equality, UntypedConstant.create("c" + i), UntypedConstant.create("c" + (i + 1)))));
+				Assert.assertTrue(this.classes.add(Atom.create(equality, UntypedConstant.create("d" + i), UntypedConstant.create("d" + (i + 1)))));
+			}
+		}
+		final int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						boolean correct = true;
+						for (int i = 0; i < 200; i++) {
+							EqualConstantsClasses clone = TestEqualConstantClasses.this.classes.clone();
+							correct &= clone.add(Atom.create(equality, UntypedConstant.create("c" + i % 100), UntypedConstant.create("e" + thread)));
+							correct &= clone.add(Atom.create(equality, UntypedConstant.create("c" + (i + 7) % 100), UntypedConstant.create("d" + i % 100)));
+							correct &= clone.size() == 1;
+							correct &= clone.getClass(UntypedConstant.create("e" + thread)).getConstants().size() == 203;
+							for (int other = 0; other < threads; other++) {
+								correct &= other == thread || clone.getClass(UntypedConstant.create("e" + other)) == null;
+							}
+							correct &= TestEqualConstantClasses.this.classes.getClass(UntypedConstant.create("c" + i % 100)).getConstants().size() == 101;
+						}
+						return correct;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				Assert.assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(2, this.classes.size());
+		Assert.assertEquals(101, this.classes.getClass(UntypedConstant.create("c0")).getConstants().size());
+		Assert.assertEquals(101, this.classes.getClass(UntypedConstant.create("d0")).getConstants().size());
+		Assert.assertNull(this.classes.getClass(UntypedConstant.create("e0")));
+	}
 }
@@ -0,0 +1,96 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.regression.junit.chasebench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.fol.Term;
+import uk.ac.ox.cs.pdq.fol.UntypedConstant;
+import uk.ac.ox.cs.pdq.io.CommonToPDQTranslator;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.reasoning.chase.ParallelChaser;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.DatabaseChaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.FactCache;
+
+/**
+ * Measures the fact storage of the internal database on the "tgdsEgdsLarge"
+ * test case from the chasebench project. The chased instance is replicated
+ * SCALE times (with renamed constants) to reach chase-sized fact caches.
+ *
+ * <pre>
+ * Test results (on a laptop, SCALE = 200, 99800 facts):
+ *   - ArrayList based FactCache:   addFacts 2520 ms, containsFact 931 ms, removeFacts 298 ms, chase 501 ms.
+ *   - hash set based FactCache:    addFacts  375 ms, containsFact 120 ms, removeFacts 110 ms, chase 548 ms.
+ * The chase itself is too small to show a difference, its run time is dominated by the joins.
+ * </pre>
+ *
+ * @author Gabor
+ *
+ */
+public class FactCacheBenchmark {
+	private static final File TEST_FOLDER = new File("test" + File.separator + "chaseBench" + File.separator + "tgdsEgdsLarge");
+	private static final int SCALE = 200;
+	private static final int CHASE_REPEAT = 10;
+
+	@Test
+	public void benchmarkTgdsEgdsLarge() throws Exception {
+		Schema schema = IOManager.importSchema(new File(TEST_FOLDER, "schema.xml"));
+		String data = new File(new File(TEST_FOLDER, "data"), "s.csv").getPath();
+
+		// chase
+		Collection<Atom> chased = null;
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < CHASE_REPEAT; i++) {
+			DatabaseManager dbm = new InternalDatabaseManager();
+			dbm.initialiseDatabaseForSchema(schema);
+			DatabaseChaseInstance state = new DatabaseChaseInstance(CommonToPDQTranslator.importFacts(schema, "s", data), dbm);
+			new ParallelChaser().reasonUntilTermination(state, schema.getAllDependencies());
+			chased = state.getFacts();
+			state.close();
+		}
+		long chaseDuration = (System.currentTimeMillis() - start) / CHASE_REPEAT;
+
+		// replicate the chased facts
+		List<Atom> facts = new ArrayList<>();
+		for (int copy = 0; copy < SCALE; copy++) {
+			for (Atom a : chased) {
+				Term[] terms = new Term[a.getNumberOfTerms()];
+				for (int t = 0; t < terms.length; t++)
+					terms[t] = UntypedConstant.create(a.getTerm(t) + "_" + copy);
+				facts.add(Atom.create(a.getPredicate(), terms));
+			}
+		}
+
+		FactCache cache = new FactCache(0);
+		start = System.currentTimeMillis();
+		for (Atom a : facts)
+			cache.addFacts(Collections.singleton(a));
+		long addDuration = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (Atom a : facts)
+			Assert.assertTrue(cache.containsFact(a));
+		long containsDuration = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (Atom a : facts)
+			cache.removeFacts(Collections.singleton(a));
+		long removeDuration = System.currentTimeMillis() - start;
+		Assert.assertTrue(cache.getFacts().isEmpty());
+
+		System.out.println("tgdsEgdsLarge x" + SCALE + " (" + facts.size() + " facts): addFacts " + addDuration + " ms, containsFact " + containsDuration + " ms, removeFacts "
+				+ removeDuration + " ms, chase " + chaseDuration + " ms.");
+	}
+}
@@ -0,0 +1,106 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.regression.junit.chasebench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.db.Schema;
+import uk.ac.ox.cs.pdq.fol.Atom;
+import uk.ac.ox.cs.pdq.io.CommonToPDQTranslator;
+import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
+import uk.ac.ox.cs.pdq.reasoning.chase.AlternatingEgdTgdChase;
+import uk.ac.ox.cs.pdq.reasoning.chase.Chaser;
+import uk.ac.ox.cs.pdq.reasoning.chase.ParallelChaser;
+import uk.ac.ox.cs.pdq.reasoning.chase.state.DatabaseChaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.DatabaseParameters;
+import uk.ac.ox.cs.pdq.reasoningdatabase.ExternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.InternalDatabaseManager;
+import uk.ac.ox.cs.pdq.reasoningdatabase.LogicalDatabaseInstance;
+import uk.ac.ox.cs.pdq.reasoningdatabase.cache.MultiInstanceFactCache;
+
+/**
+ * Compares the semi-naive chasers with the naive ones on the chaseBench test
+ * cases. Both have to produce the same number of facts in each relation.
+ *
+ * @author Gabor
+ */
+public class TestSemiNaiveChase {
+	private static final File CHASE_BENCH = new File("test" + File.separator + "chaseBench");
+	private static final String[] CASES = new String[] { "tgds", "tgds5", "tgdsEgds", "tgdsEgdsLarge", "vldb2010", "weak" };
+
+	@Test
+	public void testParallelChaserInternal() throws Exception {
+		for (String testCase : CASES) {
+			compare(testCase, new ParallelChaser(false), new ParallelChaser(true), false);
+		}
+	}
+
+	@Test
+	public void testAlternatingEgdTgdChaseInternal() throws Exception {
+		for (String testCase : CASES) {
+			compare(testCase, new AlternatingEgdTgdChase(false), new AlternatingEgdTgdChase(true), false);
+		}
+	}
+
+	/**
+	 * Same as testParallelChaserInternal, but uses the default external database.
+	 */
+	@Test
+	public void testParallelChaserPostgres() throws Exception {
+		for (String testCase : CASES) {
+			compare(testCase, new ParallelChaser(false), new ParallelChaser(true), true);
+		}
+	}
+
+	private void compare(String testCase, Chaser naive, Chaser semiNaive, boolean external) throws Exception {
+		File folder = new File(CHASE_BENCH, testCase);
+		Schema schema = IOManager.importSchema(new File(folder, "schema.xml"));
+		long start = System.currentTimeMillis();
+		Map<String, Integer> expected = chase(schema, folder, naive, external);
+		long naiveDuration = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		Map<String, Integer> actual = chase(schema, folder, semiNaive, external);
+		long semiNaiveDuration = System.currentTimeMillis() - start;
+		System.out.println(testCase + " " + naive.getClass().getSimpleName() + ": naive " + naiveDuration + " ms, semi-naive " + semiNaiveDuration + " ms.");
+		Assert.assertEquals(testCase, expected, actual);
+	}
+
+	/**
+	 * Chases the data of the test case, returns the number of facts per relation
+	 * (or null if the chase failed).
+	 */
+	private Map<String, Integer> chase(Schema schema, File folder, Chaser chaser, boolean external) throws Exception {
+		Collection<Atom> facts = new ArrayList<>();
+		for (File csv : new File(folder, "data").listFiles()) {
+			String relation = csv.getName().substring(0, csv.getName().length() - ".csv".length());
+			facts.addAll(CommonToPDQTranslator.importFacts(schema, relation, csv.getPath()));
+		}
+		DatabaseManager dm;
+		if (external)
+			dm = new LogicalDatabaseInstance(new MultiInstanceFactCache(), new ExternalDatabaseManager(DatabaseParameters.Postgres), 1);
+		else
+			dm = new InternalDatabaseManager();
+		dm.initialiseDatabaseForSchema(schema);
+		DatabaseChaseInstance state = new DatabaseChaseInstance(facts, dm);
+		chaser.reasonUntilTermination(state, schema.getAllDependencies());
+		Map<String, Integer> counts = null;
+		if (!state.isFailed()) {
+			counts = new HashMap<>();
+			for (Atom a : state.getFacts()) {
+				String name = a.getPredicate().getName();
+				counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+			}
+		}
+		state.close();
+		return counts;
+	}
+}
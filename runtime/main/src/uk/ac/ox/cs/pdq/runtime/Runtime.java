@@ -4,8 +4,6 @@
 package uk.ac.ox.cs.pdq.runtime;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -25,6 +23,8 @@ import uk.ac.ox.cs.pdq.db.tuple.Tuple;
 import uk.ac.ox.cs.pdq.io.jaxb.IOManager;
 import uk.ac.ox.cs.pdq.runtime.exec.PlanDecorator;
 import uk.ac.ox.cs.pdq.runtime.exec.spliterator.ExecutablePlan;
+import uk.ac.ox.cs.pdq.runtime.sink.CsvTupleSink;
+import uk.ac.ox.cs.pdq.runtime.sink.TupleSink;
 
 /**
  *  Decorates a plan, and executes queries or the plan itself.
@@ -71,6 +71,10 @@ public class Runtime {
 			description ="Path to the output csv file.")
 	private File output;
 	
+	@Parameter(names = { "-l", "--limit" }, required = false,
+			description ="Maximum number of tuples written to the output csv file.")
+	private long limit = Long.MAX_VALUE;
+	
 	@DynamicParameter(names = "-D", description = "Dynamic parameters. Override values defined in the configuration files.")
 	protected Map<String, String> dynamicParams = new LinkedHashMap<>();
 
@@ -124,10 +128,13 @@ public class Runtime {
 
 		plan = CostIOManager.readRelationalTermFromRelationaltermWithCost(planFile, schema);
 		long start = System.currentTimeMillis();
-		this.results = this.evaluatePlan(plan);
 		if (output!=null) {
-			writeOutput();
+			// the tuples are written as they are produced, without collecting them.
+			CsvTupleSink sink = new CsvTupleSink(output);
+			if (verbose) sink.setEcho(System.out);
+			this.tupleCount = this.evaluatePlan(plan, sink, limit);
 		} else {
+			this.results = this.evaluatePlan(plan);
 			ResetableIterator<Tuple> it = getResults().iterator();
 			this.tupleCount = 0;
 			// print output
@@ -141,53 +148,6 @@ public class Runtime {
 		System.out.println("Finished, " + getTupleCount() + " amount of tuples found in " + (System.currentTimeMillis() - start)/1000.0 + " sec.");
 	}
 
-	private void writeOutput() throws IOException {
-		File target = output;
-		if (output.isDirectory())
-			target = new File(output, "results.csv");
-		this.tupleCount = 0;
-		try (FileWriter fw = new FileWriter(target,true)) {
-			// Header
-			StringBuilder builder = null;
-			for (uk.ac.ox.cs.pdq.db.Attribute attribute : results.getHeader()) {
-				if (builder == null) {
-					builder = new StringBuilder();
-				} else {
-					builder.append(",");
-				}
-				builder.append(attribute.getName());
-			}
-			builder.append("\r\n");
-			fw.write(builder.toString());
-			if (verbose) System.out.println(builder.toString());
-			
-			//Data
-			ResetableIterator<Tuple> it = results.iterator();
-			while(it.hasNext()) {
-				this.tupleCount++;
-				Tuple t = it.next();
-				if (verbose) System.out.println(t);
-				builder = null;
-				int attributeCounter = 0;
-				for (Object value : t.getValues()) {
-					if (builder == null) {
-						builder = new StringBuilder();
-					} else {
-						builder.append(",");
-					}
-					if (results.getHeader()[attributeCounter].getType().equals(String.class))
-						builder.append(value.toString().replaceAll(",", "/c"));
-					else 
-						builder.append(value);
-					attributeCounter++;
-				}
-				builder.append("\r\n");
-				fw.write(builder.toString());
-			}
-			fw.close();
-		}
-	}
-
 	/**
 	 * Evaluates the given plan and returns its result.
 	 *
@@ -204,7 +164,7 @@ public class Runtime {
 		if (repo == null)
 				repo = AccessRepository.getRepository();
 		try {
-			ExecutablePlan executable = new PlanDecorator(repo,schema).decorate(p);
+			ExecutablePlan executable = this.createDecorator(repo).decorate(p);
 			System.out.println("Executing plan " + p.hashCode());
 			Table res = executable.execute();
 			System.out.println("plan " + p.hashCode() + " finished.");
@@ -215,6 +175,40 @@ public class Runtime {
 		}
 	}
 	
+	/**
+	 * Evaluates the given plan, passing its result tuples to the sink as they are
+	 * produced.
+	 *
+	 * @param p
+	 *            Plan
+	 * @param sink
+	 *            receives the tuples.
+	 * @param limit
+	 *            maximum number of tuples passed to the sink.
+	 * @return the number of tuples passed to the sink.
+	 */
+	public long evaluatePlan(RelationalTerm p, TupleSink sink, long limit) throws Exception {
+		return this.evaluatePlan(this.decoratePlan(p), sink, limit);
+	}
+
+	/**
+	 * Executes a plan, passing its result tuples to the sink as they are
+	 * produced.
+	 *
+	 * @see ExecutablePlan#execute(TupleSink, long)
+	 */
+	public long evaluatePlan(ExecutablePlan p, TupleSink sink, long limit) throws Exception {
+		try {
+			System.out.println("Executing plan " + p.hashCode());
+			long count = p.execute(sink, limit);
+			System.out.println("plan " + p.hashCode() + " finished.");
+			return count;
+		}catch(Throwable t) {
+			t.printStackTrace();
+			throw t;
+		}
+	}
+
 	/** This will throw exception if we don't have every executable access method that is necessary to execute this plan.
 	 * @param p
 	 * @return
@@ -224,7 +218,7 @@ public class Runtime {
 		AccessRepository repo = this.repository;
 		if (repo == null)
 				repo = AccessRepository.getRepository();
-		ExecutablePlan executable = new PlanDecorator(repo,schema).decorate(p);
+		ExecutablePlan executable = this.createDecorator(repo).decorate(p);
 		return executable;
 	}
 	
@@ -245,6 +239,15 @@ public class Runtime {
 		}
 	}
 
+	// Creates the decorator of the plans, in parallel mode and with concurrent accesses if the parameters ask for it.
+	private PlanDecorator createDecorator(AccessRepository repo) {
+		PlanDecorator decorator = new PlanDecorator(repo,schema);
+		decorator.setParallel(this.params != null && Boolean.TRUE.equals(this.params.getParallelExecution()));
+		if (this.params != null && this.params.getConcurrentAccesses() != null)
+			decorator.setConcurrentAccesses(this.params.getConcurrentAccesses());
+		return decorator;
+	}
+
 	public RuntimeParameters getParams() {
 		return params;
 	}
@@ -295,6 +298,9 @@ public class Runtime {
 		return tupleCount;
 	}
 
+	/**
+	 * @return the results of the plan, null when they were streamed to the output.
+	 */
 	public Table getResults() {
 		return results;
 	}
@@ -307,4 +313,12 @@ public class Runtime {
 		this.output = output;
 	}
 
+	public long getLimit() {
+		return limit;
+	}
+
+	public void setLimit(long limit) {
+		this.limit = limit;
+	}
+
 }
@@ -41,6 +41,14 @@ public class RuntimeParameters extends uk.ac.ox.cs.pdq.Parameters {
 	private String accessDirectory;
 	@Parameter(description="Semicolon (;) separated list of of fully qualified class names of custom made ExecutableAccessMethods")
 	private String customAccessMethods;
+	@Parameter(description="If true, the accesses, joins and products of the plans are executed in parallel, "
+			+ "using all available cores. The executable access methods must support concurrent accesses.",
+			defaultValue = "false")
+	private Boolean parallelExecution = false;
+	@Parameter(description="Maximum number of requests an access keeps in flight at the same time, "
+			+ "e.g. the requests of the right side of a dependent join to a web service.",
+			defaultValue = "1")
+	private Integer concurrentAccesses = 1;
 	/**
 	 * Gets the version.
 	 *
@@ -203,4 +211,39 @@ public class RuntimeParameters extends uk.ac.ox.cs.pdq.Parameters {
 		this.customAccessMethods = customAccessMethods;
 	}
 
+	/**
+	 * @return true if plans are executed in parallel
+	 */
+	public Boolean getParallelExecution() {
+		return this.parallelExecution;
+	}
+
+	/**
+	 * @param parallelExecution Boolean
+	 */
+	public void setParallelExecution(Boolean parallelExecution) {
+		this.parallelExecution = parallelExecution;
+	}
+
+	/**
+	 * @return the maximum number of requests an access keeps in flight
+	 */
+	public Integer getConcurrentAccesses() {
+		return this.concurrentAccesses;
+	}
+
+	/**
+	 * @param concurrentAccesses Integer
+	 */
+	public void setConcurrentAccesses(Integer concurrentAccesses) {
+		this.concurrentAccesses = concurrentAccesses;
+	}
+
+	/**
+	 * @param concurrentAccesses Number
+	 */
+	public void setConcurrentAccesses(Number concurrentAccesses) {
+		this.concurrentAccesses = concurrentAccesses != null ? concurrentAccesses.intValue() : null;
+	}
+
 }
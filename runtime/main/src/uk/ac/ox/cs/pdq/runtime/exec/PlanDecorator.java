@@ -43,6 +43,15 @@ public class PlanDecorator {
 	 * Every executable access needs to be "updated" with the corresponding schema relation.
 	 */
 	private Schema schema;
+	/**
+	 * When true the executable plans created by this decorator stream their
+	 * results in parallel.
+	 */
+	private boolean parallel = false;
+	/**
+	 * Maximum number of requests an access keeps in flight at the same time.
+	 */
+	private int concurrentAccesses = 1;
 
 	/**
 	 * Currently the only extra information needed for the decoration is the
@@ -140,4 +149,39 @@ public class PlanDecorator {
 	public AccessRepository getAccessRepository() {
 		return repository;
 	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Switches between sequential and parallel execution of the plans decorated
+	 * by this decorator. In parallel mode the accesses, joins and products split
+	 * their work so that it can be spread over the common fork join pool, which
+	 * requires the executable access methods to support concurrent accesses.
+	 * 
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public int getConcurrentAccesses() {
+		return concurrentAccesses;
+	}
+
+	/**
+	 * Sets the number of requests an access keeps in flight at the same time
+	 * (ExecutableAccessMethod.accessAsync). With more than one request, the
+	 * right child of a dependent join sends the requests for the next input
+	 * tuples of its batch while waiting for the responses of the previous ones.
+	 * This pays off for access methods over remote sources, such as the
+	 * RESTAccessMethod, which apply their usage policies to every request.
+	 * 
+	 * @param concurrentAccesses
+	 */
+	public void setConcurrentAccesses(int concurrentAccesses) {
+		Preconditions.checkArgument(concurrentAccesses > 0);
+		this.concurrentAccesses = concurrentAccesses;
+	}
 }
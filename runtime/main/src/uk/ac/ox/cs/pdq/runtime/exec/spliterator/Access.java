@@ -9,8 +9,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import uk.ac.ox.cs.pdq.algebra.AccessTerm;
 import uk.ac.ox.cs.pdq.algebra.Plan;
@@ -37,6 +39,9 @@ public class Access extends UnaryExecutablePlan {
 	// Dynamic input.
 	protected Iterator<Tuple> inputTuples;
 
+	// Number of input tuples per access when accessing in parallel.
+	private int batchSize = 100;
+
 	public Access(Plan plan, PlanDecorator decorator) {
 		super(plan,decorator);
 		// Check compatibility with the given Plan instance.
@@ -70,12 +75,43 @@ public class Access extends UnaryExecutablePlan {
 		if (accessTerm.getInputAttributes().length != 0) {
 			Preconditions.checkState(this.inputTuples != null && this.inputTuples.hasNext(), 
 					"Missing dynamic input accessing relation: " + ((AccessTerm) this.getDecoratedAccess()).getRelation().getName());
-			underlying = aam.access(this.combineInputs()).spliterator();
+			if (this.isParallel())
+				underlying = this.batchedAccess(aam, this.combineInputs());
+			else if (this.getConcurrentAccesses() > 1)
+				underlying = aam.accessAsync(this.combineInputs(), this.getConcurrentAccesses()).spliterator();
+			else
+				underlying = aam.access(this.combineInputs()).spliterator();
 		}
 		
 		return new AccessSpliterator(underlying);
 	}
 
+	/*
+	 * Splits the input tuples into batches and accesses each batch separately, so 
+	 * that the accesses can run in parallel. 
+	 */
+	private Spliterator<Tuple> batchedAccess(ExecutableAccessMethod aam, Iterator<Tuple> inputs) {
+		List<Tuple> inputList = new ArrayList<Tuple>();
+		inputs.forEachRemaining(inputList::add);
+		return Lists.partition(inputList, this.batchSize).parallelStream()
+				.flatMap(batch -> StreamSupport.stream(aam.access(batch.iterator()).spliterator(), false))
+				.spliterator();
+	}
+
+	// Number of requests kept in flight, see PlanDecorator.setConcurrentAccesses
+	private int getConcurrentAccesses() {
+		return this.getDecorator() == null ? 1 : this.getDecorator().getConcurrentAccesses();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		Preconditions.checkArgument(batchSize > 0);
+		this.batchSize = batchSize;
+	}
+
 	@Override
 	public void setInputTuples(Iterator<Tuple> inputTuples) {
 		this.inputTuples = inputTuples;
@@ -156,6 +192,11 @@ public class Access extends UnaryExecutablePlan {
 			super(childSpliterator);
 		}
 
+		@Override
+		protected Spliterator<Tuple> wrap(Spliterator<Tuple> childSpliterator) {
+			return new AccessSpliterator(childSpliterator);
+		}
+
 		@Override
 		public boolean tryAdvance(Consumer<? super Tuple> action) {
 			return childSpliterator.tryAdvance(action);
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -45,9 +46,23 @@ public class CartesianProduct extends BinaryExecutablePlan {
 	public Spliterator<Tuple> spliterator() {
 		
 		this.clearCache();
+		if (this.isParallel())
+			return this.parallelSpliterator();
 		return new CartesianProductSpliterator(this.leftChild.spliterator(), 
 				this.rightChild.spliterator());
 	}
+
+	/*
+	 * In parallel mode the right child is materialised first, then the left 
+	 * child is streamed in parallel, each left tuple being combined with all of
+	 * the right tuples. 
+	 */
+	private Spliterator<Tuple> parallelSpliterator() {
+		List<Tuple> rightTuples = this.rightChild.stream().collect(Collectors.toList());
+		return this.leftChild.stream()
+				.flatMap(leftTuple -> rightTuples.stream().map(tuple -> leftTuple.appendTuple(tuple)))
+				.spliterator();
+	}
 	
 	@Override
 	public void close() {
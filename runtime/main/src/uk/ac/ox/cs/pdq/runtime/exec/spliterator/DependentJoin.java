@@ -5,6 +5,7 @@ package uk.ac.ox.cs.pdq.runtime.exec.spliterator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -14,8 +15,11 @@ import java.util.Spliterators;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import com.google.common.collect.Lists;
+
 import jersey.repackaged.com.google.common.base.Preconditions;
 import uk.ac.ox.cs.pdq.algebra.DependentJoinTerm;
 import uk.ac.ox.cs.pdq.algebra.Plan;
@@ -42,7 +46,9 @@ public class DependentJoin extends BinaryExecutablePlan {
 	private boolean useAccessedRightTuplesCache = false;
 	private boolean useMatchingRightTuplesCache = false;
 
-	// Fields for batching inputs to the right child.
+	// Fields for batching inputs to the right child. With concurrent accesses 
+	// (PlanDecorator.setConcurrentAccesses) the right child keeps several requests 
+	// for the tuples of a batch in flight.
 	private int batchSize = 100;
 
 	private ArrayList<Tuple> leftTuplesBatch; // Concrete type used to ensure fail-fast iterators.
@@ -79,6 +85,9 @@ public class DependentJoin extends BinaryExecutablePlan {
 	public Spliterator<Tuple> spliterator() {
 
 		this.clearCache();
+		if (this.isParallel() && this.unboundRightInputs.size() == 0 
+				&& !(this.getDecoratedPlan().getChildren()[1] instanceof ExecutablePlan))
+			return this.parallelSpliterator();
 		Spliterator<Tuple> leftChildSpliterator = this.leftChild.spliterator();
 
 		// Initialise the batch of tuples from the left child. 
@@ -97,6 +106,37 @@ public class DependentJoin extends BinaryExecutablePlan {
 				this.rightChild.spliterator());
 	}
 
+	/*
+	 * In parallel mode the tuples of the left child are split into batches, and 
+	 * the batches are joined in parallel. Each batch accesses its own copy of the
+	 * right child, decorated from the logical plan, since the right child plan 
+	 * holds the state of the access. (When the right child is already decorated
+	 * or takes external input the join stays sequential.)
+	 */
+	private Spliterator<Tuple> parallelSpliterator() {
+		List<Tuple> leftTuples = this.leftChild.stream().collect(Collectors.toList());
+		return Lists.partition(leftTuples, this.batchSize).parallelStream()
+				.flatMap(this::joinBatch)
+				.spliterator();
+	}
+
+	// Joins a batch of left tuples with the matching tuples of the right child.
+	private Stream<Tuple> joinBatch(List<Tuple> batch) {
+		ExecutablePlan right;
+		try {
+			right = this.getDecorator().decorate(this.getDecoratedPlan().getChildren()[1]);
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to decorate the right child of " + this, e);
+		}
+		right.setInputTuples(batch.stream().map(this.leftProjector).distinct().iterator());
+		Map<Tuple, List<Tuple>> rightTuples = right.stream().collect(Collectors.groupingBy(this.rightProjector));
+		right.close();
+		return batch.stream()
+				.flatMap(leftTuple -> rightTuples.getOrDefault(this.leftProjector.apply(leftTuple), Collections.emptyList())
+						.stream().map(tuple -> leftTuple.appendTuple(tuple)))
+				.filter(tuple -> this.getJoinCondition().isSatisfied(tuple));
+	}
+
 	// Assigns the leftTuple and projectedLeftTuple fields. 
 	private void assignLeftTuple() {
 		Preconditions.checkState(this.batchIterator.hasNext());
@@ -147,15 +187,16 @@ public class DependentJoin extends BinaryExecutablePlan {
 	}
 
 	// Updates the cache of matching tuples from the right child from the cache
-	// of accessed tuples.
+	// of accessed tuples. The accessed tuples of a batch match any of its left 
+	// tuples, in any order, so all of them are scanned.
 	private void updateMatchingRightTuplesCache() {
 
 		for (Tuple tuple:this.accessedRightTuplesCache) {
 			Tuple key = this.rightProjector.apply(tuple);
 
 			// Only update the cache if the projected left tuple matches the key.
-			if (!this.leftProjector.apply(this.leftTuple).equals(key)) {
-				return;
+			if (!this.projectedLeftTuple.equals(key)) {
+				continue;
 			}
 
 			if (this.matchingRightTuplesCache.containsKey(key))
@@ -6,8 +6,10 @@ package uk.ac.ox.cs.pdq.runtime.exec.spliterator;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -19,6 +21,7 @@ import uk.ac.ox.cs.pdq.db.Attribute;
 import uk.ac.ox.cs.pdq.db.tuple.Tuple;
 import uk.ac.ox.cs.pdq.db.tuple.TupleType;
 import uk.ac.ox.cs.pdq.runtime.exec.PlanDecorator;
+import uk.ac.ox.cs.pdq.runtime.sink.TupleSink;
 
 /**
  * An executable query plan. A logical plan is decorated to make it executable. 
@@ -48,7 +51,14 @@ public abstract class ExecutablePlan implements Plan, AutoCloseable {
 	public Table execute() {
 		
 		Supplier<Table> supplier = () -> new Table(this.getOutputAttributes());
-		Table ret = this.stream().collect(Table.toTable(supplier));
+		Table ret;
+		if (this.isParallel()) {
+			// The table collector is concurrent, so the tuples are collected to a list first.
+			ret = supplier.get();
+			for (Tuple tuple : this.stream().collect(Collectors.toList()))
+				ret.appendRow(tuple);
+		} else
+			ret = this.stream().collect(Table.toTable(supplier));
 		try {
 			this.close();
 		} catch (Exception e) {
@@ -58,13 +68,71 @@ public abstract class ExecutablePlan implements Plan, AutoCloseable {
 	}
 	
 	/**
-	 * Returns a sequential Stream with this plan as its source.
+	 * Executes the plan, passing the result tuples to the sink as they are
+	 * produced instead of collecting them. The execution stops when the sink
+	 * returns false or the limit is reached, and it waits while the sink is
+	 * blocked. In parallel mode the calls of the sink are serialised.
 	 * 
-	 * @return a sequential Stream over the tuples in this plan
+	 * @param sink
+	 *            receives the tuples, it is opened and closed by this method.
+	 * @param limit
+	 *            maximum number of tuples passed to the sink.
+	 * @return the number of tuples passed to the sink.
+	 * @throws Exception
+	 *             the first exception thrown by the sink.
+	 */
+	public long execute(TupleSink sink, long limit) throws Exception {
+		Preconditions.checkArgument(limit >= 0, "The limit cannot be negative");
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		long[] counter = new long[1];
+		try {
+			sink.open(this.getOutputAttributes());
+			if (limit > 0) {
+				// anyMatch stops the (parallel) stream as soon as a tuple returns true.
+				this.stream().anyMatch(tuple -> {
+					synchronized (counter) {
+						if (failure.get() != null || counter[0] >= limit)
+							return true;
+						try {
+							boolean more = sink.accept(tuple);
+							counter[0]++;
+							return !more || counter[0] >= limit;
+						} catch (Exception e) {
+							if (e instanceof InterruptedException)
+								Thread.currentThread().interrupt();
+							failure.set(e);
+							return true;
+						}
+					}
+				});
+			}
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			this.close();
+			try {
+				sink.close();
+			} catch (Exception e) {
+				if (!failure.compareAndSet(null, e))
+					failure.get().addSuppressed(e);
+			}
+		}
+		if (failure.get() != null)
+			throw failure.get();
+		synchronized (counter) {
+			return counter[0];
+		}
+	}
+	
+	/**
+	 * Returns a Stream with this plan as its source, which is parallel if the 
+	 * decorator of this plan is in parallel mode.
+	 * 
+	 * @return a Stream over the tuples in this plan
 	 * @throws Exception 
 	 */
 	public Stream<Tuple> stream() {
-		return StreamSupport.stream(this.spliterator(), false);
+		return StreamSupport.stream(this.spliterator(), this.isParallel());
 	}
 	
 	/**
@@ -170,4 +238,11 @@ public abstract class ExecutablePlan implements Plan, AutoCloseable {
 	public PlanDecorator getDecorator() {
 		return this.decorator;
 	}
+
+	/**
+	 * @return true if this plan is executed in parallel, see PlanDecorator.setParallel
+	 */
+	public boolean isParallel() {
+		return this.decorator != null && this.decorator.isParallel();
+	}
 }
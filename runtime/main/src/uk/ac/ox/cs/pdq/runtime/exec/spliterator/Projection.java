@@ -52,6 +52,11 @@ public class Projection extends UnaryExecutablePlan {
 			super(childSpliterator);
 		}
 
+		@Override
+		protected Spliterator<Tuple> wrap(Spliterator<Tuple> childSpliterator) {
+			return new ProjectionSpliterator(childSpliterator);
+		}
+
 		@Override
 		public boolean tryAdvance(Consumer<? super Tuple> action) {
 			return StreamSupport.stream(this.childSpliterator, false)
@@ -51,6 +51,11 @@ public class Selection extends UnaryExecutablePlan {
 			super(childSpliterator);
 		}
 
+		@Override
+		protected Spliterator<Tuple> wrap(Spliterator<Tuple> childSpliterator) {
+			return new SelectionSpliterator(childSpliterator);
+		}
+
 		@Override
 		public boolean tryAdvance(Consumer<? super Tuple> action) {
 			return StreamSupport.stream(this.childSpliterator, false)
@@ -3,17 +3,18 @@
 
 package uk.ac.ox.cs.pdq.runtime.exec.spliterator;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import com.google.common.collect.Sets;
-
 import jersey.repackaged.com.google.common.base.Preconditions;
 import uk.ac.ox.cs.pdq.algebra.JoinTerm;
 import uk.ac.ox.cs.pdq.algebra.Plan;
@@ -32,9 +33,10 @@ public class SymmetricMemoryHashJoin extends BinaryExecutablePlan {
 
 	// Maintain maps for each child with
 	//   - key: each unique projected sub-tuple (corresponding to the join attributes) found in the child;
-	//   - value: the set of unique tuples corresponding to the key found in the child.
-	private Map<Tuple, Set<Tuple>> leftMap = new HashMap<Tuple, Set<Tuple>>();
-	private Map<Tuple, Set<Tuple>> rightMap = new HashMap<Tuple, Set<Tuple>>();
+	//   - value: the tuples corresponding to the key found in the child, including duplicates, 
+	//     so that each pair of matching tuples is joined once whatever the order in which they arrive.
+	private Map<Tuple, List<Tuple>> leftMap = new HashMap<Tuple, List<Tuple>>();
+	private Map<Tuple, List<Tuple>> rightMap = new HashMap<Tuple, List<Tuple>>();
 
 	private Tuple activeTuple;
 	private boolean activeTupleFlag;
@@ -65,15 +67,36 @@ public class SymmetricMemoryHashJoin extends BinaryExecutablePlan {
 
 	@Override
 	public Spliterator<Tuple> spliterator() {
+		if (this.isParallel())
+			return this.partitionedSpliterator();
 		return new SymmetricMemoryHashJoinSpliterator(this.leftChild.spliterator(), 
 				this.rightChild.spliterator());
 	}
 
+	/*
+	 * In parallel mode the symmetric algorithm is replaced by a build and a probe
+	 * phase: the tuples of the left child are partitioned by their join key into
+	 * a concurrent map in parallel, then the tuples of the right child are 
+	 * streamed in parallel and each is joined with the left tuples having the
+	 * same key. As in the symmetric algorithm the duplicates of both children
+	 * are kept.
+	 */
+	private Spliterator<Tuple> partitionedSpliterator() {
+		ConcurrentMap<Tuple, List<Tuple>> leftTuples = this.leftChild.stream()
+				.collect(Collectors.groupingByConcurrent(this.leftProjector, Collectors.toList()));
+		return this.rightChild.stream().flatMap(tuple -> {
+			List<Tuple> matches = leftTuples.get(this.rightProjector.apply(tuple));
+			if (matches == null)
+				return Stream.empty();
+			return matches.stream().map(leftTuple -> leftTuple.appendTuple(tuple));
+		}).spliterator();
+	}
+
 	@Override
 	public void close() {
 		super.close();
-		this.leftMap = new HashMap<Tuple, Set<Tuple>>();
-		this.rightMap = new HashMap<Tuple, Set<Tuple>>();
+		this.leftMap = new HashMap<Tuple, List<Tuple>>();
+		this.rightMap = new HashMap<Tuple, List<Tuple>>();
 		this.probedTuples = null;
 	}
 
@@ -111,8 +134,8 @@ public class SymmetricMemoryHashJoin extends BinaryExecutablePlan {
 				leftChildIsActive = !leftChildIsActive;
 
 				Spliterator<Tuple> activeSpliterator = leftChildIsActive ? leftChildSpliterator : rightChildSpliterator;
-				Map<Tuple, Set<Tuple>> activeMap = leftChildIsActive ? leftMap : rightMap;
-				Map<Tuple, Set<Tuple>> probeMap = leftChildIsActive ? rightMap : leftMap;
+				Map<Tuple, List<Tuple>> activeMap = leftChildIsActive ? leftMap : rightMap;
+				Map<Tuple, List<Tuple>> probeMap = leftChildIsActive ? rightMap : leftMap;
 				Function<Tuple, Tuple> projector = leftChildIsActive ? leftProjector : rightProjector;
 
 				boolean lastActiveTupleFlag = activeTupleFlag;
@@ -133,8 +156,11 @@ public class SymmetricMemoryHashJoin extends BinaryExecutablePlan {
 					// Add the active tuple to the activeMap, using the projected tuple as the key.
 					if (activeMap.containsKey(projectedTuple))
 						activeMap.get(projectedTuple).add(activeTuple);
-					else
-						activeMap.put(projectedTuple, Sets.newHashSet(activeTuple));
+					else {
+						List<Tuple> tuples = new ArrayList<Tuple>();
+						tuples.add(activeTuple);
+						activeMap.put(projectedTuple, tuples);
+					}
 
 					// If the projected tuple is found in the probeMap, set probedTuples in 
 					// preparation for streaming over the corresponding value.
@@ -163,7 +189,7 @@ public class SymmetricMemoryHashJoin extends BinaryExecutablePlan {
 
 		@Override
 		public Spliterator<Tuple> trySplit() {
-			// TODO: Implement this method for parallelism benefit.
+			// The symmetric algorithm is sequential, in parallel mode the plan uses the partitionedSpliterator instead.
 			return null;
 		}
 	}
@@ -17,9 +17,13 @@ public abstract class UnaryPlanSpliterator implements Spliterator<Tuple> {
 	
 	@Override
 	public Spliterator<Tuple> trySplit() {
-		return childSpliterator.trySplit();
+		Spliterator<Tuple> split = childSpliterator.trySplit();
+		return split == null ? null : this.wrap(split);
 	}
 
+	// Applies this plan to a part of the child split off by trySplit.
+	protected abstract Spliterator<Tuple> wrap(Spliterator<Tuple> childSpliterator);
+
 	@Override
 	public long estimateSize() {
 		return childSpliterator.estimateSize();
@@ -33,5 +33,8 @@ package uk.ac.ox.cs.pdq.runtime;
 		* - Test the join condition on the joined tuple
 		* 		- recursively call this method if the condition is not satisfied
 		* - Pass the joined tuple to the given action & return true
+	- runtime.sink
+		* Sinks receiving the output tuples of a plan as they are produced
+		* (csv file, callback, bounded queue), with early termination.
 	
 **/
@@ -0,0 +1,110 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.runtime.sink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+
+/**
+ * Writes the tuples to a csv file as they arrive. The first line is the header
+ * (the names of the attributes), the commas in the string values are replaced
+ * by "/c". The file is appended to, as it was done by the Runtime before.
+ *
+ * @author Gabor
+ *
+ */
+public class CsvTupleSink implements TupleSink {
+
+	private static final String LINE_END = "\r\n";
+
+	private final File target;
+
+	private Writer writer;
+
+	private Attribute[] header;
+
+	/** Echoes the header and the tuples when not null. */
+	private PrintStream echo = null;
+
+	private long tupleCount = 0;
+
+	/**
+	 * @param target
+	 *            the csv file, or a directory to write results.csv into.
+	 */
+	public CsvTupleSink(File target) {
+		this.target = target.isDirectory() ? new File(target, "results.csv") : target;
+	}
+
+	@Override
+	public void open(Attribute[] header) throws IOException {
+		this.header = header;
+		this.writer = new BufferedWriter(new FileWriter(this.target, true), 1 << 16);
+		StringBuilder builder = new StringBuilder();
+		for (Attribute attribute : header) {
+			if (builder.length() > 0)
+				builder.append(",");
+			builder.append(attribute.getName());
+		}
+		builder.append(LINE_END);
+		this.writer.write(builder.toString());
+		if (this.echo != null)
+			this.echo.println(builder.toString());
+	}
+
+	@Override
+	public boolean accept(Tuple tuple) throws IOException {
+		if (this.echo != null)
+			this.echo.println(tuple);
+		StringBuilder builder = new StringBuilder();
+		int attributeCounter = 0;
+		for (Object value : tuple.getValues()) {
+			if (attributeCounter > 0)
+				builder.append(",");
+			if (this.header[attributeCounter].getType().equals(String.class))
+				builder.append(value.toString().replaceAll(",", "/c"));
+			else
+				builder.append(value);
+			attributeCounter++;
+		}
+		builder.append(LINE_END);
+		this.writer.write(builder.toString());
+		this.tupleCount++;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.writer != null) {
+			this.writer.close();
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * @param echo
+	 *            where to print the header and the tuples, for the verbose mode.
+	 */
+	public void setEcho(PrintStream echo) {
+		this.echo = echo;
+	}
+
+	public File getTarget() {
+		return this.target;
+	}
+
+	/**
+	 * @return the number of tuples written.
+	 */
+	public long getTupleCount() {
+		return this.tupleCount;
+	}
+}
@@ -0,0 +1,100 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.runtime.sink;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Preconditions;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+
+/**
+ * Hands the tuples over to a consumer thread through a bounded queue. The plan
+ * is executed on another thread, which waits when the queue is full, so the
+ * consumer decides the pace. The consumer calls take until it returns null
+ * (the end of the tuples), or cancel to stop the plan.
+ *
+ * @author Gabor
+ *
+ */
+public class QueueTupleSink implements TupleSink {
+
+	/** Marks the end of the tuples in the queue. */
+	private static final Object END = new Object();
+
+	private final BlockingQueue<Object> queue;
+
+	private volatile Attribute[] header = null;
+
+	private volatile boolean cancelled = false;
+
+	private boolean finished = false;
+
+	/**
+	 * @param capacity
+	 *            number of tuples waiting for the consumer, before the plan
+	 *            stops.
+	 */
+	public QueueTupleSink(int capacity) {
+		Preconditions.checkArgument(capacity > 0);
+		this.queue = new ArrayBlockingQueue<>(capacity);
+	}
+
+	@Override
+	public void open(Attribute[] header) {
+		this.header = header;
+	}
+
+	@Override
+	public boolean accept(Tuple tuple) throws InterruptedException {
+		if (this.cancelled)
+			return false;
+		this.queue.put(tuple);
+		return !this.cancelled;
+	}
+
+	/**
+	 * Marks the end of the tuples. When the consumer cancelled, the queue is
+	 * emptied first, so it never waits for the consumer.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		if (this.cancelled)
+			this.queue.clear();
+		this.queue.put(END);
+	}
+
+	/**
+	 * Waits for the next tuple.
+	 *
+	 * @return the next tuple, or null when the plan has no more tuples.
+	 */
+	public Tuple take() throws InterruptedException {
+		if (this.finished)
+			return null;
+		Object next = this.queue.take();
+		if (next == END) {
+			this.finished = true;
+			return null;
+		}
+		return (Tuple) next;
+	}
+
+	/**
+	 * Stops the plan, the tuples waiting in the queue are dropped.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		this.queue.clear();
+	}
+
+	/**
+	 * @return the output attributes of the plan, null until the plan starts.
+	 */
+	public Attribute[] getHeader() {
+		return this.header;
+	}
+}
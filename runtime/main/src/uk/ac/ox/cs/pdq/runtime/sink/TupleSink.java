@@ -0,0 +1,47 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.runtime.sink;
+
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+
+/**
+ * Receives the output tuples of a plan as they are produced, see
+ * ExecutablePlan.execute(TupleSink, long). A sink that cannot keep up slows
+ * the plan down by blocking in accept, and it can stop the plan by returning
+ * false.
+ * <br>
+ * The calls of a sink never overlap, even when the plan is executed in
+ * parallel. A callback sink can be given as a lambda.
+ *
+ * @author Gabor
+ *
+ */
+@FunctionalInterface
+public interface TupleSink extends AutoCloseable {
+
+	/**
+	 * Called once, before the first tuple.
+	 *
+	 * @param header
+	 *            the output attributes of the plan.
+	 */
+	default void open(Attribute[] header) throws Exception {
+	}
+
+	/**
+	 * Receives the next tuple of the plan.
+	 *
+	 * @return false if the sink needs no more tuples, the execution of the plan
+	 *         stops.
+	 */
+	boolean accept(Tuple tuple) throws Exception;
+
+	/**
+	 * Called once after the last tuple, also when the plan failed or was stopped.
+	 */
+	@Override
+	default void close() throws Exception {
+	}
+}
@@ -0,0 +1,18 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.runtime.sink;
+
+/**
+	@author Gabor
+	
+	This package contains the sinks receiving the output tuples of a plan as they
+	are produced, instead of collecting them into a Table first:
+	
+	- TupleSink.java
+		* The interface of the sinks, a lambda can be used as a callback sink.
+	- CsvTupleSink.java
+		* Writes the tuples into a csv file.
+	- QueueTupleSink.java
+		* Hands the tuples over to a consumer thread through a bounded queue.
+**/
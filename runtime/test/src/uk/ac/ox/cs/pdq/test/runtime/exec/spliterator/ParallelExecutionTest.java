@@ -0,0 +1,171 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.runtime.exec.spliterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.algebra.AccessTerm;
+import uk.ac.ox.cs.pdq.algebra.CartesianProductTerm;
+import uk.ac.ox.cs.pdq.algebra.ConstantInequalityCondition;
+import uk.ac.ox.cs.pdq.algebra.DependentJoinTerm;
+import uk.ac.ox.cs.pdq.algebra.JoinTerm;
+import uk.ac.ox.cs.pdq.algebra.Plan;
+import uk.ac.ox.cs.pdq.algebra.SelectionTerm;
+import uk.ac.ox.cs.pdq.datasources.accessrepository.AccessRepository;
+import uk.ac.ox.cs.pdq.datasources.memory.InMemoryAccessMethod;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+import uk.ac.ox.cs.pdq.fol.TypedConstant;
+import uk.ac.ox.cs.pdq.runtime.exec.PlanDecorator;
+import uk.ac.ox.cs.pdq.runtime.exec.spliterator.ExecutablePlan;
+
+/**
+ * Executes the same plans sequentially and in parallel (PlanDecorator.setParallel)
+ * and checks that the results are the same.
+ */
+public class ParallelExecutionTest {
+
+	PlanDecorator sequential;
+	PlanDecorator parallel;
+
+	TupleType tt3 = TupleType.DefaultFactory.create(Integer.class, Integer.class, Integer.class);
+
+	// R1(i, j, k) and R2(k, l, m), joining on k.
+	InMemoryAccessMethod r1Free;
+	InMemoryAccessMethod r2Free;
+	InMemoryAccessMethod r2ByK;
+
+	// The same relations, where every tuple appears several times.
+	InMemoryAccessMethod r1Duplicates;
+	InMemoryAccessMethod r2DuplicatesFree;
+	InMemoryAccessMethod r2DuplicatesByK;
+
+	@Before
+	public void setup() throws Exception {
+		this.sequential = new PlanDecorator(AccessRepository.getRepository());
+		this.parallel = new PlanDecorator(AccessRepository.getRepository());
+		this.parallel.setParallel(true);
+
+		Relation relation1 = Relation.create("R1", new Attribute[] { Attribute.create(Integer.class, "i"),
+				Attribute.create(Integer.class, "j"), Attribute.create(Integer.class, "k") });
+		Relation relation2 = Relation.create("R2", new Attribute[] { Attribute.create(Integer.class, "k"),
+				Attribute.create(Integer.class, "l"), Attribute.create(Integer.class, "m") });
+
+		Collection<Tuple> tuples1 = new ArrayList<Tuple>();
+		for (int i = 0; i != 1000; i++)
+			tuples1.add(this.tt3.createTuple(i, i % 17, i % 50));
+		Collection<Tuple> tuples2 = new ArrayList<Tuple>();
+		for (int i = 0; i != 500; i++)
+			tuples2.add(this.tt3.createTuple(i % 80, i, i % 3));
+
+		this.r1Free = this.createAccessMethod(relation1, new Integer[0], tuples1);
+		this.r2Free = this.createAccessMethod(relation2, new Integer[0], tuples2);
+		this.r2ByK = this.createAccessMethod(relation2, new Integer[] { 0 }, tuples2);
+
+		// 60 distinct tuples, each 5 times, and 100 distinct tuples, each twice.
+		Collection<Tuple> duplicates1 = new ArrayList<Tuple>();
+		for (int i = 0; i != 300; i++)
+			duplicates1.add(this.tt3.createTuple(i % 30, 0, i % 20));
+		Collection<Tuple> duplicates2 = new ArrayList<Tuple>();
+		for (int i = 0; i != 200; i++)
+			duplicates2.add(this.tt3.createTuple(i % 25, i % 4, 0));
+		this.r1Duplicates = this.createAccessMethod(relation1, new Integer[0], duplicates1);
+		this.r2DuplicatesFree = this.createAccessMethod(relation2, new Integer[0], duplicates2);
+		this.r2DuplicatesByK = this.createAccessMethod(relation2, new Integer[] { 0 }, duplicates2);
+	}
+
+	private InMemoryAccessMethod createAccessMethod(Relation relation, Integer[] inputs, Collection<Tuple> tuples) {
+		Map<Attribute, Attribute> attributeMapping = new HashMap<Attribute, Attribute>();
+		for (Attribute attribute : relation.getAttributes())
+			attributeMapping.put(attribute, attribute);
+		InMemoryAccessMethod am = new InMemoryAccessMethod(relation.getAttributes(), inputs, relation, attributeMapping);
+		am.load(tuples);
+		return am;
+	}
+
+	private AccessTerm access(InMemoryAccessMethod am) {
+		return AccessTerm.create(am.getRelation(), am);
+	}
+
+	// Executes the plan with the given decorator, the result is sorted so it can be compared.
+	private List<String> execute(PlanDecorator decorator, Plan plan) throws Exception {
+		ExecutablePlan executable = decorator.decorate(plan);
+		return executable.execute().getData().stream().map(Tuple::toString).sorted().collect(Collectors.toList());
+	}
+
+	private void assertSameResults(Plan plan, int expectedSize) throws Exception {
+		List<String> expected = this.execute(this.sequential, plan);
+		Assert.assertEquals(expectedSize, expected.size());
+		Assert.assertEquals(expected, this.execute(this.parallel, plan));
+		// Parallel plans can be executed again.
+		ExecutablePlan executable = this.parallel.decorate(plan);
+		Assert.assertEquals(expectedSize, executable.execute().size());
+		Assert.assertEquals(expectedSize, executable.execute().size());
+	}
+
+	@Test
+	public void testAccess() throws Exception {
+		this.assertSameResults(this.access(this.r1Free), 1000);
+	}
+
+	@Test
+	public void testSelection() throws Exception {
+		// i < 100
+		SelectionTerm plan = SelectionTerm.create(ConstantInequalityCondition.create(0, TypedConstant.create(100)),
+				this.access(this.r1Free));
+		this.assertSameResults(plan, 100);
+	}
+
+	@Test
+	public void testSymmetricMemoryHashJoin() throws Exception {
+		// Each value of k in 0..49 appears 20 times in R1, and 6 or 7 times in R2.
+		this.assertSameResults(JoinTerm.create(this.access(this.r1Free), this.access(this.r2Free)), 6 * 20 * 50 + 20 * 20);
+	}
+
+	@Test
+	public void testDependentJoin() throws Exception {
+		// The result must also be the same as that of the equivalent hash join.
+		DependentJoinTerm plan = DependentJoinTerm.create(this.access(this.r1Free), this.access(this.r2ByK));
+		this.assertSameResults(plan, 6 * 20 * 50 + 20 * 20);
+		Assert.assertEquals(this.execute(this.sequential, JoinTerm.create(this.access(this.r1Free), this.access(this.r2Free))), 
+				this.execute(this.sequential, plan));
+	}
+
+	@Test
+	public void testDuplicates() throws Exception {
+		// The joins keep the duplicates of both inputs: each value of k in 0..19 
+		// appears 15 times in R1 and 8 times in R2.
+		int expectedSize = 20 * 15 * 8;
+		JoinTerm join = JoinTerm.create(this.access(this.r1Duplicates), this.access(this.r2DuplicatesFree));
+		this.assertSameResults(join, expectedSize);
+		DependentJoinTerm dependentJoin = DependentJoinTerm.create(this.access(this.r1Duplicates), this.access(this.r2DuplicatesByK));
+		this.assertSameResults(dependentJoin, expectedSize);
+		Assert.assertEquals(this.execute(this.sequential, join), this.execute(this.sequential, dependentJoin));
+	}
+
+	@Test
+	public void testConcurrentAccesses() throws Exception {
+		// The accesses of the right child of the dependent join are sent through ExecutableAccessMethod.accessAsync.
+		PlanDecorator concurrent = new PlanDecorator(AccessRepository.getRepository());
+		concurrent.setConcurrentAccesses(4);
+		DependentJoinTerm plan = DependentJoinTerm.create(this.access(this.r1Free), this.access(this.r2ByK));
+		Assert.assertEquals(this.execute(this.sequential, plan), this.execute(concurrent, plan));
+	}
+
+	@Test
+	public void testCartesianProduct() throws Exception {
+		this.assertSameResults(CartesianProductTerm.create(this.access(this.r2Free), this.access(this.r2Free)), 500 * 500);
+	}
+}
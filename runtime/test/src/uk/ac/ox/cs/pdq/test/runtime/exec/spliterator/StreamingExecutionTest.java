@@ -0,0 +1,173 @@
+// This file is part of PDQ (https://github.com/ProofDrivenQuerying/pdq) which is released under the MIT license.
+// See accompanying LICENSE for copyright notice and full details.
+
+package uk.ac.ox.cs.pdq.test.runtime.exec.spliterator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.ox.cs.pdq.algebra.AccessTerm;
+import uk.ac.ox.cs.pdq.algebra.JoinTerm;
+import uk.ac.ox.cs.pdq.algebra.Plan;
+import uk.ac.ox.cs.pdq.datasources.accessrepository.AccessRepository;
+import uk.ac.ox.cs.pdq.datasources.memory.InMemoryAccessMethod;
+import uk.ac.ox.cs.pdq.db.Attribute;
+import uk.ac.ox.cs.pdq.db.Relation;
+import uk.ac.ox.cs.pdq.db.tuple.Tuple;
+import uk.ac.ox.cs.pdq.db.tuple.TupleType;
+import uk.ac.ox.cs.pdq.runtime.exec.PlanDecorator;
+import uk.ac.ox.cs.pdq.runtime.exec.spliterator.ExecutablePlan;
+import uk.ac.ox.cs.pdq.runtime.sink.CsvTupleSink;
+import uk.ac.ox.cs.pdq.runtime.sink.QueueTupleSink;
+
+/**
+ * Executes plans with ExecutablePlan.execute(TupleSink, long), sequentially and
+ * in parallel, and checks the tuples received by the sinks.
+ */
+public class StreamingExecutionTest {
+
+	PlanDecorator sequential;
+	PlanDecorator parallel;
+
+	TupleType tt3 = TupleType.DefaultFactory.create(Integer.class, Integer.class, Integer.class);
+
+	// R1(i, j, k) and R2(k, l, m), joining on k.
+	InMemoryAccessMethod r1Free;
+	InMemoryAccessMethod r2Free;
+
+	@Before
+	public void setup() throws Exception {
+		this.sequential = new PlanDecorator(AccessRepository.getRepository());
+		this.parallel = new PlanDecorator(AccessRepository.getRepository());
+		this.parallel.setParallel(true);
+
+		Relation relation1 = Relation.create("R1", new Attribute[] { Attribute.create(Integer.class, "i"),
+				Attribute.create(Integer.class, "j"), Attribute.create(Integer.class, "k") });
+		Relation relation2 = Relation.create("R2", new Attribute[] { Attribute.create(Integer.class, "k"),
+				Attribute.create(Integer.class, "l"), Attribute.create(Integer.class, "m") });
+
+		Collection<Tuple> tuples1 = new ArrayList<Tuple>();
+		for (int i = 0; i != 1000; i++)
+			tuples1.add(this.tt3.createTuple(i, i % 17, i % 50));
+		Collection<Tuple> tuples2 = new ArrayList<Tuple>();
+		for (int i = 0; i != 500; i++)
+			tuples2.add(this.tt3.createTuple(i % 80, i, i % 3));
+
+		this.r1Free = this.createAccessMethod(relation1, tuples1);
+		this.r2Free = this.createAccessMethod(relation2, tuples2);
+	}
+
+	private InMemoryAccessMethod createAccessMethod(Relation relation, Collection<Tuple> tuples) {
+		Map<Attribute, Attribute> attributeMapping = new HashMap<Attribute, Attribute>();
+		for (Attribute attribute : relation.getAttributes())
+			attributeMapping.put(attribute, attribute);
+		InMemoryAccessMethod am = new InMemoryAccessMethod(relation.getAttributes(), new Integer[0], relation, attributeMapping);
+		am.load(tuples);
+		return am;
+	}
+
+	private Plan join() {
+		return JoinTerm.create(AccessTerm.create(this.r1Free.getRelation(), this.r1Free),
+				AccessTerm.create(this.r2Free.getRelation(), this.r2Free));
+	}
+
+	@Test
+	public void testCallback() throws Exception {
+		int expected = 6 * 20 * 50 + 20 * 20;
+		for (PlanDecorator decorator : new PlanDecorator[] { this.sequential, this.parallel }) {
+			ExecutablePlan executable = decorator.decorate(this.join());
+			List<String> tuples = new ArrayList<>();
+			Assert.assertEquals(expected, executable.execute(tuple -> tuples.add(tuple.toString()), Long.MAX_VALUE));
+			Assert.assertEquals(expected, tuples.size());
+			Assert.assertEquals(executable.execute().getData().stream().map(Tuple::toString).sorted().collect(Collectors.toList()),
+					tuples.stream().sorted().collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testEarlyTermination() throws Exception {
+		for (PlanDecorator decorator : new PlanDecorator[] { this.sequential, this.parallel }) {
+			ExecutablePlan executable = decorator.decorate(this.join());
+			List<Tuple> tuples = new ArrayList<>();
+			Assert.assertEquals(10, executable.execute(tuples::add, 10));
+			Assert.assertEquals(10, tuples.size());
+
+			// the sink stops the plan after 5 tuples.
+			tuples.clear();
+			Assert.assertEquals(5, executable.execute(tuple -> tuples.add(tuple) && tuples.size() < 5, Long.MAX_VALUE));
+			Assert.assertEquals(5, tuples.size());
+
+			// the plan can be executed again after it was stopped.
+			Assert.assertEquals(6 * 20 * 50 + 20 * 20, executable.execute().size());
+		}
+	}
+
+	@Test
+	public void testFailingSink() throws Exception {
+		ExecutablePlan executable = this.sequential.decorate(this.join());
+		try {
+			executable.execute(tuple -> {
+				throw new IllegalStateException("sink failure");
+			}, Long.MAX_VALUE);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("sink failure", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testQueue() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			ExecutablePlan executable = this.parallel.decorate(this.join());
+			QueueTupleSink sink = new QueueTupleSink(16);
+			Future<Long> produced = executor.submit(() -> executable.execute(sink, Long.MAX_VALUE));
+			int consumed = 0;
+			while (sink.take() != null)
+				consumed++;
+			Assert.assertEquals(6 * 20 * 50 + 20 * 20, consumed);
+			Assert.assertEquals(consumed, produced.get().longValue());
+			Assert.assertEquals(6, sink.getHeader().length);
+
+			// the consumer stops the plan.
+			QueueTupleSink cancelled = new QueueTupleSink(16);
+			produced = executor.submit(() -> executable.execute(cancelled, Long.MAX_VALUE));
+			for (int i = 0; i < 100; i++)
+				Assert.assertNotNull(cancelled.take());
+			cancelled.cancel();
+			Assert.assertTrue(produced.get() < 6 * 20 * 50 + 20 * 20);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCsv() throws Exception {
+		File output = File.createTempFile("results", ".csv");
+		output.delete();
+		try {
+			ExecutablePlan executable = this.sequential.decorate(this.join());
+			CsvTupleSink sink = new CsvTupleSink(output);
+			Assert.assertEquals(100, executable.execute(sink, 100));
+			Assert.assertEquals(100, sink.getTupleCount());
+			List<String> lines = Files.readAllLines(output.toPath());
+			Assert.assertEquals(101, lines.size());
+			Assert.assertEquals("i,j,k,k,l,m", lines.get(0));
+		} finally {
+			output.delete();
+		}
+	}
+}
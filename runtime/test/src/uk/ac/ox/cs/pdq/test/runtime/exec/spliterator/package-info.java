@@ -15,6 +15,8 @@ package uk.ac.ox.cs.pdq.test.runtime.exec.spliterator;
  		* executed.
 	- DependentJoinTest.java
  		* this test case is very slow, so disabling it for now. Last time I run it one failed, the rest run successfully.
+	- ParallelExecutionTest.java
+		* Executes plans sequentially, in parallel and with concurrent accesses, and compares the results.
 	- NestedLoopJoinTest.java
 		* The following are integration tests: NestedLoop joins are constructed &
  		* executed.